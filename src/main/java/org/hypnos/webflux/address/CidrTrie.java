@@ -0,0 +1,157 @@
+package org.hypnos.webflux.address;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * 可信代理网段集合，按位存放在紧凑的二叉前缀树里（节点用数组表示，不创建对象）。
+ * IPv4 与 IPv6 各用一棵树，构建完成后只读，可并发查询。
+ */
+public class CidrTrie {
+
+    private final Tree v4 = new Tree();
+
+    private final Tree v6 = new Tree();
+
+    /**
+     * @param cidrs 形如 10.0.0.0/8、fc00::/7 或不带前缀长度的单个地址
+     */
+    public CidrTrie(Collection<String> cidrs) {
+        long[] scratch = new long[2];
+        for (String cidr : cidrs) {
+            add(cidr.trim(), scratch);
+        }
+    }
+
+    private void add(String cidr, long[] scratch) {
+        int slash = cidr.indexOf('/');
+        int end = slash < 0 ? cidr.length() : slash;
+        long ipv4 = IpAddressParser.parseIpv4(cidr, 0, end);
+        if (ipv4 >= 0) {
+            int prefix = slash < 0 ? 32 : parsePrefix(cidr, slash + 1, 32);
+            v4.insert(ipv4 << 32, 0, prefix);
+            return;
+        }
+        if (IpAddressParser.parseIpv6(cidr, 0, end, scratch)) {
+            int prefix = slash < 0 ? 128 : parsePrefix(cidr, slash + 1, 128);
+            v6.insert(scratch[0], scratch[1], prefix);
+            return;
+        }
+        throw new IllegalArgumentException("invalid CIDR: " + cidr);
+    }
+
+    private static int parsePrefix(String cidr, int start, int max) {
+        int prefix;
+        try {
+            prefix = Integer.parseInt(cidr.substring(start));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid CIDR: " + cidr, e);
+        }
+        if (prefix < 0 || prefix > max) {
+            throw new IllegalArgumentException("invalid CIDR: " + cidr);
+        }
+        return prefix;
+    }
+
+    public boolean containsIpv4(long address) {
+        return v4.matches(address << 32, 0, 32);
+    }
+
+    public boolean containsIpv6(long hi, long lo) {
+        return v6.matches(hi, lo, 128);
+    }
+
+    /**
+     * 判断 s[start, end) 表示的地址是否落在可信网段内，无法解析时返回 false
+     * @param scratch 长度为 2 的临时数组，用于存放 IPv6 解析结果
+     */
+    public boolean contains(CharSequence s, int start, int end, long[] scratch) {
+        long ipv4 = IpAddressParser.parseIpv4(s, start, end);
+        if (ipv4 >= 0) {
+            return containsIpv4(ipv4);
+        }
+        if (IpAddressParser.parseIpv6(s, start, end, scratch)) {
+            // IPv4-mapped 地址按 IPv4 匹配
+            if (scratch[0] == 0 && (scratch[1] >>> 32) == 0xFFFFL) {
+                return containsIpv4(scratch[1] & 0xFFFFFFFFL);
+            }
+            return containsIpv6(scratch[0], scratch[1]);
+        }
+        return false;
+    }
+
+    public boolean contains(byte[] address) {
+        if (address.length == 4) {
+            return containsIpv4(((address[0] & 0xFFL) << 24) | ((address[1] & 0xFF) << 16)
+                    | ((address[2] & 0xFF) << 8) | (address[3] & 0xFF));
+        }
+        if (address.length == 16) {
+            long hi = 0;
+            long lo = 0;
+            for (int i = 0; i < 8; i++) {
+                hi = (hi << 8) | (address[i] & 0xFF);
+                lo = (lo << 8) | (address[i + 8] & 0xFF);
+            }
+            return containsIpv6(hi, lo);
+        }
+        return false;
+    }
+
+    public boolean isEmpty() {
+        return v4.size == 1 && v6.size == 1 && !v4.terminal[0] && !v6.terminal[0];
+    }
+
+    /**
+     * 二叉前缀树，children[2n] / children[2n + 1] 为节点 n 的 0 / 1 子节点，0 表示不存在（根节点不会是子节点）
+     */
+    private static final class Tree {
+
+        private int[] children = new int[64];
+
+        private boolean[] terminal = new boolean[32];
+
+        private int size = 1;
+
+        void insert(long hi, long lo, int prefix) {
+            int node = 0;
+            for (int i = 0; i < prefix && !terminal[node]; i++) {
+                int bit = bit(hi, lo, i);
+                int child = children[node * 2 + bit];
+                if (child == 0) {
+                    child = newNode();
+                    children[node * 2 + bit] = child;
+                }
+                node = child;
+            }
+            terminal[node] = true;
+        }
+
+        boolean matches(long hi, long lo, int bits) {
+            int node = 0;
+            for (int i = 0; ; i++) {
+                if (terminal[node]) {
+                    return true;
+                }
+                if (i == bits) {
+                    return false;
+                }
+                node = children[node * 2 + bit(hi, lo, i)];
+                if (node == 0) {
+                    return false;
+                }
+            }
+        }
+
+        private int newNode() {
+            if (size == terminal.length) {
+                terminal = Arrays.copyOf(terminal, size * 2);
+                children = Arrays.copyOf(children, size * 4);
+            }
+            return size++;
+        }
+
+        private static int bit(long hi, long lo, int index) {
+            return index < 64 ? (int) (hi >>> (63 - index)) & 1 : (int) (lo >>> (127 - index)) & 1;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package org.hypnos.webflux.address;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端 / 服务端地址解析。
+ * <ul>
+ *     <li>服务端地址启动时解析一次，之后由后台线程定期刷新，请求线程只读缓存，不会触发 DNS 查询</li>
+ *     <li>客户端地址按 RFC 7239 Forwarded、X-Forwarded-For、X-Real-IP 的顺序解析，
+ *     只有直连方是可信代理时才采信这些头；转发链从右往左跳过可信代理，第一个不可信的地址即真实客户端</li>
+ *     <li>头部解析直接在原字符串上按下标扫描，只在最终结果上做一次 substring</li>
+ * </ul>
+ */
+public class ClientAddressResolver {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClientAddressResolver.class);
+
+    private static final String FORWARDED = "Forwarded";
+
+    private static final String X_FORWARDED_FOR = "X-Forwarded-For";
+
+    private static final String X_REAL_IP = "X-Real-IP";
+
+    private static final String UNKNOWN = "unknown";
+
+    private static final ThreadLocal<long[]> SCRATCH = ThreadLocal.withInitial(() -> new long[2]);
+
+    private final CidrTrie trustedProxies;
+
+    private final ScheduledExecutorService refresher;
+
+    private volatile String serverAddr;
+
+    /**
+     * @param trustedProxies 可信代理网段
+     * @param refreshIntervalSeconds 服务端地址刷新间隔（秒），小于等于 0 表示不刷新
+     */
+    public ClientAddressResolver(CidrTrie trustedProxies, long refreshIntervalSeconds) {
+        this.trustedProxies = trustedProxies;
+        this.serverAddr = lookupServerAddr();
+        if (refreshIntervalSeconds > 0) {
+            this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "server-addr-refresh");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.refresher.scheduleWithFixedDelay(this::refreshServerAddr,
+                    refreshIntervalSeconds, refreshIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            this.refresher = null;
+        }
+    }
+
+    /**
+     * 服务端地址，也就是本机地址，读缓存
+     */
+    public String getServerAddr() {
+        return serverAddr;
+    }
+
+    /**
+     * 解析真实客户端地址
+     */
+    public String resolveClientAddr(ServerHttpRequest request) {
+        InetSocketAddress remoteAddress = request.getRemoteAddress();
+        InetAddress peer = remoteAddress == null ? null : remoteAddress.getAddress();
+        if (peer != null && !trustedProxies.contains(peer.getAddress())) {
+            return normalize(peer.getHostAddress());
+        }
+        HttpHeaders headers = request.getHeaders();
+        long[] scratch = SCRATCH.get();
+        String forwarded = headers.getFirst(FORWARDED);
+        String client = forwarded == null ? null : fromForwarded(forwarded, scratch);
+        if (client == null) {
+            String xff = headers.getFirst(X_FORWARDED_FOR);
+            client = xff == null ? null : fromForwardedFor(xff, scratch);
+        }
+        if (client == null) {
+            String realIp = headers.getFirst(X_REAL_IP);
+            int start = realIp == null ? 0 : skipWhitespace(realIp, 0, realIp.length());
+            int end = realIp == null ? 0 : trimEnd(realIp, start, realIp.length());
+            client = end > start && !isUnknown(realIp, start, end) ? slice(realIp, start, end) : null;
+        }
+        if (client == null && peer != null) {
+            client = peer.getHostAddress();
+        }
+        return normalize(client);
+    }
+
+    /**
+     * X-Forwarded-For: client, proxy1, proxy2
+     */
+    String fromForwardedFor(String header, long[] scratch) {
+        long leftmost = -1;
+        int end = header.length();
+        while (end > 0) {
+            int comma = header.lastIndexOf(',', end - 1);
+            int start = skipWhitespace(header, comma + 1, end);
+            int valueEnd = trimEnd(header, start, end);
+            if (valueEnd > start && !isUnknown(header, start, valueEnd)) {
+                long range = stripPort(header, start, valueEnd);
+                if (!trustedProxies.contains(header, rangeStart(range), rangeEnd(range), scratch)) {
+                    return slice(header, rangeStart(range), rangeEnd(range));
+                }
+                leftmost = range;
+            }
+            end = comma < 0 ? 0 : comma;
+        }
+        // 整条链都是可信代理时取最左边的地址
+        return leftmost < 0 ? null : slice(header, rangeStart(leftmost), rangeEnd(leftmost));
+    }
+
+    /**
+     * Forwarded: for=192.0.2.43;proto=http, for="[2001:db8:cafe::17]:4711"
+     */
+    String fromForwarded(String header, long[] scratch) {
+        long leftmost = -1;
+        int end = header.length();
+        while (end > 0) {
+            int comma = lastIndexOfUnquoted(header, ',', end);
+            int elementStart = comma + 1;
+            int forStart = findForParameter(header, elementStart, end);
+            if (forStart >= 0) {
+                boolean quoted = forStart < end && header.charAt(forStart) == '"';
+                int start = quoted ? forStart + 1 : forStart;
+                int valueEnd = start;
+                while (valueEnd < end) {
+                    char c = header.charAt(valueEnd);
+                    if (quoted ? c == '"' : (c == ';' || c == ',' || c == ' ' || c == '\t')) {
+                        break;
+                    }
+                    valueEnd++;
+                }
+                if (valueEnd > start && !isUnknown(header, start, valueEnd) && header.charAt(start) != '_') {
+                    long range = stripPort(header, start, valueEnd);
+                    if (!trustedProxies.contains(header, rangeStart(range), rangeEnd(range), scratch)) {
+                        return slice(header, rangeStart(range), rangeEnd(range));
+                    }
+                    leftmost = range;
+                }
+            }
+            end = comma < 0 ? 0 : comma;
+        }
+        // 整条链都是可信代理时取最左边的地址
+        return leftmost < 0 ? null : slice(header, rangeStart(leftmost), rangeEnd(leftmost));
+    }
+
+    /**
+     * 在一个 forwarded-element 中查找 for= 参数，返回参数值起始下标，找不到返回 -1
+     */
+    private static int findForParameter(String header, int start, int end) {
+        int i = start;
+        while (i < end) {
+            i = skipWhitespace(header, i, end);
+            if (end - i > 4 && header.regionMatches(true, i, "for", 0, 3)) {
+                int eq = skipWhitespace(header, i + 3, end);
+                if (eq < end && header.charAt(eq) == '=') {
+                    return skipWhitespace(header, eq + 1, end);
+                }
+            }
+            int semicolon = indexOfUnquoted(header, ';', i, end);
+            if (semicolon < 0) {
+                return -1;
+            }
+            i = semicolon + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * 去掉端口和 IPv6 的方括号，结果区间 [start, end) 打包成 start << 32 | end 返回，避免创建数组
+     */
+    private static long stripPort(String s, int start, int end) {
+        if (s.charAt(start) == '[') {
+            int close = s.indexOf(']', start);
+            if (close > start && close < end) {
+                return range(start + 1, close);
+            }
+            return range(start, end);
+        }
+        int colon = -1;
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == ':') {
+                if (colon >= 0) {
+                    // 多个冒号，是不带方括号的 IPv6
+                    return range(start, end);
+                }
+                colon = i;
+            }
+        }
+        return range(start, colon < 0 ? end : colon);
+    }
+
+    private static long range(int start, int end) {
+        return ((long) start << 32) | end;
+    }
+
+    private static int rangeStart(long range) {
+        return (int) (range >>> 32);
+    }
+
+    private static int rangeEnd(long range) {
+        return (int) range;
+    }
+
+    private static int lastIndexOfUnquoted(String s, char target, int end) {
+        boolean quoted = false;
+        for (int i = end - 1; i >= 0; i--) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == target && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOfUnquoted(String s, char target, int start, int end) {
+        boolean quoted = false;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == target && !quoted) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String s, int start, int end) {
+        while (start < end && (s.charAt(start) == ' ' || s.charAt(start) == '\t')) {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(String s, int start, int end) {
+        while (end > start && (s.charAt(end - 1) == ' ' || s.charAt(end - 1) == '\t')) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isUnknown(String s, int start, int end) {
+        return end - start == UNKNOWN.length() && s.regionMatches(true, start, UNKNOWN, 0, UNKNOWN.length());
+    }
+
+    private static String slice(String s, int start, int end) {
+        return start == 0 && end == s.length() ? s : s.substring(start, end);
+    }
+
+    /**
+     * 回环地址替换为本机地址，与原先的日志保持一致
+     */
+    private String normalize(String client) {
+        if (client == null || client.isEmpty()) {
+            return UNKNOWN;
+        }
+        if ("127.0.0.1".equals(client) || "localhost".equalsIgnoreCase(client)) {
+            String server = serverAddr;
+            return server.isEmpty() ? client : server;
+        }
+        return client;
+    }
+
+    private void refreshServerAddr() {
+        String addr = lookupServerAddr();
+        if (!addr.isEmpty()) {
+            serverAddr = addr;
+        }
+    }
+
+    private static String lookupServerAddr() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (Exception e) {
+            logger.warn("resolve local host address failed", e);
+            return "";
+        }
+    }
+
+    public void close() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package org.hypnos.webflux.address;
+
+/**
+ * 手写的 IP 地址解析，直接在原字符串的 [start, end) 区间上扫描，不做 substring、不走正则
+ */
+public final class IpAddressParser {
+
+    private IpAddressParser() {
+    }
+
+    /**
+     * 解析 IPv4 点分十进制地址
+     * @return 地址的 32 位无符号值，非法时返回 -1
+     */
+    public static long parseIpv4(CharSequence s, int start, int end) {
+        if (end - start < 7 || end - start > 15) {
+            return -1;
+        }
+        long result = 0;
+        int octets = 0;
+        int value = -1;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits > 0 && value == 0) {
+                    return -1; // 不允许前导 0
+                }
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (++digits > 3 || value > 255) {
+                    return -1;
+                }
+            } else if (c == '.') {
+                if (value < 0 || ++octets > 3) {
+                    return -1;
+                }
+                result = (result << 8) | value;
+                value = -1;
+                digits = 0;
+            } else {
+                return -1;
+            }
+        }
+        if (value < 0 || octets != 3) {
+            return -1;
+        }
+        return (result << 8) | value;
+    }
+
+    /**
+     * 解析 IPv6 地址（支持 :: 缩写和末尾嵌入 IPv4），结果写入 out[0]（高 64 位）和 out[1]（低 64 位）
+     * @return 是否合法
+     */
+    public static boolean parseIpv6(CharSequence s, int start, int end, long[] out) {
+        if (end - start < 2 || end - start > 45) {
+            return false;
+        }
+        // :: 之前的分组累积在 head，之后的累积在 tail，最后把 head 左移补齐
+        long headHi = 0;
+        long headLo = 0;
+        int headGroups = 0;
+        long tailHi = 0;
+        long tailLo = 0;
+        int tailGroups = 0;
+        boolean compressed = false;
+        int i = start;
+        if (s.charAt(i) == ':') {
+            if (s.charAt(i + 1) != ':') {
+                return false;
+            }
+            compressed = true;
+            i += 2;
+        }
+        while (i < end) {
+            int groupStart = i;
+            int value = 0;
+            while (i < end && i - groupStart < 5) {
+                int digit = Character.digit(s.charAt(i), 16);
+                if (digit < 0) {
+                    break;
+                }
+                value = (value << 4) | digit;
+                i++;
+            }
+            int newGroups;
+            long low32;
+            if (i < end && s.charAt(i) == '.') {
+                // 末尾嵌入的 IPv4，例如 ::ffff:10.0.0.1
+                long v4 = parseIpv4(s, groupStart, end);
+                if (v4 < 0) {
+                    return false;
+                }
+                newGroups = 2;
+                low32 = v4;
+                i = end;
+            } else {
+                if (i == groupStart || i - groupStart > 4) {
+                    return false;
+                }
+                newGroups = 1;
+                low32 = value;
+            }
+            int shift = newGroups * 16;
+            if (compressed) {
+                tailHi = (tailHi << shift) | (tailLo >>> (64 - shift));
+                tailLo = (tailLo << shift) | low32;
+                tailGroups += newGroups;
+            } else {
+                headHi = (headHi << shift) | (headLo >>> (64 - shift));
+                headLo = (headLo << shift) | low32;
+                headGroups += newGroups;
+            }
+            if (headGroups + tailGroups > 8) {
+                return false;
+            }
+            if (i == end) {
+                break;
+            }
+            if (s.charAt(i) != ':') {
+                return false;
+            }
+            i++;
+            if (i < end && s.charAt(i) == ':') {
+                if (compressed) {
+                    return false;
+                }
+                compressed = true;
+                i++;
+            } else if (i == end) {
+                return false;
+            }
+        }
+        int groups = headGroups + tailGroups;
+        if (compressed ? groups > 7 : groups != 8) {
+            return false;
+        }
+        int shift = (8 - headGroups) * 16;
+        if (shift == 128) {
+            headHi = 0;
+            headLo = 0;
+        } else if (shift >= 64) {
+            headHi = headLo << (shift - 64);
+            headLo = 0;
+        } else if (shift > 0) {
+            headHi = (headHi << shift) | (headLo >>> (64 - shift));
+            headLo = headLo << shift;
+        }
+        out[0] = headHi | tailHi;
+        out[1] = headLo | tailLo;
+        return true;
+    }
+}
@@ -0,0 +1,182 @@
+package org.hypnos.webflux.binlog;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.hypnos.webflux.vo.RequestPhases;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 把二进制段文件流式解码为 JSON Lines 输出到标准输出。
+ * <pre>
+ * java -cp app.jar org.hypnos.webflux.binlog.BinaryLogCli [--from 时间] [--to 时间] [--status 500|5xx|400-499] 文件或目录...
+ * </pre>
+ * 时间可以是 epoch 毫秒，也可以是本地时间 yyyy-MM-dd HH:mm:ss[.SSS]；目录下的段文件按文件名顺序读取。
+ */
+public class BinaryLogCli {
+
+    private static final DateTimeFormatter TIME_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss[.SSS]");
+
+    public static void main(String[] args) throws IOException {
+        long from = Long.MIN_VALUE;
+        long to = Long.MAX_VALUE;
+        int statusFrom = Integer.MIN_VALUE;
+        int statusTo = Integer.MAX_VALUE;
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if ("--from".equals(arg) && i + 1 < args.length) {
+                from = parseTime(args[++i]);
+            } else if ("--to".equals(arg) && i + 1 < args.length) {
+                to = parseTime(args[++i]);
+            } else if ("--status".equals(arg) && i + 1 < args.length) {
+                int[] range = parseStatus(args[++i]);
+                statusFrom = range[0];
+                statusTo = range[1];
+            } else if (arg.startsWith("--")) {
+                usage();
+                return;
+            } else {
+                inputs.add(Paths.get(arg));
+            }
+        }
+        if (inputs.isEmpty()) {
+            usage();
+            return;
+        }
+        ObjectMapper objectMapper = new ObjectMapper();
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+        BinaryLogReader.RecordFilter filter = filter(from, to, statusFrom, statusTo);
+        for (Path segment : listSegments(inputs)) {
+            try (BinaryLogReader reader = new BinaryLogReader(segment)) {
+                // 段起始时间晚于截止时间的段整段跳过
+                if (reader.getBaseTimeMillis() > to) {
+                    continue;
+                }
+                HttpAccLog httpAccLog;
+                while ((httpAccLog = reader.next(filter)) != null) {
+                    out.write(objectMapper.writeValueAsString(toJsonMap(httpAccLog)));
+                    out.write('\n');
+                }
+            }
+        }
+        out.flush();
+    }
+
+    private static BinaryLogReader.RecordFilter filter(long from, long to, int statusFrom, int statusTo) {
+        if (from == Long.MIN_VALUE && to == Long.MAX_VALUE && statusFrom == Integer.MIN_VALUE) {
+            return null;
+        }
+        boolean byStatus = statusFrom != Integer.MIN_VALUE;
+        return (reqTimeMillis, statusCode) -> reqTimeMillis >= from && reqTimeMillis <= to
+                && (!byStatus || (statusCode != null && statusCode >= statusFrom && statusCode <= statusTo));
+    }
+
+    /**
+     * 与 JSON Lines 格式一致，单位纳秒，未经历的阶段省略
+     */
+    private static Map<String, Object> phasesMap(RequestPhases phases) {
+        if (phases == null) {
+            return null;
+        }
+        Map<String, Object> map = new LinkedHashMap<>(8);
+        for (int phase = 0; phase < RequestPhases.COUNT; phase++) {
+            long offset = phases.get(phase);
+            if (offset >= 0) {
+                map.put(RequestPhases.name(phase), offset);
+            }
+        }
+        map.put("filter", phases.getFilterNanos());
+        return map;
+    }
+
+    /**
+     * 字段顺序与文本日志一致
+     */
+    private static Map<String, Object> toJsonMap(HttpAccLog httpAccLog) {
+        Map<String, Object> map = new LinkedHashMap<>(32);
+        map.put("traceId", httpAccLog.getTraceId());
+        map.put("method", httpAccLog.getMethod());
+        map.put("path", httpAccLog.getPath());
+        map.put("route", httpAccLog.getRoute());
+        map.put("reqTime", httpAccLog.getReqTime());
+        map.put("rspTime", httpAccLog.getRspTime());
+        map.put("processTime", httpAccLog.getProcessTime());
+        map.put("upstreamTime", httpAccLog.getUpstreamTime());
+        map.put("firstByteTime", httpAccLog.getFirstByteTime());
+        map.put("responseSize", httpAccLog.getResponseSize());
+        map.put("responseEvents", httpAccLog.getResponseEvents());
+        map.put("inProgress", httpAccLog.getInProgress());
+        map.put("phases", phasesMap(httpAccLog.getPhases()));
+        map.put("statusCode", httpAccLog.getStatusCode());
+        map.put("requestBody", httpAccLog.getRequestBody());
+        map.put("requestBodyHash", httpAccLog.getRequestBodyHash());
+        map.put("pathVariables", httpAccLog.getPathVariables());
+        map.put("queryParams", httpAccLog.getQueryParams());
+        map.put("formData", httpAccLog.getFormData());
+        map.put("responseBody", httpAccLog.getResponseBody());
+        map.put("responseBodyHash", httpAccLog.getResponseBodyHash());
+        map.put("serverAddr", httpAccLog.getServerAddr());
+        map.put("remoteAddr", httpAccLog.getRemoteAddr());
+        return map;
+    }
+
+    private static List<Path> listSegments(List<Path> inputs) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        for (Path input : inputs) {
+            if (Files.isDirectory(input)) {
+                try (Stream<Path> files = Files.list(input)) {
+                    segments.addAll(files.filter(f -> f.getFileName().toString().endsWith(BinaryLogFormat.FILE_SUFFIX))
+                            .sorted()
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                segments.add(input);
+            }
+        }
+        return segments;
+    }
+
+    private static long parseTime(String value) {
+        if (value.chars().allMatch(Character::isDigit)) {
+            return Long.parseLong(value);
+        }
+        return LocalDateTime.parse(value, TIME_FORMATTER).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 支持 500、5xx、400-499 三种写法
+     */
+    private static int[] parseStatus(String value) {
+        if (value.length() == 3 && value.endsWith("xx")) {
+            int hundreds = (value.charAt(0) - '0') * 100;
+            return new int[]{hundreds, hundreds + 99};
+        }
+        int dash = value.indexOf('-');
+        if (dash > 0) {
+            return new int[]{Integer.parseInt(value.substring(0, dash)), Integer.parseInt(value.substring(dash + 1))};
+        }
+        int status = Integer.parseInt(value);
+        return new int[]{status, status};
+    }
+
+    private static void usage() {
+        System.err.println("usage: BinaryLogCli [--from time] [--to time] [--status 500|5xx|400-499] <segment|dir>...");
+    }
+}
@@ -0,0 +1,131 @@
+package org.hypnos.webflux.binlog;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 二进制访问日志格式。
+ * <pre>
+ * segment  := header entry* 0x00...
+ * header   := magic(4B "HALS") version(1B) baseTimeMillis(8B) reserved(3B)
+ * entry    := type(1B) length(varint) payload
+ * DICT     := id(varint) string            段内字典定义，出现在首次引用它的记录之前
+ * RECORD   := fieldMask(varint) field*     只写 fieldMask 中置位的字段
+ * string   := (len << 1)(varint) utf8 | (id << 1 | 1)(varint)   内联字符串或字典引用
+ * map      := count(varint) (string string)*
+ * </pre>
+ * 数值统一使用 varint，时间戳相对段起始时间用 zigzag 编码。
+ */
+public final class BinaryLogFormat {
+
+    public static final int MAGIC = 0x48414C53;
+
+    public static final byte VERSION = 1;
+
+    public static final int HEADER_SIZE = 16;
+
+    public static final byte TYPE_END = 0;
+
+    public static final byte TYPE_DICT = 1;
+
+    public static final byte TYPE_RECORD = 2;
+
+    public static final String FILE_SUFFIX = ".hals";
+
+    static final int F_TRACE_ID = 1;
+
+    static final int F_METHOD = 1 << 1;
+
+    static final int F_PATH = 1 << 2;
+
+    static final int F_REQ_TIME = 1 << 3;
+
+    static final int F_RSP_TIME = 1 << 4;
+
+    static final int F_PROCESS_TIME = 1 << 5;
+
+    static final int F_STATUS = 1 << 6;
+
+    static final int F_REQUEST_BODY = 1 << 7;
+
+    static final int F_PATH_VARIABLES = 1 << 8;
+
+    static final int F_QUERY_PARAMS = 1 << 9;
+
+    static final int F_FORM_DATA = 1 << 10;
+
+    static final int F_RESPONSE_BODY = 1 << 11;
+
+    static final int F_SERVER_ADDR = 1 << 12;
+
+    static final int F_REMOTE_ADDR = 1 << 13;
+
+    static final int F_ROUTE = 1 << 14;
+
+    static final int F_UPSTREAM_TIME = 1 << 15;
+
+    static final int F_FIRST_BYTE_TIME = 1 << 16;
+
+    static final int F_RESPONSE_SIZE = 1 << 17;
+
+    static final int F_RESPONSE_EVENTS = 1 << 18;
+
+    /**
+     * 进度记录标记，没有字段内容
+     */
+    static final int F_IN_PROGRESS = 1 << 19;
+
+    /**
+     * 阶段耗时：{@link org.hypnos.webflux.vo.RequestPhases#COUNT} 个纳秒偏移加 1（0 表示未经历），然后是过滤器自身耗时
+     */
+    static final int F_PHASES = 1 << 20;
+
+    /**
+     * 请求体的 XXH64 哈希，8 字节定长
+     */
+    static final int F_REQUEST_BODY_HASH = 1 << 21;
+
+    /**
+     * 响应体的 XXH64 哈希，8 字节定长
+     */
+    static final int F_RESPONSE_BODY_HASH = 1 << 22;
+
+    private BinaryLogFormat() {
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new IllegalStateException("malformed varint");
+    }
+
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
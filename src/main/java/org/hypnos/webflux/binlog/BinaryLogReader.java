@@ -0,0 +1,181 @@
+package org.hypnos.webflux.binlog;
+
+import org.hypnos.webflux.dedup.XxHash64;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.hypnos.webflux.vo.RequestPhases;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.hypnos.webflux.binlog.BinaryLogFormat.*;
+
+/**
+ * 顺序读取一个段文件，逐条解码为 {@link HttpAccLog}。
+ * 可以读取正在写入的段，读到类型字节 0 即停止。
+ */
+public class BinaryLogReader implements Closeable {
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final long baseTimeMillis;
+
+    private String[] dictionary = new String[64];
+
+    private byte[] scratch = new byte[256];
+
+    public BinaryLogReader(Path file) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+            channel.close();
+            throw new IOException("not an access log segment: " + file);
+        }
+        byte version = buffer.get();
+        if (version != VERSION) {
+            channel.close();
+            throw new IOException("unsupported segment version " + version + ": " + file);
+        }
+        this.baseTimeMillis = buffer.getLong();
+        buffer.position(HEADER_SIZE);
+    }
+
+    public long getBaseTimeMillis() {
+        return baseTimeMillis;
+    }
+
+    /**
+     * @param filter 只解码 filter 接受的记录，其余按长度跳过，为 null 时全部解码
+     * @return 下一条记录，没有更多记录时返回 null
+     */
+    public HttpAccLog next(RecordFilter filter) {
+        while (buffer.hasRemaining()) {
+            byte type = buffer.get();
+            if (type == TYPE_END) {
+                buffer.position(buffer.position() - 1);
+                return null;
+            }
+            int length = (int) getVarLong(buffer);
+            int end = buffer.position() + length;
+            if (type == TYPE_DICT) {
+                readDictionary();
+            } else if (type == TYPE_RECORD) {
+                HttpAccLog httpAccLog = readRecord(filter, end);
+                if (httpAccLog != null) {
+                    buffer.position(end);
+                    return httpAccLog;
+                }
+            }
+            // 未知类型按长度跳过，便于以后扩展
+            buffer.position(end);
+        }
+        return null;
+    }
+
+    private RequestPhases readPhases() {
+        RequestPhases phases = new RequestPhases(0);
+        for (int phase = 0; phase < RequestPhases.COUNT; phase++) {
+            phases.set(phase, getVarLong(buffer) - 1);
+        }
+        phases.setFilterNanos(getVarLong(buffer));
+        return phases;
+    }
+
+    private void readDictionary() {
+        int id = (int) getVarLong(buffer);
+        if (id >= dictionary.length) {
+            dictionary = Arrays.copyOf(dictionary, Math.max(id + 1, dictionary.length * 2));
+        }
+        dictionary[id] = readString();
+    }
+
+    private HttpAccLog readRecord(RecordFilter filter, int end) {
+        int mask = (int) getVarLong(buffer);
+        long reqTime = (mask & F_REQ_TIME) != 0 ? baseTimeMillis + unzigzag(getVarLong(buffer)) : 0;
+        long rspTime = (mask & F_RSP_TIME) != 0 ? reqTime + unzigzag(getVarLong(buffer)) : 0;
+        long processTime = (mask & F_PROCESS_TIME) != 0 ? unzigzag(getVarLong(buffer)) : 0;
+        Integer statusCode = (mask & F_STATUS) != 0 ? (int) getVarLong(buffer) : null;
+        Long upstreamTime = (mask & F_UPSTREAM_TIME) != 0 ? unzigzag(getVarLong(buffer)) : null;
+        Long firstByteTime = (mask & F_FIRST_BYTE_TIME) != 0 ? unzigzag(getVarLong(buffer)) : null;
+        Long responseSize = (mask & F_RESPONSE_SIZE) != 0 ? getVarLong(buffer) : null;
+        Integer responseEvents = (mask & F_RESPONSE_EVENTS) != 0 ? (int) getVarLong(buffer) : null;
+        RequestPhases phases = (mask & F_PHASES) != 0 ? readPhases() : null;
+        String requestBodyHash = (mask & F_REQUEST_BODY_HASH) != 0 ? XxHash64.toHex(buffer.getLong()) : null;
+        String responseBodyHash = (mask & F_RESPONSE_BODY_HASH) != 0 ? XxHash64.toHex(buffer.getLong()) : null;
+        if (filter != null && !filter.accept(reqTime, statusCode)) {
+            return null;
+        }
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setReqTime(reqTime);
+        httpAccLog.setRspTime(rspTime);
+        httpAccLog.setProcessTime(processTime);
+        httpAccLog.setStatusCode(statusCode);
+        httpAccLog.setUpstreamTime(upstreamTime);
+        httpAccLog.setFirstByteTime(firstByteTime);
+        httpAccLog.setResponseSize(responseSize);
+        httpAccLog.setResponseEvents(responseEvents);
+        httpAccLog.setInProgress((mask & F_IN_PROGRESS) != 0 ? Boolean.TRUE : null);
+        httpAccLog.setPhases(phases);
+        httpAccLog.setRequestBodyHash(requestBodyHash);
+        httpAccLog.setResponseBodyHash(responseBodyHash);
+        httpAccLog.setMethod((mask & F_METHOD) != 0 ? readString() : null);
+        httpAccLog.setRoute((mask & F_ROUTE) != 0 ? readString() : null);
+        httpAccLog.setServerAddr((mask & F_SERVER_ADDR) != 0 ? readString() : null);
+        httpAccLog.setRemoteAddr((mask & F_REMOTE_ADDR) != 0 ? readString() : null);
+        httpAccLog.setPath((mask & F_PATH) != 0 ? readString() : null);
+        httpAccLog.setTraceId((mask & F_TRACE_ID) != 0 ? readString() : null);
+        httpAccLog.setPathVariables((mask & F_PATH_VARIABLES) != 0 ? readMap() : null);
+        httpAccLog.setQueryParams((mask & F_QUERY_PARAMS) != 0 ? readMap() : null);
+        httpAccLog.setFormData((mask & F_FORM_DATA) != 0 ? readMap() : null);
+        httpAccLog.setRequestBody((mask & F_REQUEST_BODY) != 0 ? readString() : null);
+        httpAccLog.setResponseBody((mask & F_RESPONSE_BODY) != 0 ? readString() : null);
+        if (buffer.position() > end) {
+            throw new IllegalStateException("corrupted record at " + buffer.position());
+        }
+        return httpAccLog;
+    }
+
+    private String readString() {
+        long header = getVarLong(buffer);
+        if ((header & 1) != 0) {
+            return dictionary[(int) (header >>> 1)];
+        }
+        int length = (int) (header >>> 1);
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private Map<String, Object> readMap() {
+        int size = (int) getVarLong(buffer);
+        Map<String, Object> map = new LinkedHashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            map.put(readString(), readString());
+        }
+        return map;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * 在解码字符串字段之前按时间和状态码过滤
+     */
+    public interface RecordFilter {
+
+        boolean accept(long reqTimeMillis, Integer statusCode);
+    }
+}
@@ -0,0 +1,296 @@
+package org.hypnos.webflux.binlog;
+
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.hypnos.webflux.vo.RequestPhases;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hypnos.webflux.binlog.BinaryLogFormat.*;
+
+/**
+ * 把 {@link HttpAccLog} 编码为二进制记录，字典在段内有效，换段时需要 {@link #reset()}。
+ * 编码时新增的字典条目要等记录真正写入段后 {@link #commit()}，写不下时 {@link #rollback()}。
+ * 只被写入线程使用，编码缓冲区复用，非线程安全。
+ */
+class BinaryRecordEncoder {
+
+    /**
+     * 单段最多的字典条目，超出后按内联字符串写入
+     */
+    private static final int MAX_DICTIONARY_SIZE = 4096;
+
+    /**
+     * 超过该长度的字符串不进字典
+     */
+    private static final int MAX_DICTIONARY_STRING_LENGTH = 256;
+
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private final List<String> pending = new ArrayList<>();
+
+    /**
+     * 本条记录新增的字典定义，写在记录之前
+     */
+    private ByteBuffer dictBuffer = ByteBuffer.allocate(1024);
+
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    private ByteBuffer entryBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    void reset() {
+        dictionary.clear();
+        pending.clear();
+    }
+
+    void commit() {
+        pending.clear();
+    }
+
+    void rollback() {
+        for (String value : pending) {
+            dictionary.remove(value);
+        }
+        pending.clear();
+    }
+
+    /**
+     * @param baseTimeMillis 段起始时间，时间戳相对它编码
+     * @return 字典定义加记录的完整字节，position 为 0，下次调用前有效
+     */
+    ByteBuffer encode(HttpAccLog httpAccLog, long baseTimeMillis) {
+        dictBuffer.clear();
+        recordBuffer.clear();
+        httpAccLog.render();
+
+        String traceId = httpAccLog.getTraceId();
+        String method = httpAccLog.getMethod();
+        String path = httpAccLog.getPath();
+        String route = httpAccLog.getRoute();
+        String requestBody = httpAccLog.getRequestBody();
+        String responseBody = httpAccLog.getResponseBody();
+        Map<String, Object> pathVariables = httpAccLog.getPathVariables();
+        Map<String, Object> queryParams = httpAccLog.getQueryParams();
+        Map<String, Object> formData = httpAccLog.getFormData();
+        String serverAddr = httpAccLog.getServerAddr();
+        String remoteAddr = httpAccLog.getRemoteAddr();
+        long reqTime = httpAccLog.getReqTimeMillis();
+        long rspTime = httpAccLog.getRspTimeMillis();
+        Integer statusCode = httpAccLog.getStatusCode();
+        Long upstreamTime = httpAccLog.getUpstreamTime();
+        Long firstByteTime = httpAccLog.getFirstByteTime();
+        Long responseSize = httpAccLog.getResponseSize();
+        Integer responseEvents = httpAccLog.getResponseEvents();
+        RequestPhases phases = httpAccLog.getPhases();
+        String requestBodyHash = httpAccLog.getRequestBodyHash();
+        String responseBodyHash = httpAccLog.getResponseBodyHash();
+
+        int mask = F_PROCESS_TIME;
+        mask |= reqTime != 0 ? F_REQ_TIME : 0;
+        mask |= rspTime != 0 ? F_RSP_TIME : 0;
+        mask |= statusCode != null ? F_STATUS : 0;
+        mask |= upstreamTime != null ? F_UPSTREAM_TIME : 0;
+        mask |= firstByteTime != null ? F_FIRST_BYTE_TIME : 0;
+        mask |= responseSize != null ? F_RESPONSE_SIZE : 0;
+        mask |= responseEvents != null ? F_RESPONSE_EVENTS : 0;
+        mask |= Boolean.TRUE.equals(httpAccLog.getInProgress()) ? F_IN_PROGRESS : 0;
+        mask |= phases != null ? F_PHASES : 0;
+        mask |= requestBodyHash != null ? F_REQUEST_BODY_HASH : 0;
+        mask |= responseBodyHash != null ? F_RESPONSE_BODY_HASH : 0;
+        mask |= traceId != null ? F_TRACE_ID : 0;
+        mask |= method != null ? F_METHOD : 0;
+        mask |= path != null ? F_PATH : 0;
+        mask |= route != null ? F_ROUTE : 0;
+        mask |= serverAddr != null ? F_SERVER_ADDR : 0;
+        mask |= remoteAddr != null ? F_REMOTE_ADDR : 0;
+        mask |= requestBody != null ? F_REQUEST_BODY : 0;
+        mask |= responseBody != null ? F_RESPONSE_BODY : 0;
+        mask |= pathVariables != null ? F_PATH_VARIABLES : 0;
+        mask |= queryParams != null ? F_QUERY_PARAMS : 0;
+        mask |= formData != null ? F_FORM_DATA : 0;
+
+        // 定长字段在前，读取端按时间和状态码过滤时不必解码后面的字符串
+        ensureRecord(5 + (8 + RequestPhases.COUNT + 1) * 10 + 16);
+        putVarLong(recordBuffer, mask);
+        if (reqTime != 0) {
+            putVarLong(recordBuffer, zigzag(reqTime - baseTimeMillis));
+        }
+        if (rspTime != 0) {
+            putVarLong(recordBuffer, zigzag(rspTime - reqTime));
+        }
+        putVarLong(recordBuffer, zigzag(httpAccLog.getProcessTime()));
+        if (statusCode != null) {
+            putVarLong(recordBuffer, statusCode);
+        }
+        if (upstreamTime != null) {
+            putVarLong(recordBuffer, zigzag(upstreamTime));
+        }
+        if (firstByteTime != null) {
+            putVarLong(recordBuffer, zigzag(firstByteTime));
+        }
+        if (responseSize != null) {
+            putVarLong(recordBuffer, responseSize);
+        }
+        if (responseEvents != null) {
+            putVarLong(recordBuffer, responseEvents);
+        }
+        if (phases != null) {
+            for (int phase = 0; phase < RequestPhases.COUNT; phase++) {
+                putVarLong(recordBuffer, phases.get(phase) + 1);
+            }
+            putVarLong(recordBuffer, phases.getFilterNanos());
+        }
+        if (requestBodyHash != null) {
+            recordBuffer.putLong(Long.parseUnsignedLong(requestBodyHash, 16));
+        }
+        if (responseBodyHash != null) {
+            recordBuffer.putLong(Long.parseUnsignedLong(responseBodyHash, 16));
+        }
+        putDictionaryString(method);
+        putDictionaryString(route);
+        putDictionaryString(serverAddr);
+        putDictionaryString(remoteAddr);
+        putString(path);
+        putString(traceId);
+        putMap(pathVariables);
+        putMap(queryParams);
+        putMap(formData);
+        putString(requestBody);
+        putString(responseBody);
+
+        dictBuffer.flip();
+        recordBuffer.flip();
+        int recordLength = recordBuffer.remaining();
+        int total = dictBuffer.remaining() + 1 + varLongSize(recordLength) + recordLength;
+        if (entryBuffer.capacity() < total) {
+            entryBuffer = ByteBuffer.allocate(Math.max(total, entryBuffer.capacity() * 2));
+        }
+        entryBuffer.clear();
+        entryBuffer.put(dictBuffer);
+        entryBuffer.put(TYPE_RECORD);
+        putVarLong(entryBuffer, recordLength);
+        entryBuffer.put(recordBuffer);
+        entryBuffer.flip();
+        return entryBuffer;
+    }
+
+    private void putDictionaryString(String value) {
+        if (value == null) {
+            return;
+        }
+        Integer id = dictionary.get(value);
+        if (id == null && dictionary.size() < MAX_DICTIONARY_SIZE && value.length() <= MAX_DICTIONARY_STRING_LENGTH) {
+            id = dictionary.size();
+            dictionary.put(value, id);
+            pending.add(value);
+            int length = utf8Length(value);
+            int payload = varLongSize(id) + varLongSize((long) length << 1) + length;
+            ensureDict(1 + varLongSize(payload) + payload);
+            dictBuffer.put(TYPE_DICT);
+            putVarLong(dictBuffer, payload);
+            putVarLong(dictBuffer, id);
+            putVarLong(dictBuffer, (long) length << 1);
+            putUtf8(dictBuffer, value);
+        }
+        if (id != null) {
+            ensureRecord(5);
+            putVarLong(recordBuffer, ((long) id << 1) | 1);
+        } else {
+            putString(value);
+        }
+    }
+
+    private void putString(String value) {
+        if (value == null) {
+            return;
+        }
+        int length = utf8Length(value);
+        ensureRecord(10 + length);
+        putVarLong(recordBuffer, (long) length << 1);
+        putUtf8(recordBuffer, value);
+    }
+
+    private void putMap(Map<String, Object> map) {
+        if (map == null) {
+            return;
+        }
+        ensureRecord(5);
+        putVarLong(recordBuffer, map.size());
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            putString(entry.getKey());
+            putString(entry.getValue() == null ? "" : entry.getValue().toString());
+        }
+    }
+
+    private void ensureRecord(int bytes) {
+        if (recordBuffer.remaining() < bytes) {
+            recordBuffer = grow(recordBuffer, bytes);
+        }
+    }
+
+    private void ensureDict(int bytes) {
+        if (dictBuffer.remaining() < bytes) {
+            dictBuffer = grow(dictBuffer, bytes);
+        }
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int bytes) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    static int utf8Length(String value) {
+        int length = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * 直接按字符写入 UTF-8，避免 getBytes 产生中间数组；不成对的代理字符写为 U+FFFD
+     */
+    static void putUtf8(ByteBuffer buffer, String value) {
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                // 与 utf8Length 保持一致占 3 字节
+                buffer.put((byte) 0xEF);
+                buffer.put((byte) 0xBF);
+                buffer.put((byte) 0xBD);
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package org.hypnos.webflux.binlog;
+
+import org.hypnos.webflux.sink.AccessLogWriter;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把访问日志以 {@link BinaryLogFormat} 追加到固定大小的内存映射段文件，段写满或超过滚动间隔后新建下一段。
+ * 段文件预分配到固定大小，未写入的部分为 0，读取端遇到类型字节 0 即认为到达末尾。
+ * 每条记录先写正文，最后写首字节，进程崩溃时读取端最多看到完整的前缀。
+ * 时间滚动只在写入时检查，空闲期间不会产生空段。
+ */
+public class MappedSegmentAccessLogWriter implements AccessLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedSegmentAccessLogWriter.class);
+
+    private final Path directory;
+
+    private final String filePrefix;
+
+    private final int segmentSize;
+
+    private final long rollIntervalMillis;
+
+    private final BinaryRecordEncoder encoder = new BinaryRecordEncoder();
+
+    private MappedByteBuffer segment;
+
+    private long segmentStartMillis;
+
+    private int sequence;
+
+    /**
+     * @param directory 段文件目录，不存在时自动创建
+     * @param filePrefix 段文件名前缀
+     * @param segmentSize 单段大小（字节），受 MappedByteBuffer 限制不能超过 2GB
+     * @param rollIntervalSeconds 滚动间隔（秒），小于等于 0 表示只按大小滚动
+     */
+    public MappedSegmentAccessLogWriter(Path directory, String filePrefix, int segmentSize, long rollIntervalSeconds)
+            throws IOException {
+        if (segmentSize < BinaryLogFormat.HEADER_SIZE * 2) {
+            throw new IllegalArgumentException("segmentSize too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.filePrefix = filePrefix;
+        this.segmentSize = segmentSize;
+        this.rollIntervalMillis = rollIntervalSeconds > 0 ? TimeUnit.SECONDS.toMillis(rollIntervalSeconds) : Long.MAX_VALUE;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void write(List<HttpAccLog> batch) throws IOException {
+        for (HttpAccLog httpAccLog : batch) {
+            long now = System.currentTimeMillis();
+            if (segment == null || now - segmentStartMillis >= rollIntervalMillis) {
+                roll(now);
+            }
+            ByteBuffer entry = encoder.encode(httpAccLog, segmentStartMillis);
+            if (entry.remaining() >= segment.remaining()) {
+                encoder.rollback();
+                roll(now);
+                entry = encoder.encode(httpAccLog, segmentStartMillis);
+                if (entry.remaining() >= segment.remaining()) {
+                    encoder.rollback();
+                    logger.warn("access log record of {} bytes exceeds segment size {}, dropped",
+                            entry.remaining(), segmentSize);
+                    continue;
+                }
+            }
+            append(entry);
+            encoder.commit();
+        }
+    }
+
+    /**
+     * 首字节最后写入，保证读取端不会读到写了一半的记录
+     */
+    private void append(ByteBuffer entry) {
+        int start = segment.position();
+        byte first = entry.get();
+        segment.position(start + 1);
+        segment.put(entry);
+        segment.put(start, first);
+    }
+
+    private void roll(long now) throws IOException {
+        if (segment != null) {
+            segment.force();
+        }
+        encoder.reset();
+        segmentStartMillis = now;
+        Path file = directory.resolve(String.format("%s-%d-%04d%s", filePrefix, now, sequence++,
+                BinaryLogFormat.FILE_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 映射建立后关闭 channel 不影响映射本身
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.putInt(BinaryLogFormat.MAGIC);
+        segment.put(BinaryLogFormat.VERSION);
+        segment.putLong(now);
+        segment.position(BinaryLogFormat.HEADER_SIZE);
+    }
+
+    @Override
+    public void flush() {
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+        segment = null;
+    }
+}
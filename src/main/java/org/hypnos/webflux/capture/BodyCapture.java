@@ -0,0 +1,341 @@
+package org.hypnos.webflux.capture;
+
+import org.hypnos.webflux.capture.redact.Redactor;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 请求/响应体的有界前缀副本，只复制前 limit 个字节，其余字节只计数。
+ * 字节存放在 {@link CaptureBufferPool} 借出的堆外缓冲区里，从最小级别开始按需扩容，
+ * 日志渲染完成后必须调用 {@link #release()} 归还。
+ * 配置了 {@link Redactor} 时，字节在写入缓冲区之前脱敏，缓冲区里不会留下敏感值的原文；
+ * 调用 {@link #deferRedaction()} 后改为由 {@link CaptureOffloadStage} 的工作线程在请求结束后原地脱敏。
+ * 请求结束时由过滤器 {@link #seal()}，之后交给其他线程读取或归还，迟到的分块不再写入。
+ */
+public class BodyCapture {
+
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<>();
+
+    private static final int OPEN = 0;
+
+    private static final int APPENDING = 1;
+
+    private static final int SEALED = 2;
+
+    private final CaptureBufferPool pool;
+
+    private final int limit;
+
+    private final Redactor redactor;
+
+    private CaptureBufferPool.PooledBuffer content;
+
+    private int captured;
+
+    private long totalBytes;
+
+    private boolean truncated;
+
+    private long captureNanos;
+
+    private boolean redactionDeferred;
+
+    /**
+     * OPEN 时可以写入，写入期间为 APPENDING；{@link #seal()} 等正在进行的写入结束后置为 SEALED。
+     * 响应先于请求体读完时（handler 提前响应、上游先返回），迟到的请求体分块仍会在 event loop 上到达，
+     * 而记录已交给工作线程或 sink 的消费线程，封存后的写入直接忽略，不再改动缓冲区和计数
+     */
+    private final AtomicInteger state = new AtomicInteger(OPEN);
+
+    /**
+     * @param limit 最多复制的字节数，超过缓冲池最大级别时按最大级别截断
+     */
+    public BodyCapture(CaptureBufferPool pool, int limit) {
+        this(pool, limit, null);
+    }
+
+    /**
+     * @param limit 最多复制的字节数，超过缓冲池最大级别时按最大级别截断
+     * @param redactor 脱敏器，null 表示不脱敏
+     */
+    public BodyCapture(CaptureBufferPool pool, int limit, Redactor redactor) {
+        this.pool = pool;
+        this.limit = Math.min(limit, pool.getMaxSize());
+        this.redactor = redactor;
+    }
+
+    /**
+     * 写入时不脱敏，之后由 {@link #redactDeferred()} 一次处理已捕获的全部字节，必须在第一次写入之前调用
+     */
+    public void deferRedaction() {
+        redactionDeferred = redactor != null;
+    }
+
+    /**
+     * 对延后脱敏的捕获原地脱敏，没有延后时不做任何事。
+     * 流式脱敏器对整个前缀调用一次与分块调用结果相同
+     */
+    public void redactDeferred() {
+        if (!redactionDeferred) {
+            return;
+        }
+        redactionDeferred = false;
+        if (captured == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        byte[] scratch = scratch(captured);
+        copyTo(scratch, 0);
+        redactor.redact(scratch, 0, captured);
+        ByteBuffer target = content.buffer();
+        target.position(0);
+        target.put(scratch, 0, captured);
+        target.clear();
+        captureNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * 复制 dataBuffer 中可读部分的前缀，不改变 dataBuffer 的读写位置
+     */
+    public void append(DataBuffer dataBuffer) {
+        if (!state.compareAndSet(OPEN, APPENDING)) {
+            return;
+        }
+        try {
+            appendOpen(dataBuffer);
+        } finally {
+            state.set(OPEN);
+        }
+    }
+
+    private void appendOpen(DataBuffer dataBuffer) {
+        int readable = dataBuffer.readableByteCount();
+        totalBytes += readable;
+        int toCopy = Math.min(limit - captured, readable);
+        if (toCopy <= 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        ensureCapacity(captured + toCopy);
+        ByteBuffer target = content.buffer();
+        target.position(captured);
+        if (redactor == null || redactionDeferred) {
+            target.put(dataBuffer.asByteBuffer(dataBuffer.readPosition(), toCopy));
+        } else {
+            // 先取到堆上的临时数组里脱敏再写入，逐字节访问堆外缓冲区要慢得多
+            byte[] scratch = scratch(toCopy);
+            dataBuffer.asByteBuffer(dataBuffer.readPosition(), toCopy).get(scratch, 0, toCopy);
+            redactor.redact(scratch, 0, toCopy);
+            target.put(scratch, 0, toCopy);
+        }
+        captured += toCopy;
+        captureNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * 复制字节数组的前缀，用于解压等中间阶段的输出
+     */
+    public void append(byte[] src, int offset, int length) {
+        if (!state.compareAndSet(OPEN, APPENDING)) {
+            return;
+        }
+        try {
+            appendOpen(src, offset, length);
+        } finally {
+            state.set(OPEN);
+        }
+    }
+
+    private void appendOpen(byte[] src, int offset, int length) {
+        totalBytes += length;
+        int toCopy = Math.min(limit - captured, length);
+        if (toCopy <= 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        ensureCapacity(captured + toCopy);
+        ByteBuffer target = content.buffer();
+        target.position(captured);
+        if (redactor == null || redactionDeferred) {
+            target.put(src, offset, toCopy);
+        } else {
+            byte[] scratch = scratch(toCopy);
+            System.arraycopy(src, offset, scratch, 0, toCopy);
+            redactor.redact(scratch, 0, toCopy);
+            target.put(scratch, 0, toCopy);
+        }
+        captured += toCopy;
+        captureNanos += System.nanoTime() - start;
+    }
+
+    /**
+     * 停止接收写入，等待其他线程上正在进行的写入完成后返回，可重复调用。
+     * 封存之后把捕获交给其他线程（提交到线程池、放入 sink 队列）即可安全发布，
+     * 对方读到的内容和计数不会再被迟到的分块改动
+     */
+    public void seal() {
+        while (!state.compareAndSet(OPEN, SEALED)) {
+            if (state.get() == SEALED) {
+                return;
+            }
+            // 写入只是一次有界的内存复制，很快结束
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 是否已封存，封存后的 append 不做任何事
+     */
+    public boolean isSealed() {
+        return state.get() == SEALED;
+    }
+
+    /**
+     * 还能复制的字节数
+     */
+    public int remaining() {
+        return limit - captured;
+    }
+
+    /**
+     * 上游提前停止输入时标记为已截断，例如解压达到上限后不再继续解压
+     */
+    public void markTruncated() {
+        this.truncated = true;
+    }
+
+    private void ensureCapacity(int required) {
+        if (content == null) {
+            content = pool.acquire(Math.max(required, pool.getInitialSize()));
+            return;
+        }
+        if (content.capacity() >= required) {
+            return;
+        }
+        CaptureBufferPool.PooledBuffer grown = pool.acquire(Math.max(required, content.capacity() << 1));
+        ByteBuffer source = content.buffer();
+        source.position(0);
+        source.limit(captured);
+        grown.buffer().put(source);
+        source.clear();
+        content.release();
+        content = grown;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * 已复制的字节数
+     */
+    public int getCaptured() {
+        return captured;
+    }
+
+    /**
+     * 流经的总字节数
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * 复制和脱敏字节累计花费的时间（纳秒），超出 limit 后只计数的部分不计时
+     */
+    public long getCaptureNanos() {
+        return captureNanos;
+    }
+
+    /**
+     * 是否有字节因超出 limit 未被复制
+     */
+    public boolean isTruncated() {
+        return truncated || totalBytes > captured;
+    }
+
+    /**
+     * 已捕获字节的只读视图，不复制
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        if (content == null) {
+            return ByteBuffer.allocate(0);
+        }
+        ByteBuffer view = content.buffer().duplicate();
+        view.position(0);
+        view.limit(captured);
+        return view.asReadOnlyBuffer();
+    }
+
+    /**
+     * 把已捕获的字节复制到 target，不创建视图对象
+     * @return 复制的字节数，即 {@link #getCaptured()}
+     */
+    public int copyTo(byte[] target, int offset) {
+        if (content == null || captured == 0) {
+            return 0;
+        }
+        ByteBuffer source = content.buffer();
+        source.position(0);
+        source.get(target, offset, captured);
+        source.clear();
+        return captured;
+    }
+
+    public InputStream asInputStream() {
+        ByteBuffer view = asReadOnlyBuffer();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, view.remaining());
+                view.get(b, off, n);
+                return n;
+            }
+        };
+    }
+
+    public String toString(Charset charset) {
+        if (captured == 0) {
+            return "";
+        }
+        byte[] scratch = scratch(captured);
+        copyTo(scratch, 0);
+        return new String(scratch, 0, captured, charset);
+    }
+
+    /**
+     * 线程内复用的临时数组，用完即还，不能跨调用持有
+     */
+    private byte[] scratch(int length) {
+        byte[] scratch = SCRATCH.get();
+        if (scratch == null || scratch.length < length) {
+            scratch = new byte[Math.max(length, pool.getMaxSize())];
+            SCRATCH.set(scratch);
+        }
+        return scratch;
+    }
+
+    /**
+     * 先封存再归还缓冲区，可重复调用
+     */
+    public void release() {
+        seal();
+        if (content != null) {
+            content.release();
+            content = null;
+            captured = 0;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.hypnos.webflux.capture;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 把捕获的字节渲染成日志字符串，只在日志真正输出时调用
+ */
+public final class BodyRenderer {
+
+    private BodyRenderer() {
+    }
+
+    public static String renderRequest(BodyCapture content) {
+        return content.getTotalBytes() > 0 ? content.toString(StandardCharsets.UTF_8) : null;
+    }
+
+    /**
+     * @param contentEncoding 捕获内容解压前的 Content-Encoding，未压缩时为 null
+     */
+    public static String renderResponse(BodyCapture content, String contentEncoding) {
+        if (!rendersResponseBytes(content, contentEncoding)) {
+            return "response entity exceeds the limit " + content.getLimit() + " bytes";
+        }
+        // 压缩响应已在分流时解压，截断时输出解压后的前缀
+        String responseResult;
+        try {
+            responseResult = content.toString(StandardCharsets.UTF_8);
+        } catch (Exception e) {
+            // 如果无法解码为 UTF-8，则返回二进制数据的提示
+            responseResult = "Binary or unsupported content type";
+        }
+        return responseResult;
+    }
+
+    /**
+     * 响应体是否按捕获的字节输出；未压缩的响应被截断时只输出超出上限的提示
+     */
+    public static boolean rendersResponseBytes(BodyCapture content, String contentEncoding) {
+        return !content.isTruncated() || (contentEncoding != null && content.getCaptured() > 0);
+    }
+}
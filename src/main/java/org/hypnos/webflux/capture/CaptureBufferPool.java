@@ -0,0 +1,205 @@
+package org.hypnos.webflux.capture;
+
+import org.hypnos.webflux.sink.MpscRingBuffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按大小分级的堆外捕获缓冲池。
+ * 每个级别的缓冲区从一整块 direct slab 上切出，空闲缓冲放在无锁有界队列里；
+ * 级别从 initialSize 开始按 2 倍递增，直到覆盖 maxSize。
+ */
+public class CaptureBufferPool {
+
+    private final int initialSize;
+
+    private final int maxSize;
+
+    private final int slabSize;
+
+    private final MpscRingBuffer<PooledBuffer>[] freeLists;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder outstanding = new LongAdder();
+
+    private final Map<PooledBuffer, Throwable> leakTraces = new ConcurrentHashMap<>();
+
+    private volatile boolean leakDetection;
+
+    @SuppressWarnings("unchecked")
+    public CaptureBufferPool(int initialSize, int maxSize, int slabSize, int maxPooledPerClass) {
+        if (initialSize <= 0 || maxSize < initialSize) {
+            throw new IllegalArgumentException("invalid size range [" + initialSize + ", " + maxSize + "]");
+        }
+        this.initialSize = initialSize;
+        this.maxSize = maxSize;
+        this.slabSize = slabSize;
+        int classes = sizeClass(maxSize) + 1;
+        this.freeLists = new MpscRingBuffer[classes];
+        for (int i = 0; i < classes; i++) {
+            freeLists[i] = new MpscRingBuffer<>(Math.max(2, maxPooledPerClass));
+        }
+    }
+
+    /**
+     * 获取容量不小于 minCapacity 的缓冲区，超过 maxSize 时按 maxSize 分配
+     */
+    public PooledBuffer acquire(int minCapacity) {
+        int sizeClass = sizeClass(Math.min(Math.max(minCapacity, 1), maxSize));
+        PooledBuffer buffer = freeLists[sizeClass].poll();
+        if (buffer != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            buffer = allocate(sizeClass);
+        }
+        buffer.released = false;
+        buffer.buffer.clear();
+        outstanding.increment();
+        if (leakDetection) {
+            leakTraces.put(buffer, new Throwable("capture buffer acquired here"));
+        }
+        return buffer;
+    }
+
+    void release(PooledBuffer buffer) {
+        if (buffer.released) {
+            throw new IllegalStateException("capture buffer released twice");
+        }
+        buffer.released = true;
+        outstanding.decrement();
+        if (leakDetection) {
+            leakTraces.remove(buffer);
+        }
+        // 空闲队列已满时直接丢弃，由 GC 连同 slab 一起回收
+        freeLists[buffer.sizeClass].offer(buffer);
+    }
+
+    /**
+     * 一次切出整块 slab，多余的切片放进空闲队列
+     */
+    private PooledBuffer allocate(int sizeClass) {
+        int size = classSize(sizeClass);
+        int count = Math.max(1, slabSize / size);
+        ByteBuffer slab = ByteBuffer.allocateDirect(size * count);
+        PooledBuffer first = null;
+        for (int i = 0; i < count; i++) {
+            slab.limit((i + 1) * size).position(i * size);
+            PooledBuffer buffer = new PooledBuffer(this, slab.slice(), sizeClass);
+            if (first == null) {
+                first = buffer;
+            } else {
+                buffer.released = true;
+                freeLists[sizeClass].offer(buffer);
+            }
+        }
+        return first;
+    }
+
+    private int sizeClass(int capacity) {
+        int sizeClass = 0;
+        while (classSize(sizeClass) < capacity) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    private int classSize(int sizeClass) {
+        return Math.min(initialSize << sizeClass, maxSize);
+    }
+
+    public int getInitialSize() {
+        return initialSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * 已借出尚未归还的缓冲区个数
+     */
+    public long getOutstanding() {
+        return outstanding.sum();
+    }
+
+    /**
+     * 打开后会记录每个借出缓冲区的分配栈，用于测试中定位泄漏，开销较大，不要在生产环境使用
+     */
+    public void setLeakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+        if (!leakDetection) {
+            leakTraces.clear();
+        }
+    }
+
+    /**
+     * 返回当前未归还缓冲区的分配栈，需要先打开泄漏检测
+     */
+    public List<Throwable> getLeakTraces() {
+        return new ArrayList<>(leakTraces.values());
+    }
+
+    /**
+     * 存在未归还的缓冲区时抛出 {@link IllegalStateException}，异常的 suppressed 中带有分配栈
+     */
+    public void assertNoLeaks() {
+        long count = getOutstanding();
+        if (count == 0) {
+            return;
+        }
+        IllegalStateException e = new IllegalStateException(count + " capture buffer(s) leaked");
+        for (Throwable trace : getLeakTraces()) {
+            e.addSuppressed(trace);
+        }
+        throw e;
+    }
+
+    /**
+     * 池化的堆外缓冲区，使用完必须调用 {@link #release()}
+     */
+    public static final class PooledBuffer {
+
+        private final CaptureBufferPool pool;
+
+        private final ByteBuffer buffer;
+
+        private final int sizeClass;
+
+        private volatile boolean released;
+
+        private PooledBuffer(CaptureBufferPool pool, ByteBuffer buffer, int sizeClass) {
+            this.pool = pool;
+            this.buffer = buffer;
+            this.sizeClass = sizeClass;
+        }
+
+        public ByteBuffer buffer() {
+            return buffer;
+        }
+
+        public int capacity() {
+            return buffer.capacity();
+        }
+
+        public void release() {
+            pool.release(this);
+        }
+    }
+}
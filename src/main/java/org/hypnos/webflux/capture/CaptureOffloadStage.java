@@ -0,0 +1,162 @@
+package org.hypnos.webflux.capture;
+
+import org.hypnos.webflux.capture.decode.ContentDecoder;
+import org.hypnos.webflux.metrics.LoggingFilterMetrics;
+import org.hypnos.webflux.sink.AccessLogSink;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 请求结束后的捕获处理阶段：压缩响应的解压和延后的脱敏不在 Netty event loop 上做，
+ * 连同已捕获的原始字节交给固定大小的工作线程池，处理完再交给 {@link AccessLogSink}。
+ * <p>
+ * 队列有界，写满时 {@link #submit} 立即返回 false，由调用方降级为只有元数据的记录，event loop 不会因此阻塞。
+ * 字符串渲染本来就在 sink 的消费线程上进行，这里不重复处理。
+ */
+public class CaptureOffloadStage {
+
+    private static final Logger logger = LoggerFactory.getLogger(CaptureOffloadStage.class);
+
+    private final AccessLogSink sink;
+
+    private final CaptureBufferPool pool;
+
+    private final LoggingFilterMetrics metrics;
+
+    private final ThreadPoolExecutor executor;
+
+    private final int queueCapacity;
+
+    private final LongAdder rejected = new LongAdder();
+
+    /**
+     * @param sink 处理完成的记录交给它，关闭时本阶段先于 sink 关闭
+     * @param threads 工作线程数，解压是纯 CPU 工作，不必超过核数
+     * @param queueCapacity 等待处理的记录数上限
+     */
+    public CaptureOffloadStage(AccessLogSink sink, CaptureBufferPool pool, int threads, int queueCapacity,
+                               LoggingFilterMetrics metrics) {
+        this.sink = sink;
+        this.pool = pool;
+        this.metrics = metrics;
+        this.queueCapacity = queueCapacity;
+        AtomicInteger index = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+            Thread thread = new Thread(runnable, "access-log-offload-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * 提交一条已完成尾部采样的记录，处理完成后交给 sink
+     * @return 队列已满或已关闭时返回 false，记录未被接收
+     */
+    public boolean submit(HttpAccLog httpAccLog) {
+        long enqueued = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long start = System.nanoTime();
+                try {
+                    process(httpAccLog);
+                } catch (RuntimeException e) {
+                    // 捕获内容有问题不应让整条记录丢失
+                    logger.warn("process captured body failed", e);
+                    httpAccLog.release();
+                }
+                metrics.recordOffload(start - enqueued, System.nanoTime() - start);
+                sink.accept(httpAccLog);
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return false;
+        }
+    }
+
+    private void process(HttpAccLog httpAccLog) {
+        BodyCapture requestCapture = httpAccLog.requestCapture();
+        if (requestCapture != null) {
+            requestCapture.redactDeferred();
+            metrics.recordCapture(true, requestCapture);
+        }
+        BodyCapture responseCapture = httpAccLog.responseCapture();
+        if (responseCapture == null) {
+            httpAccLog.releaseCompressedResponse();
+            return;
+        }
+        BodyCapture compressed = httpAccLog.compressedResponse();
+        if (compressed != null) {
+            decode(httpAccLog, compressed, responseCapture);
+        } else {
+            responseCapture.redactDeferred();
+        }
+        metrics.recordCapture(false, responseCapture);
+    }
+
+    /**
+     * 解压保留的压缩前缀。前缀被截断时解压器在末尾报错是预期的，已解出的部分仍然可用，只标记为截断
+     */
+    private void decode(HttpAccLog httpAccLog, BodyCapture compressed, BodyCapture output) {
+        long start = System.nanoTime();
+        String encoding = httpAccLog.responseEncoding();
+        ContentDecoder decoder = ContentDecoder.create(encoding, output, pool);
+        if (compressed.getCaptured() > 0) {
+            decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(compressed.asReadOnlyBuffer()));
+        }
+        decoder.finish();
+        boolean inputTruncated = compressed.isTruncated();
+        if (inputTruncated) {
+            output.markTruncated();
+        }
+        boolean failed = decoder.isFailed() && !inputTruncated;
+        httpAccLog.releaseCompressedResponse();
+        metrics.recordDecode(System.nanoTime() - start, failed);
+        if (failed) {
+            httpAccLog.setResponseBody("Failed to decode " + encoding + " response");
+        }
+    }
+
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * 队列已满被拒绝、降级为只有元数据的记录数
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * 停止接收新记录，等待已提交的记录处理完
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("capture offload stage did not finish in time, {} records pending", getQueueSize());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
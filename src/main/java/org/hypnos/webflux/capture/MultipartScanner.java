@@ -0,0 +1,427 @@
+package org.hypnos.webflux.capture;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * multipart/form-data 请求体的流式扫描器：数据流过时逐字节查找分隔符，记录每个 part 的字段名、文件名、
+ * Content-Type 和字节数，文本字段另外保留有界前缀。文件内容只计数不复制，原始 {@link DataBuffer} 照常交给 handler。
+ * <p>
+ * 分隔符按 KMP 匹配，跨 DataBuffer 的部分匹配保存在状态里；不在候选分隔符中时直接跳到下一个 \r。
+ * 每个请求占用的内存与上传大小无关：一行 part 头、一个文本前缀和最多 maxParts 条结果，超出的 part 只跳过。
+ * 只由请求体所在的线程调用，不需要同步。
+ */
+public class MultipartScanner {
+
+    /**
+     * 第一个分隔符之前的内容，忽略
+     */
+    private static final int PREAMBLE = 0;
+
+    /**
+     * 分隔符所在行的剩余部分，-- 表示结束
+     */
+    private static final int DELIMITER_LINE = 1;
+
+    private static final int HEADERS = 2;
+
+    private static final int BODY = 3;
+
+    /**
+     * 结束分隔符之后的内容，忽略
+     */
+    private static final int EPILOGUE = 4;
+
+    /**
+     * RFC 2046 规定 boundary 最长 70 个字符
+     */
+    private static final int MAX_BOUNDARY_LENGTH = 70;
+
+    private static final int SCRATCH_SIZE = 8192;
+
+    private static final ThreadLocal<byte[]> SCRATCH = new ThreadLocal<>();
+
+    private static final byte MASK = '*';
+
+    /**
+     * \r\n--boundary
+     */
+    private final byte[] delimiter;
+
+    /**
+     * KMP 失配表，failure[i] 为 delimiter[0..i] 最长的相同真前缀和后缀的长度
+     */
+    private final int[] failure;
+
+    private final int maxParts;
+
+    private final int textLimit;
+
+    private final Predicate<String> redactedField;
+
+    private final byte[] line;
+
+    private int lineLength;
+
+    private int state = PREAMBLE;
+
+    /**
+     * 第一个分隔符前面可以没有 \r\n，按已匹配 \r\n 开始
+     */
+    private int matched = 2;
+
+    private int dashes;
+
+    private int parts;
+
+    private boolean recording;
+
+    private String name;
+
+    private String filename;
+
+    private String contentType;
+
+    private long partSize;
+
+    private byte[] text;
+
+    private int textLength;
+
+    private boolean capturingText;
+
+    private Map<String, Object> formData;
+
+    private long scanNanos;
+
+    /**
+     * @param boundary Content-Type 中的 boundary 参数，见 {@link #boundary(String)}
+     * @param maxParts 最多记录的 part 数
+     * @param textLimit 每个文本字段保留的字节数上限
+     * @param maxHeaderBytes 单行 part 头保留的字节数上限，超出部分忽略
+     * @param redactedField 字段名需要脱敏时返回 true，文本前缀按字节遮盖
+     */
+    public MultipartScanner(String boundary, int maxParts, int textLimit, int maxHeaderBytes,
+                            Predicate<String> redactedField) {
+        byte[] boundaryBytes = boundary.getBytes(StandardCharsets.ISO_8859_1);
+        this.delimiter = new byte[boundaryBytes.length + 4];
+        delimiter[0] = '\r';
+        delimiter[1] = '\n';
+        delimiter[2] = '-';
+        delimiter[3] = '-';
+        System.arraycopy(boundaryBytes, 0, delimiter, 4, boundaryBytes.length);
+        this.failure = failureTable(delimiter);
+        this.maxParts = maxParts;
+        this.textLimit = Math.max(0, textLimit);
+        this.redactedField = redactedField;
+        this.line = new byte[maxHeaderBytes];
+    }
+
+    /**
+     * @param contentType 请求头中的原始 Content-Type，可能为 null
+     * @return multipart/form-data 的 boundary，不是 multipart/form-data 或 boundary 不合法时返回 null
+     */
+    public static String boundary(String contentType) {
+        if (contentType == null || !contentType.regionMatches(true, 0, "multipart/form-data", 0, 19)) {
+            return null;
+        }
+        String boundary;
+        try {
+            boundary = MediaType.parseMediaType(contentType).getParameter("boundary");
+        } catch (InvalidMediaTypeException e) {
+            return null;
+        }
+        if (boundary != null && boundary.length() > 1 && boundary.charAt(0) == '"'
+                && boundary.charAt(boundary.length() - 1) == '"') {
+            boundary = boundary.substring(1, boundary.length() - 1);
+        }
+        if (boundary == null || boundary.isEmpty() || boundary.length() > MAX_BOUNDARY_LENGTH) {
+            return null;
+        }
+        return boundary;
+    }
+
+    private static int[] failureTable(byte[] pattern) {
+        int[] failure = new int[pattern.length];
+        int k = 0;
+        for (int i = 1; i < pattern.length; i++) {
+            while (k > 0 && pattern[i] != pattern[k]) {
+                k = failure[k - 1];
+            }
+            if (pattern[i] == pattern[k]) {
+                k++;
+            }
+            failure[i] = k;
+        }
+        return failure;
+    }
+
+    /**
+     * 扫描 dataBuffer 中的可读部分，不改变 dataBuffer 的读写位置
+     */
+    public void scan(DataBuffer dataBuffer) {
+        if (state == EPILOGUE) {
+            return;
+        }
+        long start = System.nanoTime();
+        ByteBuffer source = dataBuffer.asByteBuffer(dataBuffer.readPosition(), dataBuffer.readableByteCount());
+        // 分块取到堆上的临时数组里扫描，逐字节访问堆外缓冲区要慢得多
+        byte[] scratch = SCRATCH.get();
+        if (scratch == null) {
+            scratch = new byte[SCRATCH_SIZE];
+            SCRATCH.set(scratch);
+        }
+        while (source.hasRemaining() && state != EPILOGUE) {
+            int length = Math.min(source.remaining(), scratch.length);
+            source.get(scratch, 0, length);
+            scan(scratch, length);
+        }
+        scanNanos += System.nanoTime() - start;
+    }
+
+    private void scan(byte[] bytes, int to) {
+        int i = 0;
+        while (i < to) {
+            switch (state) {
+                case DELIMITER_LINE:
+                    i = scanDelimiterLine(bytes, i, to);
+                    break;
+                case HEADERS:
+                    i = scanHeaders(bytes, i, to);
+                    break;
+                case EPILOGUE:
+                    return;
+                default:
+                    i = scanBody(bytes, i, to);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 查找下一个分隔符，BODY 状态下分隔符之前的字节计入当前 part
+     * @return 下一个未处理字节的位置
+     */
+    private int scanBody(byte[] bytes, int from, int to) {
+        boolean inPart = state == BODY;
+        byte[] delimiter = this.delimiter;
+        int matched = this.matched;
+        int i = from;
+        while (i < to) {
+            if (matched == 0) {
+                int start = i;
+                while (i < to && bytes[i] != '\r') {
+                    i++;
+                }
+                if (inPart && i > start) {
+                    emit(bytes, start, i - start);
+                }
+                if (i == to) {
+                    break;
+                }
+            }
+            byte b = bytes[i++];
+            while (matched > 0 && delimiter[matched] != b) {
+                // 失配时移出的字节就是分隔符的前缀，属于 part 内容
+                int next = failure[matched - 1];
+                if (inPart) {
+                    emit(delimiter, 0, matched - next);
+                }
+                matched = next;
+            }
+            if (delimiter[matched] != b) {
+                if (inPart) {
+                    emit(bytes, i - 1, 1);
+                }
+            } else if (++matched == delimiter.length) {
+                this.matched = 0;
+                if (inPart) {
+                    finishPart();
+                }
+                state = DELIMITER_LINE;
+                dashes = 0;
+                return i;
+            }
+        }
+        this.matched = matched;
+        return i;
+    }
+
+    /**
+     * 分隔符后紧跟 -- 表示结束，否则跳过行尾的空白直到换行
+     */
+    private int scanDelimiterLine(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '\n') {
+                startPart();
+                state = HEADERS;
+                return i + 1;
+            }
+            if (b == '-' && ++dashes == 2) {
+                state = EPILOGUE;
+                return to;
+            }
+        }
+        return to;
+    }
+
+    private int scanHeaders(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b != '\n') {
+                if (lineLength < line.length) {
+                    line[lineLength++] = b;
+                }
+                continue;
+            }
+            int length = lineLength > 0 && line[lineLength - 1] == '\r' ? lineLength - 1 : lineLength;
+            lineLength = 0;
+            if (length == 0) {
+                startBody();
+                return i + 1;
+            }
+            if (recording) {
+                parseHeader(length);
+            }
+        }
+        return to;
+    }
+
+    private void parseHeader(int length) {
+        String header = new String(line, 0, length, StandardCharsets.UTF_8);
+        int colon = header.indexOf(':');
+        if (colon <= 0) {
+            return;
+        }
+        String headerName = header.substring(0, colon).trim();
+        String value = header.substring(colon + 1).trim();
+        if ("Content-Disposition".equalsIgnoreCase(headerName)) {
+            try {
+                ContentDisposition disposition = ContentDisposition.parse(value);
+                name = disposition.getName();
+                filename = disposition.getFilename();
+            } catch (IllegalArgumentException e) {
+                // 格式不对的头部按没有处理，part 仍然计数
+            }
+        } else if ("Content-Type".equalsIgnoreCase(headerName)) {
+            contentType = value;
+        }
+    }
+
+    private void startPart() {
+        parts++;
+        recording = parts <= maxParts;
+        name = null;
+        filename = null;
+        contentType = null;
+        partSize = 0;
+        textLength = 0;
+        capturingText = false;
+    }
+
+    private void startBody() {
+        state = BODY;
+        matched = 0;
+        capturingText = recording && filename == null && textLimit > 0;
+        if (capturingText && text == null) {
+            text = new byte[textLimit];
+        }
+    }
+
+    private void emit(byte[] bytes, int offset, int length) {
+        partSize += length;
+        if (capturingText && textLength < textLimit) {
+            int toCopy = Math.min(length, textLimit - textLength);
+            System.arraycopy(bytes, offset, text, textLength, toCopy);
+            textLength += toCopy;
+        }
+    }
+
+    private void finishPart() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        Object value;
+        if (filename == null) {
+            if (name != null && redactedField.test(name)) {
+                Arrays.fill(text, 0, textLength, MASK);
+            }
+            String prefix = textLength == 0 ? "" : new String(text, 0, textLength, StandardCharsets.UTF_8);
+            value = partSize > textLength ? prefix + "..." : prefix;
+        } else {
+            Map<String, Object> file = new LinkedHashMap<>(6);
+            file.put("filename", filename);
+            if (contentType != null) {
+                file.put("contentType", contentType);
+            }
+            file.put("size", partSize);
+            value = file;
+        }
+        put(name == null ? "part" + parts : name, value);
+    }
+
+    /**
+     * 同名字段合并为列表，如多文件上传；单个值不会是列表
+     */
+    @SuppressWarnings("unchecked")
+    private void put(String key, Object value) {
+        if (formData == null) {
+            formData = new LinkedHashMap<>();
+        }
+        Object existing = formData.get(key);
+        if (existing == null) {
+            formData.put(key, value);
+        } else if (existing instanceof List) {
+            ((List<Object>) existing).add(value);
+        } else {
+            List<Object> values = new ArrayList<>(4);
+            values.add(existing);
+            values.add(value);
+            formData.put(key, values);
+        }
+    }
+
+    /**
+     * 请求结束时调用，请求体没有读完时正在读取的 part 按已读到的字节数记录
+     * @return 字段名到值的映射：文本字段为前缀字符串，截断时以 ... 结尾；文件为 filename、contentType、size；
+     * 同名字段为列表。没有任何 part 时返回 null
+     */
+    public Map<String, Object> finish() {
+        if (state == BODY || state == HEADERS) {
+            if (state == BODY) {
+                // 已部分匹配的分隔符前缀在请求体中途结束时也是内容
+                partSize += matched;
+            }
+            finishPart();
+        }
+        state = EPILOGUE;
+        return formData;
+    }
+
+    /**
+     * 请求体中的 part 数，包括超出 maxParts 未记录的
+     */
+    public int getParts() {
+        return parts;
+    }
+
+    /**
+     * 扫描累计花费的时间（纳秒）
+     */
+    public long getScanNanos() {
+        return scanNanos;
+    }
+}
@@ -0,0 +1,67 @@
+package org.hypnos.webflux.capture.decode;
+
+import org.brotli.dec.BrotliInputStream;
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.IOException;
+
+/**
+ * brotli 解压，使用纯 Java 的 org.brotli:dec，无需 native 库。
+ * 该解码器只提供拉取式的 InputStream 接口，无法逐块推送，
+ * 因此流经时只保留有界的压缩前缀，在 {@link #finish()} 时解压到捕获上限为止。
+ * 该解码器要求一个数据块完整可读才会输出，压缩体超过前缀预算时往往解不出内容，此时只标记为截断。
+ */
+class BrotliContentDecoder implements ContentDecoder {
+
+    private final BodyCapture output;
+
+    private BodyCapture compressed;
+
+    private boolean failed;
+
+    BrotliContentDecoder(BodyCapture output, CaptureBufferPool pool) {
+        this.output = output;
+        this.compressed = new BodyCapture(pool, output.getLimit() * COMPRESSED_BUDGET_FACTOR);
+    }
+
+    @Override
+    public void decode(DataBuffer dataBuffer) {
+        if (compressed != null) {
+            compressed.append(dataBuffer);
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (compressed == null) {
+            return;
+        }
+        byte[] out = new byte[Math.min(8192, output.remaining() + 1)];
+        try (BrotliInputStream in = new BrotliInputStream(compressed.asInputStream())) {
+            int n;
+            while (output.remaining() > 0 && (n = in.read(out, 0, Math.min(out.length, output.remaining()))) > 0) {
+                output.append(out, 0, n);
+            }
+            if (output.remaining() == 0 && in.read() >= 0) {
+                output.markTruncated();
+            }
+        } catch (IOException e) {
+            // 压缩前缀被截断时解码器会在末尾报错，已解出的部分仍然可用
+            if (compressed.isTruncated()) {
+                output.markTruncated();
+            } else {
+                failed = true;
+            }
+        } finally {
+            compressed.release();
+            compressed = null;
+        }
+    }
+
+    @Override
+    public boolean isFailed() {
+        return failed;
+    }
+}
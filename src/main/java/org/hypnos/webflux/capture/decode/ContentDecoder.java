@@ -0,0 +1,57 @@
+package org.hypnos.webflux.capture.decode;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.springframework.core.io.buffer.DataBuffer;
+
+/**
+ * 响应体分流阶段的增量解压器，压缩数据边流过边解压到 {@link BodyCapture}，
+ * 解压结果达到捕获上限后立即停止并释放解压器状态，不影响原始数据的传输。
+ */
+public interface ContentDecoder {
+
+    /**
+     * 需要先保留压缩前缀再解压时（brotli、延后到工作线程解压），压缩前缀相对于解压上限的倍数
+     */
+    int COMPRESSED_BUDGET_FACTOR = 4;
+
+    /**
+     * 解压一个数据块，不改变 dataBuffer 的读写位置
+     */
+    void decode(DataBuffer dataBuffer);
+
+    /**
+     * 数据流结束（正常结束、出错或取消），释放解压器持有的资源，可重复调用
+     */
+    void finish();
+
+    /**
+     * 数据格式错误导致解压失败
+     */
+    boolean isFailed();
+
+    /**
+     * 是否支持该 Content-Encoding，与 {@link #create} 返回非 null 一致
+     */
+    static boolean supports(String contentEncoding) {
+        return "gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)
+                || "deflate".equalsIgnoreCase(contentEncoding) || "br".equalsIgnoreCase(contentEncoding);
+    }
+
+    /**
+     * 按 Content-Encoding 创建解压器
+     * @return 不支持的编码返回 null
+     */
+    static ContentDecoder create(String contentEncoding, BodyCapture output, CaptureBufferPool pool) {
+        if ("gzip".equalsIgnoreCase(contentEncoding) || "x-gzip".equalsIgnoreCase(contentEncoding)) {
+            return new InflatingContentDecoder(output, true);
+        }
+        if ("deflate".equalsIgnoreCase(contentEncoding)) {
+            return new InflatingContentDecoder(output, false);
+        }
+        if ("br".equalsIgnoreCase(contentEncoding)) {
+            return new BrotliContentDecoder(output, pool);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,222 @@
+package org.hypnos.webflux.capture.decode;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * gzip / deflate 增量解压。
+ * gzip 头部按状态机逐字节解析，之后交给 nowrap 模式的 {@link Inflater}；
+ * deflate 按首字节判断是 zlib 包装还是裸 deflate 流（两种都有服务端在用）。
+ */
+class InflatingContentDecoder implements ContentDecoder {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private static final ThreadLocal<byte[][]> SCRATCH = ThreadLocal.withInitial(
+            () -> new byte[][]{new byte[CHUNK_SIZE], new byte[CHUNK_SIZE]});
+
+    private static final int FHCRC = 0x02;
+
+    private static final int FEXTRA = 0x04;
+
+    private static final int FNAME = 0x08;
+
+    private static final int FCOMMENT = 0x10;
+
+    private static final int HEADER_FIXED = 0;
+
+    private static final int HEADER_EXTRA_LEN = 1;
+
+    private static final int HEADER_EXTRA = 2;
+
+    private static final int HEADER_NAME = 3;
+
+    private static final int HEADER_COMMENT = 4;
+
+    private static final int HEADER_HCRC = 5;
+
+    private static final int HEADER_DONE = 6;
+
+    private final BodyCapture output;
+
+    private final boolean gzip;
+
+    private Inflater inflater;
+
+    private int headerState;
+
+    private int headerPos;
+
+    private int headerFlags;
+
+    private int extraRemaining;
+
+    private boolean done;
+
+    private boolean failed;
+
+    InflatingContentDecoder(BodyCapture output, boolean gzip) {
+        this.output = output;
+        this.gzip = gzip;
+        this.headerState = gzip ? HEADER_FIXED : HEADER_DONE;
+    }
+
+    @Override
+    public void decode(DataBuffer dataBuffer) {
+        if (done) {
+            return;
+        }
+        byte[][] scratch = SCRATCH.get();
+        byte[] in = scratch[0];
+        int position = dataBuffer.readPosition();
+        int remaining = dataBuffer.readableByteCount();
+        while (remaining > 0 && !done) {
+            int n = Math.min(remaining, in.length);
+            dataBuffer.asByteBuffer(position, n).get(in, 0, n);
+            feed(in, n, scratch[1]);
+            position += n;
+            remaining -= n;
+        }
+    }
+
+    private void feed(byte[] in, int length, byte[] out) {
+        int offset = 0;
+        if (headerState != HEADER_DONE) {
+            offset = consumeGzipHeader(in, length);
+            if (done || offset == length) {
+                return;
+            }
+        }
+        if (inflater == null) {
+            inflater = new Inflater(gzip || !isZlibHeader(in[offset]));
+        }
+        inflater.setInput(in, offset, length - offset);
+        try {
+            while (!inflater.finished() && !inflater.needsInput()) {
+                if (output.remaining() == 0) {
+                    // 解压结果已达上限，剩余数据不再解压
+                    output.markTruncated();
+                    finish();
+                    return;
+                }
+                int produced = inflater.inflate(out, 0, Math.min(out.length, output.remaining()));
+                if (produced == 0 && (inflater.needsDictionary() || inflater.getRemaining() == 0)) {
+                    break;
+                }
+                output.append(out, 0, produced);
+            }
+            if (inflater.needsDictionary()) {
+                fail();
+            } else if (inflater.finished()) {
+                finish();
+            }
+        } catch (DataFormatException e) {
+            fail();
+        }
+    }
+
+    /**
+     * RFC 1950：CMF 低 4 位为 8（deflate），高 4 位窗口大小不超过 7
+     */
+    private static boolean isZlibHeader(byte cmf) {
+        return (cmf & 0x0F) == 8 && ((cmf & 0xFF) >>> 4) <= 7;
+    }
+
+    /**
+     * 解析 gzip 头部（RFC 1952），数据块可能在任意位置切开
+     * @return 消耗的字节数
+     */
+    private int consumeGzipHeader(byte[] in, int length) {
+        int i = 0;
+        while (i < length && headerState != HEADER_DONE) {
+            int b = in[i++] & 0xFF;
+            switch (headerState) {
+                case HEADER_FIXED:
+                    if ((headerPos == 0 && b != 0x1F) || (headerPos == 1 && b != 0x8B) || (headerPos == 2 && b != 8)) {
+                        fail();
+                        return length;
+                    }
+                    if (headerPos == 3) {
+                        headerFlags = b;
+                    }
+                    if (++headerPos == 10) {
+                        nextHeaderState(FEXTRA);
+                    }
+                    break;
+                case HEADER_EXTRA_LEN:
+                    extraRemaining |= b << (8 * headerPos);
+                    if (++headerPos == 2) {
+                        if (extraRemaining > 0) {
+                            headerState = HEADER_EXTRA;
+                        } else {
+                            nextHeaderState(FNAME);
+                        }
+                    }
+                    break;
+                case HEADER_EXTRA:
+                    if (--extraRemaining == 0) {
+                        nextHeaderState(FNAME);
+                    }
+                    break;
+                case HEADER_NAME:
+                    if (b == 0) {
+                        nextHeaderState(FCOMMENT);
+                    }
+                    break;
+                case HEADER_COMMENT:
+                    if (b == 0) {
+                        nextHeaderState(FHCRC);
+                    }
+                    break;
+                case HEADER_HCRC:
+                    if (++headerPos == 2) {
+                        headerState = HEADER_DONE;
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return i;
+    }
+
+    /**
+     * 按 FEXTRA、FNAME、FCOMMENT、FHCRC 的顺序跳到下一个存在的可选字段
+     */
+    private void nextHeaderState(int fromFlag) {
+        headerPos = 0;
+        if (fromFlag == FEXTRA && (headerFlags & FEXTRA) != 0) {
+            headerState = HEADER_EXTRA_LEN;
+        } else if (fromFlag != FCOMMENT && fromFlag != FHCRC && (headerFlags & FNAME) != 0) {
+            headerState = HEADER_NAME;
+        } else if (fromFlag != FHCRC && (headerFlags & FCOMMENT) != 0) {
+            headerState = HEADER_COMMENT;
+        } else if ((headerFlags & FHCRC) != 0) {
+            headerState = HEADER_HCRC;
+        } else {
+            headerState = HEADER_DONE;
+        }
+    }
+
+    private void fail() {
+        failed = true;
+        finish();
+    }
+
+    @Override
+    public void finish() {
+        done = true;
+        if (inflater != null) {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    @Override
+    public boolean isFailed() {
+        return failed;
+    }
+}
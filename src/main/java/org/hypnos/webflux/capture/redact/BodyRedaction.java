@@ -0,0 +1,177 @@
+package org.hypnos.webflux.capture.redact;
+
+import org.hypnos.webflux.policy.ContentTypeMatcher;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 编译后的脱敏规则，不可变，按 Content-Type 为每个捕获体创建 {@link Redactor}。
+ * 字段名在任意层级匹配；JSON 路径形如 user.card.number，从根对象开始逐级匹配，数组对路径透明。
+ * 两者都按 ASCII 忽略大小写比较；带转义或百分号编码的字段名不做还原，按原始字节比较。
+ */
+public class BodyRedaction {
+
+    /**
+     * 不脱敏
+     */
+    public static final BodyRedaction NONE = new BodyRedaction(Collections.emptyList(), Collections.emptyList(), 0);
+
+    static final byte MASK = '*';
+
+    private final byte[][] fields;
+
+    private final PathNode paths;
+
+    private final int maxKeyLength;
+
+    private final ContentTypeMatcher jsonTypes;
+
+    private final ContentTypeMatcher formTypes;
+
+    /**
+     * @param fields 任意层级都遮盖的字段名
+     * @param jsonPaths 从根对象开始的点分路径，只对 JSON 生效
+     * @param contentTypeCacheSize Content-Type 判断缓存的上限
+     */
+    public BodyRedaction(List<String> fields, List<String> jsonPaths, int contentTypeCacheSize) {
+        this.fields = new byte[fields.size()][];
+        int maxLength = 0;
+        for (int i = 0; i < this.fields.length; i++) {
+            this.fields[i] = lowerCaseBytes(fields.get(i));
+            maxLength = Math.max(maxLength, this.fields[i].length);
+        }
+        PathNode root = null;
+        for (String path : jsonPaths) {
+            if (root == null) {
+                root = new PathNode(null);
+            }
+            PathNode node = root;
+            for (String segment : path.split("\\.")) {
+                if (segment.isEmpty() || "$".equals(segment)) {
+                    continue;
+                }
+                byte[] bytes = lowerCaseBytes(segment);
+                maxLength = Math.max(maxLength, bytes.length);
+                node = node.child(bytes);
+            }
+            if (node == root) {
+                throw new IllegalArgumentException("empty redaction path: " + path);
+            }
+            node.terminal = true;
+        }
+        this.paths = root;
+        this.maxKeyLength = maxLength;
+        this.jsonTypes = new ContentTypeMatcher(Arrays.asList("application/json", "application/*+json"),
+                false, contentTypeCacheSize);
+        this.formTypes = new ContentTypeMatcher(Collections.singletonList("application/x-www-form-urlencoded"),
+                false, contentTypeCacheSize);
+    }
+
+    private static byte[] lowerCaseBytes(String value) {
+        return value.trim().toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param contentType 原始 Content-Type，可能为 null
+     * @return 没有规则或不是 JSON / 表单时返回 null
+     */
+    public Redactor create(String contentType) {
+        if (maxKeyLength == 0 || contentType == null) {
+            return null;
+        }
+        if (jsonTypes.matches(contentType)) {
+            return new JsonRedactor(this);
+        }
+        if (fields.length > 0 && formTypes.matches(contentType)) {
+            return new FormRedactor(this);
+        }
+        return null;
+    }
+
+    /**
+     * 字段名是否需要遮盖，用于 multipart 等按字段单独记录的场景
+     */
+    public boolean matchesField(String name) {
+        if (name == null || fields.length == 0) {
+            return false;
+        }
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        return matchesField(key, key.length);
+    }
+
+    int getMaxKeyLength() {
+        return maxKeyLength;
+    }
+
+    PathNode getPaths() {
+        return paths;
+    }
+
+    boolean matchesField(byte[] key, int length) {
+        for (byte[] field : fields) {
+            if (equalsIgnoreCase(field, key, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean equalsIgnoreCase(byte[] lowerCase, byte[] key, int length) {
+        if (lowerCase.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            byte b = key[i];
+            if (b >= 'A' && b <= 'Z') {
+                b += 'a' - 'A';
+            }
+            if (lowerCase[i] != b) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * JSON 路径前缀树的节点，子节点很少，线性比较
+     */
+    static final class PathNode {
+
+        private static final PathNode[] NO_CHILDREN = new PathNode[0];
+
+        private final byte[] segment;
+
+        private PathNode[] children = NO_CHILDREN;
+
+        boolean terminal;
+
+        private PathNode(byte[] segment) {
+            this.segment = segment;
+        }
+
+        private PathNode child(byte[] segment) {
+            for (PathNode child : children) {
+                if (Arrays.equals(child.segment, segment)) {
+                    return child;
+                }
+            }
+            PathNode child = new PathNode(segment);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            return child;
+        }
+
+        PathNode find(byte[] key, int length) {
+            for (PathNode child : children) {
+                if (equalsIgnoreCase(child.segment, key, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+    }
+}
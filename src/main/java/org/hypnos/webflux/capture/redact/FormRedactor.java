@@ -0,0 +1,58 @@
+package org.hypnos.webflux.capture.redact;
+
+/**
+ * application/x-www-form-urlencoded 脱敏：遇到 = 时比较字段名，命中则遮盖到下一个 & 为止
+ */
+class FormRedactor implements Redactor {
+
+    private final BodyRedaction rules;
+
+    private final byte[] key;
+
+    private int keyLength;
+
+    private boolean keyOverflow;
+
+    private boolean inValue;
+
+    private boolean masking;
+
+    FormRedactor(BodyRedaction rules) {
+        this.rules = rules;
+        this.key = new byte[rules.getMaxKeyLength()];
+    }
+
+    @Override
+    public void redact(byte[] bytes, int from, int to) {
+        // 状态放在局部变量里，循环内不读写字段
+        boolean inValue = this.inValue;
+        boolean masking = this.masking;
+        int keyLength = this.keyLength;
+        boolean keyOverflow = this.keyOverflow;
+        byte[] key = this.key;
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            if (b == '&') {
+                inValue = false;
+                masking = false;
+                keyLength = 0;
+                keyOverflow = false;
+            } else if (inValue) {
+                if (masking) {
+                    bytes[i] = BodyRedaction.MASK;
+                }
+            } else if (b == '=') {
+                inValue = true;
+                masking = !keyOverflow && rules.matchesField(key, keyLength);
+            } else if (keyLength < key.length) {
+                key[keyLength++] = b;
+            } else {
+                keyOverflow = true;
+            }
+        }
+        this.inValue = inValue;
+        this.masking = masking;
+        this.keyLength = keyLength;
+        this.keyOverflow = keyOverflow;
+    }
+}
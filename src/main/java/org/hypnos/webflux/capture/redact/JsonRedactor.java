@@ -0,0 +1,260 @@
+package org.hypnos.webflux.capture.redact;
+
+/**
+ * JSON 流式脱敏：逐字节的分词状态机，只跟踪容器层级、当前字段名和路径位置，不构建 DOM，不生成字符串。
+ * 命中的值如果是字符串，遮盖引号内的内容；如果是数字或字面量，整体遮盖；如果是对象或数组，遮盖其中所有标量，保留结构字符。
+ * 结构字符都是 ASCII，按字节扫描不受 UTF-8 多字节字符影响。格式错误的输入不会抛异常，只是可能遮盖不完整。
+ */
+class JsonRedactor implements Redactor {
+
+    /**
+     * 跟踪容器类型和路径的最大层级，更深的层级按对象处理、不匹配路径，字段名仍然匹配
+     */
+    private static final int MAX_DEPTH = 64;
+
+    private static final int VALUE = 0;
+
+    private static final int KEY = 1;
+
+    private static final int KEY_ESCAPE = 2;
+
+    private static final int STRING = 3;
+
+    private static final int STRING_ESCAPE = 4;
+
+    private static final int SCALAR = 5;
+
+    private final BodyRedaction rules;
+
+    private final byte[] key;
+
+    private final BodyRedaction.PathNode[] pathStack;
+
+    private int state = VALUE;
+
+    private int keyLength;
+
+    private boolean keyOverflow;
+
+    private int depth;
+
+    /**
+     * 第 d 位表示第 d 层容器是数组
+     */
+    private long arrayBits;
+
+    private boolean expectKey;
+
+    /**
+     * 上一个字段名命中规则，下一个值需要遮盖
+     */
+    private boolean pendingMask;
+
+    /**
+     * 上一个字段名在路径树中的节点，下一个值是容器时作为该容器的路径位置
+     */
+    private BodyRedaction.PathNode pendingNode;
+
+    /**
+     * 被整体遮盖的容器所在层级，-1 表示不在遮盖范围内
+     */
+    private int maskDepth = -1;
+
+    private boolean masking;
+
+    JsonRedactor(BodyRedaction rules) {
+        this.rules = rules;
+        this.key = new byte[rules.getMaxKeyLength()];
+        this.pathStack = rules.getPaths() == null ? null : new BodyRedaction.PathNode[MAX_DEPTH];
+    }
+
+    @Override
+    public void redact(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = bytes[i];
+            switch (state) {
+                case KEY:
+                    if (b == '"') {
+                        state = VALUE;
+                        endKey();
+                    } else {
+                        if (b == '\\') {
+                            state = KEY_ESCAPE;
+                        }
+                        appendKey(b);
+                    }
+                    continue;
+                case KEY_ESCAPE:
+                    appendKey(b);
+                    state = KEY;
+                    continue;
+                case STRING:
+                    // 不遮盖的字符串内容占了大部分字节，只找结束引号和转义符
+                    if (!masking) {
+                        while (b != '"' && b != '\\') {
+                            if (++i == to) {
+                                break;
+                            }
+                            b = bytes[i];
+                        }
+                        if (i == to) {
+                            continue;
+                        }
+                    }
+                    if (b == '"') {
+                        state = VALUE;
+                        masking = false;
+                        continue;
+                    }
+                    if (b == '\\') {
+                        state = STRING_ESCAPE;
+                    }
+                    if (masking) {
+                        bytes[i] = BodyRedaction.MASK;
+                    }
+                    continue;
+                case STRING_ESCAPE:
+                    if (masking) {
+                        bytes[i] = BodyRedaction.MASK;
+                    }
+                    state = STRING;
+                    continue;
+                case SCALAR:
+                    if (!isDelimiter(b)) {
+                        if (masking) {
+                            bytes[i] = BodyRedaction.MASK;
+                        }
+                        continue;
+                    }
+                    state = VALUE;
+                    masking = false;
+                    // 分隔符本身按 VALUE 状态处理
+                    break;
+                default:
+                    break;
+            }
+            switch (b) {
+                case '{':
+                    openContainer(false);
+                    break;
+                case '[':
+                    openContainer(true);
+                    break;
+                case '}':
+                case ']':
+                    closeContainer();
+                    break;
+                case ',':
+                    expectKey = inObject();
+                    break;
+                case '"':
+                    if (expectKey) {
+                        state = KEY;
+                        keyLength = 0;
+                        keyOverflow = false;
+                        expectKey = false;
+                    } else {
+                        state = STRING;
+                        masking = startScalar();
+                    }
+                    break;
+                case ':':
+                case ' ':
+                case '\t':
+                case '\r':
+                case '\n':
+                    break;
+                default:
+                    state = SCALAR;
+                    masking = startScalar();
+                    if (masking) {
+                        bytes[i] = BodyRedaction.MASK;
+                    }
+                    break;
+            }
+        }
+    }
+
+    private static boolean isDelimiter(byte b) {
+        return b == ',' || b == '}' || b == ']' || b == ':' || b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private void appendKey(byte b) {
+        if (keyLength < key.length) {
+            key[keyLength++] = b;
+        } else {
+            keyOverflow = true;
+        }
+    }
+
+    private void endKey() {
+        boolean matched = !keyOverflow && rules.matchesField(key, keyLength);
+        BodyRedaction.PathNode node = null;
+        if (pathStack != null && !keyOverflow && depth < MAX_DEPTH) {
+            BodyRedaction.PathNode parent = pathStack[depth];
+            node = parent == null ? null : parent.find(key, keyLength);
+            matched |= node != null && node.terminal;
+        }
+        pendingMask = matched;
+        pendingNode = node;
+    }
+
+    /**
+     * 开始一个字符串、数字或字面量值
+     * @return 是否遮盖
+     */
+    private boolean startScalar() {
+        boolean mask = pendingMask || maskDepth >= 0;
+        pendingMask = false;
+        pendingNode = null;
+        return mask;
+    }
+
+    private void openContainer(boolean array) {
+        BodyRedaction.PathNode node = null;
+        if (pathStack != null) {
+            if (depth == 0) {
+                node = rules.getPaths();
+            } else if (!inObject() && depth < MAX_DEPTH) {
+                // 数组元素沿用数组的路径位置
+                node = pathStack[depth];
+            } else {
+                node = pendingNode;
+            }
+        }
+        boolean mask = pendingMask;
+        pendingMask = false;
+        pendingNode = null;
+        depth++;
+        if (depth < MAX_DEPTH) {
+            if (array) {
+                arrayBits |= 1L << depth;
+            } else {
+                arrayBits &= ~(1L << depth);
+            }
+            if (pathStack != null) {
+                pathStack[depth] = node;
+            }
+        }
+        if (mask && maskDepth < 0) {
+            maskDepth = depth;
+        }
+        expectKey = !array;
+    }
+
+    private void closeContainer() {
+        if (depth == maskDepth) {
+            maskDepth = -1;
+        }
+        if (depth > 0) {
+            depth--;
+        }
+        expectKey = false;
+        pendingMask = false;
+        pendingNode = null;
+    }
+
+    private boolean inObject() {
+        return depth > 0 && (depth >= MAX_DEPTH || (arrayBits & (1L << depth)) == 0);
+    }
+}
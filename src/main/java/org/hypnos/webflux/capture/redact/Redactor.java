@@ -0,0 +1,13 @@
+package org.hypnos.webflux.capture.redact;
+
+/**
+ * 捕获阶段的流式脱敏器，字节写入捕获缓冲区之前原地遮盖敏感值。
+ * 每个捕获体一个实例，跨数据块的解析状态保存在实例中，每个字节只看一次，不回溯。
+ */
+public interface Redactor {
+
+    /**
+     * 原地遮盖 bytes 中 [from, to) 范围内属于敏感字段的值
+     */
+    void redact(byte[] bytes, int from, int to);
+}
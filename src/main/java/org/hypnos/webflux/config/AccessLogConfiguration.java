@@ -0,0 +1,362 @@
+package org.hypnos.webflux.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hypnos.webflux.address.CidrTrie;
+import org.hypnos.webflux.address.ClientAddressResolver;
+import org.hypnos.webflux.binlog.MappedSegmentAccessLogWriter;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.capture.CaptureOffloadStage;
+import org.hypnos.webflux.capture.redact.BodyRedaction;
+import org.hypnos.webflux.dedup.BodyDigestCache;
+import org.hypnos.webflux.dedup.DedupAccessLogWriter;
+import org.hypnos.webflux.filter.HandlerStartFilter;
+import org.hypnos.webflux.filter.RequestResponseLoggingFilter;
+import org.hypnos.webflux.gateway.GatewayAccessLogFilter;
+import org.hypnos.webflux.gateway.TraceHttpHeadersFilter;
+import org.hypnos.webflux.jsonlog.JsonLinesAccessLogWriter;
+import org.hypnos.webflux.metrics.LoggingFilterMetrics;
+import org.hypnos.webflux.metrics.MicrometerLoggingFilterMetrics;
+import org.hypnos.webflux.policy.CapturePolicyRegistry;
+import org.hypnos.webflux.policy.CapturePolicyTable;
+import org.hypnos.webflux.policy.CaptureRule;
+import org.hypnos.webflux.policy.LoadSheddingPolicy;
+import org.hypnos.webflux.policy.MultipartCapturePolicy;
+import org.hypnos.webflux.policy.StreamCapturePolicy;
+import org.hypnos.webflux.policy.TailCapturePolicy;
+import org.hypnos.webflux.pressure.PressureMonitor;
+import org.hypnos.webflux.recent.RecentRequestBuffer;
+import org.hypnos.webflux.recent.RecentRequestsEndpoint;
+import org.hypnos.webflux.recent.RecentRequestsWriter;
+import org.hypnos.webflux.ship.ShippingAccessLogWriter;
+import org.hypnos.webflux.sink.AccessLogFormat;
+import org.hypnos.webflux.sink.AccessLogSink;
+import org.hypnos.webflux.sink.AccessLogWriter;
+import org.hypnos.webflux.sink.AsyncAccessLogSink;
+import org.hypnos.webflux.sink.Slf4jAccessLogWriter;
+import org.hypnos.webflux.trace.TraceExchangeFilterFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.actuate.autoconfigure.endpoint.condition.ConditionalOnAvailableEndpoint;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.cloud.context.environment.EnvironmentChangeEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.reactive.ReactorResourceFactory;
+import reactor.netty.http.HttpResources;
+import reactor.netty.resources.LoopResources;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 请求日志过滤器装配，hypnos.access-log.enabled=true 时生效
+ */
+@Configuration(proxyBeanMethods = false)
+@EnableConfigurationProperties(AccessLogProperties.class)
+@ConditionalOnProperty(prefix = "hypnos.access-log", name = "enabled", havingValue = "true")
+public class AccessLogConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccessLogConfiguration.class);
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public AccessLogSink accessLogSink(AccessLogProperties properties, LoggingFilterMetrics loggingFilterMetrics,
+                                       ObjectProvider<RecentRequestBuffer> recentRequestBuffer) throws IOException {
+        AccessLogProperties.Sink sink = properties.getSink();
+        AccessLogWriter writer = accessLogWriter(sink);
+        if (writer instanceof ShippingAccessLogWriter) {
+            loggingFilterMetrics.bindShipping((ShippingAccessLogWriter) writer);
+        }
+        AccessLogProperties.Dedup dedup = properties.getDedup();
+        if (dedup.isEnabled()) {
+            DedupAccessLogWriter dedupWriter = new DedupAccessLogWriter(writer,
+                    new BodyDigestCache(dedup.getCapacity(), TimeUnit.SECONDS.toMillis(dedup.getRefreshSeconds())),
+                    dedup.getMinBodyBytes());
+            loggingFilterMetrics.bindDedup(dedupWriter);
+            writer = dedupWriter;
+        }
+        // 最近请求在去重之前记录，查询时总能看到完整内容
+        RecentRequestBuffer recent = recentRequestBuffer.getIfAvailable();
+        if (recent != null) {
+            writer = new RecentRequestsWriter(writer, recent);
+        }
+        AsyncAccessLogSink accessLogSink = new AsyncAccessLogSink(writer, sink.getCapacity(),
+                sink.getBatchSize(), sink.getOverflowPolicy(), sink.getBlockTimeoutMillis(), loggingFilterMetrics);
+        loggingFilterMetrics.bindSink(accessLogSink);
+        return accessLogSink;
+    }
+
+    private static AccessLogWriter accessLogWriter(AccessLogProperties.Sink sink) throws IOException {
+        if (sink.getFormat() == AccessLogFormat.BINARY) {
+            AccessLogProperties.Binary binary = sink.getBinary();
+            return new MappedSegmentAccessLogWriter(Paths.get(binary.getDirectory()), binary.getFilePrefix(),
+                    binary.getSegmentSize(), binary.getRollIntervalSeconds());
+        }
+        if (sink.getFormat() == AccessLogFormat.JSON) {
+            AccessLogProperties.Json json = sink.getJson();
+            return new JsonLinesAccessLogWriter(Paths.get(json.getDirectory()), json.getFilePrefix(),
+                    json.getMaxFileSize(), json.getRollIntervalSeconds());
+        }
+        if (sink.getFormat() == AccessLogFormat.SHIP) {
+            AccessLogProperties.Ship ship = sink.getShip();
+            return new ShippingAccessLogWriter(new InetSocketAddress(ship.getHost(), ship.getPort()),
+                    ship.getCompressionLevel(), ship.getMaxFrameBytes(), ship.getConnectTimeoutMillis(),
+                    ship.getWriteTimeoutMillis(), ship.getReconnectIntervalMillis(), ship.getMaxBacklogBytes(),
+                    Paths.get(ship.getSpillDirectory()), ship.getMaxSpillBytes());
+        }
+        return new Slf4jAccessLogWriter();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "hypnos.access-log.recent", name = "enabled", havingValue = "true",
+            matchIfMissing = true)
+    public RecentRequestBuffer recentRequestBuffer(AccessLogProperties properties) {
+        AccessLogProperties.Recent recent = properties.getRecent();
+        return new RecentRequestBuffer(recent.getCapacity(), recent.getFailedCapacity(), recent.getSlowestCapacity(),
+                recent.getArenaBytes(), recent.getBodyLimit(), recent.getParamLimit(), recent.getParamValueLimit());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public CaptureBufferPool captureBufferPool(AccessLogProperties properties, LoggingFilterMetrics loggingFilterMetrics) {
+        AccessLogProperties.CapturePool pool = properties.getCapturePool();
+        CaptureBufferPool captureBufferPool = new CaptureBufferPool(pool.getInitialSize(), pool.getMaxSize(),
+                pool.getSlabSize(), pool.getMaxPooledPerClass());
+        captureBufferPool.setLeakDetection(pool.isLeakDetection());
+        loggingFilterMetrics.bindCaptureBufferPool(captureBufferPool);
+        return captureBufferPool;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public ClientAddressResolver clientAddressResolver(AccessLogProperties properties) {
+        AccessLogProperties.Address address = properties.getAddress();
+        return new ClientAddressResolver(new CidrTrie(address.getTrustedProxies()), address.getRefreshIntervalSeconds());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public CapturePolicyRegistry capturePolicyRegistry(AccessLogProperties properties) {
+        return new CapturePolicyRegistry(capturePolicyTable(properties.getCapture()));
+    }
+
+    /**
+     * 按配置编译策略表，启动和重新加载时使用
+     */
+    public static CapturePolicyTable capturePolicyTable(AccessLogProperties.Capture capture) {
+        CaptureRule defaults = new CaptureRule();
+        defaults.setLevel(capture.getLevel());
+        defaults.setRequestLimit(capture.getRequestLimit());
+        defaults.setResponseLimit(capture.getResponseLimit());
+        defaults.setRequestContentTypes(capture.getRequestContentTypes());
+        defaults.setResponseContentTypes(capture.getResponseContentTypes());
+        AccessLogProperties.Redaction redaction = capture.getRedaction();
+        BodyRedaction bodyRedaction = redaction.isEnabled()
+                ? new BodyRedaction(redaction.getFields(), redaction.getJsonPaths(), capture.getContentTypeCacheSize())
+                : BodyRedaction.NONE;
+        return new CapturePolicyTable(defaults, capture.isCaptureRequestWithoutContentType(),
+                capture.getContentTypeCacheSize(), capture.getRules(), bodyRedaction);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public TailCapturePolicy tailCapturePolicy(AccessLogProperties properties) {
+        AccessLogProperties.Tail tail = properties.getTail();
+        return new TailCapturePolicy(tail.isEnabled(), tail.getKeepStatusAtLeast(), tail.getSlowThresholdMillis(),
+                tail.getSampleRate(), tail.getRoutes(), tail.isDropUnkept());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public StreamCapturePolicy streamCapturePolicy(AccessLogProperties properties) {
+        AccessLogProperties.Stream stream = properties.getStream();
+        return new StreamCapturePolicy(stream.getEventLimit(), stream.getProgressIntervalSeconds());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public MultipartCapturePolicy multipartCapturePolicy(AccessLogProperties properties) {
+        AccessLogProperties.Multipart multipart = properties.getMultipart();
+        return new MultipartCapturePolicy(multipart.isEnabled(), multipart.getMaxParts(), multipart.getTextLimit(),
+                multipart.getMaxHeaderBytes());
+    }
+
+    /**
+     * 容器中有 MeterRegistry（引入 actuator）时导出过滤器自身的指标，否则不做记录
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public LoggingFilterMetrics loggingFilterMetrics(ObjectProvider<MeterRegistry> meterRegistry) {
+        MeterRegistry registry = meterRegistry.getIfAvailable();
+        return registry == null ? LoggingFilterMetrics.NOOP : new MicrometerLoggingFilterMetrics(registry);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public LoadSheddingPolicy loadSheddingPolicy(AccessLogProperties properties) {
+        AccessLogProperties.Shedding shedding = properties.getShedding();
+        if (!shedding.isEnabled()) {
+            return LoadSheddingPolicy.disabled();
+        }
+        return new LoadSheddingPolicy(shedding.getTruncatedLimit(), shedding.getSampleRate(),
+                shedding.getRecoverRatio(), shedding.getStepDownSamples(), shedding.getStepUpSamples());
+    }
+
+    /**
+     * 采集服务端 event loop 和日志队列的压力，驱动 {@link LoadSheddingPolicy}
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "hypnos.access-log.shedding", name = "enabled", havingValue = "true")
+    public PressureMonitor pressureMonitor(AccessLogProperties properties, LoadSheddingPolicy loadSheddingPolicy,
+                                           AccessLogSink accessLogSink,
+                                           ObjectProvider<CaptureOffloadStage> offloadStage,
+                                           ObjectProvider<ReactorResourceFactory> reactorResourceFactory,
+                                           LoggingFilterMetrics loggingFilterMetrics) {
+        AccessLogProperties.Shedding shedding = properties.getShedding();
+        ReactorResourceFactory resourceFactory = reactorResourceFactory.getIfAvailable();
+        LoopResources loopResources = resourceFactory != null ? resourceFactory.getLoopResources() : HttpResources.get();
+        PressureMonitor monitor = new PressureMonitor(loopResources.onServer(LoopResources.DEFAULT_NATIVE),
+                accessLogSink instanceof AsyncAccessLogSink ? (AsyncAccessLogSink) accessLogSink : null,
+                offloadStage.getIfAvailable(), loadSheddingPolicy, shedding.getIntervalMillis(),
+                shedding.getLoopLatencyThresholdMillis(), shedding.getQueueFillThreshold(),
+                shedding.getAllocationThresholdBytesPerSecond());
+        loggingFilterMetrics.bindPressure(monitor);
+        return monitor;
+    }
+
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "hypnos.access-log.offload", name = "enabled", havingValue = "true",
+            matchIfMissing = true)
+    public CaptureOffloadStage captureOffloadStage(AccessLogProperties properties, AccessLogSink accessLogSink,
+                                                   CaptureBufferPool captureBufferPool,
+                                                   LoggingFilterMetrics loggingFilterMetrics) {
+        AccessLogProperties.Offload offload = properties.getOffload();
+        CaptureOffloadStage stage = new CaptureOffloadStage(accessLogSink, captureBufferPool, offload.getThreads(),
+                offload.getQueueCapacity(), loggingFilterMetrics);
+        loggingFilterMetrics.bindOffload(stage);
+        return stage;
+    }
+
+    @Bean
+    public RequestResponseLoggingFilter requestResponseLoggingFilter(AccessLogSink accessLogSink,
+                                                                     CaptureBufferPool captureBufferPool,
+                                                                     ClientAddressResolver clientAddressResolver,
+                                                                     CapturePolicyRegistry capturePolicyRegistry,
+                                                                     TailCapturePolicy tailCapturePolicy,
+                                                                     StreamCapturePolicy streamCapturePolicy,
+                                                                     MultipartCapturePolicy multipartCapturePolicy,
+                                                                     LoggingFilterMetrics loggingFilterMetrics,
+                                                                     ObjectProvider<CaptureOffloadStage> offloadStage,
+                                                                     LoadSheddingPolicy loadSheddingPolicy) {
+        return new RequestResponseLoggingFilter(accessLogSink, captureBufferPool, clientAddressResolver,
+                capturePolicyRegistry, tailCapturePolicy, streamCapturePolicy, multipartCapturePolicy,
+                loggingFilterMetrics, offloadStage.getIfAvailable(), loadSheddingPolicy);
+    }
+
+    /**
+     * 记录进入 handler 的时刻，输出到访问日志的阶段耗时中
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public HandlerStartFilter handlerStartFilter() {
+        return new HandlerStartFilter();
+    }
+
+    /**
+     * 引入 actuator 时在管理端口上暴露最近的访问日志
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    @ConditionalOnProperty(prefix = "hypnos.access-log.recent", name = "enabled", havingValue = "true",
+            matchIfMissing = true)
+    static class RecentRequestsEndpointConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        @ConditionalOnAvailableEndpoint
+        public RecentRequestsEndpoint recentRequestsEndpoint(RecentRequestBuffer recentRequestBuffer) {
+            return new RecentRequestsEndpoint(recentRequestBuffer);
+        }
+    }
+
+    /**
+     * 引入 Spring Cloud Gateway 时按路由 metadata 调整转发请求的捕获策略，记录上游耗时，并向上游传递生成的跟踪链
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.cloud.gateway.filter.GlobalFilter")
+    @ConditionalOnProperty(prefix = "hypnos.access-log.gateway", name = "enabled", havingValue = "true",
+            matchIfMissing = true)
+    static class GatewayAccessLogConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public GatewayAccessLogFilter gatewayAccessLogFilter(AccessLogProperties properties,
+                                                             CapturePolicyRegistry capturePolicyRegistry,
+                                                             LoadSheddingPolicy loadSheddingPolicy) {
+            return new GatewayAccessLogFilter(capturePolicyRegistry, properties.getGateway().getMetadataKey(),
+                    loadSheddingPolicy);
+        }
+
+        @Bean
+        @ConditionalOnMissingBean
+        public TraceHttpHeadersFilter traceHttpHeadersFilter() {
+            return new TraceHttpHeadersFilter();
+        }
+    }
+
+    /**
+     * 通过 Spring 注入的 WebClient.Builder 创建的 WebClient 自动传递跟踪链
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.web.reactive.function.client.WebClient")
+    static class TraceWebClientConfiguration {
+
+        @Bean
+        public WebClientCustomizer traceWebClientCustomizer() {
+            return builder -> builder.filter(new TraceExchangeFilterFunction());
+        }
+    }
+
+    /**
+     * 引入 spring-cloud-context 时，/actuator/refresh 修改了 hypnos.access-log.capture 下的配置后重新编译策略表。
+     * 直接从 Environment 绑定，不依赖与 ConfigurationPropertiesRebinder 的执行顺序
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.cloud.context.environment.EnvironmentChangeEvent")
+    static class CapturePolicyReloadConfiguration {
+
+        private static final String CAPTURE_PREFIX = "hypnos.access-log.capture";
+
+        @Bean
+        public ApplicationListener<EnvironmentChangeEvent> capturePolicyReloader(Environment environment,
+                                                                                CapturePolicyRegistry registry) {
+            return event -> {
+                if (event.getKeys().stream().noneMatch(key -> key.startsWith(CAPTURE_PREFIX))) {
+                    return;
+                }
+                AccessLogProperties.Capture capture = Binder.get(environment)
+                        .bind(CAPTURE_PREFIX, AccessLogProperties.Capture.class)
+                        .orElseGet(AccessLogProperties.Capture::new);
+                try {
+                    registry.reload(capturePolicyTable(capture));
+                    logger.info("capture policy reloaded, {} rules", registry.getTable().getRuleCount());
+                } catch (RuntimeException e) {
+                    logger.warn("invalid capture policy, keep the previous one", e);
+                }
+            };
+        }
+    }
+}
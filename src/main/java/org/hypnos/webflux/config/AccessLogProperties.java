@@ -0,0 +1,533 @@
+package org.hypnos.webflux.config;
+
+import lombok.Data;
+import org.hypnos.webflux.policy.CaptureLevel;
+import org.hypnos.webflux.policy.CaptureRule;
+import org.hypnos.webflux.policy.RouteRule;
+import org.hypnos.webflux.sink.AccessLogFormat;
+import org.hypnos.webflux.sink.OverflowPolicy;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 访问日志配置，前缀 hypnos.access-log
+ */
+@Data
+@ConfigurationProperties(prefix = "hypnos.access-log")
+public class AccessLogProperties {
+
+    /**
+     * 是否启用请求日志过滤器
+     */
+    private boolean enabled = false;
+
+    private Capture capture = new Capture();
+
+    private Sink sink = new Sink();
+
+    private CapturePool capturePool = new CapturePool();
+
+    private Address address = new Address();
+
+    private Tail tail = new Tail();
+
+    private Stream stream = new Stream();
+
+    private Multipart multipart = new Multipart();
+
+    private Offload offload = new Offload();
+
+    private Shedding shedding = new Shedding();
+
+    private Recent recent = new Recent();
+
+    private Dedup dedup = new Dedup();
+
+    private Gateway gateway = new Gateway();
+
+    /**
+     * 捕获策略表，未命中任何规则时使用这里的默认值；通过 /actuator/refresh 修改配置后重新加载
+     */
+    @Data
+    public static class Capture {
+
+        private CaptureLevel level = CaptureLevel.BODY;
+
+        /**
+         * 请求体最多捕获的字节数，0 表示不捕获请求体
+         */
+        private int requestLimit = 2000;
+
+        /**
+         * 响应体最多捕获的字节数，0 表示不捕获响应体
+         */
+        private int responseLimit = 2000;
+
+        private List<String> requestContentTypes = new ArrayList<>(Arrays.asList(
+                "application/json", "application/x-www-form-urlencoded"));
+
+        /**
+         * 没有 Content-Type 的请求是否捕获请求体
+         */
+        private boolean captureRequestWithoutContentType = true;
+
+        /**
+         * 捕获响应体的 Content-Type，包括流式的 NDJSON 和 stream+json
+         */
+        private List<String> responseContentTypes = new ArrayList<>(Arrays.asList(
+                "text/*", "application/json", "application/xml", "application/x-ndjson", "application/stream+json"));
+
+        /**
+         * 每个 Content-Type 判断缓存的原始头部字符串个数上限
+         */
+        private int contentTypeCacheSize = 256;
+
+        /**
+         * 按配置顺序匹配的规则，例如 rules[0].pattern=/openapi/webflux/payload/**，rules[0].response-limit=0
+         */
+        private List<CaptureRule> rules = new ArrayList<>();
+
+        private Redaction redaction = new Redaction();
+    }
+
+    /**
+     * 捕获时对 JSON 和表单请求/响应体做流式脱敏，随捕获策略一起重新加载
+     */
+    @Data
+    public static class Redaction {
+
+        private boolean enabled = true;
+
+        /**
+         * 任意层级都遮盖的字段名，忽略大小写
+         */
+        private List<String> fields = new ArrayList<>(Arrays.asList(
+                "password", "passwd", "secret", "token", "accessToken", "access_token", "refreshToken",
+                "refresh_token", "authorization", "idCard", "idNumber", "id_number"));
+
+        /**
+         * 从根对象开始的 JSON 路径，如 user.card.number，数组对路径透明
+         */
+        private List<String> jsonPaths = new ArrayList<>();
+    }
+
+    @Data
+    public static class Sink {
+
+        /**
+         * 队列容量，会向上取整为 2 的幂
+         */
+        private int capacity = 8192;
+
+        /**
+         * 每批次最多写出的日志条数
+         */
+        private int batchSize = 256;
+
+        /**
+         * 队列写满时的处理策略
+         */
+        private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+        /**
+         * BLOCK 策略下的最长等待时间（毫秒）
+         */
+        private long blockTimeoutMillis = 10;
+
+        /**
+         * 输出格式
+         */
+        private AccessLogFormat format = AccessLogFormat.TEXT;
+
+        private Binary binary = new Binary();
+
+        private Json json = new Json();
+
+        private Ship ship = new Ship();
+    }
+
+    @Data
+    public static class Json {
+
+        /**
+         * 日志文件目录
+         */
+        private String directory = "logs/access";
+
+        /**
+         * 文件名前缀，完整文件名为 前缀-创建时间毫秒-序号.jsonl
+         */
+        private String filePrefix = "access";
+
+        /**
+         * 单个文件大小上限（字节）
+         */
+        private long maxFileSize = 256L * 1024 * 1024;
+
+        /**
+         * 滚动间隔（秒），小于等于 0 表示只按大小滚动
+         */
+        private long rollIntervalSeconds = 3600;
+    }
+
+    @Data
+    public static class Ship {
+
+        /**
+         * 采集端地址，Java 8 不支持 Unix domain socket，只能用本机回环地址
+         */
+        private String host = "127.0.0.1";
+
+        private int port = 24225;
+
+        /**
+         * gzip 压缩级别 1-9
+         */
+        private int compressionLevel = 1;
+
+        /**
+         * 单帧压缩前的字节数上限，超过后拆成多帧
+         */
+        private int maxFrameBytes = 256 * 1024;
+
+        /**
+         * 建立连接的超时时间（毫秒），在消费线程上等待
+         */
+        private long connectTimeoutMillis = 200;
+
+        /**
+         * 发送一帧时等待 socket 可写的最长时间（毫秒），超时的帧进入内存积压
+         */
+        private long writeTimeoutMillis = 100;
+
+        /**
+         * 连接失败或断开后的重连间隔（毫秒）
+         */
+        private long reconnectIntervalMillis = 1000;
+
+        /**
+         * 内存积压的帧总大小上限（压缩后字节）
+         */
+        private long maxBacklogBytes = 8L * 1024 * 1024;
+
+        /**
+         * 溢出文件目录，文件名为 access-创建时间毫秒.spill
+         */
+        private String spillDirectory = "logs/access-spill";
+
+        /**
+         * 溢出文件总大小上限（字节），超过后丢弃
+         */
+        private long maxSpillBytes = 1024L * 1024 * 1024;
+    }
+
+    @Data
+    public static class Binary {
+
+        /**
+         * 段文件目录
+         */
+        private String directory = "logs/access";
+
+        /**
+         * 段文件名前缀
+         */
+        private String filePrefix = "access";
+
+        /**
+         * 单个段文件大小（字节）
+         */
+        private int segmentSize = 64 * 1024 * 1024;
+
+        /**
+         * 滚动间隔（秒），小于等于 0 表示只按大小滚动
+         */
+        private long rollIntervalSeconds = 3600;
+    }
+
+    @Data
+    public static class CapturePool {
+
+        /**
+         * 最小级别的缓冲区大小（字节），捕获缓冲从这个大小开始按 2 倍扩容
+         */
+        private int initialSize = 256;
+
+        /**
+         * 最大级别的缓冲区大小（字节），不小于捕获上限即可；brotli 响应会保留 4 倍于上限的压缩前缀
+         */
+        private int maxSize = 8192;
+
+        /**
+         * 每次向操作系统申请的 direct slab 大小（字节）
+         */
+        private int slabSize = 64 * 1024;
+
+        /**
+         * 每个级别最多缓存的空闲缓冲区个数
+         */
+        private int maxPooledPerClass = 1024;
+
+        /**
+         * 是否记录缓冲区分配栈用于泄漏检测，仅建议在测试中打开
+         */
+        private boolean leakDetection = false;
+    }
+
+    @Data
+    public static class Address {
+
+        /**
+         * 可信代理网段，只有直连方在这些网段内时才采信 Forwarded / X-Forwarded-For / X-Real-IP
+         */
+        private List<String> trustedProxies = new ArrayList<>(Arrays.asList(
+                "127.0.0.0/8", "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16", "::1/128", "fc00::/7"));
+
+        /**
+         * 本机地址的后台刷新间隔（秒），小于等于 0 表示只在启动时解析一次
+         */
+        private long refreshIntervalSeconds = 60;
+    }
+
+    @Data
+    public static class Stream {
+
+        /**
+         * 流式响应（SSE、NDJSON 等 writeAndFlushWith 写出的响应）只捕获前若干个事件的内容，之后只计数
+         */
+        private int eventLimit = 16;
+
+        /**
+         * 长连接流式响应输出进度记录的间隔（秒），小于等于 0 表示只在结束时记录
+         */
+        private long progressIntervalSeconds = 60;
+    }
+
+    /**
+     * multipart/form-data 请求不复制请求体，只流式记录每个 part 的字段名、文件名、类型和大小
+     */
+    @Data
+    public static class Multipart {
+
+        private boolean enabled = true;
+
+        /**
+         * 最多记录的 part 数，超出的只跳过
+         */
+        private int maxParts = 32;
+
+        /**
+         * 每个文本字段保留的字节数，另受请求体上限约束
+         */
+        private int textLimit = 256;
+
+        /**
+         * 单行 part 头保留的字节数，超出部分忽略
+         */
+        private int maxHeaderBytes = 1024;
+    }
+
+    /**
+     * 请求结束后的解压和脱敏交给工作线程，不占用 Netty event loop
+     */
+    @Data
+    public static class Offload {
+
+        /**
+         * 关闭时解压和脱敏随数据流在 event loop 上执行
+         */
+        private boolean enabled = true;
+
+        /**
+         * 工作线程数
+         */
+        private int threads = 2;
+
+        /**
+         * 等待处理的记录数上限，写满后新记录降级为只有元数据
+         */
+        private int queueCapacity = 1024;
+    }
+
+    /**
+     * 节点压力大时逐级降低捕获级别，压力缓解后逐级恢复
+     */
+    @Data
+    public static class Shedding {
+
+        /**
+         * 是否启用降级，关闭时始终按各条策略完整捕获；开启后过载期间的记录会被截断、只留元数据或按比例丢弃
+         */
+        private boolean enabled = false;
+
+        /**
+         * 采样间隔（毫秒）
+         */
+        private long intervalMillis = 500;
+
+        /**
+         * event loop 探针任务延迟阈值（毫秒），小于等于 0 表示不使用该信号
+         */
+        private long loopLatencyThresholdMillis = 50;
+
+        /**
+         * 日志队列填充率阈值，小于等于 0 表示不使用该信号
+         */
+        private double queueFillThreshold = 0.5;
+
+        /**
+         * event loop 线程合计分配速率阈值（字节/秒），小于等于 0 表示不使用该信号
+         */
+        private long allocationThresholdBytesPerSecond = 1024L * 1024 * 1024;
+
+        /**
+         * 压力低于阈值的该比例后才开始计数恢复
+         */
+        private double recoverRatio = 0.5;
+
+        /**
+         * 连续多少次采样过载后降一级，避免启动预热或单次 GC 停顿这类短暂的卡顿触发降级
+         */
+        private int stepDownSamples = 3;
+
+        /**
+         * 连续多少次采样低于恢复比例后升一级
+         */
+        private int stepUpSamples = 10;
+
+        /**
+         * 截断级别下请求体和响应体的捕获上限（字节）
+         */
+        private int truncatedLimit = 256;
+
+        /**
+         * 采样级别下记录元数据的请求比例
+         */
+        private double sampleRate = 0.1;
+    }
+
+    @Data
+    public static class Tail {
+
+        /**
+         * 是否启用尾部采样，关闭时所有记录都完整保留
+         */
+        private boolean enabled = false;
+
+        /**
+         * 状态码不小于该值时保留请求体和响应体
+         */
+        private int keepStatusAtLeast = 500;
+
+        /**
+         * 慢请求阈值（毫秒），小于等于 0 表示不按耗时保留
+         */
+        private long slowThresholdMillis = 1000;
+
+        /**
+         * 默认采样率 [0, 1]
+         */
+        private double sampleRate = 0;
+
+        /**
+         * true 时未保留的记录整条丢弃，false 时只输出元数据
+         */
+        private boolean dropUnkept = false;
+
+        /**
+         * 按路由模板覆盖的参数，例如 routes[/openapi/webflux/{id}].sample-rate=0.1
+         */
+        private Map<String, RouteRule> routes = new LinkedHashMap<>();
+    }
+
+    /**
+     * 在内存中保留最近的访问日志，通过管理端口的 /actuator/recentrequests 查询；内存占用固定
+     */
+    @Data
+    public static class Recent {
+
+        private boolean enabled = true;
+
+        /**
+         * 保留的最近记录数，向上取整为 2 的幂
+         */
+        private int capacity = 1024;
+
+        /**
+         * 单独保留的最近非 2xx 记录数，向上取整为 2 的幂
+         */
+        private int failedCapacity = 256;
+
+        /**
+         * 保留的最慢记录数
+         */
+        private int slowestCapacity = 32;
+
+        /**
+         * 存放请求体和响应体的堆外内存（字节），写满后覆盖最旧的内容
+         */
+        private int arenaBytes = 4 * 1024 * 1024;
+
+        /**
+         * 每个请求体/响应体最多保留的字节数
+         */
+        private int bodyLimit = 1024;
+
+        /**
+         * queryParams/formData 各自最多保留的条目数，同名字段的每个值都计入；0 表示不保留
+         */
+        private int paramLimit = 32;
+
+        /**
+         * 参数名和参数值最多保留的字符数，超出部分截断
+         */
+        private int paramValueLimit = 256;
+    }
+
+    /**
+     * 重复的请求体/响应体只输出 XXH64 哈希，第一次出现或被淘汰后才输出完整内容；
+     * 读日志时按 requestBodyHash/responseBodyHash 找到之前的完整内容
+     */
+    @Data
+    public static class Dedup {
+
+        private boolean enabled = false;
+
+        /**
+         * 记住的哈希数，按组内最近使用淘汰
+         */
+        private int capacity = 4096;
+
+        /**
+         * 小于该字节数的内容不去重
+         */
+        private int minBodyBytes = 128;
+
+        /**
+         * 距上次输出完整内容超过该秒数后再输出一次，避免引用指向已滚动删除的日志文件；0 表示不刷新
+         */
+        private long refreshSeconds = 300;
+    }
+
+    /**
+     * Spring Cloud Gateway 转发请求的日志增强
+     */
+    @Data
+    public static class Gateway {
+
+        /**
+         * 是否按路由 metadata 调整捕获策略并记录上游耗时
+         */
+        private boolean enabled = true;
+
+        /**
+         * 路由 metadata 中捕获策略所在的 key，例如 metadata.access-log.response-limit=0
+         */
+        private String metadataKey = "access-log";
+    }
+}
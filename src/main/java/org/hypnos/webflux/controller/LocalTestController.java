@@ -1,13 +1,68 @@
 package org.hypnos.webflux.controller;
 
 import org.hypnos.webflux.dto.ContentDTO;
+import org.hypnos.webflux.trace.TraceContext;
+import org.springframework.core.io.buffer.DataBufferFactory;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.multipart.Part;
+import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/openapi/webflux")
 public class LocalTestController {
 
+    /**
+     * payload 接口的最大响应大小
+     */
+    private static final int MAX_PAYLOAD_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * payload 接口分块写出的块大小
+     */
+    private static final int PAYLOAD_CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * payload 缓存的总字节数上限，超过后按最近最少使用淘汰
+     */
+    private static final long PAYLOAD_CACHE_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * 按大小和是否压缩缓存的响应内容，压测时不把生成和压缩的开销算进去；按访问顺序排列，访问需持有自身的锁
+     */
+    private static final LinkedHashMap<String, byte[]> PAYLOADS = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * PAYLOADS 中内容的总字节数，由 PAYLOADS 的锁保护
+     */
+    private static long payloadBytes;
+
+    private final WebClient webClient;
+
+    public LocalTestController(WebClient.Builder webClientBuilder) {
+        this.webClient = webClientBuilder.build();
+    }
+
     /**
      * exception
      */
@@ -32,4 +87,171 @@ public class LocalTestController {
     public Mono<ContentDTO> returnContent(@RequestBody ContentDTO content) {
         return Mono.just(content);
     }
+
+    /**
+     * raw echo，请求体原样流式回写，不聚合
+     */
+    @PostMapping("/echo/raw")
+    public Mono<Void> echoRaw(ServerWebExchange exchange) {
+        ServerHttpResponse response = exchange.getResponse();
+        MediaType contentType = exchange.getRequest().getHeaders().getContentType();
+        response.getHeaders().setContentType(contentType == null ? MediaType.APPLICATION_OCTET_STREAM : contentType);
+        return response.writeWith(exchange.getRequest().getBody());
+    }
+
+    /**
+     * multipart 上传，逐个读完各 part 并返回每个字段名对应的字节数
+     */
+    @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<Map<String, Long>> upload(@RequestBody Flux<Part> parts) {
+        return parts.concatMap(part -> part.content()
+                        .map(dataBuffer -> {
+                            long size = dataBuffer.readableByteCount();
+                            DataBufferUtils.release(dataBuffer);
+                            return size;
+                        })
+                        .reduce(0L, Long::sum)
+                        .map(size -> Tuples.of(part.name(), size)))
+                .collectMap(Tuple2::getT1, Tuple2::getT2);
+    }
+
+    /**
+     * 读完请求体后返回 size 字节的 JSON 文本，按 64KB 分块写出；gzip=true 时返回预先压缩的内容并带上 Content-Encoding
+     */
+    @RequestMapping(value = "/payload/{size}", method = {RequestMethod.GET, RequestMethod.POST})
+    public Mono<Void> payload(@PathVariable("size") int size,
+                              @RequestParam(value = "gzip", defaultValue = "false") boolean gzip,
+                              ServerWebExchange exchange) {
+        if (size < 0 || size > MAX_PAYLOAD_SIZE) {
+            return Mono.error(new IllegalArgumentException("size must be in [0, " + MAX_PAYLOAD_SIZE + "]"));
+        }
+        byte[] body = cachedPayload(size, gzip);
+        ServerHttpResponse response = exchange.getResponse();
+        response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+        if (gzip) {
+            response.getHeaders().set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        response.getHeaders().setContentLength(body.length);
+        DataBufferFactory bufferFactory = response.bufferFactory();
+        int chunks = (body.length + PAYLOAD_CHUNK_SIZE - 1) / PAYLOAD_CHUNK_SIZE;
+        return exchange.getRequest().getBody()
+                .doOnNext(DataBufferUtils::release)
+                .then(response.writeWith(Flux.range(0, chunks).map(i -> {
+                    int offset = i * PAYLOAD_CHUNK_SIZE;
+                    return bufferFactory.wrap(ByteBuffer.wrap(body, offset,
+                            Math.min(PAYLOAD_CHUNK_SIZE, body.length - offset)).slice());
+                })));
+    }
+
+    /**
+     * 逐条推送 count 条 NDJSON，intervalMillis 大于 0 时每条之间间隔对应时间
+     */
+    @GetMapping(value = "/stream", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ContentDTO> stream(@RequestParam(value = "count", defaultValue = "100") int count,
+                                   @RequestParam(value = "intervalMillis", defaultValue = "0") long intervalMillis) {
+        Flux<Integer> sequence = Flux.range(0, count);
+        if (intervalMillis > 0) {
+            sequence = sequence.delayElements(Duration.ofMillis(intervalMillis));
+        }
+        return sequence.map(i -> {
+            ContentDTO content = new ContentDTO();
+            content.setNum(i);
+            content.setStr("item-" + i);
+            content.setD(i * 0.5);
+            return content;
+        });
+    }
+
+    /**
+     * 逐条推送 count 个 SSE 事件，参数同 /stream
+     */
+    @GetMapping(value = "/stream/sse", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ContentDTO> streamSse(@RequestParam(value = "count", defaultValue = "100") int count,
+                                      @RequestParam(value = "intervalMillis", defaultValue = "0") long intervalMillis) {
+        return stream(count, intervalMillis);
+    }
+
+    /**
+     * 返回 Reactor Context 中的跟踪链和收到的 traceparent
+     */
+    @GetMapping("/trace")
+    public Mono<String> trace(@RequestHeader(name = TraceContext.TRACEPARENT, required = false) String traceparent) {
+        return TraceContext.current()
+                .map(trace -> trace.getTraceId() + " " + traceparent)
+                .defaultIfEmpty("none " + traceparent);
+    }
+
+    /**
+     * 用 WebClient 调用本服务的 /trace，验证跟踪链向下游传递
+     */
+    @GetMapping("/trace/forward")
+    public Mono<String> traceForward(ServerWebExchange exchange) {
+        URI uri = exchange.getRequest().getURI().resolve("/openapi/webflux/trace");
+        return webClient.get().uri(uri).retrieve().bodyToMono(String.class);
+    }
+
+    /**
+     * 从缓存取 payload，没有时在锁外生成再放入；请求的大小各不相同时缓存总量仍不超过 PAYLOAD_CACHE_BYTES
+     */
+    private static byte[] cachedPayload(int size, boolean gzip) {
+        String key = size + ":" + gzip;
+        synchronized (PAYLOADS) {
+            byte[] body = PAYLOADS.get(key);
+            if (body != null) {
+                return body;
+            }
+        }
+        byte[] body = buildPayload(size, gzip);
+        synchronized (PAYLOADS) {
+            byte[] existing = PAYLOADS.putIfAbsent(key, body);
+            if (existing != null) {
+                return existing;
+            }
+            payloadBytes += body.length;
+            Iterator<byte[]> eldest = PAYLOADS.values().iterator();
+            while (payloadBytes > PAYLOAD_CACHE_BYTES && PAYLOADS.size() > 1) {
+                payloadBytes -= eldest.next().length;
+                eldest.remove();
+            }
+        }
+        return body;
+    }
+
+    /**
+     * 恰好 size 字节的合法 JSON 数组：放得下的完整对象之后用空格补齐；size 为 1 时是 0，为 0 时是空内容
+     */
+    private static byte[] buildPayload(int size, boolean gzip) {
+        StringBuilder json = new StringBuilder(Math.max(size, 1));
+        if (size == 1) {
+            json.append('0');
+        } else if (size > 1) {
+            json.append('[');
+            for (int i = 0; ; i++) {
+                String item = "{\"num\":" + i + ",\"str\":\"item-" + i + "\",\"d\":0.5}";
+                int separator = i == 0 ? 0 : 1;
+                if (json.length() + separator + item.length() + 1 > size) {
+                    break;
+                }
+                if (separator > 0) {
+                    json.append(',');
+                }
+                json.append(item);
+            }
+            while (json.length() < size - 1) {
+                json.append(' ');
+            }
+            json.append(']');
+        }
+        byte[] plain = json.toString().getBytes(StandardCharsets.UTF_8);
+        if (!gzip) {
+            return plain;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(plain.length / 4 + 64);
+        try (GZIPOutputStream stream = new GZIPOutputStream(out)) {
+            stream.write(plain);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
 }
@@ -0,0 +1,91 @@
+package org.hypnos.webflux.dedup;
+
+/**
+ * 最近输出过完整内容的请求体/响应体哈希，8 路组相联：哈希的低位选组，组内按最近使用淘汰（组内 LRU），
+ * 整体是容量固定的近似 LRU。只有三个 long 数组，查询和插入不分配对象。
+ * 只被 sink 的消费线程使用，非线程安全
+ */
+public class BodyDigestCache {
+
+    private static final int WAYS = 8;
+
+    /**
+     * 空槽位，哈希恰好为 0 时按 1 存放
+     */
+    private static final long EMPTY = 0;
+
+    private final long[] hashes;
+
+    /**
+     * 最近一次命中或插入时的逻辑时钟，组内最小的最先淘汰
+     */
+    private final long[] lastUsed;
+
+    /**
+     * 上次输出完整内容的时间（epoch 毫秒）
+     */
+    private final long[] emittedAt;
+
+    private final int setMask;
+
+    private final long refreshMillis;
+
+    private long clock;
+
+    private volatile long evictions;
+
+    /**
+     * @param capacity 保留的哈希数，向上取整为 8 的倍数且组数为 2 的幂
+     * @param refreshMillis 距上次输出完整内容超过该时长后视为未见过，重新输出一次，避免引用指向已滚动删除的日志文件；0 表示不刷新
+     */
+    public BodyDigestCache(int capacity, long refreshMillis) {
+        int sets = Math.max(1, (capacity + WAYS - 1) / WAYS);
+        sets = 1 << (32 - Integer.numberOfLeadingZeros(Math.max(2, sets) - 1));
+        this.hashes = new long[sets * WAYS];
+        this.lastUsed = new long[sets * WAYS];
+        this.emittedAt = new long[sets * WAYS];
+        this.setMask = sets - 1;
+        this.refreshMillis = refreshMillis;
+    }
+
+    /**
+     * 查询并记录一次出现
+     * @return 之前已输出过完整内容时为 true；为 false 时调用方需要输出完整内容
+     */
+    public boolean seen(long hash, long nowMillis) {
+        long key = hash == EMPTY ? 1 : hash;
+        int base = ((int) (key ^ (key >>> 32)) & setMask) * WAYS;
+        int victim = base;
+        for (int i = base; i < base + WAYS; i++) {
+            if (hashes[i] == key) {
+                lastUsed[i] = ++clock;
+                if (refreshMillis > 0 && nowMillis - emittedAt[i] >= refreshMillis) {
+                    emittedAt[i] = nowMillis;
+                    return false;
+                }
+                return true;
+            }
+            if (lastUsed[i] < lastUsed[victim]) {
+                victim = i;
+            }
+        }
+        if (hashes[victim] != EMPTY) {
+            evictions++;
+        }
+        hashes[victim] = key;
+        lastUsed[victim] = ++clock;
+        emittedAt[victim] = nowMillis;
+        return false;
+    }
+
+    public int capacity() {
+        return hashes.length;
+    }
+
+    /**
+     * 因组内已满被淘汰的哈希数
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+}
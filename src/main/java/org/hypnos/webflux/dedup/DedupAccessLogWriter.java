@@ -0,0 +1,122 @@
+package org.hypnos.webflux.dedup;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.BodyRenderer;
+import org.hypnos.webflux.sink.AccessLogWriter;
+import org.hypnos.webflux.vo.HttpAccLog;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 在 {@link org.hypnos.webflux.sink.AsyncAccessLogSink} 的消费线程上对捕获的请求体/响应体去重后再交给实际的写入器。
+ * 每个不小于 minBodyBytes 的请求体/响应体计算 XXH64 并写入 requestBodyHash/responseBodyHash；
+ * 哈希在 {@link BodyDigestCache} 中时只输出哈希，省略内容，第一次出现、被淘汰或超过刷新间隔后输出完整内容。
+ * 只处理尚未渲染的捕获字节，已经渲染成字符串的提示信息原样输出
+ */
+public class DedupAccessLogWriter implements AccessLogWriter {
+
+    private final AccessLogWriter delegate;
+
+    private final BodyDigestCache cache;
+
+    private final int minBodyBytes;
+
+    private volatile long hits;
+
+    private volatile long misses;
+
+    private volatile long savedBytes;
+
+    /**
+     * @param minBodyBytes 小于该字节数的内容不去重，省下的字节抵不过哈希本身
+     */
+    public DedupAccessLogWriter(AccessLogWriter delegate, BodyDigestCache cache, int minBodyBytes) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.minBodyBytes = Math.max(1, minBodyBytes);
+    }
+
+    @Override
+    public void write(List<HttpAccLog> batch) throws IOException {
+        long now = System.currentTimeMillis();
+        for (HttpAccLog httpAccLog : batch) {
+            BodyCapture requestCapture = httpAccLog.requestCapture();
+            if (requestCapture != null && requestCapture.getCaptured() >= minBodyBytes) {
+                long hash = XxHash64.hash(requestCapture.asReadOnlyBuffer(), 0);
+                httpAccLog.setRequestBodyHash(XxHash64.toHex(hash));
+                if (seen(hash, now, requestCapture.getCaptured())) {
+                    httpAccLog.omitRequestBody();
+                }
+            }
+            BodyCapture responseCapture = httpAccLog.responseCapture();
+            if (responseCapture != null && responseCapture.getCaptured() >= minBodyBytes
+                    && BodyRenderer.rendersResponseBytes(responseCapture, httpAccLog.responseEncoding())) {
+                long hash = XxHash64.hash(responseCapture.asReadOnlyBuffer(), 0);
+                httpAccLog.setResponseBodyHash(XxHash64.toHex(hash));
+                if (seen(hash, now, responseCapture.getCaptured())) {
+                    httpAccLog.omitResponseBody();
+                }
+            }
+        }
+        delegate.write(batch);
+    }
+
+    private boolean seen(long hash, long now, int bytes) {
+        if (cache.seen(hash, now)) {
+            hits++;
+            savedBytes += bytes;
+            return true;
+        }
+        misses++;
+        return false;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+
+    /**
+     * 只输出哈希的次数
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * 输出完整内容的次数
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * 累计命中次数占比，还没有参与去重的内容时为 0
+     */
+    public double getHitRatio() {
+        long h = hits;
+        long total = h + misses;
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    /**
+     * 省略输出的捕获字节数
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    public long getEvictions() {
+        return cache.getEvictions();
+    }
+
+    public int getCapacity() {
+        return cache.capacity();
+    }
+}
@@ -0,0 +1,98 @@
+package org.hypnos.webflux.dedup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * XXH64 非加密哈希，用于识别重复的请求体/响应体，不能用于安全相关的校验。
+ * 直接按小端 8 字节读取 ByteBuffer，堆外缓冲区也不需要先复制到堆上
+ */
+public final class XxHash64 {
+
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private XxHash64() {
+    }
+
+    /**
+     * 计算 buffer 中 position 到 limit 之间的字节，不改变 position 和 limit，会把 buffer 的字节序设为小端
+     */
+    public static long hash(ByteBuffer buffer, long seed) {
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        int offset = buffer.position();
+        int end = buffer.limit();
+        long h;
+        if (end - offset >= 32) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+            int last = end - 32;
+            do {
+                v1 = round(v1, buffer.getLong(offset));
+                v2 = round(v2, buffer.getLong(offset + 8));
+                v3 = round(v3, buffer.getLong(offset + 16));
+                v4 = round(v4, buffer.getLong(offset + 24));
+                offset += 32;
+            } while (offset <= last);
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = merge(h, v1);
+            h = merge(h, v2);
+            h = merge(h, v3);
+            h = merge(h, v4);
+        } else {
+            h = seed + P5;
+        }
+        h += end - buffer.position();
+        while (offset + 8 <= end) {
+            h ^= round(0, buffer.getLong(offset));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+            offset += 8;
+        }
+        if (offset + 4 <= end) {
+            h ^= (buffer.getInt(offset) & 0xFFFFFFFFL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            offset += 4;
+        }
+        while (offset < end) {
+            h ^= (buffer.get(offset) & 0xFF) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+            offset++;
+        }
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    /**
+     * 固定 16 位的小写十六进制
+     */
+    public static String toHex(long hash) {
+        char[] chars = new char[16];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX[(int) hash & 0xF];
+            hash >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * P1;
+    }
+
+    private static long merge(long acc, long value) {
+        acc ^= round(0, value);
+        return acc * P1 + P4;
+    }
+}
@@ -0,0 +1,30 @@
+package org.hypnos.webflux.filter;
+
+import org.hypnos.webflux.vo.RequestPhases;
+import org.springframework.core.Ordered;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/**
+ * 排在所有 WebFilter 之后，记录请求走完过滤器链、进入 handler 的时刻，
+ * 与 {@link RequestResponseLoggingFilter} 配合输出阶段耗时。网关转发的请求，handler 是网关的 FilteringWebHandler
+ */
+public class HandlerStartFilter implements WebFilter, Ordered {
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        // 过滤器链按订阅逐个调用，这里被调用时前面的过滤器都已执行完
+        RequestPhases phases = exchange.getAttribute(RequestResponseLoggingFilter.PHASES_ATTR);
+        if (phases != null) {
+            phases.mark(RequestPhases.HANDLER_START);
+        }
+        return chain.filter(exchange);
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.LOWEST_PRECEDENCE;
+    }
+}
@@ -1,277 +1,621 @@
 package org.hypnos.webflux.filter;
 
-import org.hypnos.webflux.rewrite.LoggingCachedBodyOutputMessage;
-import org.hypnos.webflux.support.LoggingBodyInserterContext;
-import org.hypnos.webflux.utils.TimeUtil;
-import org.hypnos.webflux.utils.TmpIpUtil;
+import org.hypnos.webflux.address.ClientAddressResolver;
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.capture.CaptureOffloadStage;
+import org.hypnos.webflux.capture.MultipartScanner;
+import org.hypnos.webflux.capture.decode.ContentDecoder;
+import org.hypnos.webflux.metrics.ContentTypeOutcome;
+import org.hypnos.webflux.metrics.LoggingFilterMetrics;
+import org.hypnos.webflux.policy.CaptureDecision;
+import org.hypnos.webflux.policy.CaptureLevel;
+import org.hypnos.webflux.policy.CapturePolicy;
+import org.hypnos.webflux.policy.CapturePolicyRegistry;
+import org.hypnos.webflux.policy.LoadSheddingPolicy;
+import org.hypnos.webflux.policy.MultipartCapturePolicy;
+import org.hypnos.webflux.policy.StreamCapturePolicy;
+import org.hypnos.webflux.policy.TailCapturePolicy;
+import org.hypnos.webflux.rewrite.CapturingServerHttpRequest;
+import org.hypnos.webflux.sink.AccessLogSink;
+import org.hypnos.webflux.trace.TraceContext;
 import org.hypnos.webflux.vo.HttpAccLog;
+import org.hypnos.webflux.vo.RequestPhases;
 import org.reactivestreams.Publisher;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.core.io.buffer.DataBuffer;
-import org.springframework.core.io.buffer.DataBufferFactory;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.ReactiveHttpOutputMessage;
-import org.springframework.http.codec.HttpMessageReader;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.server.reactive.ServerHttpRequest;
-import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
 import org.springframework.http.server.reactive.ServerHttpResponse;
 import org.springframework.http.server.reactive.ServerHttpResponseDecorator;
-import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
-import org.springframework.util.MultiValueMap;
 import org.springframework.web.reactive.HandlerMapping;
-import org.springframework.web.reactive.function.BodyInserter;
-import org.springframework.web.reactive.function.BodyInserters;
-import org.springframework.web.reactive.function.server.HandlerStrategies;
-import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.server.ServerWebExchange;
 import org.springframework.web.server.WebFilter;
 import org.springframework.web.server.WebFilterChain;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Collections;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-//@Component
+/**
+ * 请求响应日志过滤器，由 {@link org.hypnos.webflux.config.AccessLogConfiguration} 装配
+ */
 @Order(Ordered.HIGHEST_PRECEDENCE)
 public class RequestResponseLoggingFilter implements WebFilter {
 
-    private static final Logger logger = LoggerFactory.getLogger(RequestResponseLoggingFilter.class);
+    /**
+     * 当前请求生效的 {@link CapturePolicy}，网关匹配到路由后可以替换，请求体被订阅和响应开始写出时读取
+     */
+    public static final String CAPTURE_POLICY_ATTR = RequestResponseLoggingFilter.class.getName() + ".capturePolicy";
+
+    /**
+     * 日志中的路由名，优先于 WebFlux 的路由模板，网关转发的请求为路由 id
+     */
+    public static final String ROUTE_ATTR = RequestResponseLoggingFilter.class.getName() + ".route";
+
+    /**
+     * 网关开始转发的 {@link System#nanoTime()}，响应开始写出时据此计算上游耗时
+     */
+    public static final String UPSTREAM_START_ATTR = RequestResponseLoggingFilter.class.getName() + ".upstreamStart";
+
+    /**
+     * 当前请求的 {@link RequestPhases}，{@link HandlerStartFilter} 据此记录进入 handler 的时刻
+     */
+    public static final String PHASES_ATTR = RequestResponseLoggingFilter.class.getName() + ".phases";
+
+    private final AccessLogSink accessLogSink;
+
+    private final CaptureBufferPool captureBufferPool;
+
+    private final ClientAddressResolver addressResolver;
+
+    private final CapturePolicyRegistry capturePolicies;
+
+    private final TailCapturePolicy tailCapturePolicy;
+
+    private final StreamCapturePolicy streamCapturePolicy;
 
-    private static final String LOG_START_TIME = "_LOG_START_TIME_";
+    private final MultipartCapturePolicy multipartCapturePolicy;
 
-    private static final int LIMIT_SIZE = 2000;
+    private final LoggingFilterMetrics metrics;
 
-    private final List<HttpMessageReader<?>> messageReaders = HandlerStrategies.withDefaults().messageReaders();
+    private final CaptureOffloadStage offloadStage;
 
+    private final LoadSheddingPolicy loadShedding;
+
+    /**
+     * @param offloadStage 解压和脱敏延后到工作线程执行，null 表示在 event loop 上随数据流执行
+     * @param loadShedding 按节点压力降低捕获级别
+     */
+    public RequestResponseLoggingFilter(AccessLogSink accessLogSink, CaptureBufferPool captureBufferPool,
+                                        ClientAddressResolver addressResolver, CapturePolicyRegistry capturePolicies,
+                                        TailCapturePolicy tailCapturePolicy, StreamCapturePolicy streamCapturePolicy,
+                                        MultipartCapturePolicy multipartCapturePolicy, LoggingFilterMetrics metrics,
+                                        CaptureOffloadStage offloadStage, LoadSheddingPolicy loadShedding) {
+        this.accessLogSink = accessLogSink;
+        this.captureBufferPool = captureBufferPool;
+        this.addressResolver = addressResolver;
+        this.capturePolicies = capturePolicies;
+        this.tailCapturePolicy = tailCapturePolicy;
+        this.streamCapturePolicy = streamCapturePolicy;
+        this.multipartCapturePolicy = multipartCapturePolicy;
+        this.metrics = metrics;
+        this.offloadStage = offloadStage;
+        this.loadShedding = loadShedding;
+    }
 
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        long startNanos = System.nanoTime();
         long startTime = System.currentTimeMillis();
-        exchange.getAttributes().put(LOG_START_TIME, startTime);
 
         ServerHttpRequest request = exchange.getRequest();
         String requestPath = request.getPath().pathWithinApplication().value();
+        String method = request.getMethodValue();
+        CapturePolicy policy = loadShedding.apply(capturePolicies.resolve(method, requestPath));
+        if (policy.getLevel() == CaptureLevel.NONE) {
+            return chain.filter(exchange);
+        }
 
+        TraceContext trace = TraceContext.resolve(request.getHeaders());
         HttpAccLog httpAccLog = new HttpAccLog();
-        httpAccLog.setMethod(request.getMethodValue());
+        httpAccLog.setTraceId(trace.getTraceId());
+        httpAccLog.setMethod(method);
         httpAccLog.setPath(requestPath);
-        httpAccLog.setServerAddr(TmpIpUtil.getServerAddr());
-        httpAccLog.setReqTime(TimeUtil.getFormatStrFromMillis(startTime));
-        httpAccLog.setRemoteAddr(TmpIpUtil.getIp(request));
-        MediaType mediaType = request.getHeaders().getContentType();
+        httpAccLog.setServerAddr(addressResolver.getServerAddr());
+        httpAccLog.setReqTime(startTime);
+        httpAccLog.setRemoteAddr(addressResolver.resolveClientAddr(request));
+        RequestPhases phases = new RequestPhases(startNanos);
+        httpAccLog.setPhases(phases);
 
-        if (mediaType == null || MediaType.APPLICATION_FORM_URLENCODED.isCompatibleWith(mediaType) || MediaType.APPLICATION_JSON.isCompatibleWith(mediaType)) {
-            return writeBodyLog(exchange, chain, httpAccLog);
+        Map<String, Object> attributes = exchange.getAttributes();
+        attributes.put(CAPTURE_POLICY_ATTR, policy);
+        attributes.put(TraceContext.EXCHANGE_ATTR, trace);
+        attributes.put(PHASES_ATTR, phases);
+        LoggingResponse decoratedResponse = new LoggingResponse(exchange, httpAccLog, policy, startNanos);
+        ServerWebExchange.Builder builder = exchange.mutate().response(decoratedResponse);
+        if (hasBody(request)) {
+            // 流式分流请求体：handler 收到的仍是原始 DataBuffer，日志只保留策略允许的前若干字节
+            builder.request(new CapturingServerHttpRequest(request, decoratedResponse::captureRequest,
+                    decoratedResponse::requestBodyComplete));
         } else {
-            return writeBasicLog(exchange, chain, httpAccLog);
+            metrics.recordContentType(ContentTypeOutcome.REQUEST_BODYLESS);
         }
-    }
-
-    private Mono<Void> writeBasicLog(ServerWebExchange exchange, WebFilterChain chain, HttpAccLog accessLog) {
-        StringBuilder builder = new StringBuilder();
-        exchange.getRequest().getQueryParams().forEach((key, value)
-                -> builder.append(key).append("=").append(String.join(",", value)));
-        accessLog.setRequestBody(builder.toString());
-        ServerHttpResponseDecorator decoratedResponse = recordResponseLog(exchange, accessLog);
-        return chain.filter(exchange.mutate().response(decoratedResponse).build());
+        // 跟踪链随订阅传给 handler 和下游 WebClient 调用，见 TraceContext#current
+        Mono<Void> result = chain.filter(builder.build())
+                .doOnTerminate(decoratedResponse::chainTerminated)
+                .doOnCancel(decoratedResponse::chainCancelled)
+                .contextWrite(context -> context.put(TraceContext.CONTEXT_KEY, trace));
+        long setupNanos = System.nanoTime() - startNanos;
+        phases.addFilterNanos(setupNanos);
+        metrics.recordSetup(setupNanos);
+        return result;
     }
 
     /**
-     * 解决 request body 只能读取一次问题，
-     * 参考: org.springframework.cloud.gateway.filter.factory.rewrite.ModifyRequestBodyGatewayFilterFactory
+     * 按请求头判断是否有请求体，没有时不装饰请求。
+     * HTTP/1.1 既没有 Content-Length 也没有 Transfer-Encoding 的请求没有请求体（RFC 7230 3.3.3），
+     * HTTP/2 可以不带 Content-Length 发送请求体，因此只对通常不带请求体的 method 按此判断
      */
-    private Mono<Void> writeBodyLog(ServerWebExchange exchange, WebFilterChain chain, HttpAccLog httpAccLog) {
-        ServerRequest serverRequest = ServerRequest.create(exchange, messageReaders);
-
-        Mono<String> modifiedBody = serverRequest.bodyToMono(String.class)
-                .flatMap(body ->{
-                    httpAccLog.setRequestBody(body);
-                    return Mono.just(body);
-                });
-
-        // 通过 BodyInserter 插入 body(支持修改body), 避免 request body 只能获取一次
-        BodyInserter<Mono<String>, ReactiveHttpOutputMessage> bodyInserter = BodyInserters.fromPublisher(modifiedBody, String.class);
-        HttpHeaders headers = new HttpHeaders();
-        headers.putAll(exchange.getRequest().getHeaders());
-        headers.remove(HttpHeaders.CONTENT_LENGTH);
-        LoggingCachedBodyOutputMessage outputMessage = new LoggingCachedBodyOutputMessage(exchange, headers);
-
-        return bodyInserter.insert(outputMessage, new LoggingBodyInserterContext())
-                .then(Mono.defer(() -> {
-                    ServerHttpRequest decoratedRequest = requestDecorate(exchange, headers, outputMessage);
-                    ServerHttpResponseDecorator decoratedResponse = recordResponseLog(exchange, httpAccLog);
-                    return chain.filter(exchange.mutate().request(decoratedRequest).response(decoratedResponse).build());
-                }));
+    private static boolean hasBody(ServerHttpRequest request) {
+        HttpHeaders headers = request.getHeaders();
+        String contentLength = headers.getFirst(HttpHeaders.CONTENT_LENGTH);
+        if (contentLength != null) {
+            return !"0".equals(contentLength);
+        }
+        if (headers.containsKey(HttpHeaders.TRANSFER_ENCODING)) {
+            return true;
+        }
+        HttpMethod method = request.getMethod();
+        return method != HttpMethod.GET && method != HttpMethod.HEAD && method != HttpMethod.DELETE
+                && method != HttpMethod.OPTIONS && method != HttpMethod.TRACE;
     }
 
     /**
-     * 打印日志
-     * @param httpAccLog 网关日志
+     * 记录响应日志，响应写完后组装访问日志
      */
-    private void writeAccessLog(ServerWebExchange exchange, HttpAccLog httpAccLog) {
-        httpAccLog.setStatusCode(exchange.getResponse().getRawStatusCode());
-        httpAccLog.setPathVariables(getPathParams(exchange));
-        httpAccLog.setQueryParams(getQueryParams(exchange.getRequest().getQueryParams()));
-        logger.info(httpAccLog.toString());
-    }
+    private class LoggingResponse extends ServerHttpResponseDecorator {
 
-    /**
-     * 请求装饰器，重新计算 headers
-     */
-    private ServerHttpRequestDecorator requestDecorate(ServerWebExchange exchange, HttpHeaders headers,
-                                                       LoggingCachedBodyOutputMessage outputMessage) {
-        return new ServerHttpRequestDecorator(exchange.getRequest()) {
-            @Override
-            public HttpHeaders getHeaders() {
-                long contentLength = headers.getContentLength();
-                HttpHeaders httpHeaders = new HttpHeaders();
-                httpHeaders.putAll(super.getHeaders());
-                if (contentLength > 0) {
-                    httpHeaders.setContentLength(contentLength);
-                } else {
-                    httpHeaders.set(HttpHeaders.TRANSFER_ENCODING, "chunked");
+        private final ServerWebExchange exchange;
+
+        private final HttpAccLog httpAccLog;
+
+        private final CapturePolicy initialPolicy;
+
+        private final long startNanos;
+
+        private final RequestPhases phases;
+
+        private BodyCapture requestCapture;
+
+        private MultipartScanner multipartScanner;
+
+        private BodyCapture responseCapture;
+
+        private ContentDecoder responseDecoder;
+
+        /**
+         * 延后解压时流经的压缩前缀，分流阶段只复制不解压
+         */
+        private BodyCapture compressedResponse;
+
+        private String responseEncoding;
+
+        private long decodeNanos;
+
+        private long upstreamNanos = -1;
+
+        private long responseBytes;
+
+        /**
+         * 流式响应的事件数，非流式响应为 -1
+         */
+        private int responseEvents = -1;
+
+        private long lastProgressNanos;
+
+        private boolean responseStarted;
+
+        private boolean completed;
+
+        LoggingResponse(ServerWebExchange exchange, HttpAccLog httpAccLog, CapturePolicy initialPolicy,
+                        long startNanos) {
+            super(exchange.getResponse());
+            this.exchange = exchange;
+            this.httpAccLog = httpAccLog;
+            this.initialPolicy = initialPolicy;
+            this.startNanos = startNanos;
+            this.lastProgressNanos = startNanos;
+            this.phases = httpAccLog.getPhases();
+        }
+
+        private CapturePolicy policy() {
+            return exchange.getAttributeOrDefault(CAPTURE_POLICY_ATTR, initialPolicy);
+        }
+
+        /**
+         * 请求体被订阅时调用，返回 null 表示不捕获。重复订阅（如网关重试）继续追加到同一个捕获，响应写完后不再捕获。
+         * multipart 请求只扫描各 part 的元数据，扫描器读到结束分隔符后忽略重复的请求体
+         */
+        Consumer<DataBuffer> captureRequest() {
+            if (completed) {
+                return null;
+            }
+            if (multipartScanner != null) {
+                return multipartScanner::scan;
+            }
+            if (requestCapture != null) {
+                return requestCapture::append;
+            }
+            CapturePolicy policy = policy();
+            String contentType = exchange.getRequest().getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+            String boundary = multipartCapturePolicy.applies(policy) ? MultipartScanner.boundary(contentType) : null;
+            if (boundary != null) {
+                metrics.recordContentType(ContentTypeOutcome.REQUEST_MULTIPART);
+                multipartScanner = new MultipartScanner(boundary, multipartCapturePolicy.getMaxParts(),
+                        multipartCapturePolicy.textLimit(policy), multipartCapturePolicy.getMaxHeaderBytes(),
+                        policy::redactsField);
+                return multipartScanner::scan;
+            }
+            if (!policy.captureRequest(contentType)) {
+                metrics.recordContentType(ContentTypeOutcome.REQUEST_SKIPPED);
+                return null;
+            }
+            metrics.recordContentType(ContentTypeOutcome.REQUEST_CAPTURED);
+            requestCapture = new BodyCapture(captureBufferPool, policy.getRequestLimit(),
+                    policy.createRedactor(contentType));
+            if (offloadStage != null) {
+                requestCapture.deferRedaction();
+            }
+            httpAccLog.setRequestCapture(requestCapture);
+            return requestCapture::append;
+        }
+
+        void requestBodyComplete() {
+            phases.mark(RequestPhases.REQUEST_BODY_END);
+        }
+
+        /**
+         * 过滤器链结束（handler 完成或抛出异常）时响应还没有经过本装饰器写出：
+         * 异常由外层的 WebExceptionHandler 写出错误响应，返回 Mono&lt;Void&gt; 的 handler 由 HttpWebHandlerAdapter 提交空响应，
+         * 两者都直接写原始响应，这里在原始响应提交时补记日志。这类响应不捕获响应体，最后一个字节的时刻按提交时刻记录
+         */
+        void chainTerminated() {
+            if (responseStarted) {
+                return;
+            }
+            ServerHttpResponse response = getDelegate();
+            if (response.isCommitted()) {
+                completeWithoutBody();
+                return;
+            }
+            response.beforeCommit(() -> {
+                completeWithoutBody();
+                return Mono.empty();
+            });
+        }
+
+        /**
+         * 客户端在响应开始前断开，按当前状态记录
+         */
+        void chainCancelled() {
+            if (!responseStarted) {
+                completeWithoutBody();
+            }
+        }
+
+        private void completeWithoutBody() {
+            if (startResponse()) {
+                complete();
+            }
+        }
+
+        @Override
+        public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
+            if (!startResponse()) {
+                return super.writeWith(body);
+            }
+            boolean capture = startResponseCapture();
+            return super.writeWith(tap(body, capture)).doFinally(signal -> finishResponse());
+        }
+
+        /**
+         * 流式响应：每个内层 Publisher 写完后 flush 一次，视为一个事件。
+         * 只在数据流过时计数和复制前若干个事件，不缓冲、不改变 flush 时机
+         */
+        @Override
+        public Mono<Void> writeAndFlushWith(Publisher<? extends Publisher<? extends DataBuffer>> body) {
+            if (!startResponse()) {
+                return super.writeAndFlushWith(body);
+            }
+            responseEvents = 0;
+            boolean capture = startResponseCapture();
+            Flux<? extends Publisher<? extends DataBuffer>> events = Flux.from(body).map(event -> {
+                boolean captureEvent = capture && responseEvents < streamCapturePolicy.getEventLimit();
+                responseEvents++;
+                long now = System.nanoTime();
+                if (streamCapturePolicy.progressDue(lastProgressNanos, now)) {
+                    lastProgressNanos = now;
+                    writeProgress();
                 }
-                return httpHeaders;
+                return tap(event, captureEvent);
+            });
+            return super.writeAndFlushWith(events).doFinally(signal -> finishResponse());
+        }
+
+        /**
+         * 没有响应体的响应，如 204、重定向和返回 Mono&lt;Void&gt; 的 handler
+         */
+        @Override
+        public Mono<Void> setComplete() {
+            if (!startResponse()) {
+                return super.setComplete();
             }
+            return super.setComplete().doFinally(signal -> finishResponse());
+        }
 
-            @Override
-            public Flux<DataBuffer> getBody() {
-                return outputMessage.getBody();
+        /**
+         * 响应头即将写出，记录上游耗时。同一个响应只处理第一次写出，之后的调用直接交给被装饰的响应
+         * @return 是否为第一次写出
+         */
+        private boolean startResponse() {
+            if (responseStarted) {
+                return false;
             }
-        };
-    }
+            responseStarted = true;
+            long now = System.nanoTime();
+            phases.set(RequestPhases.RESPONSE_COMMIT, now - startNanos);
+            Long upstreamStart = exchange.getAttribute(UPSTREAM_START_ATTR);
+            if (upstreamStart != null) {
+                upstreamNanos = now - upstreamStart;
+                httpAccLog.setUpstreamTime(TimeUnit.NANOSECONDS.toMillis(upstreamNanos));
+            }
+            return true;
+        }
 
-    /**
-     * 记录响应日志
-     * 通过 DataBufferFactory 解决响应体分段传输问题。
-     */
-    private ServerHttpResponseDecorator recordResponseLog(ServerWebExchange exchange, HttpAccLog httpAccLog) {
-        ServerHttpResponse response = exchange.getResponse();
-        DataBufferFactory bufferFactory = response.bufferFactory();
-
-        return new ServerHttpResponseDecorator(response) {
-            @Override
-            public Mono<Void> writeWith(Publisher<? extends DataBuffer> body) {
-                long rspTime = System.currentTimeMillis();
-                httpAccLog.setRspTime(TimeUtil.getFormatStrFromMillis(rspTime));
-                httpAccLog.setProcessTime(rspTime - (long)exchange.getAttribute(LOG_START_TIME));
-
-                // TODO: 粗暴写法，待优化
-                String contentEncoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
-                if (isTextResponse(response)) {
-                    // 分流方式记录响应体日志
-                    AtomicInteger loggedBytes = new AtomicInteger(0); // 记录已记录的字节数
-                    byte[] content = new byte[LIMIT_SIZE];
-
-                    Flux<DataBuffer> splitBody = Flux.from(body).map(dataBuffer -> {
-                        if (loggedBytes.get() < LIMIT_SIZE) {
-                            int readableBytes = dataBuffer.readableByteCount();
-                            int bytesToLog = Math.min(LIMIT_SIZE - loggedBytes.get(), readableBytes);
-                            dataBuffer.read(content, loggedBytes.get(), bytesToLog);
-                            loggedBytes.addAndGet(bytesToLog);
-                            dataBuffer.readPosition(0); // 重置读取位置
-                        }
-                        return dataBuffer;
-                    });
-                    return super.writeWith(splitBody)
-                            .doFinally(signal -> {
-                                httpAccLog.setResponseBody(processResponseContent(content, loggedBytes.get(), contentEncoding));
-                                writeAccessLog(exchange, httpAccLog);
-                            });
+        /**
+         * 按策略准备响应体捕获，字节写入池化的堆外缓冲区，压缩响应边流过边解压
+         * @return 是否捕获
+         */
+        private boolean startResponseCapture() {
+            CapturePolicy policy = policy();
+            ServerHttpResponse response = getDelegate();
+            String contentType = response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
+            if (!policy.captureResponse(contentType)) {
+                metrics.recordContentType(ContentTypeOutcome.RESPONSE_SKIPPED);
+                return false;
+            }
+            String contentEncoding = response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING);
+            BodyCapture capture = new BodyCapture(captureBufferPool, policy.getResponseLimit(),
+                    policy.createRedactor(contentType));
+            if (contentEncoding == null || "identity".equalsIgnoreCase(contentEncoding)) {
+                metrics.recordContentType(ContentTypeOutcome.RESPONSE_CAPTURED);
+                if (offloadStage != null) {
+                    capture.deferRedaction();
                 }
-                return super.writeWith(body).doFinally(signal -> writeAccessLog(exchange, httpAccLog));
+                responseCapture = capture;
+                httpAccLog.setResponseCapture(capture, null);
+                return true;
             }
-        };
-    }
+            if (offloadStage != null && ContentDecoder.supports(contentEncoding)) {
+                // 只保留有界的压缩前缀，请求结束后由工作线程解压，解压结果写入 capture 时脱敏
+                metrics.recordContentType(ContentTypeOutcome.RESPONSE_CAPTURED);
+                responseCapture = capture;
+                responseEncoding = contentEncoding;
+                compressedResponse = new BodyCapture(captureBufferPool,
+                        policy.getResponseLimit() * ContentDecoder.COMPRESSED_BUDGET_FACTOR);
+                httpAccLog.setResponseCapture(capture, contentEncoding, compressedResponse);
+                return true;
+            }
+            ContentDecoder decoder = ContentDecoder.create(contentEncoding, capture, captureBufferPool);
+            if (decoder == null) {
+                capture.release();
+                metrics.recordContentType(ContentTypeOutcome.RESPONSE_UNSUPPORTED_ENCODING);
+                httpAccLog.setResponseBody("Unsupported content encoding: " + contentEncoding);
+                return false;
+            }
+            metrics.recordContentType(ContentTypeOutcome.RESPONSE_CAPTURED);
+            responseCapture = capture;
+            responseDecoder = decoder;
+            responseEncoding = contentEncoding;
+            httpAccLog.setResponseCapture(capture, contentEncoding);
+            return true;
+        }
 
+        /**
+         * 在数据流过时计数，capture 为 true 时同时复制到捕获缓冲。单个 DataBuffer 的 Mono 保持为 Mono
+         */
+        @SuppressWarnings("unchecked")
+        private <T extends DataBuffer> Publisher<T> tap(Publisher<T> body, boolean capture) {
+            if (body instanceof Mono) {
+                return ((Mono<T>) body).doOnNext(dataBuffer -> onResponseChunk(dataBuffer, capture));
+            }
+            return Flux.from(body).doOnNext(dataBuffer -> onResponseChunk(dataBuffer, capture));
+        }
 
-    private String processResponseContent(byte[] content, int loggedBytes, String contentEncoding) {
-        if (loggedBytes == LIMIT_SIZE) {
-            return "response entity exceeds the limit 2000 bytes";
+        private void onResponseChunk(DataBuffer dataBuffer, boolean capture) {
+            phases.markOnce(RequestPhases.FIRST_BYTE);
+            responseBytes += dataBuffer.readableByteCount();
+            if (!capture) {
+                return;
+            }
+            if (responseDecoder == null) {
+                (compressedResponse != null ? compressedResponse : responseCapture).append(dataBuffer);
+                return;
+            }
+            long start = System.nanoTime();
+            responseDecoder.decode(dataBuffer);
+            decodeNanos += System.nanoTime() - start;
         }
-        String responseResult;
-
-        // 如果是 Gzip 编码的响应体
-        if ("gzip".equalsIgnoreCase(contentEncoding)) {
-            try (ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(content, 0, loggedBytes);
-                 GZIPInputStream gzipInputStream = new GZIPInputStream(byteArrayInputStream);
-                 Reader reader = new InputStreamReader(gzipInputStream, StandardCharsets.UTF_8)) {
-
-                // 读取解压后的数据
-                StringBuilder stringBuilder = new StringBuilder();
-                char[] buffer = new char[1024];
-                int bytesRead;
-                while ((bytesRead = reader.read(buffer)) != -1) {
-                    stringBuilder.append(buffer, 0, bytesRead);
+
+        private void finishResponse() {
+            if (responseDecoder != null) {
+                long start = System.nanoTime();
+                responseDecoder.finish();
+                decodeNanos += System.nanoTime() - start;
+                metrics.recordDecode(decodeNanos, responseDecoder.isFailed());
+                if (responseDecoder.isFailed()) {
+                    httpAccLog.setResponseBody("Failed to decode " + responseEncoding + " response");
                 }
-                responseResult = stringBuilder.toString();
-            } catch (IOException e) {
-                responseResult = "Failed to decode gzip response";
             }
-        } else {
-            // TODO: deflate，br等其它压缩格式 ==
-            // 如果是文本内容，直接用 UTF-8 解码
-            try {
-                responseResult = new String(content, 0, loggedBytes, StandardCharsets.UTF_8);
-            } catch (Exception e) {
-                // 如果无法解码为 UTF-8，则返回二进制数据的提示
-                responseResult = "Binary or unsupported content type";
+            complete();
+        }
+
+        /**
+         * 记录耗时和计数，请求结束时调用则耗时截至最后一个字节交给服务器写出
+         */
+        private void recordTiming(HttpAccLog target) {
+            long rspTime = System.currentTimeMillis();
+            target.setRspTime(rspTime);
+            target.setProcessTime(rspTime - httpAccLog.getReqTimeMillis());
+            long firstByte = phases.get(RequestPhases.FIRST_BYTE);
+            if (firstByte >= 0) {
+                target.setFirstByteTime(TimeUnit.NANOSECONDS.toMillis(firstByte));
+                target.setResponseSize(responseBytes);
+            }
+            if (responseEvents >= 0) {
+                target.setResponseEvents(responseEvents);
             }
         }
-        if (MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(contentEncoding)) {
-            responseResult = "Binary data, not displayed";
+
+        /**
+         * 长连接流式响应的进度记录：只有元数据和截至目前的计数，不带捕获内容，不参与尾部采样
+         */
+        private void writeProgress() {
+            if (policy().getLevel() == CaptureLevel.NONE) {
+                return;
+            }
+            HttpAccLog progress = new HttpAccLog();
+            progress.setTraceId(httpAccLog.getTraceId());
+            progress.setMethod(httpAccLog.getMethod());
+            progress.setPath(httpAccLog.getPath());
+            progress.setServerAddr(httpAccLog.getServerAddr());
+            progress.setRemoteAddr(httpAccLog.getRemoteAddr());
+            progress.setReqTime(httpAccLog.getReqTimeMillis());
+            progress.setUpstreamTime(httpAccLog.getUpstreamTime());
+            progress.setStatusCode(exchange.getResponse().getRawStatusCode());
+            progress.setRoute(getRoute(exchange));
+            progress.setInProgress(Boolean.TRUE);
+            recordTiming(progress);
+            progress.setPathVariables(getPathParams(exchange));
+            progress.setRawQueryParams(exchange.getRequest().getQueryParams());
+            accessLogSink.accept(progress);
+        }
+
+        private void complete() {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            long completeStart = System.nanoTime();
+            phases.set(RequestPhases.LAST_BYTE, completeStart - startNanos);
+            sealCaptures();
+            if (policy().getLevel() == CaptureLevel.NONE) {
+                // 网关路由关闭了日志
+                httpAccLog.release();
+                return;
+            }
+            recordTiming(httpAccLog);
+            if (multipartScanner != null) {
+                httpAccLog.setFormData(multipartScanner.finish());
+                phases.addFilterNanos(multipartScanner.getScanNanos());
+            }
+            // 延后处理时捕获统计在工作线程解压和脱敏之后记录，否则要在尾部采样释放缓冲区之前读取
+            boolean offload = offloadStage != null && (requestCapture != null || responseCapture != null);
+            if (requestCapture != null) {
+                if (!offload) {
+                    metrics.recordCapture(true, requestCapture);
+                }
+                phases.addFilterNanos(requestCapture.getCaptureNanos());
+            }
+            if (responseCapture != null) {
+                if (!offload) {
+                    metrics.recordCapture(false, responseCapture);
+                }
+                // 解压耗时包含写入捕获缓冲的时间
+                phases.addFilterNanos(compressedResponse != null ? compressedResponse.getCaptureNanos()
+                        : responseDecoder != null ? decodeNanos : responseCapture.getCaptureNanos());
+            }
+            writeAccessLog(exchange, httpAccLog, completeStart, offload);
+            metrics.recordRequest(httpAccLog.getRoute(), httpAccLog.getStatusCode(), System.nanoTime() - startNanos);
+            if (upstreamNanos >= 0) {
+                metrics.recordUpstream(httpAccLog.getRoute(), upstreamNanos);
+            }
+        }
+
+        /**
+         * 记录交给工作线程或 sink 之前封存 event loop 还可能写入的捕获：响应先于请求体读完时，
+         * 迟到的请求体分块不能再改动已交出的缓冲区。延后解压的响应捕获由工作线程写入，只封存压缩前缀
+         */
+        private void sealCaptures() {
+            if (requestCapture != null) {
+                requestCapture.seal();
+            }
+            if (compressedResponse != null) {
+                compressedResponse.seal();
+            } else if (responseCapture != null) {
+                responseCapture.seal();
+            }
         }
-        return responseResult;
     }
 
     /**
-     * 获取路径变量，注意SpringCloud Gateway转发的请求是获取该项的值
+     * 组装完成后交给 {@link AccessLogSink}，这里不做任何 I/O，也不生成字符串。
+     * 尾部采样在这里决定是否保留捕获内容，被丢弃的记录直接归还缓冲区，不进入 sink
+     * @param httpAccLog 网关日志
+     * @param completeStart 开始组装的 {@link System#nanoTime()}，组装耗时计入过滤器自身耗时
+     * @param offload 保留的捕获内容是否交给 {@link CaptureOffloadStage} 处理
      */
-    private static Map<String, Object> getPathParams(ServerWebExchange exchange) {
-        Map<String, Object> pathParams = (Map<String, Object>) exchange.getAttributes().get(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
-        return CollectionUtils.isEmpty(pathParams) ? new HashMap<>() : pathParams;
+    private void writeAccessLog(ServerWebExchange exchange, HttpAccLog httpAccLog, long completeStart,
+                                boolean offload) {
+        httpAccLog.setStatusCode(exchange.getResponse().getRawStatusCode());
+        httpAccLog.setRoute(getRoute(exchange));
+        CaptureDecision decision = tailCapturePolicy.decide(httpAccLog.getRoute(),
+                httpAccLog.getStatusCode(), httpAccLog.getProcessTime());
+        metrics.recordDecision(httpAccLog.getRoute(), decision);
+        if (decision != CaptureDecision.KEEP) {
+            httpAccLog.release();
+            httpAccLog.setFormData(null);
+            if (decision == CaptureDecision.DROP) {
+                return;
+            }
+        }
+        httpAccLog.setPathVariables(getPathParams(exchange));
+        httpAccLog.setRawQueryParams(exchange.getRequest().getQueryParams());
+        httpAccLog.getPhases().addFilterNanos(System.nanoTime() - completeStart);
+        if (offload && decision == CaptureDecision.KEEP) {
+            if (offloadStage.submit(httpAccLog)) {
+                return;
+            }
+            // 工作线程处理不过来时降级为只有元数据的记录，不阻塞 event loop
+            httpAccLog.release();
+        }
+        accessLogSink.accept(httpAccLog);
     }
 
     /**
-     * 获取QueryParams
+     * 网关路由 id 或路由模板，未匹配到 handler 的请求归为同一个 key
      */
-    private static Map<String, Object> getQueryParams(MultiValueMap<String, String> queryParams) {
-        return queryParams.entrySet().stream()
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        entry -> String.join(",",entry.getValue())
-                ));
+    private static String getRoute(ServerWebExchange exchange) {
+        String route = exchange.getAttribute(ROUTE_ATTR);
+        if (route != null) {
+            return route;
+        }
+        Object pattern = exchange.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern == null ? TailCapturePolicy.UNMATCHED_ROUTE : pattern.toString();
     }
 
-    private boolean isTextResponse(ServerHttpResponse response) {
-        String contentType = response.getHeaders().getFirst(HttpHeaders.CONTENT_TYPE);
-        if (contentType == null) {
-            return false;
-        }
-        try {
-            MediaType mediaType = MediaType.parseMediaType(contentType);
-            return mediaType.isCompatibleWith(MediaType.TEXT_PLAIN) ||
-                    mediaType.isCompatibleWith(MediaType.APPLICATION_JSON) ||
-                    mediaType.isCompatibleWith(MediaType.APPLICATION_XML) ||
-                    mediaType.isCompatibleWith(MediaType.TEXT_HTML) ||
-                    mediaType.toString().startsWith("text/");
-        } catch (Exception e) {
-            return false;
-        }
+    /**
+     * 获取路径变量，注意SpringCloud Gateway转发的请求是获取该项的值
+     */
+    private static Map<String, Object> getPathParams(ServerWebExchange exchange) {
+        Map<String, Object> pathParams = (Map<String, Object>) exchange.getAttributes().get(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return CollectionUtils.isEmpty(pathParams) ? Collections.emptyMap() : pathParams;
     }
 }
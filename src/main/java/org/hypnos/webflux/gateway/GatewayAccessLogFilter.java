@@ -0,0 +1,168 @@
+package org.hypnos.webflux.gateway;
+
+import org.hypnos.webflux.filter.RequestResponseLoggingFilter;
+import org.hypnos.webflux.policy.CaptureLevel;
+import org.hypnos.webflux.policy.CapturePolicy;
+import org.hypnos.webflux.policy.CapturePolicyRegistry;
+import org.hypnos.webflux.policy.CapturePolicyTable;
+import org.hypnos.webflux.policy.CaptureRule;
+import org.hypnos.webflux.policy.LoadSheddingPolicy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cloud.gateway.filter.GatewayFilterChain;
+import org.springframework.cloud.gateway.filter.GlobalFilter;
+import org.springframework.cloud.gateway.route.Route;
+import org.springframework.cloud.gateway.support.ServerWebExchangeUtils;
+import org.springframework.core.Ordered;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 网关转发请求的日志增强，与 {@link RequestResponseLoggingFilter} 配合使用。
+ * 请求体和响应体仍由 WebFilter 在 NettyDataBuffer 流经时复制有界前缀，这里不再包装请求和响应，
+ * 转发链路上没有额外的聚合或重新编码。本过滤器在转发前：
+ * <ul>
+ *     <li>按路由 metadata 替换捕获策略，例如 metadata.access-log.level=METADATA、metadata.access-log.response-limit=0，
+ *     替换后的策略同样受 {@link LoadSheddingPolicy} 限制</li>
+ *     <li>把路由 id 作为日志和指标中的路由名</li>
+ *     <li>记录开始转发的时间，响应开始写出时据此得到上游耗时，与总耗时分开记录</li>
+ * </ul>
+ */
+public class GatewayAccessLogFilter implements GlobalFilter, Ordered {
+
+    private static final Logger logger = LoggerFactory.getLogger(GatewayAccessLogFilter.class);
+
+    /**
+     * 在负载均衡等过滤器之后、NettyRoutingFilter / WebsocketRoutingFilter 之前执行，上游耗时不含选址
+     */
+    public static final int ORDER = Ordered.LOWEST_PRECEDENCE - 10;
+
+    private final CapturePolicyRegistry capturePolicies;
+
+    private final String metadataKey;
+
+    private final LoadSheddingPolicy loadShedding;
+
+    /**
+     * 路由 id 到编译结果的缓存，路由刷新或策略表重新加载后按引用判断失效
+     */
+    private final Map<String, RoutePolicy> routePolicies = new ConcurrentHashMap<>();
+
+    public GatewayAccessLogFilter(CapturePolicyRegistry capturePolicies, String metadataKey,
+                                  LoadSheddingPolicy loadShedding) {
+        this.capturePolicies = capturePolicies;
+        this.metadataKey = metadataKey;
+        this.loadShedding = loadShedding;
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
+        Map<String, Object> attributes = exchange.getAttributes();
+        // 没有经过日志过滤器（未启用或路径策略为 NONE）的请求不处理
+        if (!attributes.containsKey(RequestResponseLoggingFilter.CAPTURE_POLICY_ATTR)) {
+            return chain.filter(exchange);
+        }
+        Route route = exchange.getAttribute(ServerWebExchangeUtils.GATEWAY_ROUTE_ATTR);
+        if (route != null) {
+            attributes.put(RequestResponseLoggingFilter.ROUTE_ATTR, route.getId());
+            CapturePolicy policy = routePolicy(route);
+            if (policy != null) {
+                attributes.put(RequestResponseLoggingFilter.CAPTURE_POLICY_ATTR, loadShedding.cap(policy));
+            }
+        }
+        attributes.put(RequestResponseLoggingFilter.UPSTREAM_START_ATTR, System.nanoTime());
+        return chain.filter(exchange);
+    }
+
+    /**
+     * @return 路由 metadata 中配置的策略，没有配置时返回 null，沿用按路径匹配的策略
+     */
+    private CapturePolicy routePolicy(Route route) {
+        CapturePolicyTable table = capturePolicies.getTable();
+        RoutePolicy cached = routePolicies.get(route.getId());
+        if (cached != null && cached.route == route && cached.table == table) {
+            return cached.policy;
+        }
+        CapturePolicy policy = null;
+        Object metadata = route.getMetadata().get(metadataKey);
+        if (metadata instanceof Map) {
+            try {
+                policy = table.compile(captureRule((Map<?, ?>) metadata));
+            } catch (RuntimeException e) {
+                logger.warn("invalid capture metadata on route {}, fall back to path rules", route.getId(), e);
+            }
+        }
+        routePolicies.put(route.getId(), new RoutePolicy(route, table, policy));
+        return policy;
+    }
+
+    private static CaptureRule captureRule(Map<?, ?> metadata) {
+        CaptureRule rule = new CaptureRule();
+        Object level = metadata.get("level");
+        if (level != null) {
+            rule.setLevel(CaptureLevel.valueOf(level.toString().trim().toUpperCase(Locale.ROOT)));
+        }
+        rule.setRequestLimit(toInteger(metadata.get("request-limit")));
+        rule.setResponseLimit(toInteger(metadata.get("response-limit")));
+        rule.setRequestContentTypes(toList(metadata.get("request-content-types")));
+        rule.setResponseContentTypes(toList(metadata.get("response-content-types")));
+        return rule;
+    }
+
+    private static Integer toInteger(Object value) {
+        if (value == null) {
+            return null;
+        }
+        return value instanceof Number ? ((Number) value).intValue() : Integer.valueOf(value.toString().trim());
+    }
+
+    /**
+     * metadata 中的列表可能是 YAML 列表、按下标绑定的 Map 或逗号分隔的字符串
+     */
+    private static List<String> toList(Object value) {
+        if (value == null) {
+            return null;
+        }
+        Collection<?> values;
+        if (value instanceof Collection) {
+            values = (Collection<?>) value;
+        } else if (value instanceof Map) {
+            values = ((Map<?, ?>) value).values();
+        } else {
+            values = StringUtils.commaDelimitedListToSet(value.toString());
+        }
+        List<String> result = new ArrayList<>(values.size());
+        for (Object item : values) {
+            result.add(item.toString().trim());
+        }
+        return result;
+    }
+
+    @Override
+    public int getOrder() {
+        return ORDER;
+    }
+
+    private static final class RoutePolicy {
+
+        private final Route route;
+
+        private final CapturePolicyTable table;
+
+        private final CapturePolicy policy;
+
+        private RoutePolicy(Route route, CapturePolicyTable table, CapturePolicy policy) {
+            this.route = route;
+            this.table = table;
+            this.policy = policy;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package org.hypnos.webflux.gateway;
+
+import org.hypnos.webflux.trace.TraceContext;
+import org.springframework.cloud.gateway.filter.headers.HttpHeadersFilter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.server.ServerWebExchange;
+
+/**
+ * 网关转发时补充跟踪链请求头。客户端带来的 traceparent / B3 请求头本身会被原样转发，
+ * 只有跟踪链是本服务生成的才需要补充，此时才复制一次请求头，其余请求直接返回原对象
+ */
+public class TraceHttpHeadersFilter implements HttpHeadersFilter {
+
+    @Override
+    public HttpHeaders filter(HttpHeaders input, ServerWebExchange exchange) {
+        TraceContext trace = exchange.getAttribute(TraceContext.EXCHANGE_ATTR);
+        if (trace == null || !trace.isGenerated() || input.containsKey(TraceContext.TRACEPARENT)) {
+            return input;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.putAll(input);
+        headers.set(TraceContext.TRACEPARENT, trace.newTraceparent());
+        return headers;
+    }
+}
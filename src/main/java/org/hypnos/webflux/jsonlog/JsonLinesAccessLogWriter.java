@@ -0,0 +1,115 @@
+package org.hypnos.webflux.jsonlog;
+
+import org.hypnos.webflux.sink.AccessLogWriter;
+import org.hypnos.webflux.vo.HttpAccLog;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 以每行一条 JSON 的格式追加写入滚动文件，采集端无需再解析文本格式。
+ * 一批记录先编码到 {@link JsonRecordEncoder} 的复用缓冲区，攒够一定字节数再写一次文件，
+ * 文件超过大小上限或滚动间隔后新建下一个，记录不会跨文件。时间滚动只在写入时检查，空闲期间不会产生空文件。
+ * 写入只交给操作系统，不强制落盘，与 SLF4J 文件 appender 的默认行为一致。
+ */
+public class JsonLinesAccessLogWriter implements AccessLogWriter {
+
+    public static final String FILE_SUFFIX = ".jsonl";
+
+    /**
+     * 缓冲区达到该大小时先写出，避免大批次把缓冲区撑得过大
+     */
+    private static final int WRITE_THRESHOLD = 64 * 1024;
+
+    private final Path directory;
+
+    private final String filePrefix;
+
+    private final long maxFileSize;
+
+    private final long rollIntervalMillis;
+
+    private final JsonRecordEncoder encoder = new JsonRecordEncoder(WRITE_THRESHOLD * 2);
+
+    private ByteBuffer view;
+
+    private FileChannel channel;
+
+    private long fileSize;
+
+    private long fileStartMillis;
+
+    private int sequence;
+
+    /**
+     * @param directory 日志目录，不存在时自动创建
+     * @param filePrefix 文件名前缀
+     * @param maxFileSize 单个文件大小上限（字节）
+     * @param rollIntervalSeconds 滚动间隔（秒），小于等于 0 表示只按大小滚动
+     */
+    public JsonLinesAccessLogWriter(Path directory, String filePrefix, long maxFileSize, long rollIntervalSeconds)
+            throws IOException {
+        this.directory = directory;
+        this.filePrefix = filePrefix;
+        this.maxFileSize = maxFileSize;
+        this.rollIntervalMillis = rollIntervalSeconds > 0 ? TimeUnit.SECONDS.toMillis(rollIntervalSeconds) : Long.MAX_VALUE;
+        Files.createDirectories(directory);
+    }
+
+    @Override
+    public void write(List<HttpAccLog> batch) throws IOException {
+        encoder.reset();
+        for (HttpAccLog httpAccLog : batch) {
+            encoder.encode(httpAccLog);
+            if (encoder.size() >= WRITE_THRESHOLD) {
+                writeEncoded();
+            }
+        }
+        if (encoder.size() > 0) {
+            writeEncoded();
+        }
+    }
+
+    private void writeEncoded() throws IOException {
+        long now = System.currentTimeMillis();
+        int length = encoder.size();
+        if (channel == null || now - fileStartMillis >= rollIntervalMillis
+                || (fileSize > 0 && fileSize + length > maxFileSize)) {
+            roll(now);
+        }
+        if (view == null || view.array() != encoder.array()) {
+            view = ByteBuffer.wrap(encoder.array());
+        }
+        view.clear();
+        view.limit(length);
+        while (view.hasRemaining()) {
+            channel.write(view);
+        }
+        fileSize += length;
+        encoder.reset();
+    }
+
+    private void roll(long now) throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+        fileStartMillis = now;
+        fileSize = 0;
+        Path file = directory.resolve(String.format("%s-%d-%04d%s", filePrefix, now, sequence++, FILE_SUFFIX));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
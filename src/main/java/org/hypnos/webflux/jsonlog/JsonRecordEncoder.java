@@ -0,0 +1,488 @@
+package org.hypnos.webflux.jsonlog;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.utils.TimeUtil;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.hypnos.webflux.vo.RequestPhases;
+import org.springframework.util.MultiValueMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把 {@link HttpAccLog} 编码为一行 JSON，直接写入可复用的字节数组。
+ * 字符串边转义边编码为 UTF-8，捕获的请求/响应体按字节转义复制，不生成 String；为 null 的字段不输出。
+ * 时间字段与文本格式一致，输出 yyyy-MM-dd HH:mm:ss.SSS，秒级前缀复用 {@link TimeUtil} 的缓存。
+ * 不是线程安全的，每个写入线程持有一个实例。
+ */
+public class JsonRecordEncoder {
+
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] REPLACEMENT = {(byte) 0xEF, (byte) 0xBF, (byte) 0xBD};
+
+    private static final byte[] TRUNCATED_MESSAGE = "response entity exceeds the limit "
+            .getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] TRUNCATED_UNIT = " bytes".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer;
+
+    private int size;
+
+    private byte[] scratch = new byte[0];
+
+    /**
+     * 当前对象中是否已写过字段，决定下一个字段前是否需要逗号
+     */
+    private boolean hasField;
+
+    public JsonRecordEncoder(int initialCapacity) {
+        this.buffer = new byte[initialCapacity];
+    }
+
+    /**
+     * 清空缓冲区，保留容量
+     */
+    public void reset() {
+        size = 0;
+    }
+
+    public byte[] array() {
+        return buffer;
+    }
+
+    /**
+     * 缓冲区中已编码的字节数
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 追加一条记录，以换行结尾
+     */
+    public void encode(HttpAccLog httpAccLog) {
+        put('{');
+        hasField = false;
+        stringField("traceId", httpAccLog.getTraceId());
+        stringField("method", httpAccLog.getMethod());
+        stringField("path", httpAccLog.getPath());
+        stringField("route", httpAccLog.getRoute());
+        timeField("reqTime", httpAccLog.getReqTimeMillis());
+        timeField("rspTime", httpAccLog.getRspTimeMillis());
+        fieldName("processTime");
+        putLong(httpAccLog.getProcessTime());
+        if (httpAccLog.getUpstreamTime() != null) {
+            fieldName("upstreamTime");
+            putLong(httpAccLog.getUpstreamTime());
+        }
+        longField("firstByteTime", httpAccLog.getFirstByteTime());
+        longField("responseSize", httpAccLog.getResponseSize());
+        if (httpAccLog.getResponseEvents() != null) {
+            fieldName("responseEvents");
+            putLong(httpAccLog.getResponseEvents());
+        }
+        if (httpAccLog.getInProgress() != null) {
+            fieldName("inProgress");
+            putAscii(httpAccLog.getInProgress() ? "true" : "false");
+        }
+        RequestPhases phases = httpAccLog.getPhases();
+        if (phases != null) {
+            fieldName("phases");
+            putPhases(phases);
+        }
+        if (httpAccLog.getStatusCode() != null) {
+            fieldName("statusCode");
+            putLong(httpAccLog.getStatusCode());
+        }
+        BodyCapture requestCapture = httpAccLog.requestCapture();
+        if (requestCapture != null) {
+            if (requestCapture.getTotalBytes() > 0) {
+                fieldName("requestBody");
+                putCapture(requestCapture);
+            }
+        } else {
+            stringField("requestBody", httpAccLog.getRequestBody());
+        }
+        stringField("requestBodyHash", httpAccLog.getRequestBodyHash());
+        mapField("pathVariables", httpAccLog.getPathVariables());
+        MultiValueMap<String, String> rawQueryParams = httpAccLog.rawQueryParams();
+        if (rawQueryParams != null) {
+            fieldName("queryParams");
+            putMultiValueMap(rawQueryParams);
+        } else {
+            mapField("queryParams", httpAccLog.getQueryParams());
+        }
+        mapField("formData", httpAccLog.getFormData());
+        BodyCapture responseCapture = httpAccLog.responseCapture();
+        if (responseCapture != null) {
+            fieldName("responseBody");
+            putResponse(responseCapture, httpAccLog.responseEncoding());
+        } else {
+            stringField("responseBody", httpAccLog.getResponseBody());
+        }
+        stringField("responseBodyHash", httpAccLog.getResponseBodyHash());
+        stringField("serverAddr", httpAccLog.getServerAddr());
+        stringField("remoteAddr", httpAccLog.getRemoteAddr());
+        put('}');
+        put('\n');
+    }
+
+    private void fieldName(String name) {
+        if (hasField) {
+            put(',');
+        }
+        hasField = true;
+        putString(name);
+        put(':');
+    }
+
+    /**
+     * 各阶段相对请求开始的纳秒偏移，未经历的阶段省略，最后是过滤器自身耗时
+     */
+    private void putPhases(RequestPhases phases) {
+        put('{');
+        for (int phase = 0; phase < RequestPhases.COUNT; phase++) {
+            long offset = phases.get(phase);
+            if (offset >= 0) {
+                putString(RequestPhases.name(phase));
+                put(':');
+                putLong(offset);
+                put(',');
+            }
+        }
+        putString("filter");
+        put(':');
+        putLong(phases.getFilterNanos());
+        put('}');
+    }
+
+    private void longField(String name, Long value) {
+        if (value != null) {
+            fieldName(name);
+            putLong(value);
+        }
+    }
+
+    private void stringField(String name, String value) {
+        if (value != null) {
+            fieldName(name);
+            putString(value);
+        }
+    }
+
+    private void timeField(String name, long millis) {
+        if (millis == 0) {
+            return;
+        }
+        fieldName(name);
+        String prefix = TimeUtil.secondPrefix(Math.floorDiv(millis, 1000L));
+        int ms = (int) Math.floorMod(millis, 1000L);
+        ensure(prefix.length() + 5);
+        buffer[size++] = '"';
+        for (int i = 0; i < prefix.length(); i++) {
+            buffer[size++] = (byte) prefix.charAt(i);
+        }
+        buffer[size++] = (byte) ('0' + ms / 100);
+        buffer[size++] = (byte) ('0' + ms / 10 % 10);
+        buffer[size++] = (byte) ('0' + ms % 10);
+        buffer[size++] = '"';
+    }
+
+    private void mapField(String name, Map<String, Object> value) {
+        if (value != null) {
+            fieldName(name);
+            putMap(value);
+        }
+    }
+
+    /**
+     * 与 {@link org.hypnos.webflux.capture.BodyRenderer#renderResponse} 的规则一致
+     */
+    private void putResponse(BodyCapture capture, String contentEncoding) {
+        if (capture.isTruncated() && (contentEncoding == null || capture.getCaptured() == 0)) {
+            ensure(TRUNCATED_MESSAGE.length + TRUNCATED_UNIT.length + 2);
+            put('"');
+            putBytes(TRUNCATED_MESSAGE);
+            putLong(capture.getLimit());
+            putBytes(TRUNCATED_UNIT);
+            put('"');
+            return;
+        }
+        putCapture(capture);
+    }
+
+    private void putCapture(BodyCapture capture) {
+        int length = capture.getCaptured();
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        capture.copyTo(scratch, 0);
+        putUtf8Bytes(scratch, length);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void putValue(Object value) {
+        if (value == null) {
+            putAscii("null");
+        } else if (value instanceof String) {
+            putString((String) value);
+        } else if (value instanceof Integer || value instanceof Long || value instanceof Short
+                || value instanceof Byte) {
+            putLong(((Number) value).longValue());
+        } else if (value instanceof Boolean) {
+            putAscii((Boolean) value ? "true" : "false");
+        } else if (value instanceof Map) {
+            putMap((Map<String, Object>) value);
+        } else if (value instanceof Collection) {
+            put('[');
+            boolean first = true;
+            for (Object item : (Collection<?>) value) {
+                if (!first) {
+                    put(',');
+                }
+                first = false;
+                putValue(item);
+            }
+            put(']');
+        } else if (value instanceof Number) {
+            // 浮点数等少见类型，按 JSON 数字输出，非有限值按字符串输出
+            String number = value.toString();
+            double d = ((Number) value).doubleValue();
+            if (Double.isNaN(d) || Double.isInfinite(d)) {
+                putString(number);
+            } else {
+                putAscii(number);
+            }
+        } else {
+            putString(value.toString());
+        }
+    }
+
+    private void putMap(Map<String, Object> map) {
+        put('{');
+        boolean first = true;
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            if (!first) {
+                put(',');
+            }
+            first = false;
+            putString(String.valueOf(entry.getKey()));
+            put(':');
+            putValue(entry.getValue());
+        }
+        put('}');
+    }
+
+    /**
+     * 单值输出为字符串，多值输出为数组
+     */
+    private void putMultiValueMap(MultiValueMap<String, String> map) {
+        put('{');
+        boolean first = true;
+        for (Map.Entry<String, List<String>> entry : map.entrySet()) {
+            if (!first) {
+                put(',');
+            }
+            first = false;
+            putString(entry.getKey());
+            put(':');
+            List<String> values = entry.getValue();
+            if (values.size() == 1) {
+                putValue(values.get(0));
+            } else {
+                putValue(values);
+            }
+        }
+        put('}');
+    }
+
+    private void putString(String value) {
+        int length = value.length();
+        ensure(length * 6 + 2);
+        byte[] buf = buffer;
+        int pos = size;
+        buf[pos++] = '"';
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                pos = putAsciiEscaped(buf, pos, c);
+            } else if (c < 0x800) {
+                buf[pos++] = (byte) (0xC0 | (c >> 6));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buf[pos++] = (byte) (0xF0 | (codePoint >> 18));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buf[pos++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                System.arraycopy(REPLACEMENT, 0, buf, pos, 3);
+                pos += 3;
+            } else {
+                buf[pos++] = (byte) (0xE0 | (c >> 12));
+                buf[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[pos++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        buf[pos++] = '"';
+        size = pos;
+    }
+
+    /**
+     * 把 UTF-8 字节作为 JSON 字符串写出，非法序列（包括截断在多字节字符中间的结尾）替换为 U+FFFD
+     */
+    private void putUtf8Bytes(byte[] src, int length) {
+        ensure(length * 6 + 2);
+        byte[] buf = buffer;
+        int pos = size;
+        buf[pos++] = '"';
+        int i = 0;
+        while (i < length) {
+            int b = src[i];
+            if (b >= 0) {
+                pos = putAsciiEscaped(buf, pos, (char) b);
+                i++;
+                continue;
+            }
+            int sequence = utf8SequenceLength(src, i, length);
+            if (sequence == 0) {
+                System.arraycopy(REPLACEMENT, 0, buf, pos, 3);
+                pos += 3;
+                i++;
+            } else {
+                System.arraycopy(src, i, buf, pos, sequence);
+                pos += sequence;
+                i += sequence;
+            }
+        }
+        buf[pos++] = '"';
+        size = pos;
+    }
+
+    /**
+     * @return 从 offset 开始的合法多字节序列长度，非法时返回 0
+     */
+    private static int utf8SequenceLength(byte[] src, int offset, int limit) {
+        int lead = src[offset] & 0xFF;
+        int length;
+        int min;
+        if (lead >= 0xC2 && lead <= 0xDF) {
+            length = 2;
+            min = 0;
+        } else if (lead >= 0xE0 && lead <= 0xEF) {
+            length = 3;
+            min = 0x800;
+        } else if (lead >= 0xF0 && lead <= 0xF4) {
+            length = 4;
+            min = 0x10000;
+        } else {
+            return 0;
+        }
+        if (offset + length > limit) {
+            return 0;
+        }
+        int codePoint = lead & (0x3F >> (length - 1));
+        for (int i = 1; i < length; i++) {
+            int next = src[offset + i] & 0xFF;
+            if ((next & 0xC0) != 0x80) {
+                return 0;
+            }
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        if (codePoint < min || codePoint > 0x10FFFF || (codePoint >= 0xD800 && codePoint <= 0xDFFF)) {
+            return 0;
+        }
+        return length;
+    }
+
+    private static int putAsciiEscaped(byte[] buf, int pos, char c) {
+        if (c >= 0x20 && c != '"' && c != '\\') {
+            buf[pos++] = (byte) c;
+            return pos;
+        }
+        buf[pos++] = '\\';
+        switch (c) {
+            case '"':
+                buf[pos++] = '"';
+                break;
+            case '\\':
+                buf[pos++] = '\\';
+                break;
+            case '\n':
+                buf[pos++] = 'n';
+                break;
+            case '\r':
+                buf[pos++] = 'r';
+                break;
+            case '\t':
+                buf[pos++] = 't';
+                break;
+            case '\b':
+                buf[pos++] = 'b';
+                break;
+            case '\f':
+                buf[pos++] = 'f';
+                break;
+            default:
+                buf[pos++] = 'u';
+                buf[pos++] = '0';
+                buf[pos++] = '0';
+                buf[pos++] = HEX[c >> 4];
+                buf[pos++] = HEX[c & 0xF];
+                break;
+        }
+        return pos;
+    }
+
+    private void putLong(long value) {
+        ensure(20);
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                putAscii(Long.toString(value));
+                return;
+            }
+            buffer[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long v = value; v >= 10; v /= 10) {
+            digits++;
+        }
+        int pos = size + digits;
+        size = pos;
+        do {
+            buffer[--pos] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+    }
+
+    private void putAscii(String value) {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void putBytes(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void put(char c) {
+        ensure(1);
+        buffer[size++] = (byte) c;
+    }
+
+    private void ensure(int additional) {
+        if (size + additional > buffer.length) {
+            byte[] grown = new byte[Math.max(size + additional, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, size);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.hypnos.webflux.metrics;
+
+/**
+ * 按 Content-Type 判断是否捕获请求/响应体的结果
+ */
+public enum ContentTypeOutcome {
+
+    /**
+     * 请求无 Content-Type、表单或 JSON，捕获请求体
+     */
+    REQUEST_CAPTURED("request", "captured"),
+
+    /**
+     * 其它请求类型，只记录元数据
+     */
+    REQUEST_SKIPPED("request", "skipped"),
+
+    /**
+     * 按请求头和 method 判断没有请求体，不装饰请求
+     */
+    REQUEST_BODYLESS("request", "bodyless"),
+
+    /**
+     * multipart/form-data，扫描各 part 的元数据写入 formData，不复制文件内容
+     */
+    REQUEST_MULTIPART("request", "multipart"),
+
+    /**
+     * 文本类响应，捕获响应体
+     */
+    RESPONSE_CAPTURED("response", "captured"),
+
+    /**
+     * 非文本响应或没有 Content-Type
+     */
+    RESPONSE_SKIPPED("response", "skipped"),
+
+    /**
+     * 文本响应但 Content-Encoding 无法解压
+     */
+    RESPONSE_UNSUPPORTED_ENCODING("response", "unsupported_encoding");
+
+    private final String direction;
+
+    private final String outcome;
+
+    ContentTypeOutcome(String direction, String outcome) {
+        this.direction = direction;
+        this.outcome = outcome;
+    }
+
+    public String getDirection() {
+        return direction;
+    }
+
+    public String getOutcome() {
+        return outcome;
+    }
+}
@@ -0,0 +1,106 @@
+package org.hypnos.webflux.metrics;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.capture.CaptureOffloadStage;
+import org.hypnos.webflux.dedup.DedupAccessLogWriter;
+import org.hypnos.webflux.policy.CaptureDecision;
+import org.hypnos.webflux.pressure.PressureMonitor;
+import org.hypnos.webflux.ship.ShippingAccessLogWriter;
+import org.hypnos.webflux.sink.AsyncAccessLogSink;
+
+/**
+ * 日志过滤器自身开销的埋点。
+ * 除 {@link #recordFlush} 在 sink 消费线程调用、{@link #recordOffload} 和启用
+ * {@link CaptureOffloadStage} 后的 {@link #recordCapture}、{@link #recordDecode} 在其工作线程调用外，
+ * 其余方法都在 Netty event loop 上调用，实现不能阻塞。
+ */
+public interface LoggingFilterMetrics {
+
+    /**
+     * 不记录任何指标，未引入 MeterRegistry 时使用
+     */
+    LoggingFilterMetrics NOOP = new LoggingFilterMetrics() {
+    };
+
+    /**
+     * 过滤器进入下游之前的准备工作耗时：地址解析、Content-Type 判断、装饰器创建
+     */
+    default void recordSetup(long nanos) {
+    }
+
+    /**
+     * 一次捕获的字节数、是否截断和复制耗时
+     * @param request true 为请求体，false 为响应体
+     */
+    default void recordCapture(boolean request, BodyCapture capture) {
+    }
+
+    /**
+     * 压缩响应的解压耗时，包括把解压结果写入捕获缓冲
+     */
+    default void recordDecode(long nanos, boolean failed) {
+    }
+
+    default void recordContentType(ContentTypeOutcome outcome) {
+    }
+
+    /**
+     * 尾部采样的决定，按路由模板分别计数
+     */
+    default void recordDecision(String route, CaptureDecision decision) {
+    }
+
+    /**
+     * 按路由模板记录请求耗时（从进入过滤器到响应写完）
+     * @param route 路由模板，不是原始路径
+     */
+    default void recordRequest(String route, Integer statusCode, long nanos) {
+    }
+
+    /**
+     * 网关转发到收到上游响应头的耗时，只有经网关转发的请求才会调用
+     * @param route 网关路由 id
+     */
+    default void recordUpstream(String route, long nanos) {
+    }
+
+    /**
+     * 捕获处理阶段中一条记录的排队时间和处理耗时（解压、脱敏）
+     */
+    default void recordOffload(long lagNanos, long workNanos) {
+    }
+
+    /**
+     * sink 写出一批日志的耗时，包括字符串渲染和 I/O
+     */
+    default void recordFlush(int batchSize, long nanos) {
+    }
+
+    /**
+     * 把 sink 队列已有的计数器注册为指标，只在采集时读取
+     */
+    default void bindSink(AsyncAccessLogSink sink) {
+    }
+
+    default void bindCaptureBufferPool(CaptureBufferPool pool) {
+    }
+
+    default void bindShipping(ShippingAccessLogWriter writer) {
+    }
+
+    default void bindOffload(CaptureOffloadStage stage) {
+    }
+
+    /**
+     * 请求体/响应体去重的命中次数和省下的字节数
+     */
+    default void bindDedup(DedupAccessLogWriter writer) {
+    }
+
+    /**
+     * 压力信号和当前的降级级别
+     */
+    default void bindPressure(PressureMonitor monitor) {
+    }
+}
@@ -0,0 +1,377 @@
+package org.hypnos.webflux.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.capture.CaptureOffloadStage;
+import org.hypnos.webflux.dedup.DedupAccessLogWriter;
+import org.hypnos.webflux.policy.CaptureDecision;
+import org.hypnos.webflux.policy.LoadSheddingPolicy;
+import org.hypnos.webflux.pressure.PressureMonitor;
+import org.hypnos.webflux.ship.ShippingAccessLogWriter;
+import org.hypnos.webflux.sink.AsyncAccessLogSink;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 Micrometer 的实现，固定标签的指标在构造时注册，热路径上只做查表和累加。
+ * 按路由的耗时直方图以路由模板为标签，模板数超过上限后归到 OTHER，避免标签基数失控。
+ */
+public class MicrometerLoggingFilterMetrics implements LoggingFilterMetrics {
+
+    private static final String PREFIX = "hypnos.access.log";
+
+    private static final int MAX_ROUTES = 256;
+
+    private static final String OTHER_ROUTE = "OTHER";
+
+    private static final String[] STATUS_SERIES = {"UNKNOWN", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    private final MeterRegistry registry;
+
+    private final Timer setupTimer;
+
+    private final Timer requestCaptureTimer;
+
+    private final Timer responseCaptureTimer;
+
+    private final Timer decodeTimer;
+
+    private final DistributionSummary requestBytes;
+
+    private final DistributionSummary responseBytes;
+
+    private final Counter requestTruncated;
+
+    private final Counter responseTruncated;
+
+    private final Counter decodeFailures;
+
+    private final Map<ContentTypeOutcome, Counter> contentTypeCounters = new EnumMap<>(ContentTypeOutcome.class);
+
+    private final Map<CaptureDecision, Counter> decisionCounters = new EnumMap<>(CaptureDecision.class);
+
+    private final Timer offloadLagTimer;
+
+    private final Timer offloadWorkTimer;
+
+    private final Timer flushTimer;
+
+    private final DistributionSummary batchSize;
+
+    private final Map<String, RouteTimers> routeTimers = new ConcurrentHashMap<>();
+
+    public MicrometerLoggingFilterMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.setupTimer = phaseTimer("setup");
+        this.requestCaptureTimer = phaseTimer("request_capture");
+        this.responseCaptureTimer = phaseTimer("response_capture");
+        this.decodeTimer = phaseTimer("decode");
+        this.requestBytes = captureBytes("request");
+        this.responseBytes = captureBytes("response");
+        this.requestTruncated = truncated("request");
+        this.responseTruncated = truncated("response");
+        this.decodeFailures = Counter.builder(PREFIX + ".decode.failures")
+                .description("Compressed responses that could not be decoded")
+                .register(registry);
+        for (ContentTypeOutcome outcome : ContentTypeOutcome.values()) {
+            contentTypeCounters.put(outcome, Counter.builder(PREFIX + ".content.type")
+                    .description("Body capture decisions made from Content-Type")
+                    .tag("direction", outcome.getDirection())
+                    .tag("outcome", outcome.getOutcome())
+                    .register(registry));
+        }
+        for (CaptureDecision decision : CaptureDecision.values()) {
+            decisionCounters.put(decision, Counter.builder(PREFIX + ".tail.decisions")
+                    .description("Tail capture decisions made at request completion")
+                    .tag("decision", decision.name().toLowerCase())
+                    .register(registry));
+        }
+        this.offloadLagTimer = Timer.builder(PREFIX + ".offload.lag")
+                .description("Time a completed request waits for a capture worker")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.offloadWorkTimer = Timer.builder(PREFIX + ".offload.work")
+                .description("Time a capture worker spends decoding and redacting one request")
+                .register(registry);
+        this.flushTimer = Timer.builder(PREFIX + ".sink.flush")
+                .description("Time to render and write one batch of access logs")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchSize = DistributionSummary.builder(PREFIX + ".sink.batch.size")
+                .description("Access logs written per batch")
+                .register(registry);
+    }
+
+    private Timer phaseTimer(String phase) {
+        return Timer.builder(PREFIX + ".filter.phase")
+                .description("Time spent in the logging filter's own work")
+                .tag("phase", phase)
+                .register(registry);
+    }
+
+    private DistributionSummary captureBytes(String direction) {
+        return DistributionSummary.builder(PREFIX + ".capture.bytes")
+                .description("Body bytes captured per request")
+                .baseUnit("bytes")
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    private Counter truncated(String direction) {
+        return Counter.builder(PREFIX + ".capture.truncated")
+                .description("Bodies that exceeded the capture limit")
+                .tag("direction", direction)
+                .register(registry);
+    }
+
+    @Override
+    public void recordSetup(long nanos) {
+        setupTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordCapture(boolean request, BodyCapture capture) {
+        (request ? requestBytes : responseBytes).record(capture.getCaptured());
+        (request ? requestCaptureTimer : responseCaptureTimer).record(capture.getCaptureNanos(), TimeUnit.NANOSECONDS);
+        if (capture.isTruncated()) {
+            (request ? requestTruncated : responseTruncated).increment();
+        }
+    }
+
+    @Override
+    public void recordDecode(long nanos, boolean failed) {
+        decodeTimer.record(nanos, TimeUnit.NANOSECONDS);
+        if (failed) {
+            decodeFailures.increment();
+        }
+    }
+
+    @Override
+    public void recordContentType(ContentTypeOutcome outcome) {
+        contentTypeCounters.get(outcome).increment();
+    }
+
+    @Override
+    public void recordDecision(String route, CaptureDecision decision) {
+        decisionCounters.get(decision).increment();
+        routeTimers(route).decision(decision).increment();
+    }
+
+    @Override
+    public void recordRequest(String route, Integer statusCode, long nanos) {
+        int series = statusCode == null || statusCode < 100 || statusCode >= 600 ? 0 : statusCode / 100;
+        routeTimers(route).get(series).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordUpstream(String route, long nanos) {
+        routeTimers(route).upstream().record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private RouteTimers routeTimers(String route) {
+        RouteTimers timers = routeTimers.get(route);
+        if (timers != null) {
+            return timers;
+        }
+        if (routeTimers.size() >= MAX_ROUTES) {
+            route = OTHER_ROUTE;
+        }
+        return routeTimers.computeIfAbsent(route, RouteTimers::new);
+    }
+
+    /**
+     * 一个路由下按状态码段划分的 Timer、上游耗时 Timer 和尾部采样计数，出现过的序列才注册，避免导出空序列
+     */
+    private class RouteTimers {
+
+        private final String route;
+
+        private final Timer[] timers = new Timer[STATUS_SERIES.length];
+
+        private Timer upstream;
+
+        private final Counter[] decisions = new Counter[CaptureDecision.values().length];
+
+        RouteTimers(String route) {
+            this.route = route;
+        }
+
+        Timer get(int series) {
+            Timer timer = timers[series];
+            if (timer == null) {
+                // 并发时可能重复构建，MeterRegistry 对相同 id 返回同一个 Timer，结果一致
+                timer = Timer.builder(PREFIX + ".requests")
+                        .description("Request latency by route template, measured by the logging filter")
+                        .tag("route", route)
+                        .tag("status", STATUS_SERIES[series])
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(registry);
+                timers[series] = timer;
+            }
+            return timer;
+        }
+
+        Timer upstream() {
+            Timer timer = upstream;
+            if (timer == null) {
+                timer = Timer.builder(PREFIX + ".upstream")
+                        .description("Time from forwarding to the upstream response headers, by gateway route")
+                        .tag("route", route)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(30))
+                        .register(registry);
+                upstream = timer;
+            }
+            return timer;
+        }
+
+        /**
+         * keep 为保留完整记录，metadata / drop 为未保留
+         */
+        Counter decision(CaptureDecision decision) {
+            Counter counter = decisions[decision.ordinal()];
+            if (counter == null) {
+                counter = Counter.builder(PREFIX + ".tail.route.decisions")
+                        .description("Tail capture decisions by route template")
+                        .tag("route", route)
+                        .tag("decision", decision.name().toLowerCase())
+                        .register(registry);
+                decisions[decision.ordinal()] = counter;
+            }
+            return counter;
+        }
+    }
+
+    @Override
+    public void recordOffload(long lagNanos, long workNanos) {
+        offloadLagTimer.record(lagNanos, TimeUnit.NANOSECONDS);
+        offloadWorkTimer.record(workNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordFlush(int size, long nanos) {
+        flushTimer.record(nanos, TimeUnit.NANOSECONDS);
+        batchSize.record(size);
+    }
+
+    @Override
+    public void bindSink(AsyncAccessLogSink sink) {
+        Gauge.builder(PREFIX + ".sink.queue.size", sink, AsyncAccessLogSink::getQueueSize)
+                .description("Access logs waiting to be written")
+                .register(registry);
+        Gauge.builder(PREFIX + ".sink.queue.capacity", sink, AsyncAccessLogSink::getCapacity)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".sink.enqueued", sink, AsyncAccessLogSink::getEnqueuedCount)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".sink.dropped", sink, AsyncAccessLogSink::getDroppedCount)
+                .description("Access logs dropped on overflow, write failure or shutdown")
+                .register(registry);
+    }
+
+    @Override
+    public void bindCaptureBufferPool(CaptureBufferPool pool) {
+        FunctionCounter.builder(PREFIX + ".capture.pool.hits", pool, CaptureBufferPool::getHits)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".capture.pool.misses", pool, CaptureBufferPool::getMisses)
+                .register(registry);
+        Gauge.builder(PREFIX + ".capture.pool.outstanding", pool, CaptureBufferPool::getOutstanding)
+                .description("Capture buffers currently lent out")
+                .register(registry);
+    }
+
+    @Override
+    public void bindShipping(ShippingAccessLogWriter writer) {
+        FunctionCounter.builder(PREFIX + ".ship.records", writer, ShippingAccessLogWriter::getShippedRecords)
+                .tag("outcome", "shipped")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".ship.records", writer, ShippingAccessLogWriter::getSpilledRecords)
+                .tag("outcome", "spilled")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".ship.records", writer, ShippingAccessLogWriter::getDroppedRecords)
+                .tag("outcome", "dropped")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".ship.bytes", writer, ShippingAccessLogWriter::getShippedBytes)
+                .description("Compressed bytes sent to the collector")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".ship.connects", writer, ShippingAccessLogWriter::getConnects)
+                .register(registry);
+        Gauge.builder(PREFIX + ".ship.backlog.bytes", writer, ShippingAccessLogWriter::getBacklogBytes)
+                .description("Compressed frames held in memory while the collector is unavailable")
+                .register(registry);
+    }
+
+    @Override
+    public void bindOffload(CaptureOffloadStage stage) {
+        Gauge.builder(PREFIX + ".offload.queue.size", stage, CaptureOffloadStage::getQueueSize)
+                .description("Completed requests waiting for a capture worker")
+                .register(registry);
+        Gauge.builder(PREFIX + ".offload.queue.capacity", stage, CaptureOffloadStage::getQueueCapacity)
+                .register(registry);
+        Gauge.builder(PREFIX + ".offload.active", stage, CaptureOffloadStage::getActiveCount)
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".offload.rejected", stage, CaptureOffloadStage::getRejectedCount)
+                .description("Requests logged without bodies because the capture workers were saturated")
+                .register(registry);
+    }
+
+    @Override
+    public void bindDedup(DedupAccessLogWriter writer) {
+        FunctionCounter.builder(PREFIX + ".dedup.lookups", writer, DedupAccessLogWriter::getHits)
+                .tag("outcome", "hit")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".dedup.lookups", writer, DedupAccessLogWriter::getMisses)
+                .tag("outcome", "miss")
+                .register(registry);
+        Gauge.builder(PREFIX + ".dedup.hit.ratio", writer, DedupAccessLogWriter::getHitRatio)
+                .description("Share of deduplicated bodies logged as a hash reference since startup")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".dedup.saved", writer, DedupAccessLogWriter::getSavedBytes)
+                .description("Captured body bytes replaced by a hash reference")
+                .baseUnit("bytes")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".dedup.evictions", writer, DedupAccessLogWriter::getEvictions)
+                .register(registry);
+        Gauge.builder(PREFIX + ".dedup.capacity", writer, DedupAccessLogWriter::getCapacity)
+                .register(registry);
+    }
+
+    @Override
+    public void bindPressure(PressureMonitor monitor) {
+        LoadSheddingPolicy policy = monitor.getPolicy();
+        Gauge.builder(PREFIX + ".shed.level", policy, LoadSheddingPolicy::getLevel)
+                .description("Capture level shed under pressure: 0 full, 1 truncated, 2 metadata, 3 sampled")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".shed.changes", policy, LoadSheddingPolicy::getStepDowns)
+                .tag("direction", "down")
+                .register(registry);
+        FunctionCounter.builder(PREFIX + ".shed.changes", policy, LoadSheddingPolicy::getStepUps)
+                .tag("direction", "up")
+                .register(registry);
+        Gauge.builder(PREFIX + ".pressure", monitor, PressureMonitor::getPressure)
+                .description("Highest pressure signal relative to its threshold")
+                .register(registry);
+        Gauge.builder(PREFIX + ".pressure.loop.latency", monitor, m -> m.getLoopLatencyNanos() / 1e9)
+                .description("Worst event loop probe task latency in the last interval")
+                .baseUnit("seconds")
+                .register(registry);
+        Gauge.builder(PREFIX + ".pressure.queue.fill", monitor, PressureMonitor::getQueueFill)
+                .register(registry);
+        Gauge.builder(PREFIX + ".pressure.allocation", monitor, PressureMonitor::getAllocationBytesPerSecond)
+                .description("Allocation rate of event loop threads")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
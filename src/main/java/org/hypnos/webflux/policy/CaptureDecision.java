@@ -0,0 +1,22 @@
+package org.hypnos.webflux.policy;
+
+/**
+ * 请求结束时对捕获内容的处理结果
+ */
+public enum CaptureDecision {
+
+    /**
+     * 保留完整记录，包括请求体和响应体
+     */
+    KEEP,
+
+    /**
+     * 丢弃请求体和响应体，只输出元数据
+     */
+    METADATA,
+
+    /**
+     * 整条记录丢弃，不渲染也不进入 sink
+     */
+    DROP
+}
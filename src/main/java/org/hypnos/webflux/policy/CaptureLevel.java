@@ -0,0 +1,22 @@
+package org.hypnos.webflux.policy;
+
+/**
+ * 按路由配置的捕获级别
+ */
+public enum CaptureLevel {
+
+    /**
+     * 不记录访问日志，过滤器直接放行
+     */
+    NONE,
+
+    /**
+     * 只记录元数据，不捕获请求体和响应体
+     */
+    METADATA,
+
+    /**
+     * 按各方向的字节上限和允许的 Content-Type 捕获请求体和响应体
+     */
+    BODY
+}
@@ -0,0 +1,125 @@
+package org.hypnos.webflux.policy;
+
+import org.hypnos.webflux.capture.redact.BodyRedaction;
+import org.hypnos.webflux.capture.redact.Redactor;
+
+/**
+ * 编译后的单条捕获策略，不可变
+ */
+public class CapturePolicy {
+
+    private final CaptureLevel level;
+
+    private final int requestLimit;
+
+    private final int responseLimit;
+
+    private final ContentTypeMatcher requestTypes;
+
+    private final ContentTypeMatcher responseTypes;
+
+    private final BodyRedaction redaction;
+
+    /**
+     * 降级后的策略按级别缓存，并发时可能重复创建，结果等价
+     */
+    private final CapturePolicy[] degraded = new CapturePolicy[CaptureLevel.values().length];
+
+    private CapturePolicy truncated;
+
+    public CapturePolicy(CaptureLevel level, int requestLimit, int responseLimit,
+                         ContentTypeMatcher requestTypes, ContentTypeMatcher responseTypes, BodyRedaction redaction) {
+        this.level = level;
+        this.requestLimit = requestLimit;
+        this.responseLimit = responseLimit;
+        this.requestTypes = requestTypes;
+        this.responseTypes = responseTypes;
+        this.redaction = redaction;
+    }
+
+    /**
+     * @param contentType 请求头中的原始 Content-Type，可能为 null
+     */
+    public boolean captureRequest(String contentType) {
+        return level == CaptureLevel.BODY && requestLimit > 0 && requestTypes.matches(contentType);
+    }
+
+    /**
+     * @param contentType 响应头中的原始 Content-Type，可能为 null
+     */
+    public boolean captureResponse(String contentType) {
+        return level == CaptureLevel.BODY && responseLimit > 0 && responseTypes.matches(contentType);
+    }
+
+    /**
+     * 为一个捕获体创建脱敏器
+     * @param contentType 原始 Content-Type，可能为 null
+     * @return 不需要脱敏时返回 null
+     */
+    public Redactor createRedactor(String contentType) {
+        return redaction.create(contentType);
+    }
+
+    /**
+     * 按字段记录的内容（如 multipart 文本字段）是否需要遮盖
+     */
+    public boolean redactsField(String name) {
+        return redaction.matchesField(name);
+    }
+
+    /**
+     * 级别降为 level 的策略，不高于当前级别时返回自身
+     */
+    public CapturePolicy withLevel(CaptureLevel level) {
+        if (level.compareTo(this.level) >= 0) {
+            return this;
+        }
+        CapturePolicy policy = degraded[level.ordinal()];
+        if (policy == null) {
+            policy = new CapturePolicy(level, requestLimit, responseLimit, requestTypes, responseTypes, redaction);
+            degraded[level.ordinal()] = policy;
+        }
+        return policy;
+    }
+
+    /**
+     * 请求体和响应体上限都不超过 limit 的策略，已经不超过时返回自身
+     */
+    public CapturePolicy withLimit(int limit) {
+        if (requestLimit <= limit && responseLimit <= limit) {
+            return this;
+        }
+        CapturePolicy policy = truncated;
+        if (policy == null || policy.responseLimit != Math.min(responseLimit, limit)
+                || policy.requestLimit != Math.min(requestLimit, limit)) {
+            policy = new CapturePolicy(level, Math.min(requestLimit, limit), Math.min(responseLimit, limit),
+                    requestTypes, responseTypes, redaction);
+            truncated = policy;
+        }
+        return policy;
+    }
+
+    public CaptureLevel getLevel() {
+        return level;
+    }
+
+    public int getRequestLimit() {
+        return requestLimit;
+    }
+
+    public int getResponseLimit() {
+        return responseLimit;
+    }
+
+    ContentTypeMatcher getRequestTypes() {
+        return requestTypes;
+    }
+
+    ContentTypeMatcher getResponseTypes() {
+        return responseTypes;
+    }
+
+    BodyRedaction getRedaction() {
+        return redaction;
+    }
+}
@@ -0,0 +1,25 @@
+package org.hypnos.webflux.policy;
+
+/**
+ * 持有当前生效的 {@link CapturePolicyTable}，重新加载时整体替换，请求线程读到的总是一张完整的表
+ */
+public class CapturePolicyRegistry {
+
+    private volatile CapturePolicyTable table;
+
+    public CapturePolicyRegistry(CapturePolicyTable table) {
+        this.table = table;
+    }
+
+    public CapturePolicy resolve(String method, String path) {
+        return table.match(method, path);
+    }
+
+    public void reload(CapturePolicyTable table) {
+        this.table = table;
+    }
+
+    public CapturePolicyTable getTable() {
+        return table;
+    }
+}
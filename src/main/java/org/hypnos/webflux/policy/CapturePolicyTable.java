@@ -0,0 +1,234 @@
+package org.hypnos.webflux.policy;
+
+import org.hypnos.webflux.capture.redact.BodyRedaction;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * 预编译的捕获策略表：按路径分段构建前缀树，匹配时逐段下降，不切分字符串、不分配对象。
+ * 同一层按字面量、单段通配（{name} / *）、多段通配（**）的优先级尝试，同一节点上按配置顺序取第一条 method 匹配的规则；
+ * 都不匹配时使用默认策略。不可变，重新加载时整体替换。
+ */
+public class CapturePolicyTable {
+
+    private static final String[] ANY_METHOD = new String[0];
+
+    private final Node root = new Node(null);
+
+    private final CapturePolicy defaultPolicy;
+
+    private final int ruleCount;
+
+    private final boolean matchRequestWithoutContentType;
+
+    private final int contentTypeCacheSize;
+
+    /**
+     * @param defaults 默认参数，pattern 和 methods 被忽略，各项都不能为 null
+     * @param matchRequestWithoutContentType 没有 Content-Type 的请求是否捕获请求体
+     * @param contentTypeCacheSize 每个 Content-Type 判断缓存的上限
+     * @param rules 按配置顺序排列的规则
+     * @param redaction 所有策略共用的脱敏规则
+     */
+    public CapturePolicyTable(CaptureRule defaults, boolean matchRequestWithoutContentType, int contentTypeCacheSize,
+                              List<CaptureRule> rules, BodyRedaction redaction) {
+        this.matchRequestWithoutContentType = matchRequestWithoutContentType;
+        this.contentTypeCacheSize = contentTypeCacheSize;
+        ContentTypeMatcher defaultRequestTypes = new ContentTypeMatcher(defaults.getRequestContentTypes(),
+                matchRequestWithoutContentType, contentTypeCacheSize);
+        ContentTypeMatcher defaultResponseTypes = new ContentTypeMatcher(defaults.getResponseContentTypes(),
+                false, contentTypeCacheSize);
+        this.defaultPolicy = new CapturePolicy(defaults.getLevel(), defaults.getRequestLimit(),
+                defaults.getResponseLimit(), defaultRequestTypes, defaultResponseTypes, redaction);
+        int count = 0;
+        if (rules != null) {
+            for (CaptureRule rule : rules) {
+                if (rule.getPattern() == null) {
+                    throw new IllegalArgumentException("capture rule pattern must not be null");
+                }
+                insert(rule.getPattern(), methods(rule.getMethods()), compile(rule));
+                count++;
+            }
+        }
+        this.ruleCount = count;
+    }
+
+    /**
+     * 把一条规则编译为策略，为 null 的项取默认策略的值，pattern 和 methods 被忽略。
+     * 也用于路径之外的来源，例如网关路由的 metadata
+     */
+    public CapturePolicy compile(CaptureRule rule) {
+        // 没有覆盖 Content-Type 的规则共用默认的判断缓存
+        ContentTypeMatcher requestTypes = rule.getRequestContentTypes() == null ? defaultPolicy.getRequestTypes()
+                : new ContentTypeMatcher(rule.getRequestContentTypes(), matchRequestWithoutContentType,
+                contentTypeCacheSize);
+        ContentTypeMatcher responseTypes = rule.getResponseContentTypes() == null ? defaultPolicy.getResponseTypes()
+                : new ContentTypeMatcher(rule.getResponseContentTypes(), false, contentTypeCacheSize);
+        return new CapturePolicy(
+                rule.getLevel() != null ? rule.getLevel() : defaultPolicy.getLevel(),
+                rule.getRequestLimit() != null ? rule.getRequestLimit() : defaultPolicy.getRequestLimit(),
+                rule.getResponseLimit() != null ? rule.getResponseLimit() : defaultPolicy.getResponseLimit(),
+                requestTypes, responseTypes, defaultPolicy.getRedaction());
+    }
+
+    private static String[] methods(List<String> methods) {
+        if (methods == null || methods.isEmpty()) {
+            return ANY_METHOD;
+        }
+        String[] result = new String[methods.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = methods.get(i).toUpperCase(Locale.ROOT);
+        }
+        return result;
+    }
+
+    private void insert(String pattern, String[] methods, CapturePolicy policy) {
+        Node node = root;
+        String[] segments = pattern.split("/");
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if ("**".equals(segment)) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("'**' must be the last segment: " + pattern);
+                }
+                if (node.rest == null) {
+                    node.rest = new Node(null);
+                }
+                node = node.rest;
+                break;
+            }
+            if ("*".equals(segment) || (segment.startsWith("{") && segment.endsWith("}"))) {
+                if (node.variable == null) {
+                    node.variable = new Node(null);
+                }
+                node = node.variable;
+            } else {
+                node = node.literalChild(segment);
+            }
+        }
+        node.add(methods, policy);
+    }
+
+    /**
+     * @param method HTTP method，大写
+     * @param path 应用内路径，如 /openapi/webflux/echo
+     */
+    public CapturePolicy match(String method, String path) {
+        CapturePolicy policy = find(root, method, path, 0);
+        return policy != null ? policy : defaultPolicy;
+    }
+
+    private static CapturePolicy find(Node node, String method, String path, int from) {
+        int start = from;
+        int length = path.length();
+        while (start < length && path.charAt(start) == '/') {
+            start++;
+        }
+        if (start >= length) {
+            CapturePolicy policy = node.policyFor(method);
+            if (policy == null && node.rest != null) {
+                policy = node.rest.policyFor(method);
+            }
+            return policy;
+        }
+        int end = path.indexOf('/', start);
+        if (end < 0) {
+            end = length;
+        }
+        Node literal = node.findLiteral(path, start, end - start);
+        if (literal != null) {
+            CapturePolicy policy = find(literal, method, path, end);
+            if (policy != null) {
+                return policy;
+            }
+        }
+        if (node.variable != null) {
+            CapturePolicy policy = find(node.variable, method, path, end);
+            if (policy != null) {
+                return policy;
+            }
+        }
+        return node.rest != null ? node.rest.policyFor(method) : null;
+    }
+
+    public CapturePolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    public int getRuleCount() {
+        return ruleCount;
+    }
+
+    private static final class Node {
+
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final String literal;
+
+        /**
+         * 子节点通常很少，线性比较比哈希查找更省，也不需要截取子串
+         */
+        private Node[] literals = NO_CHILDREN;
+
+        private Node variable;
+
+        private Node rest;
+
+        private String[][] methods = new String[0][];
+
+        private CapturePolicy[] policies = new CapturePolicy[0];
+
+        private Node(String literal) {
+            this.literal = literal;
+        }
+
+        private Node literalChild(String segment) {
+            for (Node child : literals) {
+                if (child.literal.equals(segment)) {
+                    return child;
+                }
+            }
+            Node child = new Node(segment);
+            literals = Arrays.copyOf(literals, literals.length + 1);
+            literals[literals.length - 1] = child;
+            return child;
+        }
+
+        private Node findLiteral(String path, int offset, int length) {
+            for (Node child : literals) {
+                if (child.literal.length() == length && path.regionMatches(offset, child.literal, 0, length)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private void add(String[] methods, CapturePolicy policy) {
+            int n = policies.length;
+            this.methods = Arrays.copyOf(this.methods, n + 1);
+            this.methods[n] = methods;
+            this.policies = Arrays.copyOf(policies, n + 1);
+            this.policies[n] = policy;
+        }
+
+        private CapturePolicy policyFor(String method) {
+            for (int i = 0; i < policies.length; i++) {
+                String[] allowed = methods[i];
+                if (allowed.length == 0) {
+                    return policies[i];
+                }
+                for (String candidate : allowed) {
+                    if (candidate.equals(method)) {
+                        return policies[i];
+                    }
+                }
+            }
+            return null;
+        }
+    }
+}
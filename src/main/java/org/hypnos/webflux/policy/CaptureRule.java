@@ -0,0 +1,45 @@
+package org.hypnos.webflux.policy;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 捕获策略表中的一条规则，为 null 的项使用全局默认值
+ */
+@Data
+public class CaptureRule {
+
+    /**
+     * 路径模式，按 / 分段：{name} 或 * 匹配一段，** 匹配剩余任意段（只能出现在末尾），其余按字面匹配
+     */
+    private String pattern;
+
+    /**
+     * 适用的 HTTP method，为空表示全部
+     */
+    private List<String> methods = new ArrayList<>();
+
+    private CaptureLevel level;
+
+    /**
+     * 请求体最多捕获的字节数，0 表示不捕获
+     */
+    private Integer requestLimit;
+
+    /**
+     * 响应体最多捕获的字节数，0 表示不捕获
+     */
+    private Integer responseLimit;
+
+    /**
+     * 允许捕获的请求 Content-Type
+     */
+    private List<String> requestContentTypes;
+
+    /**
+     * 允许捕获的响应 Content-Type
+     */
+    private List<String> responseContentTypes;
+}
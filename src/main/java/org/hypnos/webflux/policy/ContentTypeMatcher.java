@@ -0,0 +1,68 @@
+package org.hypnos.webflux.policy;
+
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 判断 Content-Type 是否在允许列表中，结果按原始头部字符串缓存，稳定运行后不再解析 MediaType。
+ * 缓存有上限，写满后不再新增，构造大量不同 Content-Type 的请求只会退化为每次解析，不会撑爆内存。
+ */
+public class ContentTypeMatcher {
+
+    private final List<MediaType> allowed;
+
+    private final boolean matchMissing;
+
+    private final int maxCacheSize;
+
+    private final Map<String, Boolean> cache = new ConcurrentHashMap<>();
+
+    /**
+     * @param allowed 允许的类型，如 application/json、text/*，按 {@link MediaType#isCompatibleWith} 判断
+     * @param matchMissing 没有 Content-Type 时的结果
+     * @param maxCacheSize 缓存的原始头部字符串个数上限
+     */
+    public ContentTypeMatcher(List<String> allowed, boolean matchMissing, int maxCacheSize) {
+        this.allowed = MediaType.parseMediaTypes(allowed);
+        this.matchMissing = matchMissing;
+        this.maxCacheSize = maxCacheSize;
+    }
+
+    public boolean matches(String contentType) {
+        if (contentType == null) {
+            return matchMissing;
+        }
+        Boolean matched = cache.get(contentType);
+        if (matched != null) {
+            return matched;
+        }
+        matched = compute(contentType);
+        if (cache.size() < maxCacheSize) {
+            cache.putIfAbsent(contentType, matched);
+        }
+        return matched;
+    }
+
+    private boolean compute(String contentType) {
+        MediaType mediaType;
+        try {
+            mediaType = MediaType.parseMediaType(contentType);
+        } catch (InvalidMediaTypeException e) {
+            return false;
+        }
+        for (MediaType candidate : allowed) {
+            if (candidate.isCompatibleWith(mediaType)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getCacheSize() {
+        return cache.size();
+    }
+}
@@ -0,0 +1,152 @@
+package org.hypnos.webflux.policy;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 按节点压力逐级降低捕获级别：完整捕获 → 只捕获短前缀 → 只记元数据 → 按比例采样元数据。
+ * <p>
+ * 压力值由 {@link org.hypnos.webflux.pressure.PressureMonitor} 周期性计算，1 表示达到任一信号的阈值。
+ * 连续 stepDownSamples 次不低于 1 时降一级，连续 stepUpSamples 次低于 recoverRatio 时升一级，
+ * 两个阈值之间保持不变；每次只调整一级，避免在临界点来回切换。
+ * 级别只由监控线程写入，请求线程只读 volatile 字段。
+ */
+public class LoadSheddingPolicy {
+
+    /**
+     * 按各条策略完整捕获
+     */
+    public static final int FULL = 0;
+
+    /**
+     * 请求体和响应体只捕获不超过 truncatedLimit 字节的前缀
+     */
+    public static final int TRUNCATED = 1;
+
+    /**
+     * 只记录元数据
+     */
+    public static final int METADATA = 2;
+
+    /**
+     * 按 sampleRate 采样记录元数据，其余请求不记录
+     */
+    public static final int SAMPLED = 3;
+
+    private static final String[] NAMES = {"full", "truncated", "metadata", "sampled"};
+
+    private final int truncatedLimit;
+
+    private final double sampleRate;
+
+    private final double recoverRatio;
+
+    private final int stepDownSamples;
+
+    private final int stepUpSamples;
+
+    private volatile int level = FULL;
+
+    private int hotSamples;
+
+    private int coolSamples;
+
+    private volatile long stepDowns;
+
+    private volatile long stepUps;
+
+    /**
+     * @param truncatedLimit TRUNCATED 级别的捕获上限（字节）
+     * @param sampleRate SAMPLED 级别记录的请求比例 [0, 1]
+     * @param recoverRatio 压力低于该值才开始计数升级，小于 1
+     * @param stepDownSamples 连续多少次过载后降一级
+     * @param stepUpSamples 连续多少次低于 recoverRatio 后升一级
+     */
+    public LoadSheddingPolicy(int truncatedLimit, double sampleRate, double recoverRatio, int stepDownSamples,
+                              int stepUpSamples) {
+        this.truncatedLimit = truncatedLimit;
+        this.sampleRate = sampleRate;
+        this.recoverRatio = recoverRatio;
+        this.stepDownSamples = Math.max(1, stepDownSamples);
+        this.stepUpSamples = Math.max(1, stepUpSamples);
+    }
+
+    /**
+     * 始终完整捕获的策略，未启用降级时使用
+     */
+    public static LoadSheddingPolicy disabled() {
+        return new LoadSheddingPolicy(Integer.MAX_VALUE, 1.0, 0, Integer.MAX_VALUE, 1);
+    }
+
+    /**
+     * 请求进入日志过滤器时调用，SAMPLED 级别下未被采样的请求返回 NONE 级别的策略
+     */
+    public CapturePolicy apply(CapturePolicy policy) {
+        int current = level;
+        if (current == SAMPLED && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+            return policy.withLevel(CaptureLevel.NONE);
+        }
+        return cap(policy, current);
+    }
+
+    /**
+     * 只限制级别上限，不重新采样；用于请求中途替换策略（如网关路由 metadata），已决定记录的请求不会因此被丢弃
+     */
+    public CapturePolicy cap(CapturePolicy policy) {
+        return cap(policy, level);
+    }
+
+    private CapturePolicy cap(CapturePolicy policy, int current) {
+        switch (current) {
+            case FULL:
+                return policy;
+            case TRUNCATED:
+                return policy.withLimit(truncatedLimit);
+            default:
+                return policy.withLevel(CaptureLevel.METADATA);
+        }
+    }
+
+    /**
+     * 提交一次压力采样，只由监控线程调用
+     * @param pressure 各信号相对阈值的最大比值
+     * @return 调整后的级别
+     */
+    public int update(double pressure) {
+        int current = level;
+        if (pressure >= 1) {
+            coolSamples = 0;
+            if (++hotSamples >= stepDownSamples && current < SAMPLED) {
+                hotSamples = 0;
+                stepDowns++;
+                level = current + 1;
+            }
+        } else if (pressure < recoverRatio) {
+            hotSamples = 0;
+            if (++coolSamples >= stepUpSamples && current > FULL) {
+                coolSamples = 0;
+                stepUps++;
+                level = current - 1;
+            }
+        } else {
+            hotSamples = 0;
+            coolSamples = 0;
+        }
+        return level;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public static String name(int level) {
+        return NAMES[level];
+    }
+
+    public long getStepDowns() {
+        return stepDowns;
+    }
+
+    public long getStepUps() {
+        return stepUps;
+    }
+}
@@ -0,0 +1,55 @@
+package org.hypnos.webflux.policy;
+
+/**
+ * multipart/form-data 请求的记录策略。
+ * 不按 requestContentTypes 复制请求体，而是流式扫描出每个 part 的字段名、文件名、Content-Type 和大小，
+ * 文本字段保留前若干字节，结果写入 formData；只在捕获级别为 BODY 且请求体上限大于 0 时生效。
+ */
+public class MultipartCapturePolicy {
+
+    private final boolean enabled;
+
+    private final int maxParts;
+
+    private final int textLimit;
+
+    private final int maxHeaderBytes;
+
+    /**
+     * @param maxParts 最多记录的 part 数，超出的只计数
+     * @param textLimit 每个文本字段保留的字节数，另受请求体上限约束
+     * @param maxHeaderBytes 单行 part 头保留的字节数，过长的文件名会被截断
+     */
+    public MultipartCapturePolicy(boolean enabled, int maxParts, int textLimit, int maxHeaderBytes) {
+        this.enabled = enabled;
+        this.maxParts = maxParts;
+        this.textLimit = textLimit;
+        this.maxHeaderBytes = maxHeaderBytes;
+    }
+
+    public static MultipartCapturePolicy defaults() {
+        return new MultipartCapturePolicy(true, 32, 256, 1024);
+    }
+
+    /**
+     * @return 按该策略是否扫描 multipart 请求体
+     */
+    public boolean applies(CapturePolicy policy) {
+        return enabled && policy.getLevel() == CaptureLevel.BODY && policy.getRequestLimit() > 0;
+    }
+
+    public int getMaxParts() {
+        return maxParts;
+    }
+
+    /**
+     * 文本字段在该策略下保留的字节数
+     */
+    public int textLimit(CapturePolicy policy) {
+        return Math.min(textLimit, policy.getRequestLimit());
+    }
+
+    public int getMaxHeaderBytes() {
+        return maxHeaderBytes;
+    }
+}
@@ -0,0 +1,20 @@
+package org.hypnos.webflux.policy;
+
+import lombok.Data;
+
+/**
+ * 按路由覆盖的尾部采样参数，为 null 的项使用全局默认值
+ */
+@Data
+public class RouteRule {
+
+    /**
+     * 慢请求阈值（毫秒）
+     */
+    private Long slowThresholdMillis;
+
+    /**
+     * 采样率 [0, 1]
+     */
+    private Double sampleRate;
+}
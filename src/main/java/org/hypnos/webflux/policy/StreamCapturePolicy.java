@@ -0,0 +1,40 @@
+package org.hypnos.webflux.policy;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式响应（writeAndFlushWith，如 SSE、NDJSON）的记录策略。
+ * 每次 flush 视为一个事件，只捕获前若干个事件的内容（仍受响应体大小上限约束），之后只计数；
+ * 长时间不结束的流按间隔输出进度记录，进度在事件到达时检查，空闲的流不会产生记录。
+ */
+public class StreamCapturePolicy {
+
+    private final int eventLimit;
+
+    private final long progressIntervalNanos;
+
+    /**
+     * @param eventLimit 捕获内容的事件数上限
+     * @param progressIntervalSeconds 进度记录的最小间隔（秒），小于等于 0 表示不输出
+     */
+    public StreamCapturePolicy(int eventLimit, long progressIntervalSeconds) {
+        this.eventLimit = eventLimit;
+        this.progressIntervalNanos = progressIntervalSeconds > 0
+                ? TimeUnit.SECONDS.toNanos(progressIntervalSeconds) : Long.MAX_VALUE;
+    }
+
+    public static StreamCapturePolicy defaults() {
+        return new StreamCapturePolicy(16, 60);
+    }
+
+    public int getEventLimit() {
+        return eventLimit;
+    }
+
+    /**
+     * @return 距离上次记录（或请求开始）已超过进度间隔
+     */
+    public boolean progressDue(long lastNanos, long nowNanos) {
+        return nowNanos - lastNanos >= progressIntervalNanos;
+    }
+}
@@ -0,0 +1,77 @@
+package org.hypnos.webflux.policy;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 尾部采样策略：请求和响应体先写入有界的临时缓冲区，在请求结束时才决定是否保留。
+ * 失败（状态码达到阈值）、慢请求（超过按路由配置的耗时阈值）或命中按路由的概率采样时保留完整记录，
+ * 其余记录按配置只输出元数据或整条丢弃。
+ */
+public class TailCapturePolicy {
+
+    /**
+     * 未匹配到路由模板的请求统一归到这个 key 下，避免原始路径撑爆统计
+     */
+    public static final String UNMATCHED_ROUTE = "UNMATCHED";
+
+    private final boolean enabled;
+
+    private final int keepStatusAtLeast;
+
+    private final long slowThresholdMillis;
+
+    private final double sampleRate;
+
+    private final Map<String, RouteRule> routeRules;
+
+    private final boolean dropUnkept;
+
+    /**
+     * @param enabled false 时所有记录都完整保留，与原有行为一致
+     * @param keepStatusAtLeast 状态码不小于该值时保留
+     * @param slowThresholdMillis 默认的慢请求阈值（毫秒），小于等于 0 表示不按耗时保留
+     * @param sampleRate 默认的采样率 [0, 1]
+     * @param routeRules 按路由模板覆盖的阈值与采样率
+     * @param dropUnkept true 时未保留的记录整条丢弃，false 时只输出元数据
+     */
+    public TailCapturePolicy(boolean enabled, int keepStatusAtLeast, long slowThresholdMillis, double sampleRate,
+                             Map<String, RouteRule> routeRules, boolean dropUnkept) {
+        this.enabled = enabled;
+        this.keepStatusAtLeast = keepStatusAtLeast;
+        this.slowThresholdMillis = slowThresholdMillis;
+        this.sampleRate = sampleRate;
+        this.routeRules = routeRules == null ? Collections.emptyMap() : routeRules;
+        this.dropUnkept = dropUnkept;
+    }
+
+    /**
+     * 完整保留所有记录的策略
+     */
+    public static TailCapturePolicy keepAll() {
+        return new TailCapturePolicy(false, 0, 0, 1.0, null, false);
+    }
+
+    public CaptureDecision decide(String route, Integer statusCode, long processTimeMillis) {
+        if (!enabled) {
+            return CaptureDecision.KEEP;
+        }
+        RouteRule rule = routeRules.get(route);
+        long slowThreshold = rule != null && rule.getSlowThresholdMillis() != null
+                ? rule.getSlowThresholdMillis() : slowThresholdMillis;
+        double rate = rule != null && rule.getSampleRate() != null ? rule.getSampleRate() : sampleRate;
+
+        boolean keep = (statusCode != null && statusCode >= keepStatusAtLeast)
+                || (slowThreshold > 0 && processTimeMillis >= slowThreshold)
+                || (rate > 0 && (rate >= 1 || ThreadLocalRandom.current().nextDouble() < rate));
+        if (keep) {
+            return CaptureDecision.KEEP;
+        }
+        return dropUnkept ? CaptureDecision.DROP : CaptureDecision.METADATA;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+}
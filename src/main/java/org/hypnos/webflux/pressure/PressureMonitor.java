@@ -0,0 +1,255 @@
+package org.hypnos.webflux.pressure;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import org.hypnos.webflux.capture.CaptureOffloadStage;
+import org.hypnos.webflux.policy.LoadSheddingPolicy;
+import org.hypnos.webflux.sink.AsyncAccessLogSink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 周期性采集节点压力并驱动 {@link LoadSheddingPolicy}，信号包括：
+ * <ul>
+ *     <li>event loop 任务延迟：每个周期向每个 event loop 提交一个探针任务，从提交到执行的最大耗时；
+ *     上个周期的探针还没执行时按已等待的时间计</li>
+ *     <li>日志队列填充率：sink 队列和捕获处理队列中较高的一个</li>
+ *     <li>event loop 线程的分配速率，需要 JVM 支持 com.sun.management.ThreadMXBean，线程 id 由探针任务顺带收集</li>
+ * </ul>
+ * 各信号除以各自的阈值，取最大值作为压力值，阈值小于等于 0 的信号不参与。
+ */
+public class PressureMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PressureMonitor.class);
+
+    private final EventLoopGroup eventLoops;
+
+    private final AsyncAccessLogSink sink;
+
+    private final CaptureOffloadStage offloadStage;
+
+    private final LoadSheddingPolicy policy;
+
+    private final long loopLatencyThresholdNanos;
+
+    private final double queueFillThreshold;
+
+    private final long allocationThresholdBytesPerSecond;
+
+    private final com.sun.management.ThreadMXBean threadBean;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final AtomicLong maxProbeNanos = new AtomicLong();
+
+    private final AtomicInteger pendingProbes = new AtomicInteger();
+
+    private final Set<Long> loopThreadIds = ConcurrentHashMap.newKeySet();
+
+    private long lastProbeNanos;
+
+    private long lastAllocatedBytes = -1;
+
+    private int lastThreadCount;
+
+    private long lastSampleNanos;
+
+    // 以下为最近一次采样的结果，供指标读取
+
+    private volatile long loopLatencyNanos;
+
+    private volatile double queueFill;
+
+    private volatile long allocationBytesPerSecond;
+
+    private volatile double pressure;
+
+    /**
+     * @param eventLoops 服务端 event loop
+     * @param sink 不是 {@link AsyncAccessLogSink} 时为 null，不采集队列填充率
+     * @param offloadStage 未启用时为 null
+     * @param loopLatencyThresholdMillis 探针延迟阈值（毫秒）
+     * @param queueFillThreshold 队列填充率阈值 (0, 1]
+     * @param allocationThresholdBytesPerSecond event loop 线程合计分配速率阈值（字节/秒）
+     */
+    public PressureMonitor(EventLoopGroup eventLoops, AsyncAccessLogSink sink, CaptureOffloadStage offloadStage,
+                           LoadSheddingPolicy policy, long intervalMillis, long loopLatencyThresholdMillis,
+                           double queueFillThreshold, long allocationThresholdBytesPerSecond) {
+        this.eventLoops = eventLoops;
+        this.sink = sink;
+        this.offloadStage = offloadStage;
+        this.policy = policy;
+        this.loopLatencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(loopLatencyThresholdMillis);
+        this.queueFillThreshold = queueFillThreshold;
+        this.allocationThresholdBytesPerSecond = allocationThresholdBytesPerSecond;
+        this.threadBean = allocationThresholdBytesPerSecond > 0 ? allocationBean() : null;
+        this.lastSampleNanos = System.nanoTime();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "access-log-pressure");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleWithFixedDelay(this::sample, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) bean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled()) {
+                return allocationBean;
+            }
+        }
+        logger.info("thread allocation accounting unavailable, allocation rate is not used as a pressure signal");
+        return null;
+    }
+
+    private void sample() {
+        try {
+            long now = System.nanoTime();
+            loopLatencyNanos = probeLatency(now);
+            queueFill = queueFill();
+            allocationBytesPerSecond = allocationRate(now);
+            lastSampleNanos = now;
+
+            double current = 0;
+            if (loopLatencyThresholdNanos > 0) {
+                current = Math.max(current, (double) loopLatencyNanos / loopLatencyThresholdNanos);
+            }
+            if (queueFillThreshold > 0) {
+                current = Math.max(current, queueFill / queueFillThreshold);
+            }
+            if (allocationThresholdBytesPerSecond > 0) {
+                current = Math.max(current, (double) allocationBytesPerSecond / allocationThresholdBytesPerSecond);
+            }
+            pressure = current;
+            int before = policy.getLevel();
+            int after = policy.update(current);
+            if (after > before) {
+                logger.warn("access log capture level {} -> {}: {}", LoadSheddingPolicy.name(before),
+                        LoadSheddingPolicy.name(after), this);
+            } else if (after < before) {
+                logger.info("access log capture level {} -> {}: {}", LoadSheddingPolicy.name(before),
+                        LoadSheddingPolicy.name(after), this);
+            }
+            submitProbes();
+        } catch (RuntimeException e) {
+            logger.warn("sample pressure failed", e);
+        }
+    }
+
+    /**
+     * 上个周期探针的最大延迟；仍有探针未执行时，说明至少有一个 event loop 已被占用这么久
+     */
+    private long probeLatency(long now) {
+        long latency = maxProbeNanos.getAndSet(0);
+        if (pendingProbes.get() > 0) {
+            latency = Math.max(latency, now - lastProbeNanos);
+        }
+        return latency;
+    }
+
+    private void submitProbes() {
+        if (pendingProbes.get() > 0) {
+            // 上一轮还没执行完，不再堆积探针
+            return;
+        }
+        long submitted = System.nanoTime();
+        lastProbeNanos = submitted;
+        for (EventExecutor loop : eventLoops) {
+            pendingProbes.incrementAndGet();
+            loop.execute(() -> {
+                long latency = System.nanoTime() - submitted;
+                maxProbeNanos.accumulateAndGet(latency, Math::max);
+                if (threadBean != null) {
+                    loopThreadIds.add(Thread.currentThread().getId());
+                }
+                pendingProbes.decrementAndGet();
+            });
+        }
+    }
+
+    private double queueFill() {
+        double fill = 0;
+        if (sink != null) {
+            fill = (double) sink.getQueueSize() / sink.getCapacity();
+        }
+        if (offloadStage != null) {
+            fill = Math.max(fill, (double) offloadStage.getQueueSize() / offloadStage.getQueueCapacity());
+        }
+        return fill;
+    }
+
+    private long allocationRate(long now) {
+        if (threadBean == null || loopThreadIds.isEmpty()) {
+            return 0;
+        }
+        long[] ids = new long[loopThreadIds.size()];
+        int i = 0;
+        for (Long id : loopThreadIds) {
+            if (i == ids.length) {
+                break;
+            }
+            ids[i++] = id;
+        }
+        long total = 0;
+        for (long allocated : threadBean.getThreadAllocatedBytes(ids)) {
+            if (allocated > 0) {
+                total += allocated;
+            }
+        }
+        long previous = lastAllocatedBytes;
+        int previousThreads = lastThreadCount;
+        lastAllocatedBytes = total;
+        lastThreadCount = ids.length;
+        long elapsed = now - lastSampleNanos;
+        // 第一次采样或新发现了 event loop 线程时只记录基线
+        if (previous < 0 || previousThreads != ids.length || total < previous || elapsed <= 0) {
+            return 0;
+        }
+        return (long) ((total - previous) * 1e9 / elapsed);
+    }
+
+    public long getLoopLatencyNanos() {
+        return loopLatencyNanos;
+    }
+
+    public double getQueueFill() {
+        return queueFill;
+    }
+
+    public long getAllocationBytesPerSecond() {
+        return allocationBytesPerSecond;
+    }
+
+    /**
+     * 最近一次采样的压力值，1 表示达到阈值
+     */
+    public double getPressure() {
+        return pressure;
+    }
+
+    public LoadSheddingPolicy getPolicy() {
+        return policy;
+    }
+
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("pressure=%.2f loopLatency=%.1fms queueFill=%.2f allocation=%dMB/s", pressure,
+                loopLatencyNanos / 1e6, queueFill, allocationBytesPerSecond >> 20);
+    }
+}
@@ -0,0 +1,106 @@
+package org.hypnos.webflux.recent;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最近请求的请求体/响应体存放区：一块固定大小的堆外缓冲区，按写入顺序循环覆盖。
+ * 写入方用 CAS 预留一段全局递增的位置后各自复制，互不阻塞；读取方复制完再检查这段位置有没有被新的预留覆盖，
+ * 被覆盖的内容视为已淘汰。内存占用只有这一块缓冲区，不随请求量增长。
+ */
+public class BodyArena {
+
+    private final ByteBuffer buffer;
+
+    private final int capacity;
+
+    /**
+     * 已预留的字节数，即下一次写入的全局位置
+     */
+    private final AtomicLong reserved = new AtomicLong();
+
+    /**
+     * 读取后的校验读必须排在复制之后，这里用一次原子写隔开
+     */
+    private final AtomicLong reads = new AtomicLong();
+
+    /**
+     * 每个写入线程自己的视图，position 互不干扰
+     */
+    private final ThreadLocal<ByteBuffer> views;
+
+    public BodyArena(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0, but was " + capacity);
+        }
+        this.capacity = capacity;
+        this.buffer = ByteBuffer.allocateDirect(capacity);
+        this.views = ThreadLocal.withInitial(buffer::duplicate);
+    }
+
+    /**
+     * 复制 source 的剩余部分，不改变 source 的 position
+     * @return 写入的全局位置，source 为空或超过容量时返回 -1
+     */
+    public long append(ByteBuffer source) {
+        int length = source.remaining();
+        if (length == 0 || length > capacity) {
+            return -1;
+        }
+        long offset = reserved.getAndAdd(length);
+        int start = (int) (offset % capacity);
+        int first = Math.min(length, capacity - start);
+        ByteBuffer view = views.get();
+        ByteBuffer src = source.duplicate();
+        view.clear();
+        view.position(start);
+        src.limit(src.position() + first);
+        view.put(src);
+        if (first < length) {
+            src.limit(src.position() + length - first);
+            view.position(0);
+            view.put(src);
+        }
+        return offset;
+    }
+
+    /**
+     * @return 写入时的字节，已被覆盖时返回 null
+     */
+    public byte[] read(long offset, int length) {
+        if (offset < 0 || !intact(offset)) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        int start = (int) (offset % capacity);
+        int first = Math.min(length, capacity - start);
+        view.position(start);
+        view.get(bytes, 0, first);
+        if (first < length) {
+            view.position(0);
+            view.get(bytes, first, length - first);
+        }
+        // 复制期间可能有新的写入覆盖了这段位置，复制完再检查一次
+        reads.incrementAndGet();
+        return intact(offset) ? bytes : null;
+    }
+
+    /**
+     * 从 offset 开始的内容没有被之后的预留覆盖
+     */
+    private boolean intact(long offset) {
+        return reserved.get() - offset <= capacity;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 累计写入的字节数
+     */
+    public long getWrittenBytes() {
+        return reserved.get();
+    }
+}
@@ -0,0 +1,100 @@
+package org.hypnos.webflux.recent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 把 queryParams/formData 复制成有上限的只读副本再放进 {@link RecentRequestBuffer} 的槽位，
+ * 槽位不再引用请求中任意大小的原始 Map。
+ * <p>
+ * 嵌套的列表和 Map（同名字段、上传文件信息）与顶层共用 maxEntries 个条目，超出的条目丢弃，
+ * 在所在层级记一个 "..." 条目注明丢弃的数量；字符串超过 maxLength 个字符时截断并以 ... 结尾，与 multipart 文本字段一致。
+ */
+final class BoundedParams {
+
+    static final String MORE = "...";
+
+    private final int maxLength;
+
+    private int remaining;
+
+    private BoundedParams(int maxEntries, int maxLength) {
+        this.remaining = maxEntries;
+        this.maxLength = maxLength;
+    }
+
+    /**
+     * @return 有上限的只读副本，source 为空或 maxEntries 不大于 0 时返回 null
+     */
+    static Map<String, Object> copy(Map<String, Object> source, int maxEntries, int maxLength) {
+        if (source == null || source.isEmpty() || maxEntries <= 0) {
+            return null;
+        }
+        return new BoundedParams(maxEntries, maxLength).copyMap(source, 0);
+    }
+
+    private Map<String, Object> copyMap(Map<?, ?> source, int depth) {
+        Map<String, Object> copy = new LinkedHashMap<>(Math.min(source.size(), remaining) * 2);
+        int dropped = 0;
+        for (Map.Entry<?, ?> entry : source.entrySet()) {
+            if (remaining <= 0) {
+                dropped++;
+                continue;
+            }
+            remaining--;
+            copy.put(truncate(String.valueOf(entry.getKey())), copyValue(entry.getValue(), depth));
+        }
+        if (dropped > 0) {
+            copy.put(MORE, dropped);
+        }
+        return Collections.unmodifiableMap(copy);
+    }
+
+    private List<Object> copyList(Collection<?> source, int depth) {
+        List<Object> copy = new ArrayList<>(Math.min(source.size(), remaining));
+        int dropped = 0;
+        for (Object value : source) {
+            if (remaining <= 0) {
+                dropped++;
+                continue;
+            }
+            remaining--;
+            copy.add(copyValue(value, depth));
+        }
+        if (dropped > 0) {
+            copy.add(MORE + dropped);
+        }
+        return Collections.unmodifiableList(copy);
+    }
+
+    /**
+     * 数字和布尔值原样保留；只展开两层嵌套，更深的内容按字符串截断
+     */
+    private Object copyValue(Object value, int depth) {
+        if (value == null || value instanceof Number || value instanceof Boolean) {
+            return value;
+        }
+        if (depth < 2 && value instanceof Map) {
+            return copyMap((Map<?, ?>) value, depth + 1);
+        }
+        if (depth < 2 && value instanceof Collection) {
+            return copyList((Collection<?>) value, depth + 1);
+        }
+        return truncate(value.toString());
+    }
+
+    private String truncate(String value) {
+        if (value.length() <= maxLength) {
+            return value;
+        }
+        int end = maxLength;
+        if (end > 0 && Character.isHighSurrogate(value.charAt(end - 1))) {
+            end--;
+        }
+        return value.substring(0, end) + MORE;
+    }
+}
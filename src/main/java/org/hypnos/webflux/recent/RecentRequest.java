@@ -0,0 +1,179 @@
+package org.hypnos.webflux.recent;
+
+import org.hypnos.webflux.vo.HttpAccLog;
+
+import java.util.Map;
+
+/**
+ * {@link RecentRequestBuffer} 中的一条记录，创建后不再修改。
+ * 元数据引用 {@link HttpAccLog} 中已有的字符串；queryParams/formData 是 {@link BoundedParams} 复制的有上限的副本；
+ * 请求体和响应体只保存在 {@link BodyArena} 中的位置和长度
+ */
+public final class RecentRequest {
+
+    private final long sequence;
+
+    private final String traceId;
+
+    private final String method;
+
+    private final String path;
+
+    private final String route;
+
+    private final Integer statusCode;
+
+    private final long reqTime;
+
+    private final long processTime;
+
+    private final Long upstreamTime;
+
+    private final Long firstByteTime;
+
+    private final Long responseSize;
+
+    private final String remoteAddr;
+
+    private final boolean inProgress;
+
+    private final Map<String, Object> queryParams;
+
+    private final Map<String, Object> formData;
+
+    private final long requestBodyOffset;
+
+    private final int requestBodyLength;
+
+    private final boolean requestBodyTruncated;
+
+    private final long responseBodyOffset;
+
+    private final int responseBodyLength;
+
+    private final boolean responseBodyTruncated;
+
+    RecentRequest(long sequence, HttpAccLog httpAccLog, Map<String, Object> queryParams,
+                  Map<String, Object> formData, long requestBodyOffset, int requestBodyLength,
+                  boolean requestBodyTruncated, long responseBodyOffset, int responseBodyLength,
+                  boolean responseBodyTruncated) {
+        this.sequence = sequence;
+        this.traceId = httpAccLog.getTraceId();
+        this.method = httpAccLog.getMethod();
+        this.path = httpAccLog.getPath();
+        this.route = httpAccLog.getRoute();
+        this.statusCode = httpAccLog.getStatusCode();
+        this.reqTime = httpAccLog.getReqTimeMillis();
+        this.processTime = httpAccLog.getProcessTime();
+        this.upstreamTime = httpAccLog.getUpstreamTime();
+        this.firstByteTime = httpAccLog.getFirstByteTime();
+        this.responseSize = httpAccLog.getResponseSize();
+        this.remoteAddr = httpAccLog.getRemoteAddr();
+        this.inProgress = Boolean.TRUE.equals(httpAccLog.getInProgress());
+        this.queryParams = queryParams;
+        this.formData = formData;
+        this.requestBodyOffset = requestBodyOffset;
+        this.requestBodyLength = requestBodyLength;
+        this.requestBodyTruncated = requestBodyTruncated;
+        this.responseBodyOffset = responseBodyOffset;
+        this.responseBodyLength = responseBodyLength;
+        this.responseBodyTruncated = responseBodyTruncated;
+    }
+
+    /**
+     * 进入缓冲区的顺序号
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public Integer getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 状态码不在 2xx 范围内，没有状态码的也算
+     */
+    public boolean isFailed() {
+        return statusCode == null || statusCode < 200 || statusCode >= 300;
+    }
+
+    /**
+     * 请求时间，epoch 毫秒
+     */
+    public long getReqTime() {
+        return reqTime;
+    }
+
+    public long getProcessTime() {
+        return processTime;
+    }
+
+    public Long getUpstreamTime() {
+        return upstreamTime;
+    }
+
+    public Long getFirstByteTime() {
+        return firstByteTime;
+    }
+
+    public Long getResponseSize() {
+        return responseSize;
+    }
+
+    public String getRemoteAddr() {
+        return remoteAddr;
+    }
+
+    public boolean isInProgress() {
+        return inProgress;
+    }
+
+    public Map<String, Object> getQueryParams() {
+        return queryParams;
+    }
+
+    public Map<String, Object> getFormData() {
+        return formData;
+    }
+
+    long getRequestBodyOffset() {
+        return requestBodyOffset;
+    }
+
+    int getRequestBodyLength() {
+        return requestBodyLength;
+    }
+
+    public boolean isRequestBodyTruncated() {
+        return requestBodyTruncated;
+    }
+
+    long getResponseBodyOffset() {
+        return responseBodyOffset;
+    }
+
+    int getResponseBodyLength() {
+        return responseBodyLength;
+    }
+
+    public boolean isResponseBodyTruncated() {
+        return responseBodyTruncated;
+    }
+}
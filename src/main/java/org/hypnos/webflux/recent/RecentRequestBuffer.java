@@ -0,0 +1,274 @@
+package org.hypnos.webflux.recent;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.vo.HttpAccLog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 本节点最近的访问日志，供事故排查时直接查询，不必到多台机器上 grep 日志。
+ * <ul>
+ *     <li>主环：最近 capacity 条记录，固定长度的槽位数组，写入方用原子递增的游标领取槽位后直接覆盖</li>
+ *     <li>失败环：最近的非 2xx 记录，比主环保留得更久</li>
+ *     <li>最慢记录：固定 K 个槽位，CAS 替换其中最快的一条；滚出主环的记录视为空位，因此是最近记录的近似 top-K</li>
+ * </ul>
+ * 写入不加锁，读取方拿到的是各槽位此刻的快照。请求体和响应体只复制前 bodyLimit 字节到 {@link BodyArena}，
+ * queryParams/formData 按 paramLimit、paramValueLimit 复制有上限的副本，
+ * 内存占用由槽位数、arena 大小和这两个上限决定，与请求量和请求体大小无关。
+ */
+public class RecentRequestBuffer {
+
+    private static final Comparator<RecentRequest> NEWEST_FIRST =
+            Comparator.comparingLong(RecentRequest::getSequence).reversed();
+
+    private static final Comparator<RecentRequest> SLOWEST_FIRST =
+            Comparator.comparingLong(RecentRequest::getProcessTime).reversed();
+
+    private final Ring recent;
+
+    private final Ring failed;
+
+    private final AtomicReferenceArray<RecentRequest> slowest;
+
+    private final BodyArena arena;
+
+    private final int bodyLimit;
+
+    private final int paramLimit;
+
+    private final int paramValueLimit;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param capacity 主环保留的记录数，向上取整为 2 的幂
+     * @param failedCapacity 失败环保留的记录数，向上取整为 2 的幂
+     * @param slowestCapacity 最慢记录的条数
+     * @param arenaBytes 请求体/响应体存放区的字节数
+     * @param bodyLimit 每个请求体/响应体最多保留的字节数
+     * @param paramLimit queryParams/formData 各自最多保留的条目数（含嵌套的列表元素）
+     * @param paramValueLimit 参数名和参数值最多保留的字符数
+     */
+    public RecentRequestBuffer(int capacity, int failedCapacity, int slowestCapacity, int arenaBytes, int bodyLimit,
+                               int paramLimit, int paramValueLimit) {
+        this.recent = new Ring(capacity);
+        this.failed = new Ring(failedCapacity);
+        this.slowest = new AtomicReferenceArray<>(Math.max(1, slowestCapacity));
+        this.arena = new BodyArena(arenaBytes);
+        this.bodyLimit = bodyLimit;
+        this.paramLimit = paramLimit;
+        this.paramValueLimit = paramValueLimit;
+    }
+
+    /**
+     * 记录一条访问日志，在日志输出之前调用，捕获缓冲区此时还没有归还
+     */
+    public void add(HttpAccLog httpAccLog) {
+        BodyCapture requestCapture = httpAccLog.requestCapture();
+        ByteBuffer requestBody = requestCapture != null ? captured(requestCapture)
+                : rendered(httpAccLog.getRequestBody());
+        BodyCapture responseCapture = httpAccLog.responseCapture();
+        ByteBuffer responseBody = responseCapture != null ? captured(responseCapture)
+                : rendered(httpAccLog.getResponseBody());
+        RecentRequest request = new RecentRequest(sequence.getAndIncrement(), httpAccLog,
+                BoundedParams.copy(httpAccLog.getQueryParams(), paramLimit, paramValueLimit),
+                BoundedParams.copy(httpAccLog.getFormData(), paramLimit, paramValueLimit),
+                requestBody == null ? -1 : arena.append(requestBody),
+                requestBody == null ? 0 : requestBody.remaining(),
+                truncated(requestCapture, requestBody),
+                responseBody == null ? -1 : arena.append(responseBody),
+                responseBody == null ? 0 : responseBody.remaining(),
+                truncated(responseCapture, responseBody));
+        recent.add(request);
+        if (request.isInProgress()) {
+            return;
+        }
+        if (request.isFailed()) {
+            failed.add(request);
+        }
+        offerSlowest(request);
+    }
+
+    private ByteBuffer captured(BodyCapture capture) {
+        if (capture.getCaptured() == 0) {
+            return null;
+        }
+        ByteBuffer view = capture.asReadOnlyBuffer();
+        view.limit(Math.min(view.limit(), bodyLimit));
+        return view;
+    }
+
+    /**
+     * 已渲染成字符串的内容，如解压失败的提示
+     */
+    private ByteBuffer rendered(String body) {
+        if (body == null || body.isEmpty()) {
+            return null;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.wrap(bytes, 0, Math.min(bytes.length, bodyLimit));
+    }
+
+    /**
+     * 捕获时已截断或超出 bodyLimit；字符串包装的 ByteBuffer 的 capacity 即原长度
+     */
+    private static boolean truncated(BodyCapture capture, ByteBuffer body) {
+        if (body == null) {
+            return false;
+        }
+        if (capture != null) {
+            return capture.isTruncated() || capture.getCaptured() > body.remaining();
+        }
+        return body.capacity() > body.remaining();
+    }
+
+    /**
+     * 替换最快的一条或已滚出主环的一条，比现有记录都快时不记录。并发替换同一槽位失败时重新选择
+     */
+    private void offerSlowest(RecentRequest request) {
+        long oldest = request.getSequence() - recent.capacity();
+        for (;;) {
+            int victim = -1;
+            RecentRequest victimRequest = null;
+            boolean free = false;
+            for (int i = 0; i < slowest.length(); i++) {
+                RecentRequest current = slowest.get(i);
+                if (current == null || current.getSequence() <= oldest) {
+                    victim = i;
+                    victimRequest = current;
+                    free = true;
+                    break;
+                }
+                if (victimRequest == null || current.getProcessTime() < victimRequest.getProcessTime()) {
+                    victim = i;
+                    victimRequest = current;
+                }
+            }
+            if (!free && request.getProcessTime() <= victimRequest.getProcessTime()) {
+                return;
+            }
+            if (slowest.compareAndSet(victim, victimRequest, request)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 最近的记录，新的在前
+     */
+    public List<RecentRequest> recent() {
+        return recent.snapshot();
+    }
+
+    /**
+     * 最近的非 2xx 记录，新的在前
+     */
+    public List<RecentRequest> failed() {
+        return failed.snapshot();
+    }
+
+    /**
+     * 仍在主环范围内的最慢记录，慢的在前
+     */
+    public List<RecentRequest> slowest() {
+        long oldest = sequence.get() - recent.capacity();
+        List<RecentRequest> requests = new ArrayList<>(slowest.length());
+        for (int i = 0; i < slowest.length(); i++) {
+            RecentRequest request = slowest.get(i);
+            if (request != null && request.getSequence() >= oldest) {
+                requests.add(request);
+            }
+        }
+        requests.sort(SLOWEST_FIRST);
+        return requests;
+    }
+
+    /**
+     * 读取记录的请求体，没有或已被新内容覆盖时返回 null
+     */
+    public String requestBody(RecentRequest request) {
+        return body(request.getRequestBodyOffset(), request.getRequestBodyLength());
+    }
+
+    /**
+     * 读取记录的响应体，含义同 {@link #requestBody}
+     */
+    public String responseBody(RecentRequest request) {
+        return body(request.getResponseBodyOffset(), request.getResponseBodyLength());
+    }
+
+    private String body(long offset, int length) {
+        if (offset < 0) {
+            return null;
+        }
+        byte[] bytes = arena.read(offset, length);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 累计记录的条数
+     */
+    public long getRecorded() {
+        return sequence.get();
+    }
+
+    public int getCapacity() {
+        return recent.capacity();
+    }
+
+    public int getFailedCapacity() {
+        return failed.capacity();
+    }
+
+    public int getSlowestCapacity() {
+        return slowest.length();
+    }
+
+    public BodyArena getArena() {
+        return arena;
+    }
+
+    /**
+     * 覆盖写入的定长环，只保证每个槽位的读写是原子的
+     */
+    private static final class Ring {
+
+        private final AtomicReferenceArray<RecentRequest> slots;
+
+        private final int mask;
+
+        private final AtomicLong head = new AtomicLong();
+
+        Ring(int requestedCapacity) {
+            int capacity = 1 << (32 - Integer.numberOfLeadingZeros(Math.max(2, requestedCapacity) - 1));
+            this.slots = new AtomicReferenceArray<>(capacity);
+            this.mask = capacity - 1;
+        }
+
+        void add(RecentRequest request) {
+            slots.set((int) head.getAndIncrement() & mask, request);
+        }
+
+        List<RecentRequest> snapshot() {
+            List<RecentRequest> requests = new ArrayList<>((int) Math.min(slots.length(), head.get()));
+            for (int i = 0; i < slots.length(); i++) {
+                RecentRequest request = slots.get(i);
+                if (request != null) {
+                    requests.add(request);
+                }
+            }
+            requests.sort(NEWEST_FIRST);
+            return requests;
+        }
+
+        int capacity() {
+            return slots.length();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.hypnos.webflux.recent;
+
+import org.hypnos.webflux.utils.TimeUtil;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.lang.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 查询本节点最近的访问日志，暴露在管理端口上，如
+ * <pre>
+ * GET /actuator/recentrequests?index=failed&amp;status=5xx&amp;path=/orders&amp;minLatencyMillis=200&amp;windowSeconds=300
+ * </pre>
+ * index 为 recent（默认）、failed 或 slowest；status 可以是具体状态码或 4xx 这样的类别；
+ * path 按子串匹配；sinceMillis 为 epoch 毫秒，与 windowSeconds 同时给出时取较晚的一个
+ */
+@Endpoint(id = "recentrequests")
+public class RecentRequestsEndpoint {
+
+    private static final int DEFAULT_LIMIT = 50;
+
+    private final RecentRequestBuffer buffer;
+
+    public RecentRequestsEndpoint(RecentRequestBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @ReadOperation
+    public Map<String, Object> recentRequests(@Nullable String index, @Nullable String path, @Nullable String status,
+                                              @Nullable Long minLatencyMillis, @Nullable Long sinceMillis,
+                                              @Nullable Long windowSeconds, @Nullable Integer limit,
+                                              @Nullable Boolean bodies) {
+        List<RecentRequest> source = source(index);
+        int statusFrom = 0;
+        int statusTo = Integer.MAX_VALUE;
+        if (status != null) {
+            int[] range = statusRange(status);
+            statusFrom = range[0];
+            statusTo = range[1];
+        }
+        long since = sinceMillis == null ? 0 : sinceMillis;
+        if (windowSeconds != null) {
+            since = Math.max(since, System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(windowSeconds));
+        }
+        int max = limit == null || limit <= 0 ? DEFAULT_LIMIT : limit;
+        boolean withBodies = bodies == null || bodies;
+
+        List<Map<String, Object>> records = new ArrayList<>(Math.min(max, source.size()));
+        int matched = 0;
+        for (RecentRequest request : source) {
+            Integer statusCode = request.getStatusCode();
+            if ((status != null && (statusCode == null || statusCode < statusFrom || statusCode > statusTo))
+                    || (path != null && (request.getPath() == null || !request.getPath().contains(path)))
+                    || (minLatencyMillis != null && request.getProcessTime() < minLatencyMillis)
+                    || request.getReqTime() < since) {
+                continue;
+            }
+            matched++;
+            if (records.size() < max) {
+                records.add(toMap(request, withBodies));
+            }
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("index", index == null ? "recent" : index);
+        result.put("recorded", buffer.getRecorded());
+        result.put("capacity", buffer.getCapacity());
+        result.put("failedCapacity", buffer.getFailedCapacity());
+        result.put("slowestCapacity", buffer.getSlowestCapacity());
+        result.put("arenaBytes", buffer.getArena().getCapacity());
+        result.put("arenaWrittenBytes", buffer.getArena().getWrittenBytes());
+        result.put("matched", matched);
+        result.put("records", records);
+        return result;
+    }
+
+    private List<RecentRequest> source(String index) {
+        if (index == null || "recent".equals(index)) {
+            return buffer.recent();
+        }
+        if ("failed".equals(index)) {
+            return buffer.failed();
+        }
+        if ("slowest".equals(index)) {
+            return buffer.slowest();
+        }
+        throw new InvalidEndpointRequestException("unknown index " + index, "index must be recent, failed or slowest");
+    }
+
+    /**
+     * 500 或 5xx
+     */
+    private static int[] statusRange(String status) {
+        String value = status.trim();
+        try {
+            if (value.length() == 3 && value.regionMatches(true, 1, "xx", 0, 2)) {
+                int hundreds = Integer.parseInt(value.substring(0, 1)) * 100;
+                return new int[]{hundreds, hundreds + 99};
+            }
+            int code = Integer.parseInt(value);
+            return new int[]{code, code};
+        } catch (NumberFormatException e) {
+            throw new InvalidEndpointRequestException("invalid status " + status, "status must be like 503 or 5xx");
+        }
+    }
+
+    private Map<String, Object> toMap(RecentRequest request, boolean withBodies) {
+        Map<String, Object> map = new LinkedHashMap<>(32);
+        map.put("sequence", request.getSequence());
+        map.put("traceId", request.getTraceId());
+        map.put("method", request.getMethod());
+        map.put("path", request.getPath());
+        map.put("route", request.getRoute());
+        map.put("statusCode", request.getStatusCode());
+        map.put("reqTime", TimeUtil.getFormatStrFromMillis(request.getReqTime()));
+        map.put("processTime", request.getProcessTime());
+        map.put("upstreamTime", request.getUpstreamTime());
+        map.put("firstByteTime", request.getFirstByteTime());
+        map.put("responseSize", request.getResponseSize());
+        map.put("remoteAddr", request.getRemoteAddr());
+        if (request.isInProgress()) {
+            map.put("inProgress", Boolean.TRUE);
+        }
+        map.put("queryParams", request.getQueryParams());
+        map.put("formData", request.getFormData());
+        if (withBodies) {
+            putBody(map, "requestBody", request.getRequestBodyOffset(), buffer.requestBody(request),
+                    request.isRequestBodyTruncated());
+            putBody(map, "responseBody", request.getResponseBodyOffset(), buffer.responseBody(request),
+                    request.isResponseBodyTruncated());
+        }
+        return map;
+    }
+
+    /**
+     * 内容已被 arena 中更新的记录覆盖时输出 xxxEvicted=true
+     */
+    private static void putBody(Map<String, Object> map, String name, long offset, String body, boolean truncated) {
+        if (offset < 0) {
+            return;
+        }
+        if (body == null) {
+            map.put(name + "Evicted", Boolean.TRUE);
+            return;
+        }
+        map.put(name, body);
+        if (truncated) {
+            map.put(name + "Truncated", Boolean.TRUE);
+        }
+    }
+}
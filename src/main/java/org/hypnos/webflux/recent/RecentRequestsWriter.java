@@ -0,0 +1,41 @@
+package org.hypnos.webflux.recent;
+
+import org.hypnos.webflux.sink.AccessLogWriter;
+import org.hypnos.webflux.vo.HttpAccLog;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 在 {@link org.hypnos.webflux.sink.AsyncAccessLogSink} 的消费线程上把每批日志先记入 {@link RecentRequestBuffer}，再交给实际的写入器。
+ * 此时记录已经过尾部采样、解压和脱敏，与输出的日志一致，请求线程上没有额外开销
+ */
+public class RecentRequestsWriter implements AccessLogWriter {
+
+    private final AccessLogWriter delegate;
+
+    private final RecentRequestBuffer buffer;
+
+    public RecentRequestsWriter(AccessLogWriter delegate, RecentRequestBuffer buffer) {
+        this.delegate = delegate;
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(List<HttpAccLog> batch) throws IOException {
+        for (HttpAccLog httpAccLog : batch) {
+            buffer.add(httpAccLog);
+        }
+        delegate.write(batch);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        delegate.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        delegate.close();
+    }
+}
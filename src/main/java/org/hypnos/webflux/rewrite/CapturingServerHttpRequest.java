@@ -0,0 +1,43 @@
+package org.hypnos.webflux.rewrite;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.http.server.reactive.ServerHttpRequestDecorator;
+import reactor.core.publisher.Flux;
+
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * 流式分流请求体：原始 {@link DataBuffer} 原样交给下游，只把有界前缀复制到 {@link BodyCapture}，
+ * 或交给 {@link org.hypnos.webflux.capture.MultipartScanner} 扫描。
+ * 不聚合、不重新编码，请求头也无需改写。
+ * 是否捕获在请求体被订阅时才决定，此时网关已匹配到路由，可以按路由调整策略。
+ */
+public class CapturingServerHttpRequest extends ServerHttpRequestDecorator {
+
+    private final Supplier<Consumer<DataBuffer>> capture;
+
+    private final Runnable onComplete;
+
+    /**
+     * @param capture 订阅请求体时调用，返回每块数据流过时的处理，null 表示不捕获
+     * @param onComplete 请求体读完时调用
+     */
+    public CapturingServerHttpRequest(ServerHttpRequest delegate, Supplier<Consumer<DataBuffer>> capture,
+                                      Runnable onComplete) {
+        super(delegate);
+        this.capture = capture;
+        this.onComplete = onComplete;
+    }
+
+    @Override
+    public Flux<DataBuffer> getBody() {
+        return Flux.defer(() -> {
+            Consumer<DataBuffer> tap = capture.get();
+            Flux<DataBuffer> body = super.getBody().doOnComplete(onComplete);
+            return tap == null ? body : body.doOnNext(tap);
+        });
+    }
+}
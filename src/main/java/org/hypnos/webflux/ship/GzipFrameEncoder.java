@@ -0,0 +1,109 @@
+package org.hypnos.webflux.ship;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 把一批编码好的记录压缩成一帧：4 字节负载长度 + 4 字节记录条数（均为大端）+ 一个完整的 gzip member。
+ * 负载去掉帧头就是标准 gzip 数据，可以直接用 zcat 查看。Deflater、CRC32 和输出缓冲区都复用，每帧不分配。
+ */
+public class GzipFrameEncoder {
+
+    public static final int HEADER_LENGTH = 8;
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private final Deflater deflater;
+
+    private final CRC32 crc = new CRC32();
+
+    private byte[] buffer;
+
+    private int size;
+
+    /**
+     * @param level 压缩级别 1-9，日志通常用 1，压缩率已经足够且 CPU 开销最低
+     */
+    public GzipFrameEncoder(int level, int initialCapacity) {
+        this.deflater = new Deflater(level, true);
+        this.buffer = new byte[Math.max(initialCapacity, HEADER_LENGTH + GZIP_HEADER.length + GZIP_TRAILER_LENGTH)];
+    }
+
+    /**
+     * 压缩 src 的前 length 个字节，结果通过 {@link #array()} 和 {@link #size()} 读取，下次调用前有效
+     */
+    public void encode(byte[] src, int length, int records) {
+        System.arraycopy(GZIP_HEADER, 0, buffer, HEADER_LENGTH, GZIP_HEADER.length);
+        size = HEADER_LENGTH + GZIP_HEADER.length;
+        deflater.reset();
+        deflater.setInput(src, 0, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+        crc.reset();
+        crc.update(src, 0, length);
+        ensureCapacity(size + GZIP_TRAILER_LENGTH);
+        writeIntLE((int) crc.getValue());
+        writeIntLE(length);
+        writeIntBE(0, size - HEADER_LENGTH);
+        writeIntBE(4, records);
+    }
+
+    public byte[] array() {
+        return buffer;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void close() {
+        deflater.end();
+    }
+
+    /**
+     * 读取帧头中的负载长度
+     */
+    public static int payloadLength(byte[] frame, int offset) {
+        return readIntBE(frame, offset);
+    }
+
+    /**
+     * 读取帧头中的记录条数
+     */
+    public static int recordCount(byte[] frame, int offset) {
+        return readIntBE(frame, offset + 4);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+
+    private void writeIntLE(int value) {
+        buffer[size++] = (byte) value;
+        buffer[size++] = (byte) (value >>> 8);
+        buffer[size++] = (byte) (value >>> 16);
+        buffer[size++] = (byte) (value >>> 24);
+    }
+
+    private void writeIntBE(int offset, int value) {
+        buffer[offset] = (byte) (value >>> 24);
+        buffer[offset + 1] = (byte) (value >>> 16);
+        buffer[offset + 2] = (byte) (value >>> 8);
+        buffer[offset + 3] = (byte) value;
+    }
+
+    private static int readIntBE(byte[] bytes, int offset) {
+        return (bytes[offset] & 0xFF) << 24 | (bytes[offset + 1] & 0xFF) << 16
+                | (bytes[offset + 2] & 0xFF) << 8 | (bytes[offset + 3] & 0xFF);
+    }
+}
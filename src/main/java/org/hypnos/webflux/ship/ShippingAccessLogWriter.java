@@ -0,0 +1,361 @@
+package org.hypnos.webflux.ship;
+
+import org.hypnos.webflux.jsonlog.JsonRecordEncoder;
+import org.hypnos.webflux.sink.AccessLogWriter;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 把访问日志批量压缩后通过本机 TCP 发给采集端，不落本地文件，避免写文件再被 tail 读一遍的双份磁盘 I/O。
+ * <p>
+ * 每批记录编码为 JSON Lines 后压缩成一帧（见 {@link GzipFrameEncoder}），用非阻塞 SocketChannel 发送，
+ * 写不进去时最多等待 writeTimeout，超时的帧进入内存积压，不阻塞消费线程太久；消费线程变慢时由
+ * {@link org.hypnos.webflux.sink.AsyncAccessLogSink} 的队列和溢出策略向请求线程施加背压。
+ * <ul>
+ *     <li>连接断开后按固定间隔重连，期间的帧进入有上限的内存积压，重连后先发积压再发新帧</li>
+ *     <li>积压超过上限的帧追加到本地溢出文件（格式与发送的帧相同），每次断连一个文件，不自动回放；
+ *     溢出文件也有总大小上限，超过后丢弃并计数</li>
+ *     <li>已写入 socket 缓冲但采集端未处理的帧在连接断开时可能丢失，投递语义为至多一次</li>
+ * </ul>
+ */
+public class ShippingAccessLogWriter implements AccessLogWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShippingAccessLogWriter.class);
+
+    public static final String SPILL_FILE_SUFFIX = ".spill";
+
+    private final InetSocketAddress address;
+
+    private final int maxFrameBytes;
+
+    private final long connectTimeoutMillis;
+
+    private final long writeTimeoutNanos;
+
+    private final long reconnectIntervalMillis;
+
+    private final long maxBacklogBytes;
+
+    private final Path spillDirectory;
+
+    private final long maxSpillBytes;
+
+    private final JsonRecordEncoder encoder;
+
+    private final GzipFrameEncoder frameEncoder;
+
+    private final Selector selector;
+
+    private final ArrayDeque<byte[]> backlog = new ArrayDeque<>();
+
+    private SocketChannel channel;
+
+    private SelectionKey key;
+
+    private long nextConnectMillis;
+
+    private FileChannel spill;
+
+    private long spillBytes;
+
+    private ByteBuffer view;
+
+    // 以下计数只由消费线程写入，volatile 保证采集指标的线程可见
+
+    private volatile long backlogBytes;
+
+    private volatile long shippedRecords;
+
+    private volatile long shippedBytes;
+
+    private volatile long spilledRecords;
+
+    private volatile long droppedRecords;
+
+    private volatile long connects;
+
+    /**
+     * @param address 采集端地址，通常是本机回环地址
+     * @param compressionLevel gzip 压缩级别 1-9
+     * @param maxFrameBytes 单帧压缩前的字节数上限，超过后拆成多帧
+     * @param connectTimeoutMillis 建立连接的超时时间
+     * @param writeTimeoutMillis 发送一帧时等待 socket 可写的最长时间
+     * @param reconnectIntervalMillis 连接失败或断开后的重连间隔
+     * @param maxBacklogBytes 内存积压的帧总大小上限（压缩后）
+     * @param spillDirectory 溢出文件目录，不存在时自动创建
+     * @param maxSpillBytes 本进程写入的溢出文件总大小上限
+     */
+    public ShippingAccessLogWriter(InetSocketAddress address, int compressionLevel, int maxFrameBytes,
+                                   long connectTimeoutMillis, long writeTimeoutMillis, long reconnectIntervalMillis,
+                                   long maxBacklogBytes, Path spillDirectory, long maxSpillBytes) throws IOException {
+        this.address = address;
+        this.maxFrameBytes = maxFrameBytes;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.writeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis);
+        this.reconnectIntervalMillis = reconnectIntervalMillis;
+        this.maxBacklogBytes = maxBacklogBytes;
+        this.spillDirectory = spillDirectory;
+        this.maxSpillBytes = maxSpillBytes;
+        this.encoder = new JsonRecordEncoder(maxFrameBytes + 4096);
+        this.frameEncoder = new GzipFrameEncoder(compressionLevel, maxFrameBytes / 4 + 1024);
+        this.selector = Selector.open();
+        Files.createDirectories(spillDirectory);
+    }
+
+    @Override
+    public void write(List<HttpAccLog> batch) throws IOException {
+        encoder.reset();
+        int records = 0;
+        for (HttpAccLog httpAccLog : batch) {
+            encoder.encode(httpAccLog);
+            records++;
+            if (encoder.size() >= maxFrameBytes) {
+                ship(records);
+                encoder.reset();
+                records = 0;
+            }
+        }
+        if (records > 0) {
+            ship(records);
+        }
+    }
+
+    private void ship(int records) {
+        frameEncoder.encode(encoder.array(), encoder.size(), records);
+        byte[] frame = frameEncoder.array();
+        int length = frameEncoder.size();
+        if (ensureConnected() && drainBacklog() && send(frame, length)) {
+            shippedRecords += records;
+            shippedBytes += length;
+            return;
+        }
+        enqueue(Arrays.copyOf(frame, length));
+    }
+
+    /**
+     * 未连接时按重连间隔尝试连接，连接在消费线程上完成，最多阻塞 connectTimeout
+     */
+    private boolean ensureConnected() {
+        if (channel != null) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        if (now < nextConnectMillis) {
+            return false;
+        }
+        nextConnectMillis = now + reconnectIntervalMillis;
+        SocketChannel socketChannel = null;
+        try {
+            socketChannel = SocketChannel.open();
+            socketChannel.configureBlocking(false);
+            SelectionKey selectionKey = socketChannel.register(selector, SelectionKey.OP_CONNECT);
+            if (!socketChannel.connect(address)) {
+                selector.select(connectTimeoutMillis);
+                selector.selectedKeys().clear();
+                if (!socketChannel.finishConnect()) {
+                    throw new IOException("connect timed out after " + connectTimeoutMillis + "ms");
+                }
+            }
+            selectionKey.interestOps(SelectionKey.OP_WRITE);
+            channel = socketChannel;
+            key = selectionKey;
+            connects++;
+            closeSpill();
+            logger.info("connected to access log collector {}, {} frames in backlog", address, backlog.size());
+            return true;
+        } catch (IOException e) {
+            closeQuietly(socketChannel);
+            if (connects == 0 && spill == null && backlog.isEmpty()) {
+                logger.warn("access log collector {} unavailable: {}", address, e.toString());
+            } else {
+                logger.debug("reconnect to access log collector {} failed: {}", address, e.toString());
+            }
+            return false;
+        }
+    }
+
+    private boolean drainBacklog() {
+        byte[] frame;
+        while ((frame = backlog.peek()) != null) {
+            if (!send(frame, frame.length)) {
+                return false;
+            }
+            backlog.poll();
+            backlogBytes -= frame.length;
+            shippedRecords += GzipFrameEncoder.recordCount(frame, 0);
+            shippedBytes += frame.length;
+        }
+        return true;
+    }
+
+    /**
+     * 发送一整帧。超时前一个字节都没写出时保留连接、帧留给调用方积压；
+     * 只写出一部分时采集端无法再对齐帧边界，只能断开连接，整帧重发
+     */
+    private boolean send(byte[] frame, int length) {
+        if (view == null || view.array() != frame) {
+            view = ByteBuffer.wrap(frame);
+        }
+        view.clear();
+        view.limit(length);
+        long deadline = System.nanoTime() + writeTimeoutNanos;
+        try {
+            while (view.hasRemaining()) {
+                if (channel.write(view) > 0) {
+                    continue;
+                }
+                long remainingNanos = deadline - System.nanoTime();
+                if (remainingNanos <= 0) {
+                    if (view.position() == 0) {
+                        return false;
+                    }
+                    throw new IOException("write timed out with partial frame");
+                }
+                selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(remainingNanos)));
+                selector.selectedKeys().clear();
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warn("access log collector {} disconnected: {}", address, e.toString());
+            disconnect();
+            return false;
+        }
+    }
+
+    private void enqueue(byte[] frame) {
+        if (backlogBytes + frame.length <= maxBacklogBytes) {
+            backlog.add(frame);
+            backlogBytes += frame.length;
+            return;
+        }
+        spill(frame);
+    }
+
+    private void spill(byte[] frame) {
+        int records = GzipFrameEncoder.recordCount(frame, 0);
+        if (spillBytes + frame.length > maxSpillBytes) {
+            droppedRecords += records;
+            return;
+        }
+        try {
+            if (spill == null) {
+                Path file = spillDirectory.resolve("access-" + System.currentTimeMillis() + SPILL_FILE_SUFFIX);
+                spill = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+                logger.warn("access log collector {} unavailable, spilling to {}", address, file);
+            }
+            ByteBuffer buffer = ByteBuffer.wrap(frame);
+            while (buffer.hasRemaining()) {
+                spill.write(buffer);
+            }
+            spillBytes += frame.length;
+            spilledRecords += records;
+        } catch (IOException e) {
+            droppedRecords += records;
+            logger.warn("spill access log failed, {} records dropped", records, e);
+        }
+    }
+
+    private void disconnect() {
+        if (key != null) {
+            key.cancel();
+            key = null;
+        }
+        closeQuietly(channel);
+        channel = null;
+        nextConnectMillis = System.currentTimeMillis() + reconnectIntervalMillis;
+    }
+
+    private void closeSpill() {
+        if (spill != null) {
+            closeQuietly(spill);
+            spill = null;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.debug("close failed", e);
+        }
+    }
+
+    /**
+     * 关闭前最后尝试发送积压，仍发不出去的写入溢出文件
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            drainBacklog();
+        }
+        byte[] frame;
+        while ((frame = backlog.poll()) != null) {
+            backlogBytes -= frame.length;
+            spill(frame);
+        }
+        disconnect();
+        closeSpill();
+        selector.close();
+        frameEncoder.close();
+    }
+
+    /**
+     * 已发送给采集端的记录条数
+     */
+    public long getShippedRecords() {
+        return shippedRecords;
+    }
+
+    /**
+     * 已发送的压缩后字节数
+     */
+    public long getShippedBytes() {
+        return shippedBytes;
+    }
+
+    /**
+     * 写入溢出文件的记录条数
+     */
+    public long getSpilledRecords() {
+        return spilledRecords;
+    }
+
+    /**
+     * 积压和溢出文件都满了而丢弃的记录条数
+     */
+    public long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    public long getBacklogBytes() {
+        return backlogBytes;
+    }
+
+    /**
+     * 成功建立连接的次数，大于 1 说明发生过重连
+     */
+    public long getConnects() {
+        return connects;
+    }
+}
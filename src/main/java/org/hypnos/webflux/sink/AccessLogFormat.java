@@ -0,0 +1,27 @@
+package org.hypnos.webflux.sink;
+
+/**
+ * 访问日志输出格式
+ */
+public enum AccessLogFormat {
+
+    /**
+     * 通过 SLF4J 输出文本行
+     */
+    TEXT,
+
+    /**
+     * 写入滚动的 JSON Lines 文件，每行一条记录
+     */
+    JSON,
+
+    /**
+     * 写入内存映射的二进制段文件，用 BinaryLogCli 解码
+     */
+    BINARY,
+
+    /**
+     * 批量压缩后通过本机 TCP 发给采集端，采集端不可用时写入溢出文件
+     */
+    SHIP
+}
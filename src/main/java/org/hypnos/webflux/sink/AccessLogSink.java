@@ -0,0 +1,21 @@
+package org.hypnos.webflux.sink;
+
+import org.hypnos.webflux.vo.HttpAccLog;
+
+/**
+ * 访问日志输出端，过滤器只负责把组装好的 {@link HttpAccLog} 交给它，不做任何 I/O
+ */
+public interface AccessLogSink {
+
+    /**
+     * 提交一条访问日志，实现必须是非阻塞（或有界阻塞）的，调用方通常是 Netty I/O 线程。
+     * 日志输出完成或被丢弃后，实现方必须调用 {@link HttpAccLog#release()} 归还捕获缓冲区
+     */
+    void accept(HttpAccLog httpAccLog);
+
+    /**
+     * 关闭输出端，尽量把已提交的日志写完
+     */
+    default void close() {
+    }
+}
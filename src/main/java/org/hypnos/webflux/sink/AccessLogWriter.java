@@ -0,0 +1,24 @@
+package org.hypnos.webflux.sink;
+
+import org.hypnos.webflux.vo.HttpAccLog;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * 真正执行 I/O 的日志写入器，只会被 {@link AsyncAccessLogSink} 的消费线程调用，无需考虑线程安全
+ */
+public interface AccessLogWriter {
+
+    /**
+     * 批量写入
+     * @param batch 本批次日志，调用结束后会被清空复用，不要持有引用
+     */
+    void write(List<HttpAccLog> batch) throws IOException;
+
+    default void flush() throws IOException {
+    }
+
+    default void close() throws IOException {
+    }
+}
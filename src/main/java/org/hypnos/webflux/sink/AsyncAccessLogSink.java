@@ -0,0 +1,208 @@
+package org.hypnos.webflux.sink;
+
+import org.hypnos.webflux.metrics.LoggingFilterMetrics;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步批量访问日志输出端。
+ * 请求线程只把日志放进 {@link MpscRingBuffer}，由独立的消费线程批量交给 {@link AccessLogWriter} 写出，
+ * 这样 appender 变慢（磁盘压力、管道写满）时不会拖住 Netty 的 event loop。
+ */
+public class AsyncAccessLogSink implements AccessLogSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncAccessLogSink.class);
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final MpscRingBuffer<HttpAccLog> queue;
+
+    private final AccessLogWriter writer;
+
+    private final int batchSize;
+
+    private final OverflowPolicy overflowPolicy;
+
+    private final long blockTimeoutNanos;
+
+    private final LongAdder enqueuedCount = new LongAdder();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final LoggingFilterMetrics metrics;
+
+    private final Thread drainThread;
+
+    private volatile boolean running = true;
+
+    public AsyncAccessLogSink(AccessLogWriter writer, int capacity, int batchSize,
+                              OverflowPolicy overflowPolicy, long blockTimeoutMillis) {
+        this(writer, capacity, batchSize, overflowPolicy, blockTimeoutMillis, LoggingFilterMetrics.NOOP);
+    }
+
+    public AsyncAccessLogSink(AccessLogWriter writer, int capacity, int batchSize,
+                              OverflowPolicy overflowPolicy, long blockTimeoutMillis, LoggingFilterMetrics metrics) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be >= 1, but was " + batchSize);
+        }
+        this.queue = new MpscRingBuffer<>(capacity);
+        this.writer = writer;
+        this.batchSize = batchSize;
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this.metrics = metrics;
+        this.drainThread = new Thread(this::drainLoop, "access-log-drain");
+        this.drainThread.setDaemon(true);
+        this.drainThread.start();
+    }
+
+    @Override
+    public void accept(HttpAccLog httpAccLog) {
+        if (!running) {
+            drop(httpAccLog);
+            return;
+        }
+        boolean offered;
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                offered = offerDropOldest(httpAccLog);
+                break;
+            case BLOCK:
+                offered = offerBlocking(httpAccLog);
+                break;
+            case DROP_NEWEST:
+            default:
+                offered = queue.offer(httpAccLog);
+                break;
+        }
+        if (offered) {
+            enqueuedCount.increment();
+        } else {
+            drop(httpAccLog);
+        }
+    }
+
+    private void drop(HttpAccLog httpAccLog) {
+        droppedCount.increment();
+        httpAccLog.release();
+    }
+
+    private boolean offerDropOldest(HttpAccLog httpAccLog) {
+        while (!queue.offer(httpAccLog)) {
+            HttpAccLog oldest = queue.poll();
+            if (oldest != null) {
+                drop(oldest);
+            }
+        }
+        return true;
+    }
+
+    private boolean offerBlocking(HttpAccLog httpAccLog) {
+        if (queue.offer(httpAccLog)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + blockTimeoutNanos;
+        do {
+            LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            if (queue.offer(httpAccLog)) {
+                return true;
+            }
+        } while (running && System.nanoTime() - deadline < 0);
+        return false;
+    }
+
+    private void drainLoop() {
+        List<HttpAccLog> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            if (queue.drainTo(batch, batchSize) == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            writeBatch(batch);
+        }
+        try {
+            writer.flush();
+        } catch (Exception e) {
+            logger.warn("flush access log failed", e);
+        }
+    }
+
+    private void writeBatch(List<HttpAccLog> batch) {
+        long start = System.nanoTime();
+        try {
+            writer.write(batch);
+            metrics.recordFlush(batch.size(), System.nanoTime() - start);
+        } catch (Exception e) {
+            droppedCount.add(batch.size());
+            logger.warn("write access log failed, {} records dropped", batch.size(), e);
+        } finally {
+            for (HttpAccLog httpAccLog : batch) {
+                httpAccLog.release();
+            }
+            batch.clear();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(drainThread);
+        try {
+            drainThread.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 生产者可能在 running 置为 false 之前通过检查、在消费线程退出之后才入队，这些记录由关闭线程写出；
+        // 消费线程没有按时退出时不能并发消费，交给它自己处理
+        boolean drained = !drainThread.isAlive();
+        if (drained) {
+            List<HttpAccLog> batch = new ArrayList<>(batchSize);
+            while (queue.drainTo(batch, batchSize) > 0) {
+                writeBatch(batch);
+            }
+        }
+        try {
+            writer.close();
+        } catch (Exception e) {
+            logger.warn("close access log writer failed", e);
+        }
+        if (drained) {
+            // 写入器关闭后才入队的只能丢弃，归还捕获缓冲区
+            HttpAccLog httpAccLog;
+            while ((httpAccLog = queue.poll()) != null) {
+                drop(httpAccLog);
+            }
+        }
+    }
+
+    /**
+     * 成功入队的日志条数
+     */
+    public long getEnqueuedCount() {
+        return enqueuedCount.sum();
+    }
+
+    /**
+     * 被丢弃的日志条数（队列溢出、写入失败、关闭后提交）
+     */
+    public long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public int getCapacity() {
+        return queue.capacity();
+    }
+}
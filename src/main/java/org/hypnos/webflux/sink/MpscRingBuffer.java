@@ -0,0 +1,118 @@
+package org.hypnos.webflux.sink;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 有界无锁环形队列，多生产者 / 单消费者。
+ * 算法参考 Dmitry Vyukov 的 bounded MPMC queue：每个槽位带一个序号，生产者和消费者只在各自的游标上 CAS。
+ * 消费游标同样使用 CAS，是为了支持 {@link OverflowPolicy#DROP_OLDEST}：生产者在队列满时可以替消费者弹出最旧元素，
+ * 因此 {@link #poll()} 并发调用也是安全的，可以直接当作有界空闲列表使用。
+ */
+public class MpscRingBuffer<E> {
+
+    private final int mask;
+
+    private final AtomicReferenceArray<E> elements;
+
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong producerIndex = new AtomicLong();
+
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    public MpscRingBuffer(int requestedCapacity) {
+        if (requestedCapacity < 2) {
+            throw new IllegalArgumentException("capacity must be >= 2, but was " + requestedCapacity);
+        }
+        int capacity = 1 << (32 - Integer.numberOfLeadingZeros(requestedCapacity - 1));
+        this.mask = capacity - 1;
+        this.elements = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            sequences.lazySet(i, i);
+        }
+    }
+
+    /**
+     * 入队，队列满时立即返回 false
+     */
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long pos = producerIndex.get();
+        for (;;) {
+            int slot = (int) pos & mask;
+            long diff = sequences.get(slot) - pos;
+            if (diff == 0) {
+                if (producerIndex.compareAndSet(pos, pos + 1)) {
+                    elements.lazySet(slot, e);
+                    sequences.set(slot, pos + 1);
+                    return true;
+                }
+                pos = producerIndex.get();
+            } else if (diff < 0) {
+                return false;
+            } else {
+                pos = producerIndex.get();
+            }
+        }
+    }
+
+    /**
+     * 出队，队列为空时返回 null
+     */
+    public E poll() {
+        long pos = consumerIndex.get();
+        for (;;) {
+            int slot = (int) pos & mask;
+            long diff = sequences.get(slot) - (pos + 1);
+            if (diff == 0) {
+                if (consumerIndex.compareAndSet(pos, pos + 1)) {
+                    E e = elements.get(slot);
+                    elements.lazySet(slot, null);
+                    sequences.set(slot, pos + mask + 1);
+                    return e;
+                }
+                pos = consumerIndex.get();
+            } else if (diff < 0) {
+                return null;
+            } else {
+                pos = consumerIndex.get();
+            }
+        }
+    }
+
+    /**
+     * 批量出队
+     * @return 实际取出的元素个数
+     */
+    public int drainTo(List<? super E> target, int limit) {
+        int count = 0;
+        E e;
+        while (count < limit && (e = poll()) != null) {
+            target.add(e);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 当前元素个数，并发情况下只是近似值
+     */
+    public int size() {
+        long size = producerIndex.get() - consumerIndex.get();
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return producerIndex.get() == consumerIndex.get();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
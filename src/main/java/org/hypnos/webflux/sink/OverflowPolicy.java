@@ -0,0 +1,22 @@
+package org.hypnos.webflux.sink;
+
+/**
+ * 队列写满时的处理策略
+ */
+public enum OverflowPolicy {
+
+    /**
+     * 丢弃当前提交的日志
+     */
+    DROP_NEWEST,
+
+    /**
+     * 丢弃队列中最旧的日志，为当前日志腾出位置
+     */
+    DROP_OLDEST,
+
+    /**
+     * 阻塞等待，超时后丢弃当前日志
+     */
+    BLOCK
+}
@@ -0,0 +1,36 @@
+package org.hypnos.webflux.sink;
+
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * 通过 SLF4J 输出访问日志，沿用过滤器原来的 logger 名称，已有的日志配置无需调整
+ */
+public class Slf4jAccessLogWriter implements AccessLogWriter {
+
+    private static final String LOGGER_NAME = "org.hypnos.webflux.filter.RequestResponseLoggingFilter";
+
+    private final Logger logger;
+
+    public Slf4jAccessLogWriter() {
+        this(LoggerFactory.getLogger(LOGGER_NAME));
+    }
+
+    public Slf4jAccessLogWriter(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void write(List<HttpAccLog> batch) {
+        if (!logger.isInfoEnabled()) {
+            return;
+        }
+        for (HttpAccLog httpAccLog : batch) {
+            httpAccLog.render();
+            logger.info(httpAccLog.toString());
+        }
+    }
+}
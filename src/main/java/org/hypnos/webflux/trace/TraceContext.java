@@ -0,0 +1,225 @@
+package org.hypnos.webflux.trace;
+
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 请求的跟踪链信息，由 {@link org.hypnos.webflux.filter.RequestResponseLoggingFilter} 在请求进入时确定，
+ * 放进 exchange 属性和 Reactor Context，handler 与下游 WebClient 调用通过 {@link #current()} 读取，不依赖 ThreadLocal / MDC。
+ * <p>
+ * 优先沿用请求头中的 W3C traceparent，其次是 B3 的 X-B3-TraceId，都没有或格式错误时生成新的 128 位 ID。
+ * 生成使用 {@link ThreadLocalRandom}，线程之间没有共享状态；解析只按字符校验十六进制，
+ * 合法的 32 位小写 X-B3-TraceId 直接复用请求头字符串，traceparent 只截取一次。
+ */
+public final class TraceContext {
+
+    public static final String TRACEPARENT = "traceparent";
+
+    public static final String B3_TRACE_ID = "X-B3-TraceId";
+
+    public static final String B3_SAMPLED = "X-B3-Sampled";
+
+    /**
+     * Reactor Context 中的 key
+     */
+    public static final Class<TraceContext> CONTEXT_KEY = TraceContext.class;
+
+    /**
+     * exchange 属性名
+     */
+    public static final String EXCHANGE_ATTR = TraceContext.class.getName();
+
+    /**
+     * traceparent 的固定长度：2 位版本 - 32 位 trace id - 16 位 parent id - 2 位 flags
+     */
+    private static final int TRACEPARENT_LENGTH = 55;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String traceId;
+
+    private final boolean sampled;
+
+    private final boolean generated;
+
+    private TraceContext(String traceId, boolean sampled, boolean generated) {
+        this.traceId = traceId;
+        this.sampled = sampled;
+        this.generated = generated;
+    }
+
+    /**
+     * 按请求头确定跟踪链，没有可用的 ID 时生成
+     */
+    public static TraceContext resolve(HttpHeaders headers) {
+        String traceparent = headers.getFirst(TRACEPARENT);
+        if (traceparent != null) {
+            TraceContext context = parseTraceparent(traceparent);
+            if (context != null) {
+                return context;
+            }
+        }
+        String b3TraceId = headers.getFirst(B3_TRACE_ID);
+        if (b3TraceId != null) {
+            String traceId = parseB3TraceId(b3TraceId);
+            if (traceId != null) {
+                String b3Sampled = headers.getFirst(B3_SAMPLED);
+                return new TraceContext(traceId, !"0".equals(b3Sampled) && !"false".equals(b3Sampled), false);
+            }
+        }
+        return generate();
+    }
+
+    public static TraceContext generate() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long high = random.nextLong();
+        long low;
+        do {
+            low = random.nextLong();
+        } while (low == 0);
+        char[] chars = new char[32];
+        writeHex(chars, 0, high);
+        writeHex(chars, 16, low);
+        return new TraceContext(new String(chars), true, true);
+    }
+
+    /**
+     * 当前订阅链上的跟踪链，不在请求处理链路中时为空
+     */
+    public static Mono<TraceContext> current() {
+        return Mono.deferContextual(context -> Mono.justOrEmpty(context.getOrEmpty(CONTEXT_KEY)));
+    }
+
+    /**
+     * 按 W3C Trace Context 解析，版本 ff、全零 ID 和非小写十六进制视为无效；未来版本只要前 55 个字符合法即可
+     */
+    static TraceContext parseTraceparent(String value) {
+        int length = value.length();
+        if (length < TRACEPARENT_LENGTH || (length > TRACEPARENT_LENGTH && value.charAt(TRACEPARENT_LENGTH) != '-')) {
+            return null;
+        }
+        if (value.charAt(2) != '-' || value.charAt(35) != '-' || value.charAt(52) != '-') {
+            return null;
+        }
+        if (!isLowerHex(value, 0, 2) || (value.charAt(0) == 'f' && value.charAt(1) == 'f')
+                || (length > TRACEPARENT_LENGTH && value.charAt(0) == '0' && value.charAt(1) == '0')) {
+            return null;
+        }
+        if (!isLowerHex(value, 3, 35) || isZero(value, 3, 35) || !isLowerHex(value, 36, 52) || isZero(value, 36, 52)
+                || !isLowerHex(value, 53, 55)) {
+            return null;
+        }
+        boolean sampled = (Character.digit(value.charAt(54), 16) & 1) != 0;
+        return new TraceContext(value.substring(3, 35), sampled, false);
+    }
+
+    /**
+     * 接受 16 位或 32 位十六进制，16 位按 W3C 的兼容方式左侧补零；只有含大写字母时才生成新字符串
+     */
+    static String parseB3TraceId(String value) {
+        int length = value.length();
+        if (length != 16 && length != 32) {
+            return null;
+        }
+        boolean lower = true;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= 'A' && c <= 'F') {
+                lower = false;
+            } else if (!isLowerHex(c)) {
+                return null;
+            }
+        }
+        if (isZero(value, 0, length)) {
+            return null;
+        }
+        if (length == 32 && lower) {
+            return value;
+        }
+        char[] chars = new char[32];
+        int offset = 32 - length;
+        for (int i = 0; i < offset; i++) {
+            chars[i] = '0';
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            chars[offset + i] = c >= 'A' && c <= 'F' ? (char) (c + ('a' - 'A')) : c;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * 生成发往下游的 traceparent，trace id 不变，parent id 为新的 span id
+     */
+    public String newTraceparent() {
+        long spanId;
+        do {
+            spanId = ThreadLocalRandom.current().nextLong();
+        } while (spanId == 0);
+        char[] chars = new char[TRACEPARENT_LENGTH];
+        chars[0] = '0';
+        chars[1] = '0';
+        chars[2] = '-';
+        traceId.getChars(0, 32, chars, 3);
+        chars[35] = '-';
+        writeHex(chars, 36, spanId);
+        chars[52] = '-';
+        chars[53] = '0';
+        chars[54] = sampled ? '1' : '0';
+        return new String(chars);
+    }
+
+    private static void writeHex(char[] chars, int offset, long value) {
+        for (int i = offset + 15; i >= offset; i--) {
+            chars[i] = HEX[(int) value & 0xF];
+            value >>>= 4;
+        }
+    }
+
+    private static boolean isLowerHex(char c) {
+        return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f');
+    }
+
+    private static boolean isLowerHex(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!isLowerHex(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isZero(String value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (value.charAt(i) != '0') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 32 位小写十六进制
+     */
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    /**
+     * 是否为本服务生成，请求头中没有可用的跟踪信息
+     */
+    public boolean isGenerated() {
+        return generated;
+    }
+
+    @Override
+    public String toString() {
+        return traceId;
+    }
+}
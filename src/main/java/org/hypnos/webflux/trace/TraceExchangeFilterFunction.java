@@ -0,0 +1,30 @@
+package org.hypnos.webflux.trace;
+
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import reactor.core.publisher.Mono;
+
+/**
+ * WebClient 调用时从 Reactor Context 取出当前跟踪链，给请求加上 traceparent。
+ * 调用方已经设置了 traceparent 或不在请求处理链路中时原样发出
+ */
+public class TraceExchangeFilterFunction implements ExchangeFilterFunction {
+
+    @Override
+    public Mono<ClientResponse> filter(ClientRequest request, ExchangeFunction next) {
+        if (request.headers().containsKey(TraceContext.TRACEPARENT)) {
+            return next.exchange(request);
+        }
+        return Mono.deferContextual(context -> {
+            TraceContext trace = context.getOrDefault(TraceContext.CONTEXT_KEY, null);
+            if (trace == null) {
+                return next.exchange(request);
+            }
+            return next.exchange(ClientRequest.from(request)
+                    .header(TraceContext.TRACEPARENT, trace.newTraceparent())
+                    .build());
+        });
+    }
+}
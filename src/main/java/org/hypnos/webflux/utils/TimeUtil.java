@@ -9,11 +9,58 @@ public class TimeUtil {
 
     private TimeUtil() {}
 
-    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.");
 
+    private static final ZoneId ZONE = ZoneId.systemDefault();
 
+    /**
+     * 最近一次格式化的秒级前缀，同一秒内的请求直接复用，只需拼接毫秒
+     */
+    private static volatile CachedSecond cachedSecond = new CachedSecond(Long.MIN_VALUE, "");
+
+    /**
+     * 格式化为 yyyy-MM-dd HH:mm:ss.SSS
+     */
     public static String getFormatStrFromMillis(long milliseconds) {
-        LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(milliseconds), ZoneId.systemDefault());
-        return dateTime.format(FORMATTER);
+        StringBuilder builder = new StringBuilder(23);
+        appendFormatted(builder, milliseconds);
+        return builder.toString();
+    }
+
+    /**
+     * 把 yyyy-MM-dd HH:mm:ss.SSS 追加到 builder，不产生中间字符串
+     */
+    public static void appendFormatted(StringBuilder builder, long milliseconds) {
+        long epochSecond = Math.floorDiv(milliseconds, 1000L);
+        int millis = (int) Math.floorMod(milliseconds, 1000L);
+        builder.append(secondPrefix(epochSecond))
+                .append((char) ('0' + millis / 100))
+                .append((char) ('0' + millis / 10 % 10))
+                .append((char) ('0' + millis % 10));
+    }
+
+    /**
+     * 获取 yyyy-MM-dd HH:mm:ss. 前缀
+     */
+    public static String secondPrefix(long epochSecond) {
+        CachedSecond cached = cachedSecond;
+        if (cached.epochSecond != epochSecond) {
+            LocalDateTime dateTime = LocalDateTime.ofInstant(Instant.ofEpochSecond(epochSecond), ZONE);
+            cached = new CachedSecond(epochSecond, dateTime.format(FORMATTER));
+            cachedSecond = cached;
+        }
+        return cached.prefix;
+    }
+
+    private static final class CachedSecond {
+
+        private final long epochSecond;
+
+        private final String prefix;
+
+        private CachedSecond(long epochSecond, String prefix) {
+            this.epochSecond = epochSecond;
+            this.prefix = prefix;
+        }
     }
 }
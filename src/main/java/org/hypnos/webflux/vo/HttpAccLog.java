@@ -1,9 +1,25 @@
 package org.hypnos.webflux.vo;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.BodyRenderer;
+import org.hypnos.webflux.utils.TimeUtil;
+import org.springframework.util.MultiValueMap;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 
+/**
+ * 访问日志。
+ * 时间戳、查询参数和请求/响应体只保存原始值或引用，字符串在 sink 真正输出日志时才生成，
+ * 被日志级别过滤或被丢弃的记录不会付出格式化的开销。
+ */
 @Data
 public class HttpAccLog {
 
@@ -23,20 +39,51 @@ public class HttpAccLog {
     private String path;
 
     /**
-     * 请求时间，格式如：2021-06-15 13:07:24.270
+     * 请求时间，保存 epoch 毫秒，getter 输出格式如：2021-06-15 13:07:24.270
      */
-    private String reqTime;
+    private long reqTime;
 
     /**
-     * 响应时间，格式如：2021-06-15 13:07:24.270
+     * 响应时间，保存 epoch 毫秒，getter 输出格式如：2021-06-15 13:07:24.270
      */
-    private String rspTime;
+    private long rspTime;
 
     /**
      * 处理时间（毫秒）
      */
     private long processTime;
 
+    /**
+     * 上游耗时（毫秒），从网关转发到收到上游响应头，非转发请求为 null
+     */
+    private Long upstreamTime;
+
+    /**
+     * 首字节耗时（毫秒），从收到请求到第一块响应体交给服务器写出，没有响应体时为 null
+     */
+    private Long firstByteTime;
+
+    /**
+     * 写出的响应体字节数，压缩响应为压缩后的大小，没有响应体时为 null
+     */
+    private Long responseSize;
+
+    /**
+     * 流式响应（writeAndFlushWith）的 flush 次数，通常每次对应一个 SSE / NDJSON 事件，非流式响应为 null
+     */
+    private Integer responseEvents;
+
+    /**
+     * 长连接流式响应的进度记录为 true，耗时和计数是截至记录时的值；请求结束时的记录为 null
+     */
+    private Boolean inProgress;
+
+    /**
+     * 各阶段的纳秒级时间点和日志过滤器自身的耗时，进度记录没有
+     */
+    @EqualsAndHashCode.Exclude
+    private RequestPhases phases;
+
     /**
      * 响应状态码
      */
@@ -47,6 +94,11 @@ public class HttpAccLog {
      */
     private String requestBody;
 
+    /**
+     * 请求体的 XXH64 十六进制哈希，开启去重时才有；请求体为 null 时表示内容与之前输出过的同一哈希的请求体相同
+     */
+    private String requestBodyHash;
+
     /**
      * 路径参数
      */
@@ -67,6 +119,11 @@ public class HttpAccLog {
      */
     private String responseBody;
 
+    /**
+     * 响应体的 XXH64 十六进制哈希，含义同 requestBodyHash
+     */
+    private String responseBodyHash;
+
     /**
      * 服务端地址，也就是本机地址
      */
@@ -76,4 +133,196 @@ public class HttpAccLog {
      * 请求方地址
      */
     private String remoteAddr;
+
+    /**
+     * 匹配到的路由模板，如 /users/{id}，不输出到文本日志，供二进制格式和统计按模板聚合
+     */
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient String route;
+
+    /**
+     * 请求的原始查询参数，输出时才转换为 queryParams
+     */
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient MultiValueMap<String, String> rawQueryParams;
+
+    /**
+     * 捕获的请求体字节，{@link #render()} 时才解码为 requestBody
+     */
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient BodyCapture requestCapture;
+
+    /**
+     * 捕获的响应体字节，{@link #render()} 时才解码为 responseBody
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient BodyCapture responseCapture;
+
+    /**
+     * 响应的 Content-Encoding，捕获内容已在分流时解压，未压缩时为 null
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient String responseEncoding;
+
+    /**
+     * 延后到工作线程解压的压缩响应前缀，解压后释放；不延后解压时为 null
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    private transient BodyCapture compressedResponse;
+
+    public String getReqTime() {
+        return reqTime == 0 ? null : TimeUtil.getFormatStrFromMillis(reqTime);
+    }
+
+    public long getReqTimeMillis() {
+        return reqTime;
+    }
+
+    public String getRspTime() {
+        return rspTime == 0 ? null : TimeUtil.getFormatStrFromMillis(rspTime);
+    }
+
+    public long getRspTimeMillis() {
+        return rspTime;
+    }
+
+    public Map<String, Object> getQueryParams() {
+        if (queryParams == null && rawQueryParams != null) {
+            Map<String, Object> params = new LinkedHashMap<>(rawQueryParams.size() * 2);
+            for (Map.Entry<String, List<String>> entry : rawQueryParams.entrySet()) {
+                List<String> values = entry.getValue();
+                params.put(entry.getKey(), values.size() == 1 ? values.get(0) : String.join(",", values));
+            }
+            queryParams = params;
+        }
+        return queryParams;
+    }
+
+    /**
+     * 把尚未渲染的捕获字节解码为 requestBody/responseBody 并归还缓冲区。
+     * 只由 sink 的写入线程在输出前调用；getter、toString、equals 不会触发渲染，
+     * 在 event loop 上打印记录不会提前释放缓冲区，也不会读到尚未延后脱敏的字节
+     */
+    public void render() {
+        if (requestBody == null && requestCapture != null) {
+            requestBody = BodyRenderer.renderRequest(requestCapture);
+            requestCapture.release();
+            requestCapture = null;
+        }
+        if (responseBody == null && responseCapture != null) {
+            responseBody = BodyRenderer.renderResponse(responseCapture, responseEncoding);
+            responseCapture.release();
+            responseCapture = null;
+        }
+    }
+
+    public void setResponseCapture(BodyCapture responseCapture, String responseEncoding) {
+        this.responseCapture = responseCapture;
+        this.responseEncoding = responseEncoding;
+    }
+
+    /**
+     * 响应体先按原样保留压缩前缀，由 {@link org.hypnos.webflux.capture.CaptureOffloadStage} 解压到 responseCapture
+     */
+    public void setResponseCapture(BodyCapture responseCapture, String responseEncoding, BodyCapture compressedResponse) {
+        setResponseCapture(responseCapture, responseEncoding);
+        this.compressedResponse = compressedResponse;
+    }
+
+    /**
+     * 等待解压的压缩响应前缀，没有时为 null
+     */
+    public BodyCapture compressedResponse() {
+        return compressedResponse;
+    }
+
+    /**
+     * 解压完成后释放压缩前缀
+     */
+    public void releaseCompressedResponse() {
+        if (compressedResponse != null) {
+            compressedResponse.release();
+            compressedResponse = null;
+        }
+    }
+
+    /**
+     * 尚未渲染的请求体捕获，供编码器直接读取字节；已渲染或没有捕获时为 null。
+     * 不使用 getter 命名，避免被 Jackson 等按 bean 属性序列化
+     */
+    public BodyCapture requestCapture() {
+        return requestBody == null ? requestCapture : null;
+    }
+
+    /**
+     * 尚未渲染的响应体捕获，含义同 {@link #requestCapture()}
+     */
+    public BodyCapture responseCapture() {
+        return responseBody == null ? responseCapture : null;
+    }
+
+    /**
+     * 响应捕获解压前的 Content-Encoding，未压缩时为 null
+     */
+    public String responseEncoding() {
+        return responseEncoding;
+    }
+
+    /**
+     * 原始查询参数，尚未转换为 queryParams 时供编码器直接读取
+     */
+    public MultiValueMap<String, String> rawQueryParams() {
+        return queryParams == null ? rawQueryParams : null;
+    }
+
+    /**
+     * 请求体与之前输出过的内容相同，只保留 requestBodyHash，提前归还捕获缓冲区
+     */
+    public void omitRequestBody() {
+        requestBody = null;
+        if (requestCapture != null) {
+            requestCapture.release();
+            requestCapture = null;
+        }
+    }
+
+    /**
+     * 响应体与之前输出过的内容相同，只保留 responseBodyHash，提前归还捕获缓冲区
+     */
+    public void omitResponseBody() {
+        responseBody = null;
+        if (responseCapture != null) {
+            responseCapture.release();
+            responseCapture = null;
+        }
+    }
+
+    /**
+     * 归还尚未渲染的捕获缓冲区，记录输出完成或被丢弃后由 sink 调用
+     */
+    public void release() {
+        if (requestCapture != null) {
+            requestCapture.release();
+            requestCapture = null;
+        }
+        if (responseCapture != null) {
+            responseCapture.release();
+            responseCapture = null;
+        }
+        releaseCompressedResponse();
+    }
 }
@@ -0,0 +1,166 @@
+package org.hypnos.webflux.vo;
+
+/**
+ * 请求各阶段的时间点，记录为相对请求进入日志过滤器的纳秒偏移（{@link System#nanoTime()}，单调时钟），未经历的阶段为 -1。
+ * 另外累计日志过滤器自身的耗时，用于区分慢在客户端、handler 还是日志埋点。
+ * 同一请求的各阶段可能在不同线程上记录，但彼此有 happens-before 关系（Reactor 信号传递），请求结束后只读。
+ */
+public final class RequestPhases {
+
+    /**
+     * 请求体读完，没有请求体或 handler 没有读取时为 -1
+     */
+    public static final int REQUEST_BODY_END = 0;
+
+    /**
+     * 走完 WebFilter 链、进入 handler
+     */
+    public static final int HANDLER_START = 1;
+
+    /**
+     * 开始写出响应（提交响应头）
+     */
+    public static final int RESPONSE_COMMIT = 2;
+
+    /**
+     * 第一块响应体交给服务器写出
+     */
+    public static final int FIRST_BYTE = 3;
+
+    /**
+     * 最后一个字节写完
+     */
+    public static final int LAST_BYTE = 4;
+
+    public static final int COUNT = 5;
+
+    private static final String[] NAMES = {"requestBodyEnd", "handlerStart", "responseCommit", "firstByte", "lastByte"};
+
+    private final long startNanos;
+
+    private long requestBodyEnd = -1;
+
+    private long handlerStart = -1;
+
+    private long responseCommit = -1;
+
+    private long firstByte = -1;
+
+    private long lastByte = -1;
+
+    private long filterNanos;
+
+    /**
+     * @param startNanos 请求进入日志过滤器时的 {@link System#nanoTime()}，从日志中读回时为 0
+     */
+    public RequestPhases(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /**
+     * 记录阶段发生在此刻
+     */
+    public void mark(int phase) {
+        set(phase, System.nanoTime() - startNanos);
+    }
+
+    /**
+     * 只在阶段尚未记录时记录，用于首字节这类只关心第一次的阶段
+     */
+    public void markOnce(int phase) {
+        if (get(phase) < 0) {
+            mark(phase);
+        }
+    }
+
+    public void set(int phase, long offsetNanos) {
+        switch (phase) {
+            case REQUEST_BODY_END:
+                requestBodyEnd = offsetNanos;
+                break;
+            case HANDLER_START:
+                handlerStart = offsetNanos;
+                break;
+            case RESPONSE_COMMIT:
+                responseCommit = offsetNanos;
+                break;
+            case FIRST_BYTE:
+                firstByte = offsetNanos;
+                break;
+            case LAST_BYTE:
+                lastByte = offsetNanos;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown phase " + phase);
+        }
+    }
+
+    /**
+     * @return 相对请求开始的纳秒偏移，未经历时为 -1
+     */
+    public long get(int phase) {
+        switch (phase) {
+            case REQUEST_BODY_END:
+                return requestBodyEnd;
+            case HANDLER_START:
+                return handlerStart;
+            case RESPONSE_COMMIT:
+                return responseCommit;
+            case FIRST_BYTE:
+                return firstByte;
+            case LAST_BYTE:
+                return lastByte;
+            default:
+                throw new IllegalArgumentException("unknown phase " + phase);
+        }
+    }
+
+    public static String name(int phase) {
+        return NAMES[phase];
+    }
+
+    /**
+     * 日志过滤器自身的耗时：准备工作、请求体/响应体复制和解压、组装日志记录
+     */
+    public long getFilterNanos() {
+        return filterNanos;
+    }
+
+    public void setFilterNanos(long filterNanos) {
+        this.filterNanos = filterNanos;
+    }
+
+    public void addFilterNanos(long nanos) {
+        filterNanos += nanos;
+    }
+
+    /**
+     * 文本日志格式，单位毫秒
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder(128).append('{');
+        for (int phase = 0; phase < COUNT; phase++) {
+            long offset = get(phase);
+            if (offset >= 0) {
+                appendMillis(builder, NAMES[phase], offset);
+            }
+        }
+        appendMillis(builder, "filter", filterNanos);
+        builder.setLength(builder.length() - 2);
+        return builder.append('}').toString();
+    }
+
+    /**
+     * 保留到微秒，如 1.025ms
+     */
+    private static void appendMillis(StringBuilder builder, String name, long nanos) {
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        builder.append(name).append('=').append(micros / 1000).append('.');
+        if (fraction < 100) {
+            builder.append(fraction < 10 ? "00" : "0");
+        }
+        builder.append(fraction).append("ms, ");
+    }
+}
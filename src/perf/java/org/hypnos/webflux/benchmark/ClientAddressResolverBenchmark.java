@@ -0,0 +1,83 @@
+package org.hypnos.webflux.benchmark;
+
+import org.hypnos.webflux.address.CidrTrie;
+import org.hypnos.webflux.address.ClientAddressResolver;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 客户端地址解析的单次调用开销
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ClientAddressResolverBenchmark {
+
+    private ClientAddressResolver resolver;
+
+    private ServerHttpRequest direct;
+
+    private ServerHttpRequest forwardedFor;
+
+    private ServerHttpRequest forwarded;
+
+    @Setup
+    public void setUp() {
+        resolver = new ClientAddressResolver(new CidrTrie(Arrays.asList(
+                "127.0.0.0/8", "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16", "::1/128", "fc00::/7")), 0);
+        direct = MockServerHttpRequest.get("/openapi/webflux/echo")
+                .remoteAddress(new InetSocketAddress("203.0.113.7", 51234))
+                .build();
+        forwardedFor = MockServerHttpRequest.get("/openapi/webflux/echo")
+                .remoteAddress(new InetSocketAddress("10.0.0.2", 51234))
+                .header("X-Forwarded-For", "198.51.100.23, 203.0.113.7, 10.1.2.3, 192.168.3.4")
+                .build();
+        forwarded = MockServerHttpRequest.get("/openapi/webflux/echo")
+                .remoteAddress(new InetSocketAddress("10.0.0.2", 51234))
+                .header("Forwarded", "for=198.51.100.23;proto=https, for=\"[2001:db8:cafe::17]:4711\", for=10.1.2.3")
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        resolver.close();
+    }
+
+    @Benchmark
+    public String serverAddr() {
+        return resolver.getServerAddr();
+    }
+
+    @Benchmark
+    public String directPeer() {
+        return resolver.resolveClientAddr(direct);
+    }
+
+    @Benchmark
+    public String xForwardedFor() {
+        return resolver.resolveClientAddr(forwardedFor);
+    }
+
+    @Benchmark
+    public String rfc7239Forwarded() {
+        return resolver.resolveClientAddr(forwarded);
+    }
+}
@@ -0,0 +1,62 @@
+package org.hypnos.webflux.benchmark;
+
+import org.hypnos.webflux.policy.ContentTypeMatcher;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.MediaType;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应 Content-Type 判断，每个响应都会调用一次：缓存命中与每次解析 MediaType 的对照
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContentTypeBenchmark {
+
+    @Param({"application/json", "text/plain;charset=UTF-8", "application/octet-stream", "image/png"})
+    public String contentType;
+
+    private ContentTypeMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        matcher = new ContentTypeMatcher(Arrays.asList("text/*", "application/json", "application/xml"), false, 256);
+    }
+
+    @Benchmark
+    public boolean cached() {
+        return matcher.matches(contentType);
+    }
+
+    /**
+     * 改造前 isTextResponse 的写法
+     */
+    @Benchmark
+    public boolean parseEveryTime() {
+        try {
+            MediaType mediaType = MediaType.parseMediaType(contentType);
+            return mediaType.isCompatibleWith(MediaType.TEXT_PLAIN) ||
+                    mediaType.isCompatibleWith(MediaType.APPLICATION_JSON) ||
+                    mediaType.isCompatibleWith(MediaType.APPLICATION_XML) ||
+                    mediaType.isCompatibleWith(MediaType.TEXT_HTML) ||
+                    mediaType.toString().startsWith("text/");
+        } catch (Exception e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package org.hypnos.webflux.benchmark;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.jsonlog.JsonRecordEncoder;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 单条访问日志的输出编码：Lombok toString（文本格式）与 JSON 编码器对比，默认的 gc profiler 可以看到每条记录的分配量。
+ * 两者都包含同样的请求体捕获，捕获在渲染后归还缓冲池。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonEncoderBenchmark {
+
+    private static final byte[] REQUEST_BODY = "{\"num\":1,\"str\":\"hello \\\"world\\\"\",\"d\":2.5,\"tags\":[\"a\",\"b\"]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] RESPONSE_BODY = ("{\"code\":0,\"message\":\"ok\",\"data\":{\"name\":\"中文名称\","
+            + "\"items\":[1,2,3,4,5,6,7,8,9,10]}}").getBytes(StandardCharsets.UTF_8);
+
+    private CaptureBufferPool pool;
+
+    private MultiValueMap<String, String> queryParams;
+
+    private final JsonRecordEncoder encoder = new JsonRecordEncoder(4096);
+
+    @Setup
+    public void setUp() {
+        pool = new CaptureBufferPool(256, 8192, 64 * 1024, 1024);
+        queryParams = new LinkedMultiValueMap<>();
+        queryParams.add("page", "1");
+        queryParams.add("size", "20");
+        queryParams.add("tag", "a");
+        queryParams.add("tag", "b");
+    }
+
+    private HttpAccLog httpAccLog() {
+        long now = System.currentTimeMillis();
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setMethod("POST");
+        httpAccLog.setPath("/openapi/webflux/users/42/orders");
+        httpAccLog.setRoute("/openapi/webflux/users/{id}/orders");
+        httpAccLog.setReqTime(now - 12);
+        httpAccLog.setRspTime(now);
+        httpAccLog.setProcessTime(12);
+        httpAccLog.setStatusCode(200);
+        httpAccLog.setServerAddr("10.0.0.1");
+        httpAccLog.setRemoteAddr("198.51.100.23");
+        httpAccLog.setPathVariables(Collections.singletonMap("id", "42"));
+        httpAccLog.setRawQueryParams(queryParams);
+        BodyCapture request = new BodyCapture(pool, 2000);
+        request.append(REQUEST_BODY, 0, REQUEST_BODY.length);
+        httpAccLog.setRequestCapture(request);
+        BodyCapture response = new BodyCapture(pool, 2000);
+        response.append(RESPONSE_BODY, 0, RESPONSE_BODY.length);
+        httpAccLog.setResponseCapture(response, null);
+        return httpAccLog;
+    }
+
+    @Benchmark
+    public int toStringText() {
+        HttpAccLog httpAccLog = httpAccLog();
+        httpAccLog.render();
+        int length = httpAccLog.toString().length();
+        httpAccLog.release();
+        return length;
+    }
+
+    @Benchmark
+    public int jsonEncoder() {
+        HttpAccLog httpAccLog = httpAccLog();
+        encoder.reset();
+        encoder.encode(httpAccLog);
+        httpAccLog.release();
+        return encoder.size();
+    }
+}
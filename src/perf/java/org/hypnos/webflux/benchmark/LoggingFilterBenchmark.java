@@ -0,0 +1,180 @@
+package org.hypnos.webflux.benchmark;
+
+import org.hypnos.webflux.address.CidrTrie;
+import org.hypnos.webflux.address.ClientAddressResolver;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.config.AccessLogConfiguration;
+import org.hypnos.webflux.config.AccessLogProperties;
+import org.hypnos.webflux.filter.RequestResponseLoggingFilter;
+import org.hypnos.webflux.metrics.LoggingFilterMetrics;
+import org.hypnos.webflux.policy.CapturePolicyRegistry;
+import org.hypnos.webflux.policy.LoadSheddingPolicy;
+import org.hypnos.webflux.policy.MultipartCapturePolicy;
+import org.hypnos.webflux.policy.StreamCapturePolicy;
+import org.hypnos.webflux.policy.TailCapturePolicy;
+import org.hypnos.webflux.sink.AccessLogSink;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.http.codec.ServerCodecConfigurer;
+import org.springframework.mock.http.server.reactive.MockServerHttpResponse;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import org.springframework.web.server.adapter.DefaultServerWebExchange;
+import org.springframework.web.server.i18n.AcceptHeaderLocaleContextResolver;
+import org.springframework.web.server.i18n.LocaleContextResolver;
+import org.springframework.web.server.session.DefaultWebSessionManager;
+import org.springframework.web.server.session.WebSessionManager;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 过滤器整条链路的单请求开销，下游 handler 读完请求体并写回一个 JSON 响应。
+ * baseline 使用只透传的过滤器，两者之差就是日志过滤器本身的成本；render=true 时在 sink 中渲染日志字符串，
+ * 相当于把消费线程的开销也算进来。配合 -prof gc 查看每个请求的分配量。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoggingFilterBenchmark {
+
+    private static final String JSON_BODY = "{\"num\":1,\"str\":\"hello world\",\"d\":2.5,\"tags\":[\"a\",\"b\",\"c\"]}";
+
+    private static final String FORM_BODY = "num=1&str=hello+world&d=2.5&tags=a&tags=b&tags=c";
+
+    private static final byte[] RESPONSE_BODY = ("{\"code\":0,\"message\":\"ok\",\"data\":" + JSON_BODY + "}")
+            .getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * json、form、none（无 Content-Type）、binary（octet-stream，不捕获请求体）、get（无请求体，不装饰请求）
+     */
+    @Param({"json", "form", "none", "binary", "get"})
+    public String requestType;
+
+    @Param({"false", "true"})
+    public boolean render;
+
+    private WebFilter loggingFilter;
+
+    private WebFilter baselineFilter;
+
+    private ClientAddressResolver resolver;
+
+    private WebFilterChain handler;
+
+    private final WebSessionManager sessionManager = new DefaultWebSessionManager();
+
+    private final ServerCodecConfigurer codecConfigurer = ServerCodecConfigurer.create();
+
+    private final LocaleContextResolver localeContextResolver = new AcceptHeaderLocaleContextResolver();
+
+    /**
+     * 累加渲染结果的长度，防止 toString 被 JIT 消除
+     */
+    private long renderedChars;
+
+    @Setup
+    public void setUp() {
+        resolver = new ClientAddressResolver(new CidrTrie(Arrays.asList("127.0.0.0/8", "10.0.0.0/8")), 0);
+        CaptureBufferPool pool = new CaptureBufferPool(256, 8192, 64 * 1024, 1024);
+        AccessLogSink sink = httpAccLog -> {
+            if (render) {
+                httpAccLog.render();
+                renderedChars += httpAccLog.toString().length();
+            }
+            httpAccLog.release();
+        };
+        CapturePolicyRegistry capturePolicies = new CapturePolicyRegistry(
+                AccessLogConfiguration.capturePolicyTable(new AccessLogProperties.Capture()));
+        loggingFilter = new RequestResponseLoggingFilter(sink, pool, resolver, capturePolicies,
+                TailCapturePolicy.keepAll(), StreamCapturePolicy.defaults(), MultipartCapturePolicy.defaults(),
+                LoggingFilterMetrics.NOOP, null, LoadSheddingPolicy.disabled());
+        baselineFilter = (exchange, chain) -> chain.filter(exchange);
+        handler = LoggingFilterBenchmark::handle;
+    }
+
+    @TearDown
+    public void tearDown() {
+        resolver.close();
+    }
+
+    private static Mono<Void> handle(ServerWebExchange exchange) {
+        return DataBufferUtils.join(exchange.getRequest().getBody())
+                .doOnNext(DataBufferUtils::release)
+                .then(Mono.defer(() -> {
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    DataBuffer buffer = response.bufferFactory().wrap(RESPONSE_BODY);
+                    return response.writeWith(Mono.just(buffer));
+                }));
+    }
+
+    /**
+     * MockServerWebExchange.from 每次都会新建 ServerCodecConfigurer（含 ObjectMapper），这里复用共享组件，
+     * 只让请求和响应对象按次创建
+     */
+    private ServerWebExchange exchange() {
+        if ("get".equals(requestType)) {
+            MockServerHttpRequest request = MockServerHttpRequest.get("/openapi/webflux/echo?a=1")
+                    .remoteAddress(new InetSocketAddress("10.0.0.2", 51234))
+                    .header("X-Forwarded-For", "198.51.100.23")
+                    .build();
+            return new DefaultServerWebExchange(request, new MockServerHttpResponse(), sessionManager,
+                    codecConfigurer, localeContextResolver);
+        }
+        MockServerHttpRequest.BodyBuilder builder = MockServerHttpRequest.post("/openapi/webflux/echo")
+                .remoteAddress(new InetSocketAddress("10.0.0.2", 51234))
+                .header("X-Forwarded-For", "198.51.100.23");
+        MockServerHttpRequest request;
+        switch (requestType) {
+            case "json":
+                request = builder.contentType(MediaType.APPLICATION_JSON).body(JSON_BODY);
+                break;
+            case "form":
+                request = builder.contentType(MediaType.APPLICATION_FORM_URLENCODED).body(FORM_BODY);
+                break;
+            case "binary":
+                request = builder.header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_OCTET_STREAM_VALUE).body(JSON_BODY);
+                break;
+            case "none":
+            default:
+                request = builder.body(JSON_BODY);
+                break;
+        }
+        return new DefaultServerWebExchange(request, new MockServerHttpResponse(), sessionManager, codecConfigurer,
+                localeContextResolver);
+    }
+
+    @Benchmark
+    public Void baseline() {
+        return baselineFilter.filter(exchange(), handler).block();
+    }
+
+    @Benchmark
+    public Void loggingFilter() {
+        return loggingFilter.filter(exchange(), handler).block();
+    }
+}
@@ -0,0 +1,125 @@
+package org.hypnos.webflux.benchmark;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.capture.redact.BodyRedaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * 捕获时流式脱敏：同一个 JSON / 表单请求体按 1KB 分块流过捕获，
+ * 与不脱敏的捕获、以及捕获后对渲染出的字符串做正则替换（原来的离线处理方式）对比。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RedactionBenchmark {
+
+    private static final int LIMIT_SIZE = 8192;
+
+    private static final int CHUNK_SIZE = 1024;
+
+    private static final Pattern JSON_PATTERN = Pattern.compile(
+            "(\"(?i:password|token|secret|idCard)\"\\s*:\\s*)(\"(?:[^\"\\\\]|\\\\.)*\"|[^,}\\]]+)");
+
+    private static final Pattern FORM_PATTERN = Pattern.compile("((?i:password|token|secret|idCard)=)[^&]*");
+
+    @Param({"json", "form"})
+    public String bodyType;
+
+    @Param({"2000", "8000"})
+    public int bodySize;
+
+    private DataBuffer[] chunks;
+
+    private CaptureBufferPool pool;
+
+    private BodyRedaction redaction;
+
+    private String contentType;
+
+    private Pattern pattern;
+
+    @Setup
+    public void setUp() {
+        pool = new CaptureBufferPool(256, LIMIT_SIZE, 64 * 1024, 1024);
+        redaction = new BodyRedaction(Arrays.asList("password", "token", "secret", "idCard"),
+                Collections.singletonList("user.card.number"), 16);
+        boolean json = "json".equals(bodyType);
+        contentType = json ? "application/json" : "application/x-www-form-urlencoded";
+        pattern = json ? JSON_PATTERN : FORM_PATTERN;
+        byte[] body = (json ? json(bodySize) : form(bodySize)).getBytes(StandardCharsets.UTF_8);
+        DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+        chunks = new DataBuffer[(body.length + CHUNK_SIZE - 1) / CHUNK_SIZE];
+        for (int i = 0; i < chunks.length; i++) {
+            int offset = i * CHUNK_SIZE;
+            chunks[i] = factory.wrap(ByteBuffer.wrap(body, offset, Math.min(CHUNK_SIZE, body.length - offset)).slice());
+        }
+    }
+
+    private static String json(int size) {
+        StringBuilder builder = new StringBuilder("{\"user\":{\"name\":\"bob\",\"card\":{\"number\":6222020200112233}},"
+                + "\"token\":\"eyJhbGciOiJIUzI1NiJ9.e30.sig\",\"items\":[");
+        for (int i = 0; builder.length() < size - 40; i++) {
+            builder.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"password\":\"pw-").append(i)
+                    .append("\",\"note\":\"\\u4e2d \\\"q\\\"\"}");
+        }
+        return builder.append("]}").toString();
+    }
+
+    private static String form(int size) {
+        StringBuilder builder = new StringBuilder("user=bob&token=eyJhbGciOiJIUzI1NiJ9.e30.sig");
+        for (int i = 0; builder.length() < size; i++) {
+            builder.append("&field").append(i).append("=value-").append(i).append("&password=pw-").append(i);
+        }
+        return builder.toString();
+    }
+
+    @Benchmark
+    public String capture() {
+        return render(new BodyCapture(pool, LIMIT_SIZE));
+    }
+
+    @Benchmark
+    public String captureRedacted() {
+        return render(new BodyCapture(pool, LIMIT_SIZE, redaction.create(contentType)));
+    }
+
+    /**
+     * 捕获原文，渲染后再用正则替换
+     */
+    @Benchmark
+    public String captureThenRegex() {
+        return pattern.matcher(render(new BodyCapture(pool, LIMIT_SIZE))).replaceAll("$1\"***\"");
+    }
+
+    private String render(BodyCapture capture) {
+        for (DataBuffer chunk : chunks) {
+            capture.append(chunk);
+        }
+        String body = capture.toString(StandardCharsets.UTF_8);
+        capture.release();
+        return body;
+    }
+}
@@ -0,0 +1,73 @@
+package org.hypnos.webflux.benchmark;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 响应体分流：同样 64KB 的响应按不同块大小流过 doOnNext 捕获，与不捕获的透传对比。
+ * 捕获只复制前 2000 字节，块越小每块的固定开销占比越高。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseCaptureBenchmark {
+
+    private static final int TOTAL_BYTES = 64 * 1024;
+
+    private static final int LIMIT_SIZE = 2000;
+
+    @Param({"64", "1024", "8192", "65536"})
+    public int chunkSize;
+
+    private DataBuffer[] chunks;
+
+    private CaptureBufferPool pool;
+
+    @Setup
+    public void setUp() {
+        pool = new CaptureBufferPool(256, 8192, 64 * 1024, 1024);
+        byte[] payload = new byte[TOTAL_BYTES];
+        ThreadLocalRandom.current().nextBytes(payload);
+        DefaultDataBufferFactory factory = DefaultDataBufferFactory.sharedInstance;
+        chunks = new DataBuffer[TOTAL_BYTES / chunkSize];
+        for (int i = 0; i < chunks.length; i++) {
+            // 捕获不移动读位置，数据块可以在每次调用间复用
+            chunks[i] = factory.wrap(ByteBuffer.wrap(payload, i * chunkSize, chunkSize).slice());
+        }
+    }
+
+    @Benchmark
+    public DataBuffer passThrough() {
+        return Flux.fromArray(chunks).blockLast();
+    }
+
+    @Benchmark
+    public long capture() {
+        BodyCapture capture = new BodyCapture(pool, LIMIT_SIZE);
+        Flux.fromArray(chunks).doOnNext(capture::append).blockLast();
+        long total = capture.getTotalBytes();
+        capture.release();
+        return total;
+    }
+}
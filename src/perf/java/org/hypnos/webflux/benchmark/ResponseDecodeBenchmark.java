@@ -0,0 +1,105 @@
+package org.hypnos.webflux.benchmark;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.BodyRenderer;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.capture.decode.ContentDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 原 processResponseContent 的替代路径：响应体边流过边解压到捕获缓冲，最后渲染为日志字符串。
+ * identity 为未压缩响应的直接捕获，作为解压开销的对照。
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseDecodeBenchmark {
+
+    private static final int LIMIT_SIZE = 2000;
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({"identity", "gzip", "deflate"})
+    public String encoding;
+
+    @Param({"512", "65536"})
+    public int bodySize;
+
+    private DataBuffer[] chunks;
+
+    private CaptureBufferPool pool;
+
+    @Setup
+    public void setUp() throws IOException {
+        pool = new CaptureBufferPool(256, 8192, 64 * 1024, 1024);
+        StringBuilder json = new StringBuilder(bodySize + 64).append('[');
+        for (int i = 0; json.length() < bodySize; i++) {
+            json.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"ok\":true},");
+        }
+        json.setLength(bodySize - 1);
+        json.append(']');
+        byte[] body = encode(json.toString().getBytes(StandardCharsets.UTF_8));
+        int count = (body.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        chunks = new DataBuffer[count];
+        for (int i = 0; i < count; i++) {
+            int offset = i * CHUNK_SIZE;
+            chunks[i] = DefaultDataBufferFactory.sharedInstance.wrap(
+                    ByteBuffer.wrap(body, offset, Math.min(CHUNK_SIZE, body.length - offset)).slice());
+        }
+    }
+
+    private byte[] encode(byte[] plain) throws IOException {
+        if ("identity".equals(encoding)) {
+            return plain;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DeflaterOutputStream stream = "gzip".equals(encoding) ? new GZIPOutputStream(out) : new DeflaterOutputStream(out)) {
+            stream.write(plain);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public String decodeAndRender() {
+        BodyCapture capture = new BodyCapture(pool, LIMIT_SIZE);
+        String contentEncoding = null;
+        if ("identity".equals(encoding)) {
+            for (DataBuffer chunk : chunks) {
+                capture.append(chunk);
+            }
+        } else {
+            contentEncoding = encoding;
+            ContentDecoder decoder = ContentDecoder.create(encoding, capture, pool);
+            for (DataBuffer chunk : chunks) {
+                decoder.decode(chunk);
+            }
+            decoder.finish();
+        }
+        String rendered = BodyRenderer.renderResponse(capture, contentEncoding);
+        capture.release();
+        return rendered;
+    }
+}
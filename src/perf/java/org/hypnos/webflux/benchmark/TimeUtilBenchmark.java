@@ -0,0 +1,53 @@
+package org.hypnos.webflux.benchmark;
+
+import org.hypnos.webflux.utils.TimeUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间戳格式化：同一秒内命中前缀缓存、每次换秒，以及直接用 DateTimeFormatter 的对照
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TimeUtilBenchmark {
+
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS");
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private final long base = System.currentTimeMillis() / 1000 * 1000;
+
+    private long counter;
+
+    @Benchmark
+    public String sameSecond() {
+        return TimeUtil.getFormatStrFromMillis(base + (counter++ & 511));
+    }
+
+    @Benchmark
+    public String newSecond() {
+        return TimeUtil.getFormatStrFromMillis(base + (counter++ * 1000));
+    }
+
+    @Benchmark
+    public String dateTimeFormatter() {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(base + (counter++ & 511)), ZONE).format(FORMATTER);
+    }
+}
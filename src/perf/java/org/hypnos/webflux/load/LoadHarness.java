@@ -0,0 +1,270 @@
+package org.hypnos.webflux.load;
+
+import io.netty.buffer.Unpooled;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.hypnos.webflux.Application;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+import reactor.netty.resources.LoopResources;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 端到端压测：在随机端口启动 {@link Application}，用内嵌的 reactor-netty 客户端按固定并发和固定到达率发请求，
+ * 对比关闭过滤器、基础日志（不捕获请求体）和完整捕获三种模式在不同负载大小、是否 gzip 下的开销。
+ * <pre>
+ * mvn -Pperf test-compile exec:exec@load -Dload.args="--modes body --payloads 100,1048576 --rate 200"
+ *
+ * --modes       disabled,basic,body
+ * --payloads    请求和响应大小（字节），默认 100,10240,1048576,10485760
+ * --gzip        false,true，true 时响应带 Content-Encoding: gzip
+ * --concurrency 最大并发请求数，默认 16
+ * --rate        每秒请求数，默认 200，0 表示闭环
+ * --warmup / --duration 预热和测量时长（秒），默认 5 / 15
+ * </pre>
+ * 延迟从计划发送时间开始计算，并发打满时排队等待的时间也计入，避免 coordinated omission；
+ * --rate 0 时为闭环压测，每个并发连接收到响应后立即发下一个请求。
+ * 每请求分配字节数统计服务端 event loop 和日志消费线程，客户端使用独立的线程池，不计入。
+ */
+public class LoadHarness {
+
+    private static final String SERVER_THREAD_PREFIX = "reactor-http-";
+
+    private static final String DRAIN_THREAD_PREFIX = "access-log-drain";
+
+    private final int concurrency;
+
+    private final int rate;
+
+    private final long warmupSeconds;
+
+    private final long durationSeconds;
+
+    private LoadHarness(int concurrency, int rate, long warmupSeconds, long durationSeconds) {
+        this.concurrency = concurrency;
+        this.rate = rate;
+        this.warmupSeconds = warmupSeconds;
+        this.durationSeconds = durationSeconds;
+    }
+
+    public static void main(String[] rawArgs) throws Exception {
+        // exec 插件把 load.args 作为一个整体参数传入，这里按空白拆开
+        String[] args = String.join(" ", rawArgs).trim().split("\\s+");
+        List<String> modes = Arrays.asList("disabled", "basic", "body");
+        List<Integer> payloads = Arrays.asList(100, 10 * 1024, 1024 * 1024, 10 * 1024 * 1024);
+        List<Boolean> gzips = Arrays.asList(false, true);
+        int concurrency = 16;
+        int rate = 200;
+        long warmup = 5;
+        long duration = 15;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--modes":
+                    modes = Arrays.asList(value.split(","));
+                    break;
+                case "--payloads":
+                    payloads = new ArrayList<>();
+                    for (String size : value.split(",")) {
+                        payloads.add(Integer.parseInt(size));
+                    }
+                    break;
+                case "--gzip":
+                    gzips = new ArrayList<>();
+                    for (String gzip : value.split(",")) {
+                        gzips.add(Boolean.parseBoolean(gzip));
+                    }
+                    break;
+                case "--concurrency":
+                    concurrency = Integer.parseInt(value);
+                    break;
+                case "--rate":
+                    rate = Integer.parseInt(value);
+                    break;
+                case "--warmup":
+                    warmup = Long.parseLong(value);
+                    break;
+                case "--duration":
+                    duration = Long.parseLong(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        LoadHarness harness = new LoadHarness(concurrency, rate, warmup, duration);
+        System.out.printf("%-9s %10s %5s %10s %10s %10s %10s %10s %14s %8s%n", "mode", "payload", "gzip",
+                "req/s", "p50(ms)", "p99(ms)", "p999(ms)", "max(ms)", "alloc(B/req)", "errors");
+        for (String mode : modes) {
+            ConfigurableApplicationContext context = start(mode);
+            try {
+                int port = ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+                for (int payload : payloads) {
+                    for (boolean gzip : gzips) {
+                        Result result = harness.run(port, payload, gzip);
+                        System.out.printf("%-9s %10d %5s %10.1f %10.3f %10.3f %10.3f %10.3f %14d %8d%n", mode, payload,
+                                gzip, result.throughput, millis(result.histogram.getValueAtPercentile(50)),
+                                millis(result.histogram.getValueAtPercentile(99)),
+                                millis(result.histogram.getValueAtPercentile(99.9)),
+                                millis(result.histogram.getMaxValue()), result.allocatedPerRequest, result.errors);
+                    }
+                }
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * 访问日志写入文件，避免控制台输出干扰测量；basic 模式关闭请求体捕获，对应过滤器的 writeBasicLog 路径
+     */
+    private static ConfigurableApplicationContext start(String mode) {
+        SpringApplication app = new SpringApplication(Application.class);
+        app.setWebApplicationType(WebApplicationType.REACTIVE);
+        return app.run("--server.port=0",
+                "--spring.main.banner-mode=off",
+                "--management.server.port=-1",
+                "--logging.level.root=WARN",
+                "--logging.level.org.hypnos.webflux.filter.RequestResponseLoggingFilter=INFO",
+                "--logging.pattern.console=",
+                "--logging.file.name=target/load-harness/access-" + mode + ".log",
+                "--hypnos.access-log.enabled=" + !"disabled".equals(mode),
+                "--hypnos.access-log.capture.request-limit=" + ("body".equals(mode) ? 2000 : 0));
+    }
+
+    private Result run(int port, int payloadSize, boolean gzip) throws InterruptedException {
+        ConnectionProvider provider = ConnectionProvider.builder("load-harness")
+                .maxConnections(concurrency)
+                .pendingAcquireMaxCount(-1)
+                .build();
+        LoopResources loops = LoopResources.create("load-client", 2, true);
+        byte[] body = new byte[payloadSize];
+        Arrays.fill(body, (byte) 'a');
+        HttpClient client = HttpClient.create(provider)
+                .runOn(loops)
+                .baseUrl("http://127.0.0.1:" + port)
+                .headers(headers -> headers.set("Content-Type", "application/json"));
+        String uri = "/openapi/webflux/payload/" + payloadSize + "?gzip=" + gzip;
+        try {
+            // 预热只发请求不计数，让 JIT 和连接池稳定下来
+            drive(client, uri, body, TimeUnit.SECONDS.toNanos(warmupSeconds), new ConcurrentHistogram(3));
+            Histogram histogram = new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(1), 3);
+            long allocatedBefore = serverAllocatedBytes();
+            long start = System.nanoTime();
+            long[] counts = drive(client, uri, body, TimeUnit.SECONDS.toNanos(durationSeconds), histogram);
+            double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+            long allocated = serverAllocatedBytes() - allocatedBefore;
+            long completed = Math.max(counts[0], 1);
+            return new Result(histogram, counts[0] / elapsedSeconds, allocated / completed, counts[1]);
+        } finally {
+            provider.disposeLater().block();
+            loops.disposeLater().block();
+        }
+    }
+
+    /**
+     * @return [完成数, 失败数]
+     */
+    private long[] drive(HttpClient client, String uri, byte[] body, long durationNanos, Histogram histogram)
+            throws InterruptedException {
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        Semaphore permits = new Semaphore(concurrency);
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        long sent = 0;
+        while (true) {
+            long intended = rate > 0 ? start + sent * interval : System.nanoTime();
+            if (intended - deadline >= 0) {
+                break;
+            }
+            long wait;
+            while ((wait = intended - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            permits.acquire();
+            sent++;
+            long scheduled = intended;
+            client.post()
+                    .uri(uri)
+                    .send(ByteBufFlux.fromInbound(Mono.just(Unpooled.wrappedBuffer(body))))
+                    // 响应体边收边释放，客户端不聚合大响应
+                    .response((response, content) -> content.then(Mono.just(response.status().code())))
+                    .subscribe(status -> {
+                        if (status >= 400) {
+                            errors.incrementAndGet();
+                        }
+                    }, error -> {
+                        errors.incrementAndGet();
+                        finish(histogram, scheduled, completed, permits);
+                    }, () -> finish(histogram, scheduled, completed, permits));
+        }
+        permits.acquire(concurrency);
+        permits.release(concurrency);
+        return new long[]{completed.get(), errors.get()};
+    }
+
+    private static void finish(Histogram histogram, long scheduled, AtomicLong completed, Semaphore permits) {
+        histogram.recordValue(Math.min(System.nanoTime() - scheduled, histogram.getHighestTrackableValue()));
+        completed.incrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * 服务端 event loop 和日志消费线程累计分配的字节数
+     */
+    private static long serverAllocatedBytes() {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (ThreadInfo info : threads.getThreadInfo(threads.getAllThreadIds())) {
+            if (info == null) {
+                continue;
+            }
+            String name = info.getThreadName();
+            if (name.startsWith(SERVER_THREAD_PREFIX) || name.startsWith(DRAIN_THREAD_PREFIX)) {
+                long allocated = threads.getThreadAllocatedBytes(info.getThreadId());
+                if (allocated > 0) {
+                    total += allocated;
+                }
+            }
+        }
+        return total;
+    }
+
+    private static final class Result {
+
+        private final Histogram histogram;
+
+        private final double throughput;
+
+        private final long allocatedPerRequest;
+
+        private final long errors;
+
+        private Result(Histogram histogram, double throughput, long allocatedPerRequest, long errors) {
+            this.histogram = histogram;
+            this.throughput = throughput;
+            this.allocatedPerRequest = allocatedPerRequest;
+            this.errors = errors;
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package org.hypnos.webflux.ship;
+
+import org.hypnos.webflux.sink.AsyncAccessLogSink;
+import org.hypnos.webflux.sink.OverflowPolicy;
+import org.hypnos.webflux.vo.HttpAccLog;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 离线测试 {@link ShippingAccessLogWriter} 的吞吐和丢失：启动 {@link StubCollector}，通过 {@link AsyncAccessLogSink}
+ * 按固定速率提交合成的访问日志，可以在中途关掉采集端一段时间再恢复，结束后按各环节计数核对每条记录的去向。
+ * <pre>
+ * java -cp ... org.hypnos.webflux.ship.ShippingHarness --records 2000000 --rate 0 --outage-at 2 --outage-seconds 3
+ *
+ * --records        提交的记录数，默认 1000000
+ * --rate           每秒提交的记录数，0 表示不限速
+ * --outage-at      开始后第几秒关掉采集端，默认不关
+ * --outage-seconds 采集端不可用的时长（秒），默认 3
+ * --stall-millis   采集端每处理一帧后暂停的毫秒数
+ * --backlog-bytes  内存积压上限，默认 8MB
+ * --overflow       队列满时的策略，默认 DROP_NEWEST
+ * --spill-dir      溢出文件目录，默认 target/ship-spill，运行前会清空
+ * </pre>
+ * 输出中 lost 为写入端认为已发送、采集端却没有收到的记录数，即断连时 socket 缓冲区中的在途数据。
+ */
+public class ShippingHarness {
+
+    public static void main(String[] args) throws Exception {
+        long records = 1_000_000;
+        long rate = 0;
+        long outageAt = -1;
+        long outageSeconds = 3;
+        long stallMillis = 0;
+        long backlogBytes = 8L * 1024 * 1024;
+        OverflowPolicy overflow = OverflowPolicy.DROP_NEWEST;
+        Path spillDirectory = Paths.get("target/ship-spill");
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--records":
+                    records = Long.parseLong(value);
+                    break;
+                case "--rate":
+                    rate = Long.parseLong(value);
+                    break;
+                case "--outage-at":
+                    outageAt = Long.parseLong(value);
+                    break;
+                case "--outage-seconds":
+                    outageSeconds = Long.parseLong(value);
+                    break;
+                case "--stall-millis":
+                    stallMillis = Long.parseLong(value);
+                    break;
+                case "--backlog-bytes":
+                    backlogBytes = Long.parseLong(value);
+                    break;
+                case "--overflow":
+                    overflow = OverflowPolicy.valueOf(value);
+                    break;
+                case "--spill-dir":
+                    spillDirectory = Paths.get(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        deleteSpills(spillDirectory);
+
+        StubCollector collector = new StubCollector(0, stallMillis);
+        int port = collector.getPort();
+        ShippingAccessLogWriter writer = new ShippingAccessLogWriter(new InetSocketAddress("127.0.0.1", port), 1,
+                256 * 1024, 200, 100, 200, backlogBytes, spillDirectory, Long.MAX_VALUE);
+        AsyncAccessLogSink sink = new AsyncAccessLogSink(writer, 8192, 256, overflow, 10);
+
+        long received = 0;
+        long start = System.nanoTime();
+        long outageStart = outageAt < 0 ? Long.MAX_VALUE : start + TimeUnit.SECONDS.toNanos(outageAt);
+        long outageEnd = outageStart == Long.MAX_VALUE ? Long.MAX_VALUE
+                : outageStart + TimeUnit.SECONDS.toNanos(outageSeconds);
+        for (long i = 0; i < records; i++) {
+            if (rate > 0) {
+                long scheduled = start + i * TimeUnit.SECONDS.toNanos(1) / rate;
+                while (System.nanoTime() < scheduled) {
+                    LockSupport.parkNanos(scheduled - System.nanoTime());
+                }
+            }
+            long now = System.nanoTime();
+            if (collector != null && now >= outageStart) {
+                received += collector.getRecords();
+                System.out.println("collector down after " + collector);
+                collector.close();
+                collector = null;
+            } else if (collector == null && now >= outageEnd) {
+                collector = new StubCollector(port, stallMillis);
+                outageStart = Long.MAX_VALUE;
+                System.out.println("collector up");
+            }
+            sink.accept(httpAccLog(i));
+        }
+        long submitNanos = System.nanoTime() - start;
+        if (collector == null) {
+            collector = new StubCollector(port, stallMillis);
+        }
+        // close 会发出剩余的队列和积压，仍发不出去的写入溢出文件
+        sink.close();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received + collector.getRecords() < writer.getShippedRecords() && System.nanoTime() < deadline) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+        long elapsedNanos = System.nanoTime() - start;
+        received += collector.getRecords();
+        System.out.println("collector " + collector);
+        collector.close();
+
+        long spilled = countSpills(spillDirectory);
+        System.out.printf("submitted=%d sinkDropped=%d shipped=%d spilled=%d spillFileRecords=%d writerDropped=%d"
+                        + " received=%d lost=%d connects=%d%n", records, sink.getDroppedCount(), writer.getShippedRecords(),
+                writer.getSpilledRecords(), spilled, writer.getDroppedRecords(), received,
+                writer.getShippedRecords() - received, writer.getConnects());
+        System.out.printf("submit %.0f records/s, end-to-end %.0f records/s, %.1f MB compressed%n",
+                records * 1e9 / submitNanos, received * 1e9 / elapsedNanos, writer.getShippedBytes() / 1048576.0);
+    }
+
+    private static HttpAccLog httpAccLog(long i) {
+        long now = System.currentTimeMillis();
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setTraceId("4bf92f3577b34da6a3ce929d0e0e4736");
+        httpAccLog.setMethod("GET");
+        httpAccLog.setPath("/openapi/webflux/users/" + (i % 1000) + "/orders");
+        httpAccLog.setRoute("/openapi/webflux/users/{id}/orders");
+        httpAccLog.setReqTime(now - 3);
+        httpAccLog.setRspTime(now);
+        httpAccLog.setProcessTime(3);
+        httpAccLog.setStatusCode(200);
+        httpAccLog.setServerAddr("10.0.0.1");
+        httpAccLog.setRemoteAddr("198.51.100.23");
+        httpAccLog.setPathVariables(Collections.singletonMap("id", String.valueOf(i % 1000)));
+        httpAccLog.setResponseBody("{\"code\":0,\"message\":\"ok\"}");
+        return httpAccLog;
+    }
+
+    private static void deleteSpills(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "*" + ShippingAccessLogWriter.SPILL_FILE_SUFFIX)) {
+            for (Path file : files) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static long countSpills(Path directory) throws IOException {
+        long records = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                "*" + ShippingAccessLogWriter.SPILL_FILE_SUFFIX)) {
+            for (Path file : files) {
+                records += StubCollector.decode(file);
+            }
+        }
+        return records;
+    }
+}
@@ -0,0 +1,234 @@
+package org.hypnos.webflux.ship;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 本地采集端桩：接收 {@link ShippingAccessLogWriter} 发送的帧，解压后按换行数核对帧头中的记录条数，只计数不落盘。
+ * 可以单独运行，也可以嵌入 {@link ShippingHarness} 中启停，用来离线测试吞吐和断连时的丢失情况。
+ * <pre>
+ * java -cp ... org.hypnos.webflux.ship.StubCollector --port 24225 --stall-millis 0
+ * java -cp ... org.hypnos.webflux.ship.StubCollector --decode logs/access-spill/access-1.spill
+ *
+ * --stall-millis 每处理一帧后暂停的毫秒数，模拟处理不过来的采集端
+ * --decode       不监听端口，统计溢出文件中的帧和记录数
+ * </pre>
+ */
+public class StubCollector implements AutoCloseable {
+
+    private final ServerSocketChannel server;
+
+    private final long stallMillis;
+
+    private final Thread acceptThread;
+
+    private volatile boolean running = true;
+
+    private volatile SocketChannel current;
+
+    final FrameCounter counter = new FrameCounter();
+
+    final AtomicLong connections = new AtomicLong();
+
+    public StubCollector(int port, long stallMillis) throws IOException {
+        this.server = ServerSocketChannel.open();
+        this.server.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        this.server.bind(new InetSocketAddress("127.0.0.1", port));
+        this.stallMillis = stallMillis;
+        this.acceptThread = new Thread(this::acceptLoop, "stub-collector");
+        this.acceptThread.setDaemon(true);
+        this.acceptThread.start();
+    }
+
+    public int getPort() {
+        return ((InetSocketAddress) server.socket().getLocalSocketAddress()).getPort();
+    }
+
+    /**
+     * 一次只服务一个连接，写入端本来也只有一个消费线程
+     */
+    private void acceptLoop() {
+        while (running) {
+            try (SocketChannel channel = server.accept()) {
+                current = channel;
+                connections.incrementAndGet();
+                readFrames(new DataInputStream(Channels.newInputStream(channel)));
+            } catch (EOFException e) {
+                // 写入端断开，未读完的半帧直接丢弃
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("collector connection failed: " + e);
+                }
+            } finally {
+                current = null;
+            }
+        }
+    }
+
+    private void readFrames(DataInputStream in) throws IOException {
+        byte[] payload = new byte[64 * 1024];
+        byte[] plain = new byte[64 * 1024];
+        while (running) {
+            int length = in.readInt();
+            int count = in.readInt();
+            if (payload.length < length) {
+                payload = new byte[Math.max(length, payload.length * 2)];
+            }
+            in.readFully(payload, 0, length);
+            counter.accept(payload, length, count, plain);
+            if (stallMillis > 0) {
+                sleep(stallMillis);
+            }
+        }
+    }
+
+    /**
+     * 模拟采集端崩溃：断开当前连接，之后的连接仍然接受
+     */
+    public void dropConnection() throws IOException {
+        SocketChannel channel = current;
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        server.close();
+        dropConnection();
+    }
+
+    /**
+     * 统计溢出文件中的帧，格式与网络上的帧相同
+     * @return 记录条数
+     */
+    public static long decode(Path file) throws IOException {
+        FrameCounter counter = new FrameCounter();
+        byte[] plain = new byte[64 * 1024];
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                int count = in.readInt();
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                counter.accept(payload, length, count, plain);
+            }
+        }
+        System.out.println(file + ": " + counter);
+        return counter.records.get();
+    }
+
+    public long getRecords() {
+        return counter.records.get();
+    }
+
+    @Override
+    public String toString() {
+        return "connections=" + connections.get() + " " + counter;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 24225;
+        long stallMillis = 0;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[i + 1]);
+                    break;
+                case "--stall-millis":
+                    stallMillis = Long.parseLong(args[i + 1]);
+                    break;
+                case "--decode":
+                    for (int j = i + 1; j < args.length; j++) {
+                        decode(Paths.get(args[j]));
+                    }
+                    return;
+                default:
+                    throw new IllegalArgumentException("unknown option " + args[i]);
+            }
+        }
+        try (StubCollector collector = new StubCollector(port, stallMillis)) {
+            System.out.println("stub collector listening on " + collector.getPort());
+            long lastRecords = 0;
+            while (true) {
+                sleep(1000);
+                long records = collector.getRecords();
+                System.out.printf("%d records/s, %s%n", records - lastRecords, collector);
+                lastRecords = records;
+            }
+        }
+    }
+
+    /**
+     * 解压帧并计数，按换行数核对帧头中的记录条数
+     */
+    static class FrameCounter {
+
+        final AtomicLong frames = new AtomicLong();
+
+        final AtomicLong records = new AtomicLong();
+
+        final AtomicLong compressedBytes = new AtomicLong();
+
+        final AtomicLong plainBytes = new AtomicLong();
+
+        final AtomicLong mismatches = new AtomicLong();
+
+        void accept(byte[] payload, int length, int count, byte[] plain) throws IOException {
+            long lines = 0;
+            long size = 0;
+            try (InputStream gzip = new GZIPInputStream(new ByteArrayInputStream(payload, 0, length), 8192)) {
+                int n;
+                while ((n = gzip.read(plain)) > 0) {
+                    size += n;
+                    for (int i = 0; i < n; i++) {
+                        if (plain[i] == '\n') {
+                            lines++;
+                        }
+                    }
+                }
+            }
+            if (lines != count) {
+                mismatches.incrementAndGet();
+            }
+            frames.incrementAndGet();
+            records.addAndGet(count);
+            compressedBytes.addAndGet(length + GzipFrameEncoder.HEADER_LENGTH);
+            plainBytes.addAndGet(size);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("frames=%d records=%d compressed=%.1fMB plain=%.1fMB mismatches=%d", frames.get(),
+                    records.get(), compressedBytes.get() / 1048576.0, plainBytes.get() / 1048576.0, mismatches.get());
+        }
+    }
+}
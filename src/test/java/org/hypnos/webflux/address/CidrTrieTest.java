@@ -0,0 +1,72 @@
+package org.hypnos.webflux.address;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CidrTrieTest {
+
+    private final CidrTrie trie = new CidrTrie(Arrays.asList("10.0.0.0/8", " 192.168.1.0/24", "203.0.113.7",
+            "fc00::/7", "2001:db8::1"));
+
+    private final long[] scratch = new long[2];
+
+    @Test
+    void ipv4() {
+        assertTrue(contains("10.0.0.0"));
+        assertTrue(contains("10.255.255.255"));
+        assertFalse(contains("11.0.0.0"));
+        assertTrue(contains("192.168.1.254"));
+        assertFalse(contains("192.168.2.1"));
+        assertTrue(contains("203.0.113.7"));
+        assertFalse(contains("203.0.113.8"));
+        assertTrue(trie.contains(new byte[]{10, 1, 2, 3}));
+        assertFalse(trie.contains(new byte[]{(byte) 172, 16, 0, 1}));
+    }
+
+    @Test
+    void ipv6() {
+        assertTrue(contains("fc00::1"));
+        assertTrue(contains("fdff:ffff::"));
+        assertFalse(contains("fe80::1"));
+        assertTrue(contains("2001:db8::1"));
+        assertTrue(contains("2001:0db8:0:0:0:0:0:1"));
+        assertFalse(contains("2001:db8::2"));
+        // IPv4-mapped 地址按 IPv4 网段匹配
+        assertTrue(contains("::ffff:10.1.2.3"));
+        assertFalse(contains("::ffff:11.1.2.3"));
+    }
+
+    @Test
+    void substringAndGarbage() {
+        String header = "x 10.9.8.7, y";
+        assertTrue(trie.contains(header, 2, 10, scratch));
+        assertFalse(contains("10.0.0"));
+        assertFalse(contains("unknown"));
+        assertFalse(contains(""));
+    }
+
+    @Test
+    void zeroPrefixMatchesEverything() {
+        CidrTrie all = new CidrTrie(Arrays.asList("0.0.0.0/0", "::/0"));
+        assertTrue(all.contains("8.8.8.8", 0, 7, scratch));
+        assertTrue(all.contains("2606:4700::1111", 0, 15, scratch));
+        assertTrue(new CidrTrie(Collections.emptyList()).isEmpty());
+    }
+
+    @Test
+    void invalid() {
+        assertThrows(IllegalArgumentException.class, () -> new CidrTrie(Collections.singletonList("10.0.0.0/33")));
+        assertThrows(IllegalArgumentException.class, () -> new CidrTrie(Collections.singletonList("fc00::/129")));
+        assertThrows(IllegalArgumentException.class, () -> new CidrTrie(Collections.singletonList("example.com")));
+    }
+
+    private boolean contains(String address) {
+        return trie.contains(address, 0, address.length(), scratch);
+    }
+}
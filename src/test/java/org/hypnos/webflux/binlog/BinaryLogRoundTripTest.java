@@ -0,0 +1,153 @@
+package org.hypnos.webflux.binlog;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.dedup.BodyDigestCache;
+import org.hypnos.webflux.dedup.DedupAccessLogWriter;
+import org.hypnos.webflux.dedup.XxHash64;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.hypnos.webflux.vo.RequestPhases;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 经过去重写入段文件再读回，字段、请求体哈希和被省略的重复请求体都要与写入时一致
+ */
+class BinaryLogRoundTripTest {
+
+    private static final String REQUEST_BODY = "{\"num\":1,\"str\":\"hello world\",\"tags\":[\"a\",\"b\"]}";
+
+    private static final String RESPONSE_BODY = "{\"code\":0,\"message\":\"ok\"}";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void roundTrip() throws IOException {
+        CaptureBufferPool pool = new CaptureBufferPool(256, 16 * 1024, 64 * 1024, 16);
+        pool.setLeakDetection(true);
+        long now = System.currentTimeMillis();
+        DedupAccessLogWriter writer = new DedupAccessLogWriter(
+                new MappedSegmentAccessLogWriter(directory, "access", 64 * 1024, 3600),
+                new BodyDigestCache(64, 0), 1);
+        List<HttpAccLog> batch = Arrays.asList(record(pool, now, 200), record(pool, now + 5, 500));
+        writer.write(batch);
+        batch.forEach(HttpAccLog::release);
+        writer.close();
+        pool.assertNoLeaks();
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.collect(Collectors.toList());
+        }
+        assertEquals(1, files.size());
+        String requestHash = hex(REQUEST_BODY);
+        String responseHash = hex(RESPONSE_BODY);
+
+        try (BinaryLogReader reader = new BinaryLogReader(files.get(0))) {
+            HttpAccLog first = reader.next(null);
+            assertEquals(now, first.getReqTimeMillis());
+            assertEquals(now + 12, first.getRspTimeMillis());
+            assertEquals(12, first.getProcessTime());
+            assertEquals(200, first.getStatusCode());
+            assertEquals(7L, first.getUpstreamTime());
+            assertEquals(Long.valueOf(RESPONSE_BODY.length()), first.getResponseSize());
+            assertEquals("trace-1", first.getTraceId());
+            assertEquals("POST", first.getMethod());
+            assertEquals("/users/42", first.getPath());
+            assertEquals("/users/{id}", first.getRoute());
+            assertEquals("10.0.0.1:8080", first.getServerAddr());
+            assertEquals("198.51.100.23", first.getRemoteAddr());
+            assertEquals(pathVariables(), first.getPathVariables());
+            assertEquals(queryParams(), first.getQueryParams());
+            assertEquals(REQUEST_BODY, first.getRequestBody());
+            assertEquals(RESPONSE_BODY, first.getResponseBody());
+            assertEquals(requestHash, first.getRequestBodyHash());
+            assertEquals(responseHash, first.getResponseBodyHash());
+            assertEquals(3000, first.getPhases().get(RequestPhases.HANDLER_START));
+            assertEquals(-1, first.getPhases().get(RequestPhases.FIRST_BYTE));
+            assertEquals(1500, first.getPhases().getFilterNanos());
+
+            // 内容相同的第二条只保留哈希，字典中的字符串被复用
+            HttpAccLog second = reader.next(null);
+            assertEquals(500, second.getStatusCode());
+            assertEquals("/users/{id}", second.getRoute());
+            assertNull(second.getRequestBody());
+            assertNull(second.getResponseBody());
+            assertEquals(requestHash, second.getRequestBodyHash());
+            assertEquals(responseHash, second.getResponseBodyHash());
+
+            assertNull(reader.next(null));
+        }
+
+        try (BinaryLogReader reader = new BinaryLogReader(files.get(0))) {
+            HttpAccLog error = reader.next((reqTime, status) -> status != null && status >= 500);
+            assertEquals(now + 5, error.getReqTimeMillis());
+            assertNull(reader.next((reqTime, status) -> status != null && status >= 500));
+        }
+    }
+
+    private static HttpAccLog record(CaptureBufferPool pool, long reqTime, int status) {
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setTraceId("trace-1");
+        httpAccLog.setMethod("POST");
+        httpAccLog.setPath("/users/42");
+        httpAccLog.setRoute("/users/{id}");
+        httpAccLog.setReqTime(reqTime);
+        httpAccLog.setRspTime(reqTime + 12);
+        httpAccLog.setProcessTime(12);
+        httpAccLog.setUpstreamTime(7L);
+        httpAccLog.setResponseSize((long) RESPONSE_BODY.length());
+        httpAccLog.setStatusCode(status);
+        httpAccLog.setServerAddr("10.0.0.1:8080");
+        httpAccLog.setRemoteAddr("198.51.100.23");
+        httpAccLog.setPathVariables(pathVariables());
+        httpAccLog.setQueryParams(queryParams());
+        RequestPhases phases = new RequestPhases(0);
+        phases.set(RequestPhases.HANDLER_START, 3000);
+        phases.setFilterNanos(1500);
+        httpAccLog.setPhases(phases);
+        httpAccLog.setRequestCapture(capture(pool, REQUEST_BODY));
+        httpAccLog.setResponseCapture(capture(pool, RESPONSE_BODY), null);
+        return httpAccLog;
+    }
+
+    private static BodyCapture capture(CaptureBufferPool pool, String body) {
+        BodyCapture capture = new BodyCapture(pool, 1024);
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        capture.append(bytes, 0, bytes.length);
+        return capture;
+    }
+
+    private static Map<String, Object> pathVariables() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("id", "42");
+        return map;
+    }
+
+    private static Map<String, Object> queryParams() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("a", "1");
+        map.put("b", "x,y");
+        return map;
+    }
+
+    private static String hex(String body) {
+        return XxHash64.toHex(XxHash64.hash(ByteBuffer.wrap(body.getBytes(StandardCharsets.UTF_8)), 0));
+    }
+}
@@ -0,0 +1,103 @@
+package org.hypnos.webflux.capture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BodyCaptureLeakTest {
+
+    @Test
+    void appendGrowsThenRelease() {
+        CaptureBufferPool pool = pool();
+        BodyCapture capture = new BodyCapture(pool, 10 * 1024);
+        byte[] chunk = new byte[3000];
+        for (int i = 0; i < 4; i++) {
+            capture.append(DefaultDataBufferFactory.sharedInstance.wrap(chunk));
+        }
+        assertTrue(pool.getOutstanding() > 0);
+        assertEquals(10 * 1024, capture.getCaptured());
+        assertEquals(12000, capture.getTotalBytes());
+        assertTrue(capture.isTruncated());
+        capture.release();
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void appendAfterReleaseDoesNotBorrow() {
+        CaptureBufferPool pool = pool();
+        BodyCapture capture = new BodyCapture(pool, 1024);
+        byte[] bytes = "hello".getBytes(StandardCharsets.UTF_8);
+        capture.append(bytes, 0, bytes.length);
+        capture.release();
+        // 响应流在记录被丢弃之后仍可能继续写出
+        capture.append(bytes, 0, bytes.length);
+        capture.append(DefaultDataBufferFactory.sharedInstance.wrap(bytes));
+        capture.release();
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void appendAfterSealIsIgnored() {
+        CaptureBufferPool pool = pool();
+        BodyCapture capture = new BodyCapture(pool, 1024);
+        capture.append(new byte[16], 0, 16);
+        capture.seal();
+        long outstanding = pool.getOutstanding();
+        capture.append(new byte[2048], 0, 2048);
+        capture.append(DefaultDataBufferFactory.sharedInstance.wrap(new byte[16]));
+        assertTrue(capture.isSealed());
+        assertEquals(16, capture.getCaptured());
+        assertEquals(16, capture.getTotalBytes());
+        assertEquals(outstanding, pool.getOutstanding());
+        capture.release();
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void sealWaitsForConcurrentAppend() throws InterruptedException {
+        CaptureBufferPool pool = pool();
+        BodyCapture capture = new BodyCapture(pool, 16 * 1024);
+        CountDownLatch started = new CountDownLatch(1);
+        Thread appender = new Thread(() -> {
+            byte[] chunk = new byte[64];
+            started.countDown();
+            while (!capture.isSealed()) {
+                capture.append(chunk, 0, chunk.length);
+            }
+        });
+        appender.start();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        capture.seal();
+        int captured = capture.getCaptured();
+        long totalBytes = capture.getTotalBytes();
+        appender.join(TimeUnit.SECONDS.toMillis(5));
+        assertEquals(captured, capture.getCaptured());
+        assertEquals(totalBytes, capture.getTotalBytes());
+        capture.release();
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void leakReportsAllocationTrace() {
+        CaptureBufferPool pool = pool();
+        BodyCapture capture = new BodyCapture(pool, 1024);
+        capture.append(new byte[16], 0, 16);
+        IllegalStateException e = assertThrows(IllegalStateException.class, pool::assertNoLeaks);
+        assertEquals(1, e.getSuppressed().length);
+        capture.release();
+        pool.assertNoLeaks();
+    }
+
+    static CaptureBufferPool pool() {
+        CaptureBufferPool pool = new CaptureBufferPool(256, 16 * 1024, 64 * 1024, 16);
+        pool.setLeakDetection(true);
+        return pool;
+    }
+}
@@ -0,0 +1,107 @@
+package org.hypnos.webflux.capture;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 分隔符、part 头和文件内容都可能被切在两块之间，每个切分点的结果都必须与整块一致
+ */
+class MultipartScannerTest {
+
+    private static final String BODY = "preamble\r\n"
+            + "--XyZ\r\n"
+            + "Content-Disposition: form-data; name=\"name\"\r\n\r\n"
+            + "bob\r\n"
+            + "--XyZ\r\n"
+            + "Content-Disposition: form-data; name=\"password\"\r\n\r\n"
+            + "secret\r\n"
+            + "--XyZ\r\n"
+            + "Content-Disposition: form-data; name=\"desc\"\r\n\r\n"
+            + "abcdefghijk\r\n"
+            + "--XyZ\r\n"
+            + "Content-Disposition: form-data; name=\"file\"; filename=\"a.txt\"\r\n"
+            + "Content-Type: text/plain\r\n\r\n"
+            + "hello\r\n--Xy world\r\n"
+            + "--XyZ\r\n"
+            + "Content-Disposition: form-data; name=\"tag\"\r\n\r\n"
+            + "a\r\n"
+            + "--XyZ\r\n"
+            + "Content-Disposition: form-data; name=\"tag\"\r\n\r\n"
+            + "b\r\n"
+            + "--XyZ--\r\n"
+            + "epilogue";
+
+    @Test
+    void boundary() {
+        assertEquals("XyZ", MultipartScanner.boundary("multipart/form-data; boundary=XyZ"));
+        assertEquals("a b", MultipartScanner.boundary("Multipart/Form-Data; boundary=\"a b\""));
+        assertNull(MultipartScanner.boundary("multipart/mixed; boundary=XyZ"));
+        assertNull(MultipartScanner.boundary("multipart/form-data"));
+        assertNull(MultipartScanner.boundary(null));
+    }
+
+    @Test
+    void splits() {
+        Map<String, Object> file = new LinkedHashMap<>();
+        file.put("filename", "a.txt");
+        file.put("contentType", "text/plain");
+        file.put("size", (long) "hello\r\n--Xy world".length());
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("name", "bob");
+        expected.put("password", "******");
+        expected.put("desc", "abcdefgh...");
+        expected.put("file", file);
+        expected.put("tag", Arrays.asList("a", "b"));
+
+        byte[] bytes = BODY.getBytes(StandardCharsets.ISO_8859_1);
+        for (int split = 0; split <= bytes.length; split++) {
+            MultipartScanner scanner = scanner();
+            scan(scanner, bytes, 0, split);
+            scan(scanner, bytes, split, bytes.length);
+            assertEquals(expected, scanner.finish(), "split at " + split);
+            assertEquals(6, scanner.getParts(), "split at " + split);
+        }
+    }
+
+    @Test
+    void byteByByte() {
+        byte[] bytes = BODY.getBytes(StandardCharsets.ISO_8859_1);
+        MultipartScanner whole = scanner();
+        scan(whole, bytes, 0, bytes.length);
+        MultipartScanner single = scanner();
+        for (int i = 0; i < bytes.length; i++) {
+            scan(single, bytes, i, i + 1);
+        }
+        assertEquals(whole.finish(), single.finish());
+    }
+
+    @Test
+    void truncatedBody() {
+        String body = "--XyZ\r\nContent-Disposition: form-data; name=\"file\"; filename=\"b.bin\"\r\n\r\n0123\r\n--X";
+        MultipartScanner scanner = scanner();
+        byte[] bytes = body.getBytes(StandardCharsets.ISO_8859_1);
+        scan(scanner, bytes, 0, bytes.length);
+        Map<String, Object> file = new LinkedHashMap<>();
+        file.put("filename", "b.bin");
+        file.put("size", 9L);
+        assertEquals(file, scanner.finish().get("file"));
+    }
+
+    private static MultipartScanner scanner() {
+        return new MultipartScanner("XyZ", 16, 8, 256, "password"::equals);
+    }
+
+    private static void scan(MultipartScanner scanner, byte[] bytes, int from, int to) {
+        if (from < to) {
+            scanner.scan(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(bytes, from, to)));
+        }
+    }
+}
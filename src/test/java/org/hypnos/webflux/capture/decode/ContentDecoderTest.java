@@ -0,0 +1,188 @@
+package org.hypnos.webflux.capture.decode;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * gzip 头部和压缩数据可能在任意位置切开，每个切分点解出的内容都必须一致
+ */
+class ContentDecoderTest {
+
+    private static final String TEXT;
+
+    static {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            builder.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\"}\n");
+        }
+        TEXT = builder.toString();
+    }
+
+    private CaptureBufferPool pool;
+
+    @BeforeEach
+    void setUp() {
+        pool = new CaptureBufferPool(256, 16 * 1024, 64 * 1024, 16);
+        pool.setLeakDetection(true);
+    }
+
+    @Test
+    void gzipWithOptionalHeaderFields() {
+        assertSplits("gzip", gzip(TEXT.getBytes(StandardCharsets.UTF_8)));
+        assertSplits("x-gzip", gzip(TEXT.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void deflateZlibAndRaw() {
+        assertSplits("deflate", deflate(TEXT.getBytes(StandardCharsets.UTF_8), false));
+        assertSplits("deflate", deflate(TEXT.getBytes(StandardCharsets.UTF_8), true));
+    }
+
+    @Test
+    void brotli() {
+        byte[] encoded = brotliUncompressed(TEXT.getBytes(StandardCharsets.UTF_8));
+        assertSplits("br", encoded);
+        assertSplits("BR", encoded);
+    }
+
+    @Test
+    void truncatedAtLimit() {
+        byte[] encoded = gzip(TEXT.getBytes(StandardCharsets.UTF_8));
+        BodyCapture output = new BodyCapture(pool, 100);
+        ContentDecoder decoder = ContentDecoder.create("gzip", output, pool);
+        decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(encoded));
+        decoder.finish();
+        assertFalse(decoder.isFailed());
+        assertTrue(output.isTruncated());
+        assertEquals(TEXT.substring(0, 100), output.toString(StandardCharsets.UTF_8));
+        output.release();
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void corruptInput() {
+        byte[] encoded = gzip(TEXT.getBytes(StandardCharsets.UTF_8));
+        encoded[1] = 0;
+        assertTrue(decodeFails("gzip", encoded));
+        byte[] deflated = deflate(TEXT.getBytes(StandardCharsets.UTF_8), true);
+        Arrays.fill(deflated, 0, 4, (byte) 0xFF);
+        assertTrue(decodeFails("deflate", deflated));
+        assertTrue(decodeFails("br", new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x00}));
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void unsupported() {
+        assertNull(ContentDecoder.create("compress", new BodyCapture(pool, 16), pool));
+        assertFalse(ContentDecoder.supports("zstd"));
+        assertTrue(ContentDecoder.supports("GZIP"));
+    }
+
+    private void assertSplits(String encoding, byte[] encoded) {
+        for (int split = 0; split <= encoded.length; split++) {
+            BodyCapture output = new BodyCapture(pool, 16 * 1024);
+            ContentDecoder decoder = ContentDecoder.create(encoding, output, pool);
+            if (split > 0) {
+                decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(Arrays.copyOfRange(encoded, 0, split)));
+            }
+            if (split < encoded.length) {
+                decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(
+                        Arrays.copyOfRange(encoded, split, encoded.length)));
+            }
+            decoder.finish();
+            assertFalse(decoder.isFailed(), encoding + " split at " + split);
+            assertEquals(TEXT, output.toString(StandardCharsets.UTF_8), encoding + " split at " + split);
+            output.release();
+        }
+        pool.assertNoLeaks();
+    }
+
+    private boolean decodeFails(String encoding, byte[] encoded) {
+        BodyCapture output = new BodyCapture(pool, 16 * 1024);
+        ContentDecoder decoder = ContentDecoder.create(encoding, output, pool);
+        decoder.decode(DefaultDataBufferFactory.sharedInstance.wrap(encoded));
+        decoder.finish();
+        output.release();
+        return decoder.isFailed();
+    }
+
+    /**
+     * 带 FEXTRA、FNAME、FCOMMENT、FHCRC 的 gzip 成员，覆盖头部状态机的每个分支
+     */
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0x1F);
+        out.write(0x8B);
+        out.write(8);
+        out.write(0x02 | 0x04 | 0x08 | 0x10);
+        out.write(new byte[6], 0, 6);
+        out.write(3);
+        out.write(0);
+        out.write(new byte[]{1, 2, 3}, 0, 3);
+        byte[] name = "a.json\0".getBytes(StandardCharsets.ISO_8859_1);
+        out.write(name, 0, name.length);
+        byte[] comment = "c\0".getBytes(StandardCharsets.ISO_8859_1);
+        out.write(comment, 0, comment.length);
+        out.write(0);
+        out.write(0);
+        byte[] body = deflate(data, true);
+        out.write(body, 0, body.length);
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        writeIntLe(out, (int) crc.getValue());
+        writeIntLe(out, data.length);
+        return out.toByteArray();
+    }
+
+    private static byte[] deflate(byte[] data, boolean raw) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, raw);
+        try (DeflaterOutputStream stream = new DeflaterOutputStream(out, deflater)) {
+            stream.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        } finally {
+            deflater.end();
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 一个未压缩的 meta-block 加一个空的结尾 meta-block（RFC 7932 9.2），不依赖 brotli 编码器
+     */
+    private static byte[] brotliUncompressed(byte[] data) {
+        // WBITS=16（1 位 0）、ISLAST=0、MNIBBLES=4（00）、MLEN-1（16 位）、ISUNCOMPRESSED=1，共 21 位，补齐到 3 字节
+        int header = ((data.length - 1) << 4) | (1 << 20);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header);
+        out.write(header >>> 8);
+        out.write(header >>> 16);
+        out.write(data, 0, data.length);
+        // ISLAST=1、ISLASTEMPTY=1
+        out.write(0x03);
+        return out.toByteArray();
+    }
+
+    private static void writeIntLe(ByteArrayOutputStream out, int value) {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
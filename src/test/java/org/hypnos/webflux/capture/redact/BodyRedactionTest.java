@@ -0,0 +1,52 @@
+package org.hypnos.webflux.capture.redact;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * 脱敏器跨块保持状态，每个切分点分两块喂入的结果都必须与整块一致
+ */
+class BodyRedactionTest {
+
+    private final BodyRedaction redaction = new BodyRedaction(Arrays.asList("password", "token"),
+            Collections.singletonList("user.card.number"), 16);
+
+    @Test
+    void json() {
+        String body = "{\"user\":{\"name\":\"bob\",\"PassWord\":\"s3cr\\\"et\",\"card\":{\"number\":4111111111111111}},"
+                + "\"token\":[\"a\",{\"k\":\"b\"}],\"ok\":true,\"n\":null}";
+        String expected = "{\"user\":{\"name\":\"bob\",\"PassWord\":\"********\",\"card\":{\"number\":****************}},"
+                + "\"token\":[\"*\",{\"k\":\"*\"}],\"ok\":true,\"n\":null}";
+        assertSplits("application/json;charset=UTF-8", body, expected);
+    }
+
+    @Test
+    void form() {
+        String body = "user=bob&password=p%40ss&TOKEN=abc&x=1&token=";
+        String expected = "user=bob&password=******&TOKEN=***&x=1&token=";
+        assertSplits("application/x-www-form-urlencoded", body, expected);
+    }
+
+    @Test
+    void unsupportedContentType() {
+        assertNull(redaction.create("text/plain"));
+        assertNull(BodyRedaction.NONE.create("application/json"));
+    }
+
+    private void assertSplits(String contentType, String body, String expected) {
+        byte[] source = body.getBytes(StandardCharsets.UTF_8);
+        for (int split = 0; split <= source.length; split++) {
+            byte[] bytes = source.clone();
+            Redactor redactor = redaction.create(contentType);
+            redactor.redact(bytes, 0, split);
+            redactor.redact(bytes, split, bytes.length);
+            assertEquals(expected, new String(bytes, StandardCharsets.UTF_8), "split at " + split);
+        }
+    }
+}
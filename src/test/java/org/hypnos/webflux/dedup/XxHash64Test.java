@@ -0,0 +1,22 @@
+package org.hypnos.webflux.dedup;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class XxHash64Test {
+
+    @Test
+    void knownAnswers() {
+        assertEquals("ef46db3751d8e999", hex(""));
+        assertEquals("44bc2cf5ad770999", hex("abc"));
+        assertEquals("fbcea83c8a378bf1", hex("Nobody inspects the spammish repetition"));
+    }
+
+    private static String hex(String s) {
+        return XxHash64.toHex(XxHash64.hash(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)), 0));
+    }
+}
@@ -0,0 +1,195 @@
+package org.hypnos.webflux.filter;
+
+import org.hypnos.webflux.address.CidrTrie;
+import org.hypnos.webflux.address.ClientAddressResolver;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.capture.CaptureOffloadStage;
+import org.hypnos.webflux.config.AccessLogConfiguration;
+import org.hypnos.webflux.config.AccessLogProperties;
+import org.hypnos.webflux.metrics.LoggingFilterMetrics;
+import org.hypnos.webflux.policy.CapturePolicyRegistry;
+import org.hypnos.webflux.policy.LoadSheddingPolicy;
+import org.hypnos.webflux.policy.MultipartCapturePolicy;
+import org.hypnos.webflux.policy.StreamCapturePolicy;
+import org.hypnos.webflux.policy.TailCapturePolicy;
+import org.hypnos.webflux.sink.AccessLogSink;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.MediaType;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+import org.springframework.web.server.ServerWebExchange;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 过滤器在尾部采样丢弃、分流队列拒绝时都要归还捕获缓冲区，记录交出后迟到的请求体分块不能再写入捕获
+ */
+class RequestResponseLoggingFilterLeakTest {
+
+    private static final String REQUEST_BODY = "{\"num\":1,\"str\":\"hello world\"}";
+
+    private static final String FIRST_CHUNK = "{\"first\":1,";
+
+    private static final byte[] RESPONSE_BODY = "{\"code\":0,\"message\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+
+    private final List<HttpAccLog> records = new ArrayList<>();
+
+    private final AccessLogSink sink = records::add;
+
+    private CaptureBufferPool pool;
+
+    private ClientAddressResolver resolver;
+
+    /**
+     * handler 执行时借出的缓冲区数，确认请求体确实被捕获了
+     */
+    private long outstandingInHandler;
+
+    @BeforeEach
+    void setUp() {
+        pool = new CaptureBufferPool(256, 16 * 1024, 64 * 1024, 16);
+        pool.setLeakDetection(true);
+        resolver = new ClientAddressResolver(new CidrTrie(Collections.emptyList()), 0);
+    }
+
+    @AfterEach
+    void tearDown() {
+        resolver.close();
+    }
+
+    @Test
+    void keptRecordReleasedBySink() {
+        filter(TailCapturePolicy.keepAll(), null).filter(exchange(), this::handle).block();
+        assertTrue(outstandingInHandler > 0);
+        assertEquals(1, records.size());
+        HttpAccLog httpAccLog = records.get(0);
+        httpAccLog.render();
+        assertEquals(REQUEST_BODY, httpAccLog.getRequestBody());
+        assertEquals(new String(RESPONSE_BODY, StandardCharsets.UTF_8), httpAccLog.getResponseBody());
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void tailDrop() {
+        TailCapturePolicy dropAll = new TailCapturePolicy(true, 500, 0, 0, null, true);
+        filter(dropAll, null).filter(exchange(), this::handle).block();
+        assertTrue(outstandingInHandler > 0);
+        assertTrue(records.isEmpty());
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void tailMetadataOnly() {
+        TailCapturePolicy metadataOnly = new TailCapturePolicy(true, 500, 0, 0, null, false);
+        filter(metadataOnly, null).filter(exchange(), this::handle).block();
+        assertEquals(1, records.size());
+        assertNull(records.get(0).requestCapture());
+        assertNull(records.get(0).responseCapture());
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void offloadRejected() {
+        CaptureOffloadStage offloadStage = new CaptureOffloadStage(sink, pool, 1, 1, LoggingFilterMetrics.NOOP);
+        // 关闭后的分流阶段拒绝所有记录，过滤器降级为只有元数据的记录
+        offloadStage.close();
+        filter(TailCapturePolicy.keepAll(), offloadStage).filter(exchange(), this::handle).block();
+        assertTrue(outstandingInHandler > 0);
+        assertEquals(1, offloadStage.getRejectedCount());
+        assertEquals(1, records.size());
+        assertNull(records.get(0).requestCapture());
+        assertNull(records.get(0).responseCapture());
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void requestChunksAfterEarlyResponse() {
+        earlyResponse(null);
+        HttpAccLog httpAccLog = records.get(0);
+        httpAccLog.render();
+        assertEquals(FIRST_CHUNK, httpAccLog.getRequestBody());
+        pool.assertNoLeaks();
+    }
+
+    @Test
+    void requestChunksAfterEarlyResponseOffloaded() {
+        List<HttpAccLog> offloaded = new CopyOnWriteArrayList<>();
+        CaptureOffloadStage offloadStage = new CaptureOffloadStage(offloaded::add, pool, 1, 16,
+                LoggingFilterMetrics.NOOP);
+        earlyResponse(offloadStage);
+        offloadStage.close();
+        assertEquals(1, offloaded.size());
+        HttpAccLog httpAccLog = offloaded.get(0);
+        httpAccLog.render();
+        assertEquals(FIRST_CHUNK, httpAccLog.getRequestBody());
+        pool.assertNoLeaks();
+    }
+
+    /**
+     * handler 只读到第一块请求体就写出响应，记录交出之后剩余的分块才到达
+     */
+    private void earlyResponse(CaptureOffloadStage offloadStage) {
+        Sinks.Many<DataBuffer> chunks = Sinks.many().unicast().onBackpressureBuffer();
+        MockServerWebExchange exchange = MockServerWebExchange.from(MockServerHttpRequest.post("/upload")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(chunks.asFlux()));
+        filter(TailCapturePolicy.keepAll(), offloadStage).filter(exchange, chained -> {
+            chained.getRequest().getBody().subscribe(DataBufferUtils::release);
+            chunks.tryEmitNext(wrap(FIRST_CHUNK));
+            ServerHttpResponse response = chained.getResponse();
+            response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            return response.writeWith(Mono.just(response.bufferFactory().wrap(RESPONSE_BODY)));
+        }).block();
+        for (int i = 0; i < 64; i++) {
+            chunks.tryEmitNext(wrap("\"late\":" + i + ","));
+        }
+        chunks.tryEmitComplete();
+    }
+
+    private static DataBuffer wrap(String chunk) {
+        return DefaultDataBufferFactory.sharedInstance.wrap(chunk.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private RequestResponseLoggingFilter filter(TailCapturePolicy tail, CaptureOffloadStage offloadStage) {
+        CapturePolicyRegistry capturePolicies = new CapturePolicyRegistry(
+                AccessLogConfiguration.capturePolicyTable(new AccessLogProperties.Capture()));
+        return new RequestResponseLoggingFilter(sink, pool, resolver, capturePolicies, tail,
+                StreamCapturePolicy.defaults(), MultipartCapturePolicy.defaults(), LoggingFilterMetrics.NOOP,
+                offloadStage, LoadSheddingPolicy.disabled());
+    }
+
+    private static MockServerWebExchange exchange() {
+        return MockServerWebExchange.from(MockServerHttpRequest.post("/openapi/webflux/echo")
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(REQUEST_BODY));
+    }
+
+    private Mono<Void> handle(ServerWebExchange exchange) {
+        return DataBufferUtils.join(exchange.getRequest().getBody())
+                .doOnNext(DataBufferUtils::release)
+                .then(Mono.defer(() -> {
+                    outstandingInHandler = pool.getOutstanding();
+                    ServerHttpResponse response = exchange.getResponse();
+                    response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+                    DataBuffer buffer = response.bufferFactory().wrap(RESPONSE_BODY);
+                    return response.writeWith(Mono.just(buffer));
+                }));
+    }
+}
@@ -0,0 +1,144 @@
+package org.hypnos.webflux.jsonlog;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.hypnos.webflux.vo.RequestPhases;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 编码结果用 Jackson 解析回来比对，确认转义和 UTF-8 处理产出的是合法 JSON
+ */
+class JsonRecordEncoderTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final CaptureBufferPool pool = new CaptureBufferPool(256, 16 * 1024, 64 * 1024, 16);
+
+    @Test
+    void fieldsAndOmittedNulls() throws IOException {
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setTraceId("t-1");
+        httpAccLog.setMethod("GET");
+        httpAccLog.setPath("/users/42");
+        httpAccLog.setReqTime(1623733644270L);
+        httpAccLog.setProcessTime(12);
+        httpAccLog.setStatusCode(200);
+        httpAccLog.setResponseSize(0L);
+        httpAccLog.setInProgress(Boolean.TRUE);
+        RequestPhases phases = new RequestPhases(0);
+        phases.set(RequestPhases.HANDLER_START, 3000);
+        phases.setFilterNanos(1500);
+        httpAccLog.setPhases(phases);
+        Map<String, Object> formData = new LinkedHashMap<>();
+        formData.put("n", 1);
+        formData.put("d", 2.5);
+        formData.put("nan", Double.NaN);
+        formData.put("tags", Arrays.asList("a", null, true));
+        httpAccLog.setFormData(formData);
+        LinkedMultiValueMap<String, String> query = new LinkedMultiValueMap<>();
+        query.add("a", "1");
+        query.add("b", "x");
+        query.add("b", "y");
+        httpAccLog.setRawQueryParams(query);
+
+        JsonNode json = encode(httpAccLog);
+        assertEquals("t-1", json.get("traceId").asText());
+        assertEquals("/users/42", json.get("path").asText());
+        assertEquals(httpAccLog.getReqTime(), json.get("reqTime").asText());
+        assertEquals(12, json.get("processTime").asLong());
+        assertEquals(200, json.get("statusCode").asInt());
+        assertEquals(0, json.get("responseSize").asLong());
+        assertTrue(json.get("inProgress").asBoolean());
+        assertEquals(3000, json.get("phases").get("handlerStart").asLong());
+        assertFalse(json.get("phases").has("firstByte"));
+        assertEquals(1500, json.get("phases").get("filter").asLong());
+        assertEquals(1, json.get("formData").get("n").asInt());
+        assertEquals(2.5, json.get("formData").get("d").asDouble());
+        assertEquals("NaN", json.get("formData").get("nan").asText());
+        assertTrue(json.get("formData").get("tags").get(1).isNull());
+        assertEquals("1", json.get("queryParams").get("a").asText());
+        assertEquals("y", json.get("queryParams").get("b").get(1).asText());
+        for (String omitted : new String[]{"rspTime", "upstreamTime", "firstByteTime", "route", "requestBody",
+                "responseBody", "pathVariables", "serverAddr", "remoteAddr", "requestBodyHash"}) {
+            assertFalse(json.has(omitted), omitted);
+        }
+    }
+
+    @Test
+    void stringEscaping() throws IOException {
+        String path = "/a\"b\\c\n\t\u0001\u007f/中文/😀";
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setPath(path);
+        httpAccLog.setTraceId("lone\uD800surrogate");
+        JsonNode json = encode(httpAccLog);
+        assertEquals(path, json.get("path").asText());
+        assertEquals("lone�surrogate", json.get("traceId").asText());
+    }
+
+    @Test
+    void capturedBytes() throws IOException {
+        byte[] valid = "{\"k\":\"v\\\"中\"}\n".getBytes(StandardCharsets.UTF_8);
+        // 非法的续字节、过长编码和截断在多字节字符中间的结尾都替换为 U+FFFD
+        byte[] invalid = {'a', (byte) 0x80, 'b', (byte) 0xC0, (byte) 0xAF, 'c', (byte) 0xE4, (byte) 0xB8};
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setRequestCapture(capture(valid, 1024));
+        httpAccLog.setResponseCapture(capture(invalid, 1024), null);
+        JsonNode json = encode(httpAccLog);
+        assertEquals(new String(valid, StandardCharsets.UTF_8), json.get("requestBody").asText());
+        assertEquals("a�b��c��", json.get("responseBody").asText());
+        httpAccLog.release();
+    }
+
+    @Test
+    void truncatedResponse() throws IOException {
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setResponseCapture(capture(new byte[10], 4), null);
+        JsonNode json = encode(httpAccLog);
+        assertEquals("response entity exceeds the limit 4 bytes", json.get("responseBody").asText());
+        httpAccLog.release();
+    }
+
+    @Test
+    void appendsLinesAndGrows() throws IOException {
+        JsonRecordEncoder encoder = new JsonRecordEncoder(8);
+        HttpAccLog first = new HttpAccLog();
+        first.setPath("/first");
+        HttpAccLog second = new HttpAccLog();
+        second.setPath("/second");
+        encoder.encode(first);
+        encoder.encode(second);
+        String[] lines = new String(encoder.array(), 0, encoder.size(), StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("/first", MAPPER.readTree(lines[0]).get("path").asText());
+        assertEquals("/second", MAPPER.readTree(lines[1]).get("path").asText());
+        encoder.reset();
+        assertEquals(0, encoder.size());
+    }
+
+    private BodyCapture capture(byte[] bytes, int limit) {
+        BodyCapture capture = new BodyCapture(pool, limit);
+        capture.append(bytes, 0, bytes.length);
+        return capture;
+    }
+
+    private static JsonNode encode(HttpAccLog httpAccLog) throws IOException {
+        JsonRecordEncoder encoder = new JsonRecordEncoder(64);
+        encoder.encode(httpAccLog);
+        assertEquals('\n', encoder.array()[encoder.size() - 1]);
+        return MAPPER.readTree(new String(encoder.array(), 0, encoder.size(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,124 @@
+package org.hypnos.webflux.policy;
+
+import org.hypnos.webflux.capture.redact.BodyRedaction;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 规则用 requestLimit 标识，匹配结果按 limit 判断命中了哪一条
+ */
+class CapturePolicyTableTest {
+
+    private final CapturePolicyTable table = new CapturePolicyTable(defaults(), true, 16, Arrays.asList(
+            rule("/api/users/{id}", 1, "get"),
+            rule("/api/users/me", 2),
+            rule("/api/**", 3),
+            rule("/api/users/{id}", 4, "POST", "PUT"),
+            rule("/files/*/raw", 5),
+            rule("/", 6, "OPTIONS")), BodyRedaction.NONE);
+
+    @Test
+    void literalBeforeVariableBeforeRest() {
+        assertEquals(1, limit("GET", "/api/users/42"));
+        assertEquals(2, limit("GET", "/api/users/me"));
+        assertEquals(2, limit("DELETE", "/api/users/me"));
+        assertEquals(3, limit("GET", "/api/orders/1/items"));
+    }
+
+    @Test
+    void methodsOnTheSameNode() {
+        assertEquals(4, limit("POST", "/api/users/42"));
+        assertEquals(4, limit("PUT", "/api/users/42"));
+        // 变量节点上没有 DELETE 的规则，回退到上层的 **
+        assertEquals(3, limit("DELETE", "/api/users/42"));
+    }
+
+    @Test
+    void restMatchesZeroSegments() {
+        assertEquals(3, limit("GET", "/api"));
+        assertEquals(3, limit("GET", "/api/"));
+    }
+
+    @Test
+    void singleSegmentWildcard() {
+        assertEquals(5, limit("GET", "/files/report.csv/raw"));
+        assertEquals(100, limit("GET", "/files/a/b/raw"));
+        assertEquals(100, limit("GET", "/files/raw"));
+    }
+
+    @Test
+    void redundantSlashesAndDefault() {
+        assertEquals(1, limit("GET", "//api//users/42/"));
+        assertEquals(6, limit("OPTIONS", "/"));
+        assertEquals(100, limit("GET", "/"));
+        assertEquals(100, limit("GET", "/other"));
+        assertEquals(100, limit("GET", "/apix/users/42"));
+        assertSame(table.getDefaultPolicy(), table.match("GET", "/other"));
+        assertEquals(6, table.getRuleCount());
+    }
+
+    @Test
+    void ruleOverridesOnlyWhatItSets() {
+        CaptureRule rule = rule("/upload", 7);
+        rule.setRequestContentTypes(Collections.singletonList("text/plain"));
+        CaptureRule metadata = rule("/health", 8);
+        metadata.setLevel(CaptureLevel.METADATA);
+        CapturePolicyTable withTypes = new CapturePolicyTable(defaults(), true, 16,
+                Arrays.asList(rule, metadata), BodyRedaction.NONE);
+        CapturePolicy policy = withTypes.match("POST", "/upload");
+        assertEquals(CaptureLevel.BODY, policy.getLevel());
+        assertEquals(200, policy.getResponseLimit());
+        assertTrue(policy.captureRequest("text/plain;charset=UTF-8"));
+        assertFalse(policy.captureRequest("application/json"));
+        assertTrue(policy.captureResponse("application/json"));
+
+        CapturePolicy health = withTypes.match("GET", "/health");
+        assertEquals(CaptureLevel.METADATA, health.getLevel());
+        assertFalse(health.captureRequest("application/json"));
+        assertFalse(health.captureResponse("application/json"));
+
+        CapturePolicy fallback = withTypes.match("POST", "/other");
+        assertEquals(CaptureLevel.BODY, fallback.getLevel());
+        assertTrue(fallback.captureRequest("application/json"));
+        assertTrue(fallback.captureRequest(null));
+        assertFalse(fallback.captureRequest("image/png"));
+    }
+
+    @Test
+    void invalidRules() {
+        assertThrows(IllegalArgumentException.class, () -> new CapturePolicyTable(defaults(), true, 16,
+                Collections.singletonList(rule("/a/**/b", 1)), BodyRedaction.NONE));
+        assertThrows(IllegalArgumentException.class, () -> new CapturePolicyTable(defaults(), true, 16,
+                Collections.singletonList(rule(null, 1)), BodyRedaction.NONE));
+    }
+
+    private int limit(String method, String path) {
+        return table.match(method, path).getRequestLimit();
+    }
+
+    private static CaptureRule defaults() {
+        CaptureRule defaults = new CaptureRule();
+        defaults.setLevel(CaptureLevel.BODY);
+        defaults.setRequestLimit(100);
+        defaults.setResponseLimit(200);
+        defaults.setRequestContentTypes(Collections.singletonList("application/json"));
+        defaults.setResponseContentTypes(Collections.singletonList("application/json"));
+        return defaults;
+    }
+
+    private static CaptureRule rule(String pattern, int requestLimit, String... methods) {
+        CaptureRule rule = new CaptureRule();
+        rule.setPattern(pattern);
+        rule.setRequestLimit(requestLimit);
+        rule.setMethods(Arrays.asList(methods));
+        return rule;
+    }
+}
@@ -0,0 +1,105 @@
+package org.hypnos.webflux.policy;
+
+import org.hypnos.webflux.capture.redact.BodyRedaction;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+/**
+ * 连续过载才降级、连续低于恢复阈值才升级，阈值之间的采样会打断计数
+ */
+class LoadSheddingPolicyTest {
+
+    @Test
+    void stepsDownOneLevelPerWindow() {
+        LoadSheddingPolicy policy = new LoadSheddingPolicy(64, 0, 0.5, 3, 2);
+        assertEquals(LoadSheddingPolicy.FULL, policy.update(1.0));
+        assertEquals(LoadSheddingPolicy.FULL, policy.update(2.0));
+        assertEquals(LoadSheddingPolicy.TRUNCATED, policy.update(1.5));
+        for (int i = 0; i < 3; i++) {
+            policy.update(1.0);
+        }
+        assertEquals(LoadSheddingPolicy.METADATA, policy.getLevel());
+        for (int i = 0; i < 10; i++) {
+            policy.update(1.0);
+        }
+        // 最低降到 SAMPLED
+        assertEquals(LoadSheddingPolicy.SAMPLED, policy.getLevel());
+        assertEquals(3, policy.getStepDowns());
+    }
+
+    @Test
+    void hysteresisBand() {
+        LoadSheddingPolicy policy = new LoadSheddingPolicy(64, 0, 0.5, 2, 2);
+        policy.update(1.0);
+        // 处于 recoverRatio 和 1 之间的采样清零过载计数
+        policy.update(0.8);
+        assertEquals(LoadSheddingPolicy.FULL, policy.update(1.0));
+        assertEquals(LoadSheddingPolicy.TRUNCATED, policy.update(1.0));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(LoadSheddingPolicy.TRUNCATED, policy.update(0.7));
+        }
+        policy.update(0.1);
+        policy.update(0.9);
+        assertEquals(LoadSheddingPolicy.TRUNCATED, policy.update(0.1));
+        assertEquals(LoadSheddingPolicy.FULL, policy.update(0.1));
+        assertEquals(LoadSheddingPolicy.FULL, policy.update(0.0));
+        assertEquals(1, policy.getStepUps());
+    }
+
+    @Test
+    void alternatingPressureDoesNotFlap() {
+        LoadSheddingPolicy policy = new LoadSheddingPolicy(64, 0, 0.5, 2, 2);
+        for (int i = 0; i < 100; i++) {
+            policy.update(i % 2 == 0 ? 1.2 : 0.2);
+        }
+        assertEquals(LoadSheddingPolicy.FULL, policy.getLevel());
+        assertEquals(0, policy.getStepDowns());
+    }
+
+    @Test
+    void applyCapsThePolicy() {
+        CapturePolicy body = bodyPolicy();
+        LoadSheddingPolicy policy = new LoadSheddingPolicy(64, 0, 0.5, 1, 1);
+        assertSame(body, policy.apply(body));
+
+        policy.update(1.0);
+        CapturePolicy truncated = policy.apply(body);
+        assertEquals(CaptureLevel.BODY, truncated.getLevel());
+        assertEquals(64, truncated.getRequestLimit());
+        assertEquals(64, truncated.getResponseLimit());
+
+        policy.update(1.0);
+        assertEquals(CaptureLevel.METADATA, policy.apply(body).getLevel());
+
+        policy.update(1.0);
+        // sampleRate 为 0 时全部不记录，cap 不重新采样
+        assertEquals(CaptureLevel.NONE, policy.apply(body).getLevel());
+        assertEquals(CaptureLevel.METADATA, policy.cap(body).getLevel());
+    }
+
+    @Test
+    void disabledNeverDegrades() {
+        LoadSheddingPolicy policy = LoadSheddingPolicy.disabled();
+        CapturePolicy body = bodyPolicy();
+        for (int i = 0; i < 1000; i++) {
+            policy.update(10);
+        }
+        assertEquals(LoadSheddingPolicy.FULL, policy.getLevel());
+        assertSame(body, policy.apply(body));
+        assertEquals("full", LoadSheddingPolicy.name(policy.getLevel()));
+    }
+
+    private static CapturePolicy bodyPolicy() {
+        CaptureRule defaults = new CaptureRule();
+        defaults.setLevel(CaptureLevel.BODY);
+        defaults.setRequestLimit(1024);
+        defaults.setResponseLimit(4096);
+        return new CapturePolicyTable(defaults, true, 16, Collections.emptyList(), BodyRedaction.NONE)
+                .getDefaultPolicy();
+    }
+}
@@ -0,0 +1,77 @@
+package org.hypnos.webflux.policy;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TailCapturePolicyTest {
+
+    @Test
+    void disabledKeepsEverything() {
+        TailCapturePolicy policy = TailCapturePolicy.keepAll();
+        assertFalse(policy.isEnabled());
+        assertEquals(CaptureDecision.KEEP, policy.decide("/a", 200, 0));
+        assertEquals(CaptureDecision.KEEP, policy.decide(TailCapturePolicy.UNMATCHED_ROUTE, null, 0));
+    }
+
+    @Test
+    void keepsFailedAndSlowRequests() {
+        TailCapturePolicy policy = new TailCapturePolicy(true, 500, 1000, 0, null, false);
+        assertTrue(policy.isEnabled());
+        assertEquals(CaptureDecision.KEEP, policy.decide("/a", 500, 1));
+        assertEquals(CaptureDecision.KEEP, policy.decide("/a", 503, 1));
+        assertEquals(CaptureDecision.KEEP, policy.decide("/a", 200, 1000));
+        assertEquals(CaptureDecision.METADATA, policy.decide("/a", 499, 999));
+        // 客户端断开时没有状态码
+        assertEquals(CaptureDecision.METADATA, policy.decide("/a", null, 10));
+    }
+
+    @Test
+    void dropUnkept() {
+        TailCapturePolicy policy = new TailCapturePolicy(true, 500, 0, 0, null, true);
+        assertEquals(CaptureDecision.DROP, policy.decide("/a", 200, Long.MAX_VALUE));
+        assertEquals(CaptureDecision.KEEP, policy.decide("/a", 500, 0));
+    }
+
+    @Test
+    void sampleRateBounds() {
+        TailCapturePolicy all = new TailCapturePolicy(true, 600, 0, 1.0, null, true);
+        TailCapturePolicy none = new TailCapturePolicy(true, 600, 0, 0, null, true);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(CaptureDecision.KEEP, all.decide("/a", 200, 0));
+            assertEquals(CaptureDecision.DROP, none.decide("/a", 200, 0));
+        }
+        TailCapturePolicy half = new TailCapturePolicy(true, 600, 0, 0.5, null, true);
+        int kept = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (half.decide("/a", 200, 0) == CaptureDecision.KEEP) {
+                kept++;
+            }
+        }
+        assertTrue(kept > 4000 && kept < 6000, "kept " + kept);
+    }
+
+    @Test
+    void routeRulesOverrideDefaults() {
+        RouteRule slowRoute = new RouteRule();
+        slowRoute.setSlowThresholdMillis(5000L);
+        RouteRule sampledRoute = new RouteRule();
+        sampledRoute.setSampleRate(1.0);
+        Map<String, RouteRule> rules = new HashMap<>();
+        rules.put("/report", slowRoute);
+        rules.put("/orders/{id}", sampledRoute);
+        TailCapturePolicy policy = new TailCapturePolicy(true, 500, 100, 0, rules, false);
+
+        assertEquals(CaptureDecision.KEEP, policy.decide("/users", 200, 100));
+        assertEquals(CaptureDecision.METADATA, policy.decide("/report", 200, 4999));
+        assertEquals(CaptureDecision.KEEP, policy.decide("/report", 200, 5000));
+        // 只覆盖采样率的路由仍使用默认耗时阈值
+        assertEquals(CaptureDecision.KEEP, policy.decide("/orders/{id}", 200, 0));
+        assertEquals(CaptureDecision.KEEP, policy.decide("/report", 500, 0));
+    }
+}
@@ -0,0 +1,63 @@
+package org.hypnos.webflux.recent;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BodyArenaTest {
+
+    @Test
+    void wrapsAroundAndEvictsOldest() {
+        BodyArena arena = new BodyArena(16);
+        long first = arena.append(bytes("0123456789"));
+        assertEquals(0, first);
+        assertArrayEquals(ascii("0123456789"), arena.read(first, 10));
+
+        // 跨过缓冲区末尾写入，覆盖了 first 的前 4 个字节
+        long second = arena.append(bytes("abcdefghij"));
+        assertEquals(10, second);
+        assertArrayEquals(ascii("abcdefghij"), arena.read(second, 10));
+        assertNull(arena.read(first, 10));
+        assertEquals(20, arena.getWrittenBytes());
+
+        long third = arena.append(bytes("ABCDEF"));
+        assertArrayEquals(ascii("ABCDEF"), arena.read(third, 6));
+        assertArrayEquals(ascii("abcdefghij"), arena.read(second, 10));
+        arena.append(bytes("x"));
+        assertNull(arena.read(second, 10));
+    }
+
+    @Test
+    void rejectsEmptyAndOversized() {
+        BodyArena arena = new BodyArena(8);
+        assertEquals(-1, arena.append(ByteBuffer.allocate(0)));
+        assertEquals(-1, arena.append(bytes("123456789")));
+        assertEquals(0, arena.getWrittenBytes());
+        assertNull(arena.read(-1, 4));
+        assertThrows(IllegalArgumentException.class, () -> new BodyArena(0));
+    }
+
+    @Test
+    void appendKeepsSourcePosition() {
+        BodyArena arena = new BodyArena(32);
+        ByteBuffer source = bytes("--payload");
+        source.position(2);
+        long offset = arena.append(source);
+        assertEquals(2, source.position());
+        assertArrayEquals(ascii("payload"), arena.read(offset, 7));
+    }
+
+    private static ByteBuffer bytes(String value) {
+        return ByteBuffer.wrap(ascii(value));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
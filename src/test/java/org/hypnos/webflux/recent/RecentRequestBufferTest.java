@@ -0,0 +1,147 @@
+package org.hypnos.webflux.recent;
+
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.LinkedMultiValueMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 主环、失败环、最慢记录各自按容量淘汰，请求体被 arena 覆盖后读不到，参数按上限复制
+ */
+class RecentRequestBufferTest {
+
+    @Test
+    void ringsEvictOldest() {
+        RecentRequestBuffer buffer = new RecentRequestBuffer(3, 2, 2, 4096, 64, 8, 64);
+        assertEquals(4, buffer.getCapacity());
+        for (int i = 0; i < 10; i++) {
+            buffer.add(record(i, i % 3 == 0 ? 500 : 200, 10));
+        }
+        assertEquals(10, buffer.getRecorded());
+        assertEquals(Arrays.asList(9L, 8L, 7L, 6L), sequences(buffer.recent()));
+        assertEquals(Arrays.asList(9L, 6L), sequences(buffer.failed()));
+    }
+
+    @Test
+    void slowestOnlyWithinRecentRing() {
+        RecentRequestBuffer buffer = new RecentRequestBuffer(4, 2, 2, 4096, 64, 8, 64);
+        buffer.add(record(0, 200, 900));
+        buffer.add(record(1, 200, 50));
+        buffer.add(record(2, 200, 300));
+        buffer.add(record(3, 200, 100));
+        assertEquals(Arrays.asList(0L, 2L), sequences(buffer.slowest()));
+        // 第 0 条滚出主环后，它的槽位被更快的新记录占用
+        buffer.add(record(4, 200, 10));
+        assertEquals(Arrays.asList(2L, 4L), sequences(buffer.slowest()));
+        // 仍在记录中的请求不参与最慢排名
+        HttpAccLog inProgress = record(5, 200, 10_000);
+        inProgress.setInProgress(Boolean.TRUE);
+        buffer.add(inProgress);
+        assertEquals(Arrays.asList(2L, 4L), sequences(buffer.slowest()));
+    }
+
+    @Test
+    void bodiesTruncatedAndOverwritten() {
+        RecentRequestBuffer buffer = new RecentRequestBuffer(8, 2, 2, 64, 16, 8, 64);
+        HttpAccLog first = record(0, 200, 1);
+        first.setRequestBody("{\"a\":1}");
+        first.setResponseBody("0123456789abcdefXYZ");
+        buffer.add(first);
+        RecentRequest request = buffer.recent().get(0);
+        assertEquals("{\"a\":1}", buffer.requestBody(request));
+        assertFalse(request.isRequestBodyTruncated());
+        assertEquals("0123456789abcdef", buffer.responseBody(request));
+        assertTrue(request.isResponseBodyTruncated());
+
+        for (int i = 1; i <= 4; i++) {
+            HttpAccLog next = record(i, 200, 1);
+            next.setResponseBody("................");
+            buffer.add(next);
+        }
+        // 64 字节的 arena 已被后面的 4 个响应体写满一轮
+        assertNull(buffer.requestBody(request));
+        assertNull(buffer.responseBody(request));
+        assertEquals("................", buffer.responseBody(buffer.recent().get(0)));
+        assertNull(buffer.requestBody(buffer.recent().get(0)));
+    }
+
+    @Test
+    void paramsAreBounded() {
+        RecentRequestBuffer buffer = new RecentRequestBuffer(4, 2, 2, 4096, 64, 4, 8);
+        HttpAccLog httpAccLog = record(0, 200, 1);
+        LinkedMultiValueMap<String, String> query = new LinkedMultiValueMap<>();
+        for (int i = 0; i < 100; i++) {
+            query.add("k" + i, "v" + i);
+        }
+        query.set("k0", "a-very-long-value");
+        httpAccLog.setRawQueryParams(query);
+        Map<String, Object> formData = new LinkedHashMap<>();
+        List<Object> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Map<String, Object> file = new LinkedHashMap<>();
+            file.put("filename", "file-" + i + ".bin");
+            file.put("size", 1024L);
+            files.add(file);
+        }
+        formData.put("files", files);
+        formData.put("note", "short");
+        httpAccLog.setFormData(formData);
+        buffer.add(httpAccLog);
+
+        RecentRequest request = buffer.recent().get(0);
+        Map<String, Object> queryParams = request.getQueryParams();
+        assertEquals(5, queryParams.size());
+        assertEquals("a-very-l...", queryParams.get("k0"));
+        assertEquals("v3", queryParams.get("k3"));
+        assertEquals(96, queryParams.get(BoundedParams.MORE));
+        assertThrows(UnsupportedOperationException.class, () -> queryParams.put("x", "y"));
+
+        // 嵌套的列表和文件信息与顶层共用条目上限
+        Map<String, Object> form = request.getFormData();
+        List<?> copied = (List<?>) form.get("files");
+        assertEquals(2, copied.size());
+        Map<?, ?> file = (Map<?, ?>) copied.get(0);
+        assertEquals("file-0.b...", file.get("filename"));
+        assertEquals(1024L, file.get("size"));
+        assertEquals(BoundedParams.MORE + 9, copied.get(1));
+        assertEquals(1, form.get(BoundedParams.MORE));
+        assertFalse(form.containsKey("note"));
+    }
+
+    @Test
+    void paramsDisabled() {
+        RecentRequestBuffer buffer = new RecentRequestBuffer(4, 2, 2, 4096, 64, 0, 8);
+        HttpAccLog httpAccLog = record(0, 200, 1);
+        LinkedMultiValueMap<String, String> query = new LinkedMultiValueMap<>();
+        query.add("a", "1");
+        httpAccLog.setRawQueryParams(query);
+        buffer.add(httpAccLog);
+        assertNull(buffer.recent().get(0).getQueryParams());
+    }
+
+    private static HttpAccLog record(int i, int status, long processTime) {
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setTraceId("trace-" + i);
+        httpAccLog.setMethod("GET");
+        httpAccLog.setPath("/orders/" + i);
+        httpAccLog.setStatusCode(status);
+        httpAccLog.setProcessTime(processTime);
+        return httpAccLog;
+    }
+
+    private static List<Long> sequences(List<RecentRequest> requests) {
+        return requests.stream().map(RecentRequest::getSequence).collect(Collectors.toList());
+    }
+}
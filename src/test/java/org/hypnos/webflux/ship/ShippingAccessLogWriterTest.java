@@ -0,0 +1,183 @@
+package org.hypnos.webflux.ship;
+
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 采集端不可用时帧先进内存积压，积压满了写溢出文件，溢出文件也满了才丢弃；采集端恢复后先发积压
+ */
+class ShippingAccessLogWriterTest {
+
+    private static final Pattern PATH = Pattern.compile("\"path\":\"([^\"]*)\"");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void backlogThenSpill() throws IOException {
+        ShippingAccessLogWriter writer = writer(unusedAddress(), 60_000, 1024, Long.MAX_VALUE);
+        for (int i = 0; i < 50; i++) {
+            writer.write(Collections.singletonList(record(i)));
+        }
+        assertTrue(writer.getBacklogBytes() > 0 && writer.getBacklogBytes() <= 1024);
+        assertTrue(writer.getSpilledRecords() > 0);
+        assertEquals(0, writer.getShippedRecords());
+        assertEquals(0, writer.getConnects());
+        // 关闭时发不出去的积压也写入溢出文件
+        writer.close();
+        assertEquals(0, writer.getBacklogBytes());
+        assertEquals(50, writer.getSpilledRecords());
+        assertEquals(0, writer.getDroppedRecords());
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.collect(Collectors.toList());
+        }
+        assertEquals(1, files.size());
+        assertTrue(files.get(0).getFileName().toString().endsWith(ShippingAccessLogWriter.SPILL_FILE_SUFFIX));
+        List<String> paths = readFrames(Files.newInputStream(files.get(0)));
+        assertEquals(50, paths.size());
+        // 积压的帧比溢出的早，溢出文件中不保证原始顺序，只校验内容完整
+        Collections.sort(paths);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            expected.add(path(i));
+        }
+        Collections.sort(expected);
+        assertEquals(expected, paths);
+    }
+
+    @Test
+    void dropsWhenSpillFull() throws IOException {
+        ShippingAccessLogWriter writer = writer(unusedAddress(), 60_000, 0, 1);
+        List<HttpAccLog> batch = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(record(i));
+        }
+        writer.write(batch);
+        writer.write(batch);
+        assertEquals(20, writer.getDroppedRecords());
+        assertEquals(0, writer.getSpilledRecords());
+        assertEquals(0, writer.getBacklogBytes());
+        writer.close();
+    }
+
+    @Test
+    void drainsBacklogAfterReconnect() throws IOException {
+        InetSocketAddress address = unusedAddress();
+        ShippingAccessLogWriter writer = writer(address, 0, 64 * 1024, Long.MAX_VALUE);
+        for (int i = 0; i < 5; i++) {
+            writer.write(Collections.singletonList(record(i)));
+        }
+        assertTrue(writer.getBacklogBytes() > 0);
+        try (ServerSocket server = new ServerSocket()) {
+            server.setReuseAddress(true);
+            server.bind(address);
+            List<HttpAccLog> batch = new ArrayList<>();
+            for (int i = 5; i < 8; i++) {
+                batch.add(record(i));
+            }
+            writer.write(batch);
+            assertEquals(1, writer.getConnects());
+            assertEquals(0, writer.getBacklogBytes());
+            assertEquals(8, writer.getShippedRecords());
+            try (Socket socket = server.accept()) {
+                writer.close();
+                List<String> paths = readFrames(socket.getInputStream());
+                List<String> expected = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    expected.add(path(i));
+                }
+                assertEquals(expected, paths);
+            }
+        }
+        assertEquals(0, writer.getSpilledRecords());
+    }
+
+    private ShippingAccessLogWriter writer(InetSocketAddress address, long reconnectIntervalMillis,
+                                           long maxBacklogBytes, long maxSpillBytes) throws IOException {
+        return new ShippingAccessLogWriter(address, 1, 64 * 1024, 1000, 1000, reconnectIntervalMillis,
+                maxBacklogBytes, directory, maxSpillBytes);
+    }
+
+    /**
+     * 绑定后立即关闭，之后连接该端口会被拒绝
+     */
+    private static InetSocketAddress unusedAddress() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(), socket.getLocalPort());
+        }
+    }
+
+    /**
+     * 按帧头逐帧解压，返回每条记录的 path
+     */
+    private static List<String> readFrames(InputStream in) throws IOException {
+        List<String> paths = new ArrayList<>();
+        try (DataInputStream data = new DataInputStream(in)) {
+            while (true) {
+                int length;
+                try {
+                    length = data.readInt();
+                } catch (EOFException e) {
+                    return paths;
+                }
+                int records = data.readInt();
+                byte[] payload = new byte[length];
+                data.readFully(payload);
+                int lines = 0;
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new GZIPInputStream(new ByteArrayInputStream(payload)), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        Matcher matcher = PATH.matcher(line);
+                        assertTrue(matcher.find(), line);
+                        paths.add(matcher.group(1));
+                        lines++;
+                    }
+                }
+                assertEquals(records, lines);
+            }
+        }
+    }
+
+    private static HttpAccLog record(int i) {
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setTraceId("trace-" + i);
+        httpAccLog.setMethod("GET");
+        httpAccLog.setPath(path(i));
+        httpAccLog.setStatusCode(200);
+        return httpAccLog;
+    }
+
+    private static String path(int i) {
+        return "/orders/" + i;
+    }
+}
@@ -0,0 +1,90 @@
+package org.hypnos.webflux.sink;
+
+import org.hypnos.webflux.capture.BodyCapture;
+import org.hypnos.webflux.capture.CaptureBufferPool;
+import org.hypnos.webflux.vo.HttpAccLog;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 写入器阻塞、队列写满时被丢弃的记录也要归还捕获缓冲区
+ */
+class AsyncAccessLogSinkLeakTest {
+
+    private static final int RECORDS = 32;
+
+    @Test
+    void dropNewest() throws InterruptedException {
+        overflow(OverflowPolicy.DROP_NEWEST);
+    }
+
+    @Test
+    void dropOldest() throws InterruptedException {
+        overflow(OverflowPolicy.DROP_OLDEST);
+    }
+
+    @Test
+    void blockTimeout() throws InterruptedException {
+        overflow(OverflowPolicy.BLOCK);
+    }
+
+    private static void overflow(OverflowPolicy policy) throws InterruptedException {
+        CaptureBufferPool pool = new CaptureBufferPool(256, 16 * 1024, 64 * 1024, 16);
+        pool.setLeakDetection(true);
+        BlockingWriter writer = new BlockingWriter();
+        AsyncAccessLogSink sink = new AsyncAccessLogSink(writer, 4, 1, policy, 1);
+        sink.accept(record(pool));
+        assertTrue(writer.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 1; i < RECORDS; i++) {
+            sink.accept(record(pool));
+        }
+        assertTrue(sink.getDroppedCount() > 0);
+        writer.release.countDown();
+        sink.close();
+        assertEquals(RECORDS, writer.written.get() + sink.getDroppedCount());
+        pool.assertNoLeaks();
+    }
+
+    private static HttpAccLog record(CaptureBufferPool pool) {
+        BodyCapture capture = new BodyCapture(pool, 1024);
+        capture.append(new byte[100], 0, 100);
+        HttpAccLog httpAccLog = new HttpAccLog();
+        httpAccLog.setRequestCapture(capture);
+        return httpAccLog;
+    }
+
+    /**
+     * 第一批写入时阻塞，直到测试放行
+     */
+    private static class BlockingWriter implements AccessLogWriter {
+
+        final CountDownLatch entered = new CountDownLatch(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+
+        final AtomicInteger written = new AtomicInteger();
+
+        @Override
+        public void write(List<HttpAccLog> batch) throws IOException {
+            entered.countDown();
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            for (HttpAccLog httpAccLog : batch) {
+                httpAccLog.render();
+            }
+            written.addAndGet(batch.size());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package org.hypnos.webflux.trace;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TraceContextTest {
+
+    private static final String TRACE_ID = "4bf92f3577b34da6a3ce929d0e0e4736";
+
+    private static final String TRACEPARENT = "00-" + TRACE_ID + "-00f067aa0ba902b7-01";
+
+    @Test
+    void traceparent() {
+        TraceContext context = TraceContext.parseTraceparent(TRACEPARENT);
+        assertNotNull(context);
+        assertEquals(TRACE_ID, context.getTraceId());
+        assertTrue(context.isSampled());
+        assertFalse(context.isGenerated());
+        assertFalse(TraceContext.parseTraceparent("00-" + TRACE_ID + "-00f067aa0ba902b7-00").isSampled());
+        // 未来版本允许在 55 个字符之后以 - 追加字段
+        assertNotNull(TraceContext.parseTraceparent("01-" + TRACE_ID + "-00f067aa0ba902b7-03-extra"));
+    }
+
+    @Test
+    void invalidTraceparent() {
+        assertNull(TraceContext.parseTraceparent(TRACEPARENT.substring(0, 54)));
+        assertNull(TraceContext.parseTraceparent(TRACEPARENT + "x"));
+        assertNull(TraceContext.parseTraceparent(TRACEPARENT + "-extra"));
+        assertNull(TraceContext.parseTraceparent("ff" + TRACEPARENT.substring(2)));
+        assertNull(TraceContext.parseTraceparent(TRACEPARENT.toUpperCase()));
+        assertNull(TraceContext.parseTraceparent(TRACEPARENT.replace('-', '_')));
+        assertNull(TraceContext.parseTraceparent("00-00000000000000000000000000000000-00f067aa0ba902b7-01"));
+        assertNull(TraceContext.parseTraceparent("00-" + TRACE_ID + "-0000000000000000-01"));
+        assertNull(TraceContext.parseTraceparent("00-" + TRACE_ID + "-00f067aa0ba902b7-0g"));
+    }
+
+    @Test
+    void b3TraceId() {
+        assertSame(TRACE_ID, TraceContext.parseB3TraceId(TRACE_ID));
+        assertEquals(TRACE_ID, TraceContext.parseB3TraceId(TRACE_ID.toUpperCase()));
+        assertEquals("0000000000000000a3ce929d0e0e4736", TraceContext.parseB3TraceId("a3ce929d0e0e4736"));
+        assertEquals("0000000000000000a3ce929d0e0e4736", TraceContext.parseB3TraceId("A3CE929D0E0E4736"));
+        assertNull(TraceContext.parseB3TraceId("a3ce929d0e0e473"));
+        assertNull(TraceContext.parseB3TraceId("a3ce929d0e0e473g"));
+        assertNull(TraceContext.parseB3TraceId("0000000000000000"));
+        assertNull(TraceContext.parseB3TraceId(""));
+    }
+
+    @Test
+    void resolvePrefersTraceparent() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(TraceContext.TRACEPARENT, TRACEPARENT);
+        headers.set(TraceContext.B3_TRACE_ID, "a3ce929d0e0e4736");
+        assertEquals(TRACE_ID, TraceContext.resolve(headers).getTraceId());
+
+        headers.set(TraceContext.TRACEPARENT, "garbage");
+        headers.set(TraceContext.B3_SAMPLED, "0");
+        TraceContext b3 = TraceContext.resolve(headers);
+        assertEquals("0000000000000000a3ce929d0e0e4736", b3.getTraceId());
+        assertFalse(b3.isSampled());
+
+        headers.set(TraceContext.B3_TRACE_ID, "bad");
+        TraceContext generated = TraceContext.resolve(headers);
+        assertTrue(generated.isGenerated());
+        assertNotNull(TraceContext.parseB3TraceId(generated.getTraceId()));
+    }
+
+    @Test
+    void newTraceparentRoundTrips() {
+        TraceContext context = TraceContext.parseTraceparent("00-" + TRACE_ID + "-00f067aa0ba902b7-00");
+        TraceContext next = TraceContext.parseTraceparent(context.newTraceparent());
+        assertEquals(TRACE_ID, next.getTraceId());
+        assertFalse(next.isSampled());
+    }
+}